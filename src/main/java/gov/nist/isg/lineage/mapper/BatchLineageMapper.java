@@ -0,0 +1,400 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.Log;
+import gov.nist.isg.lineage.mapper.lib.MemoryBudget;
+
+/**
+ * Runs a batch of Lineage Mapper experiments in a single JVM.
+ *
+ * The batch is described by a manifest file listing one job per block of lines, the blocks being
+ * separated by blank lines. Each line of a block is a parameter written as "name: value", like
+ * the lines of a parameter file, so a job lists its inputDirectory and outputDirectory followed by
+ * the parameters it overrides. Lines starting with '#' are comments. The jobs start from the
+ * default parameters, or from a base parameter file given with --params, and never read the
+ * saved preferences.
+ *
+ * At most a given number of jobs run concurrently, and their per frame computations share one
+ * pool of worker threads. The jobs also share a memory budget, the memoryBudget percentage of the
+ * maximum heap set by the base parameters: a job only starts once its estimated heap use fits
+ * within what the running jobs leave of the budget, and its pipeline is made shallower to fit in
+ * the share it is granted. A job that fails is reported and does not stop the others.
+ */
+public class BatchLineageMapper {
+
+  public static final String MANIFEST_ARG = "--manifest";
+  public static final String PARAMS_ARG = "--params";
+  public static final String JOBS_ARG = "--jobs";
+  public static final String THREADS_ARG = "--threads";
+
+  private static final int defaultConcurrentJobs = 2;
+
+  /**
+   * The states of a batch job.
+   */
+  public static enum JobStatus {
+    PENDING, RUNNING, DONE, FAILED, INTERRUPTED
+  }
+
+  /**
+   * A Lineage Mapper run of the batch, with its parameters and its outcome.
+   */
+  public static class Job implements Callable<Job> {
+
+    private final int index;
+    private final TrackingAppParams params;
+    private ExecutorService workerPool = null;
+    private MemoryBudget memoryBudget = null;
+    private volatile JobStatus status = JobStatus.PENDING;
+    private volatile long queuedTime = 0;
+    private volatile long elapsedTime = 0;
+    private volatile String error = null;
+
+    /**
+     * Create a batch job.
+     * @param index  the index of the job within the batch
+     * @param params the TrackingAppParams of the job
+     */
+    public Job(int index, TrackingAppParams params) {
+      this.index = index;
+      this.params = params;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public TrackingAppParams getParams() {
+      return params;
+    }
+
+    public JobStatus getStatus() {
+      return status;
+    }
+
+    /**
+     * @return the time spent waiting for the memory budget to admit the job in milliseconds
+     */
+    public long getQueuedTime() {
+      return queuedTime;
+    }
+
+    /**
+     * @return the time spent running the job in milliseconds
+     */
+    public long getElapsedTime() {
+      return elapsedTime;
+    }
+
+    /**
+     * @return the reason the job failed, or null
+     */
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * @return the name of the job, the input directory it tracks
+     */
+    public String getName() {
+      return params.getInputDirectory();
+    }
+
+    private void fail(String message) {
+      status = JobStatus.FAILED;
+      error = message;
+    }
+
+    /**
+     * Track the sequence of the job, recording the outcome instead of throwing it.
+     * @return this job
+     */
+    @Override
+    public Job call() {
+      long queuedSince = System.nanoTime();
+      long granted = 0;
+      long startTime = queuedSince;
+      try {
+        params.validateParameters();
+        LineageMapper lm = new LineageMapper(params);
+
+        // wait until at least the shallowest pipeline of the job fits within the memory budget,
+        // the budget is shared with the other jobs, so the first frame's cells are always counted
+        MemoryEstimator estimator = MemoryEstimator.forFrames(params, params.getFramesList(), 0);
+        long minimum = estimator.estimate(0);
+        if (minimum > memoryBudget.getCapacity()) {
+          Log.mandatory("Batch job " + index + " needs an estimated " + (minimum >> 20)
+              + " MB, more than the memory budget, it will run alone");
+        }
+        granted = memoryBudget.acquire(minimum, estimator.estimate(params.getPipelineDepth()));
+        lm.setMemoryBudget(granted);
+
+        status = JobStatus.RUNNING;
+        startTime = System.nanoTime();
+        queuedTime = (startTime - queuedSince) / 1000000;
+        Log.mandatory("Batch job " + index + " started with " + (granted >> 20) + " MB: "
+            + getName());
+        if (params.getNumWorkerThreads() > 1)
+          lm.setSharedWorkerPool(workerPool);
+        lm.track();
+        status = JobStatus.DONE;
+      } catch (InterruptedException e) {
+        status = JobStatus.INTERRUPTED;
+      } catch (Exception e) {
+        Log.error(e);
+        fail(e.toString());
+      } finally {
+        memoryBudget.release(granted);
+        elapsedTime = (System.nanoTime() - startTime) / 1000000;
+        Log.mandatory("Batch job " + index + " " + status + " in " + elapsedTime + " ms: "
+            + getName());
+      }
+      return this;
+    }
+  }
+
+  private final List<Job> jobs;
+  private final int concurrentJobs;
+  private final int workerThreads;
+  private final MemoryBudget memoryBudget;
+
+  /**
+   * Create a batch of Lineage Mapper runs.
+   * @param jobs           the jobs to run
+   * @param concurrentJobs the maximum number of jobs running at the same time
+   * @param workerThreads  the number of worker threads shared by the jobs for the per frame
+   *                       computations
+   * @param memoryBudget   the heap budget shared by the jobs
+   */
+  public BatchLineageMapper(List<Job> jobs, int concurrentJobs, int workerThreads,
+                            MemoryBudget memoryBudget) {
+    if (concurrentJobs < 1)
+      throw new IllegalArgumentException("The number of concurrent jobs must be at least 1");
+    if (workerThreads < 1)
+      throw new IllegalArgumentException("The number of worker threads must be at least 1");
+    this.jobs = jobs;
+    this.concurrentJobs = concurrentJobs;
+    this.workerThreads = workerThreads;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Run all the jobs of the batch and wait for them to complete. The outcome of every job is
+   * recorded in its status.
+   * @return the jobs of the batch
+   * @throws InterruptedException if interrupted while waiting, the remaining jobs are cancelled
+   */
+  public List<Job> run() throws InterruptedException {
+    // jobs writing to the same output directory would overwrite each other
+    Map<String, Job> outputDirectories = new HashMap<String, Job>();
+    List<Job> runnable = new ArrayList<Job>(jobs.size());
+    for (Job job : jobs) {
+      String outputDirectory = new File(job.params.getOutputDirectory()).getAbsolutePath();
+      Job other = outputDirectories.get(outputDirectory);
+      if (other != null) {
+        job.fail("Output directory is also used by job " + other.index + ": " + outputDirectory);
+      } else {
+        outputDirectories.put(outputDirectory, job);
+        runnable.add(job);
+      }
+    }
+
+    ExecutorService jobPool = Executors.newFixedThreadPool(concurrentJobs);
+    ExecutorService workerPool = Executors.newFixedThreadPool(workerThreads);
+    try {
+      List<Future<Job>> running = new ArrayList<Future<Job>>(runnable.size());
+      for (Job job : runnable) {
+        job.workerPool = workerPool;
+        job.memoryBudget = memoryBudget;
+        running.add(jobPool.submit(job));
+      }
+      for (int i = 0; i < running.size(); i++) {
+        try {
+          running.get(i).get();
+        } catch (ExecutionException e) {
+          // errors escaping the job, such as running out of memory, only fail that job
+          runnable.get(i).fail(e.getCause().toString());
+        }
+      }
+    } catch (InterruptedException e) {
+      for (Job job : runnable) {
+        if (job.status == JobStatus.PENDING || job.status == JobStatus.RUNNING)
+          job.status = JobStatus.INTERRUPTED;
+      }
+      throw e;
+    } finally {
+      jobPool.shutdownNow();
+      workerPool.shutdownNow();
+    }
+    return jobs;
+  }
+
+  /**
+   * Log the status and timing of every job of the batch.
+   */
+  public void logSummary() {
+    int nbDone = 0;
+    for (Job job : jobs) {
+      String line = "  job " + job.index + ": " + job.status + ", queued " + job.queuedTime
+          + " ms, ran " + job.elapsedTime + " ms, " + job.getName();
+      if (job.error != null)
+        line += " (" + job.error + ")";
+      Log.mandatory(line);
+      if (job.status == JobStatus.DONE)
+        nbDone++;
+    }
+    Log.mandatory("Batch done: " + nbDone + " of " + jobs.size() + " jobs succeeded");
+  }
+
+  /**
+   * Read the jobs of a batch manifest.
+   * @param manifest   the manifest file, one block of "name: value" lines per job
+   * @param baseParams the parameter lines applied to every job before its own
+   * @return the jobs of the manifest
+   * @throws IOException if the manifest cannot be read
+   */
+  public static List<Job> readManifest(File manifest, List<String> baseParams)
+      throws IOException {
+    List<Job> jobs = new ArrayList<Job>();
+    List<String> block = new ArrayList<String>();
+    for (String line : readLines(manifest)) {
+      line = line.trim();
+      if (line.startsWith("#"))
+        continue;
+      if (!line.isEmpty()) {
+        block.add(line);
+        continue;
+      }
+      if (!block.isEmpty())
+        jobs.add(createJob(jobs.size(), baseParams, block));
+      block.clear();
+    }
+    if (!block.isEmpty())
+      jobs.add(createJob(jobs.size(), baseParams, block));
+    return jobs;
+  }
+
+  private static Job createJob(int index, List<String> baseParams, List<String> block) {
+    TrackingAppParams params = new TrackingAppParams();
+    for (String line : baseParams)
+      params.loadParam(line);
+    for (String line : block)
+      params.loadParam(line);
+    // parameter lines set the directories as written, the setters terminate them with a separator
+    params.setInputDirectory(params.getInputDirectory());
+    params.setOutputDirectory(params.getOutputDirectory());
+    params.setIsMacro(true);
+    return new Job(index, params);
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader br = new BufferedReader(new FileReader(file));
+    try {
+      String line = null;
+      while ((line = br.readLine()) != null)
+        lines.add(line);
+    } finally {
+      br.close();
+    }
+    return lines;
+  }
+
+  private static void printHelp() {
+    String tab = "\t";
+    System.out.println("Runs a batch of Lineage Mapper experiments listed in a manifest file.");
+    System.out.println(MANIFEST_ARG + " <file>");
+    System.out.println(tab + "The manifest, one block of \"name: value\" parameter lines per job, "
+        + "the blocks separated by blank lines");
+    System.out.println(PARAMS_ARG + " <file>");
+    System.out.println(tab + "A parameter file applied to every job before its own parameters, "
+        + "its memoryBudget sets the heap budget shared by the jobs");
+    System.out.println(JOBS_ARG + " <value>");
+    System.out.println(tab + "The maximum number of jobs running at the same time, default: "
+        + defaultConcurrentJobs);
+    System.out.println(THREADS_ARG + " <value>");
+    System.out.println(tab + "The number of worker threads shared by the jobs, default: the "
+        + "number of processors");
+  }
+
+  public static void main(String[] args) {
+    String manifest = null;
+    String baseParamsFile = null;
+    int concurrentJobs = defaultConcurrentJobs;
+    int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    for (int i = 0; i < args.length; i++) {
+      String s = args[i];
+      if (s.equals("-h") || s.equals("--help")) {
+        printHelp();
+        return;
+      }
+      if (i == args.length - 1)
+        break;
+      if (s.equals(MANIFEST_ARG)) {
+        manifest = args[i + 1];
+      } else if (s.equals(PARAMS_ARG)) {
+        baseParamsFile = args[i + 1];
+      } else if (s.equals(JOBS_ARG)) {
+        concurrentJobs = TrackingAppParams.loadInteger(args[i + 1], concurrentJobs);
+      } else if (s.equals(THREADS_ARG)) {
+        workerThreads = TrackingAppParams.loadInteger(args[i + 1], workerThreads);
+      }
+    }
+
+    if (manifest == null) {
+      printHelp();
+      return;
+    }
+
+    Log.setLogLevel(Log.LogType.MANDATORY);
+    boolean succeeded = false;
+    try {
+      List<String> baseParams = new ArrayList<String>();
+      if (baseParamsFile != null)
+        baseParams = readLines(new File(baseParamsFile));
+      List<Job> jobs = readManifest(new File(manifest), baseParams);
+      TrackingAppParams batchParams = new TrackingAppParams();
+      for (String line : baseParams)
+        batchParams.loadParam(line);
+      MemoryBudget memoryBudget = MemoryBudget.ofMaxHeap(batchParams.getMemoryBudget());
+      Log.mandatory("Running " + jobs.size() + " batch jobs, " + concurrentJobs + " at a time, "
+          + "within a memory budget of " + (memoryBudget.getCapacity() >> 20) + " MB");
+
+      BatchLineageMapper batch = new BatchLineageMapper(jobs, concurrentJobs, workerThreads,
+          memoryBudget);
+      batch.run();
+      batch.logSummary();
+
+      succeeded = true;
+      for (Job job : jobs)
+        succeeded &= job.getStatus() == JobStatus.DONE;
+    } catch (InterruptedException e) {
+      Log.mandatory("Batch Interrupted");
+    } catch (IOException e) {
+      Log.error("Unable to read the batch manifest: " + e.getMessage());
+    }
+    if (!succeeded)
+      System.exit(1);
+  }
+}
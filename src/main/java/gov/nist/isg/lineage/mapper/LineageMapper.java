@@ -8,32 +8,61 @@ package gov.nist.isg.lineage.mapper;
 
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
 import gov.nist.isg.lineage.mapper.app.gui.CellTrackerGUI;
 import gov.nist.isg.lineage.mapper.app.gui.panels.OptionsPanel;
 import gov.nist.isg.lineage.mapper.lib.Cell;
+import gov.nist.isg.lineage.mapper.lib.CentroidIndex;
 import gov.nist.isg.lineage.mapper.lib.ConnectedComponents;
+import gov.nist.isg.lineage.mapper.lib.DirtyRegion;
 import gov.nist.isg.lineage.mapper.lib.DistanceTransform;
+import gov.nist.isg.lineage.mapper.lib.GreedyAssignment;
 import gov.nist.isg.lineage.mapper.lib.ImageFrame;
 import gov.nist.isg.lineage.mapper.lib.ImageTile;
+import gov.nist.isg.lineage.mapper.lib.LabelStrip;
+import gov.nist.isg.lineage.mapper.lib.LineageAccumulator;
+import gov.nist.isg.lineage.mapper.lib.LinearAssignment;
 import gov.nist.isg.lineage.mapper.lib.Log;
 import gov.nist.isg.lineage.mapper.lib.Matrix2D;
+import gov.nist.isg.lineage.mapper.lib.MemoryBudget;
+import gov.nist.isg.lineage.mapper.lib.RunLengthImage;
+import gov.nist.isg.lineage.mapper.lib.SparseCostMatrix;
+import gov.nist.isg.lineage.mapper.lib.SparseFusion;
+import gov.nist.isg.lineage.mapper.lib.SparseOverlap;
+import gov.nist.isg.lineage.mapper.lib.TrackingCheckpoint;
 import gov.nist.isg.lineage.mapper.lib.Utils;
 import gov.nist.isg.lineage.mapper.metadata.CellTrackerMetadata;
+import gov.nist.isg.lineage.mapper.metadata.ObjectPositionMetadata;
 
 
 public class LineageMapper implements Runnable {
 
   private static final boolean limitDivisionToTwoDaughters = true;
+  // number of row bands per worker thread, more bands than threads balances uneven bands
+  private static final int overlapBandsPerThread = 4;
 
   private int globalHighestCellLabel = 0;
   private List<ImageFrame> framesList = null;
   private TrackingAppParams params;
+  private ExecutorService workerPool = null;
+  private ExecutorService sharedWorkerPool = null;
+  // the heap bytes the run may plan to use, 0 uses the memoryBudget share of the maximum heap
+  private long memoryBudget = 0;
 
   /**
    * Create a new Lineage Mapper instance.
@@ -46,6 +75,20 @@ public class LineageMapper implements Runnable {
     initFramesList();
   }
 
+  /**
+   * Create a Lineage Mapper tracking a given list of frames, used to track a temporal shard of the
+   * sequence. The frames are tracked by calling trackImageFramePair in order.
+   * @param params      the TrackingAppParams specifying the tracking options
+   * @param framesList  the frames of the sequence indexed by frame number, null for frames that
+   *                    are not tracked by this instance
+   * @param workerPool  the pool of worker threads for the per frame computations, or null
+   */
+  LineageMapper(TrackingAppParams params, List<ImageFrame> framesList, ExecutorService workerPool) {
+    this.params = params;
+    this.framesList = framesList;
+    this.workerPool = workerPool;
+  }
+
 
   private void initFramesList() {
     framesList = new ArrayList<ImageFrame>();
@@ -68,6 +111,11 @@ public class LineageMapper implements Runnable {
       throw new IllegalArgumentException("No Images Found");
     }
 
+    File scratchDirectory = null;
+    if (params.getScratchDirectory() != null && !params.getScratchDirectory().isEmpty()) {
+      scratchDirectory = new File(params.getScratchDirectory());
+    }
+
     int imgIndex = startIndex;
     while ((new File(params.getInputDirectory() + Utils.getFileName(params.getFilenamePattern(),
         OptionsPanel.filenamePatternRegex, imgIndex))).exists()) {
@@ -78,6 +126,8 @@ public class LineageMapper implements Runnable {
       String outputFilepath = params.getOutputDirectory() + params.getOutputPrefix() + imgName;
       // Create ImageFrame without reading the image, subtrack start to make numbering zero based
       ImageFrame curFrame = new ImageFrame(inputFilepath, outputFilepath, imgIndex - startIndex, imgName);
+      curFrame.setStripHeight(params.getStripHeight());
+      curFrame.setMappedStorage(params.isOffHeapLabels(), scratchDirectory);
       framesList.add(curFrame);
       imgIndex++;
     }
@@ -90,17 +140,7 @@ public class LineageMapper implements Runnable {
    */
   public void run() {
     try {
-      File file = new File(params.getOutputDirectory());
-      if (!file.exists())
-        file.mkdir();
-
-      Log.mandatory("Tracking Start");
-      worker();
-      Log.mandatory("Tracking Done");
-
-      Log.mandatory("Generating Output Metadata");
-      CellTrackerMetadata.generateAndSaveMetadata(params);
-      Log.mandatory("Done");
+      track();
 
       // record the preferences of the non-failed tracking
       params.recordPreferences();
@@ -113,7 +153,74 @@ public class LineageMapper implements Runnable {
   }
 
   /**
-   * Loops over all images in the sequence of images performing pairwise tracking
+   * Use a shared pool of worker threads for the per frame computations instead of creating one
+   * for this run, used when several Lineage Mapper runs execute in the same JVM. The pool is not
+   * shut down when the run completes.
+   * @param workerPool the shared pool of worker threads, or null to create one per run
+   */
+  void setSharedWorkerPool(ExecutorService workerPool) {
+    this.sharedWorkerPool = workerPool;
+  }
+
+  /**
+   * Set the number of heap bytes this run may plan to use, instead of the memoryBudget percentage
+   * of the maximum heap, used when several Lineage Mapper runs share the heap.
+   * @param memoryBudget the number of heap bytes, or 0 to use the memoryBudget parameter
+   */
+  void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Tracks the sequence and saves the output metadata. Unlike run, failures are thrown to the
+   * caller and the preferences are not recorded.
+   * @throws InterruptedException if the tracking is interrupted
+   */
+  void track() throws InterruptedException {
+    File file = new File(params.getOutputDirectory());
+    if (!file.exists())
+      file.mkdir();
+
+    // create the pool of worker threads used to parallelize the per frame computations
+    if (sharedWorkerPool != null) {
+      workerPool = sharedWorkerPool;
+    } else if (params.getNumWorkerThreads() > 1) {
+      workerPool = Executors.newFixedThreadPool(params.getNumWorkerThreads());
+    }
+
+    Log.mandatory("Tracking Start");
+    try {
+      if (params.getSpatialTiles() > 1 || params.getTemporalShards() > 1) {
+        shardedWorker();
+      } else {
+        worker();
+      }
+    } finally {
+      if (workerPool != null && workerPool != sharedWorkerPool) {
+        workerPool.shutdownNow();
+      }
+      workerPool = null;
+    }
+    Log.mandatory("Tracking Done");
+
+    Log.mandatory("Generating Output Metadata");
+    CellTrackerMetadata.generateAndSaveMetadata(params);
+    Log.mandatory("Done");
+
+    // the run is complete, so there is nothing left to resume
+    File checkpointFile = getCheckpointFile();
+    if (checkpointFile.exists() && !checkpointFile.delete()) {
+      Log.error("Unable to delete tracking checkpoint: " + checkpointFile.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Loops over all images in the sequence of images performing pairwise tracking. The frames flow
+   * through a pipeline of stages: a reader stage loads the next frames from disk, a feature stage
+   * runs processImage on them, the tracking stage (this thread) tracks the frame pairs in order,
+   * and a writer stage applies the global labels and saves the finished frames. The pipeline
+   * depth bounds the number of frames held ahead of and behind the tracking stage; a depth of 0
+   * runs every stage inline on this thread.
    * @throws InterruptedException
    */
   private void worker() throws InterruptedException {
@@ -123,47 +230,362 @@ public class LineageMapper implements Runnable {
 
     // get the list of frames to track
     List<ImageFrame> framesList = params.getFramesList();
+    int depth = params.getPipelineDepth();
+
+    // only admit the pipeline stages whose frames are estimated to fit within the memory budget
+    if (depth > 0) {
+      long budget = (memoryBudget > 0) ? memoryBudget
+          : MemoryBudget.getMaxHeapShare(params.getMemoryBudget());
+      int fittingDepth = MemoryEstimator.forFrames(params, framesList, budget)
+          .maxPipelineDepth(budget);
+      if (fittingDepth < depth) {
+        Log.mandatory("Pipeline depth reduced from " + depth + " to " + fittingDepth
+            + " to fit within the memory budget of " + (budget >> 20) + " MB");
+        depth = fittingDepth;
+      }
+    }
+
+    // each stage runs on its own thread so disk I/O and feature extraction overlap tracking
+    ExecutorService readerStage = null;
+    ExecutorService featureStage = null;
+    ExecutorService writerStage = null;
+    if (depth > 0) {
+      // when precomputing, the frames within the pipeline depth are read and processed concurrently
+      int prepareThreads = params.isPrecomputeFeatures() ? params.getNumWorkerThreads() : 1;
+      readerStage = Executors.newFixedThreadPool(prepareThreads);
+      featureStage = Executors.newFixedThreadPool(prepareThreads);
+      writerStage = Executors.newSingleThreadExecutor();
+    }
+
+    // the frames being read and processed ahead of tracking, oldest first
+    LinkedList<Future<ImageFrame>> prepared = new LinkedList<Future<ImageFrame>>();
+    // the tracked frames handed to the writer stage, oldest first
+    LinkedList<Future<ImageFrame>> written = new LinkedList<Future<ImageFrame>>();
+
+    // the lineage and the cell positions are accumulated as the tracked frames are written
+    LineageAccumulator lineage = new LineageAccumulator();
+    ObjectPositionMetadata positions = null;
+
+    try {
+      // pick up after the last checkpointed frame, which becomes the previous frame
+      int firstFrame = 0;
+      long positionsLength = 0;
+      // the frames before this one are retired, and the frames up to lastWrittenFrame are on disk
+      int nextFrameToRetire = 0;
+      int lastWrittenFrame = -1;
+      if (params.isResume()) {
+        File checkpointFile = getCheckpointFile();
+        if (checkpointFile.exists()) {
+          TrackingCheckpoint checkpoint;
+          try {
+            checkpoint = TrackingCheckpoint.load(checkpointFile);
+          } catch (IOException e) {
+            throw new IllegalStateException("Unable to read tracking checkpoint: "
+                + e.getMessage(), e);
+          }
+          checkpoint.restore(framesList, params.getTrackingParamsFingerprint());
+          globalHighestCellLabel = checkpoint.getGlobalHighestCellLabel();
+          lineage = checkpoint.getLineage();
+          positionsLength = checkpoint.getPositionsLength();
+          nextFrameToRetire = checkpoint.getFirstFrame();
+          prevFrame = framesList.get(checkpoint.getLastFrame());
+          firstFrame = checkpoint.getLastFrame() + 1;
+          Log.mandatory("Resuming tracking after: " + prevFrame.getTitle());
+        } else {
+          Log.mandatory("No tracking checkpoint found, tracking from the first frame");
+        }
+      }
+      int nextFrameToPrepare = firstFrame;
+
+      params.setLineageAccumulator(lineage);
+      if (params.isSaveMetadata()) {
+        positions = openPositions(positionsLength);
+      }
+
+      for (int i = firstFrame; i < framesList.size(); i++) {
+        if (Thread.interrupted())
+          throw new InterruptedException("Lineage Mapper Interrupted");
+
+        params.setProgressBar(((double) i) / framesList.size());
+
+        // keep the frames up to depth past the current one moving through the read and process stages
+        while (nextFrameToPrepare < framesList.size() && nextFrameToPrepare <= i + depth) {
+          prepared.add(prepareFrame(framesList.get(nextFrameToPrepare), readerStage,
+              featureStage, workerPool, params.isPrecomputeAspectRatio()));
+          nextFrameToPrepare++;
+        }
+
+        // wait for the current frame to be read (and processed) from the frames list
+        curFrame = getResult(prepared.removeFirst());
+
+        // track the pair of image
+        Log.mandatory("Tracking: " + (prevFrame == null ? "\"\"" : prevFrame.getTitle()) + " -> " + curFrame.getTitle());
+        long startTime = System.nanoTime();
+        // the highest global label of the frames before this one, kept for the checkpoint
+        int prevHighestCellLabel = globalHighestCellLabel;
+        trackImageFramePair(curFrame, prevFrame, i);
+        Log.mandatory("  took: " + ((System.nanoTime() - startTime) / 1000000) + " ms.");
+
+        if (prevFrame != null) {
+          // if the prevFrame is not null, apply global labels and write the image to disk
+          recordFrame(prevFrame, lineage, positions);
+          written.add(writeFrame(prevFrame, writerStage));
+          // bound the number of tracked frames waiting to be written
+          while (written.size() > depth) {
+            lastWrittenFrame = getResult(written.removeFirst()).getFrameNb();
+          }
+          // the next pair looks back at most getRetainedFrames() frames for the circularity check
+          // and the lineage, the older written frames are retired
+          nextFrameToRetire = retireFrames(nextFrameToRetire,
+              Math.min(lastWrittenFrame, i - getRetainedFrames()));
+
+          // checkpoint once the frames before the current one are all on disk
+          int interval = params.getCheckpointInterval();
+          if (interval > 0 && i % interval == 0) {
+            while (!written.isEmpty()) {
+              lastWrittenFrame = getResult(written.removeFirst()).getFrameNb();
+            }
+            saveCheckpoint(nextFrameToRetire, i - 1, prevHighestCellLabel, lineage, positions);
+          }
+        }
+
+        // overwrite the previous imageFrame with the current one
+        prevFrame = curFrame;
+      }
 
-    for (int i = 0; i < framesList.size(); i++) {
       if (Thread.interrupted())
         throw new InterruptedException("Lineage Mapper Interrupted");
 
-      params.setProgressBar(((double) i) / framesList.size());
+      // write the last image to the output image stack
+      recordFrame(prevFrame, lineage, positions);
+      written.add(writeFrame(prevFrame, writerStage));
+      // wait for the writer to finish before the metadata is generated
+      while (!written.isEmpty()) {
+        getResult(written.removeFirst());
+      }
 
-      // get the current frame from the frames list
-      curFrame = framesList.get(i);
-      // read the new image
-      curFrame.readImage();
+    } finally {
+      if (positions != null) {
+        positions.close();
+      }
+      if (depth > 0) {
+        readerStage.shutdownNow();
+        featureStage.shutdownNow();
+        writerStage.shutdownNow();
+      }
+    }
+  }
 
-      // track the pair of image
-      Log.mandatory("Tracking: " + (prevFrame == null ? "\"\"" : prevFrame.getTitle()) + " -> " + curFrame.getTitle());
-      long startTime = System.nanoTime();
-      trackImageFramePair(curFrame, prevFrame, i);
-      Log.mandatory("  took: " + ((System.nanoTime() - startTime) / 1000000) + " ms.");
+  /**
+   * Tracks the sequence as spatial tiles tracked concurrently by a SpatialShardTracker, or as
+   * temporal shards tracked concurrently by a TemporalShardTracker, then records the merged frames
+   * in order. The trackers write the tracked images themselves, so only the lineage and positions
+   * metadata are left to this thread. Checkpoints are not written in these modes.
+   * @throws InterruptedException
+   */
+  private void shardedWorker() throws InterruptedException {
+    if (params.getCheckpointInterval() > 0 || params.isResume()) {
+      Log.mandatory("Tracking checkpoints are not used when tracking shards");
+    }
 
-      if (prevFrame != null) {
-        // if the prevFrame is not null, apply global labels and write the image to disk
-        prevFrame.applyGlobalLabels();
-        // write the tracked image to disk
-        prevFrame.writeImage(params.getOutputDirectory(), params.getOutputPrefix());
-        // release the image tile's pixel data
-        prevFrame.releaseImageTile();
+    if (params.getSpatialTiles() > 1) {
+      if (params.getTemporalShards() > 1) {
+        Log.mandatory("Temporal shards are not used when tracking spatial tiles");
+      }
+      framesList = new SpatialShardTracker(params, framesList, workerPool).track();
+    } else {
+      framesList = new TemporalShardTracker(params, framesList, workerPool).track();
+    }
+    params.setFramesList(framesList);
+
+    LineageAccumulator lineage = new LineageAccumulator();
+    params.setLineageAccumulator(lineage);
+    ObjectPositionMetadata positions = null;
+    try {
+      if (params.isSaveMetadata()) {
+        positions = openPositions(0);
       }
+      for (ImageFrame frame : framesList) {
+        recordFrame(frame, lineage, positions);
+      }
+    } finally {
+      if (positions != null) {
+        positions.close();
+      }
+    }
+  }
+
+  /**
+   * Open the positions metadata file and register it with the params.
+   *
+   * @param length the length of the file to keep, 0 to start a new file
+   * @return the opened positions metadata
+   */
+  private ObjectPositionMetadata openPositions(long length) {
+    ObjectPositionMetadata positions = new ObjectPositionMetadata(params);
+    params.setObjectPositionMetadata(positions);
+    try {
+      positions.open(length);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to open positions metadata: " + e.getMessage(), e);
+    }
+    return positions;
+  }
+
+  /**
+   * Add a tracked frame to the lineage and the positions metadata, once its cells and global
+   * labels are final. The matrices of the frame's tracking are only needed up to the lineage, so
+   * they are released afterwards.
+   *
+   * @param frame     the tracked frame about to be written
+   * @param lineage   the lineage accumulated so far
+   * @param positions the positions metadata being written, or null
+   */
+  private void recordFrame(ImageFrame frame, LineageAccumulator lineage,
+                           ObjectPositionMetadata positions) {
+    // the last checkpointed frame is written again when resuming, but is already recorded
+    if (frame.getFrameNb() < lineage.getNbFrames()) {
+      return;
+    }
+    ImageFrame prev = (frame.getFrameNb() > 0) ? framesList.get(frame.getFrameNb() - 1) : null;
+    lineage.addFrame(frame, prev);
+    if (positions != null) {
+      positions.appendFrame(frame);
+    }
+    frame.setDivision(null);
+    frame.setFusion(null);
+    frame.setTrackVector(null);
+    frame.setCost(null);
+    frame.setOverlap(null);
+  }
 
-      // overwrite the previous imageFrame with the current one
-      prevFrame = curFrame;
+  /**
+   * @return the number of frames before the frame being tracked that must keep their cells: the
+   * circularity check looks back numFramesToCheckCircularity frames, and recording the previous
+   * frame into the lineage needs the frame before it
+   */
+  private int getRetainedFrames() {
+    return Math.max(2, params.getNumFramesToCheckCircularity());
+  }
+
+  /**
+   * Retire the frames from first up to and including last, so the memory held by the frames
+   * stays bounded regardless of the length of the sequence. The frames must have been written.
+   *
+   * @param first the first frame to retire
+   * @param last  the last frame to retire
+   * @return the index of the next frame to retire
+   */
+  private int retireFrames(int first, int last) {
+    for (int f = first; f <= last; f++) {
+      framesList.get(f).retire();
     }
+    return Math.max(first, last + 1);
+  }
 
-    if (Thread.interrupted())
-      throw new InterruptedException("Lineage Mapper Interrupted");
+  /**
+   * Get the file holding the tracking checkpoint of this run's output.
+   *
+   * @return the checkpoint file within the output directory
+   */
+  private File getCheckpointFile() {
+    return new File(params.getOutputDirectory() + params.getOutputPrefix()
+        + "tracking-checkpoint.dat");
+  }
 
-    // write the last image to the output image stack
-    prevFrame.applyGlobalLabels();
-    // if the prevFrame is not null, apply global labels and write the image to disk
-    prevFrame.writeImage(params.getOutputDirectory(), params.getOutputPrefix());
-    // release the image tile's pixel data
-    prevFrame.releaseImageTile();
+  /**
+   * Save the tracking state of the retained frames up to lastFrame, which must all have been
+   * written to disk. A failed checkpoint is reported but does not stop the tracking.
+   *
+   * @param firstFrame       the index of the first frame that has not been retired
+   * @param lastFrame        the index of the last tracked and written frame
+   * @param highestCellLabel the highest global cell label assigned up to lastFrame
+   * @param lineage          the lineage accumulated up to lastFrame
+   * @param positions        the positions metadata being written, or null
+   */
+  private void saveCheckpoint(int firstFrame, int lastFrame, int highestCellLabel,
+                              LineageAccumulator lineage, ObjectPositionMetadata positions) {
+    try {
+      long positionsLength = (positions != null) ? positions.flush() : 0;
+      TrackingCheckpoint.save(getCheckpointFile(), framesList, firstFrame, lastFrame,
+          highestCellLabel, lineage, positionsLength, params.getTrackingParamsFingerprint());
+      Log.debug("Checkpoint written after: " + framesList.get(lastFrame).getTitle());
+    } catch (IOException e) {
+      Log.error("Unable to write tracking checkpoint: " + e.getMessage());
+    }
+  }
 
+  /**
+   * Read an ImageFrame from disk and extract its features ahead of tracking. If the stages are
+   * null the frame is read inline and its processing is left to the tracking stage. Frames whose
+   * pixel data is later modified by the division or fusion handling are re-processed there.
+   *
+   * @param frame            the ImageFrame to prepare
+   * @param readerStage      the executor reading the images from disk, or null
+   * @param featureStage     the executor processing the read images, or null
+   * @param workerPool       the pool tracing the cell boundaries of the read images, or null
+   * @param withAspectRatio  whether the feature stage also computes the cell aspect ratios
+   * @return the Future of the prepared ImageFrame
+   */
+  private static Future<ImageFrame> prepareFrame(final ImageFrame frame,
+                                                 ExecutorService readerStage,
+                                                 ExecutorService featureStage,
+                                                 final ExecutorService workerPool,
+                                                 final boolean withAspectRatio) {
+    Callable<ImageFrame> read = new Callable<ImageFrame>() {
+      @Override
+      public ImageFrame call() {
+        frame.readImage();
+        return frame;
+      }
+    };
+
+    if (readerStage == null) {
+      FutureTask<ImageFrame> task = new FutureTask<ImageFrame>(read);
+      task.run();
+      return task;
+    }
+
+    final Future<ImageFrame> readFrame = readerStage.submit(read);
+    return featureStage.submit(new Callable<ImageFrame>() {
+      @Override
+      public ImageFrame call() throws InterruptedException {
+        ImageFrame f = getResult(readFrame).processImage(workerPool);
+        if (withAspectRatio) {
+          f.computeAspectRatio();
+        }
+        return f;
+      }
+    });
+  }
+
+  /**
+   * Apply the global labels to a tracked ImageFrame, write it to disk and release its pixel data.
+   * If the writer stage is null the frame is written inline.
+   *
+   * @param frame       the tracked ImageFrame to write
+   * @param writerStage the executor writing the frames to disk, or null
+   * @return the Future of the written ImageFrame
+   */
+  private Future<ImageFrame> writeFrame(final ImageFrame frame, ExecutorService writerStage) {
+    Callable<ImageFrame> write = new Callable<ImageFrame>() {
+      @Override
+      public ImageFrame call() {
+        // apply global labels and write the image to disk
+        frame.applyGlobalLabels();
+        // write the tracked image to disk
+        frame.writeImage(params.getOutputDirectory(), params.getOutputPrefix());
+        // release the image tile's pixel data
+        return frame.releaseImageTile();
+      }
+    };
+
+    if (writerStage == null) {
+      FutureTask<ImageFrame> task = new FutureTask<ImageFrame>(write);
+      task.run();
+      return task;
+    }
+    return writerStage.submit(write);
   }
 
 
@@ -174,14 +596,16 @@ public class LineageMapper implements Runnable {
    * @param prevFrame the ImageFrame at the previous time (t-1)
    * @param frameNb   the frame number of the current time slice
    */
-  private void trackImageFramePair(ImageFrame curFrame, ImageFrame prevFrame, int frameNb)
+  void trackImageFramePair(ImageFrame curFrame, ImageFrame prevFrame, int frameNb)
       throws InterruptedException {
 
-    // Process the ImageTile to extract out the basic features
-    curFrame.processImage();
+    // Process the ImageTile to extract out the basic features, unless the pipeline already did
+    if (curFrame.getState() < ImageFrame.State.PROCESSED) {
+      curFrame.processImage(workerPool);
+    }
 
     // if this is the first ImageFrame in the tracking sequence then generate a numbering for the cells contained within
-    if (frameNb == 0) {
+    if (prevFrame == null) {
       // generating a sequential numbering of the cells within the first ImageFrame
       globalHighestCellLabel = 0;
       // apply those labels to the Cell objects
@@ -208,21 +632,17 @@ public class LineageMapper implements Runnable {
     generateTrackVector(curFrame);
 
     // check for division cases
-    if (checkDivision(curFrame, prevFrame, frameNb)) {
+    DirtyRegion divisionEdits = new DirtyRegion();
+    if (checkDivision(curFrame, prevFrame, frameNb, divisionEdits)) {
       // since the pixeldata has been altered overlap and cost need to be updated
-      // Generate the overlap matrix for the previous an current frames
-      computeOverlap(curFrame, prevFrame);
-      // Generate the cost matrix between the cells in the previous and current frames
-      computeCost(curFrame, prevFrame);
+      updateOverlapAndCost(curFrame, prevFrame, divisionEdits);
     }
 
     // check for fusion cases
-    if (checkFusion(curFrame, prevFrame)) {
+    DirtyRegion fusionEdits = new DirtyRegion();
+    if (checkFusion(curFrame, prevFrame, fusionEdits)) {
       // since the pixeldata has been altered overlap and cost need to be updated
-      // Generate the overlap matrix for the previous an current frames
-      computeOverlap(curFrame, prevFrame);
-      // Generate the cost matrix between the cells in the previous and current frames
-      computeCost(curFrame, prevFrame);
+      updateOverlapAndCost(curFrame, prevFrame, fusionEdits);
     }
 
     // find the best match for the untracked source and target cells
@@ -232,16 +652,34 @@ public class LineageMapper implements Runnable {
     globalHighestCellLabel = renumberTracking(curFrame, prevFrame, globalHighestCellLabel);
   }
 
+  /**
+   * @return the highest global cell label assigned by the frames tracked so far
+   */
+  int getGlobalHighestCellLabel() {
+    return globalHighestCellLabel;
+  }
+
+  /**
+   * Set the highest global cell label assigned so far, the labels of the cells born in the next
+   * tracked frame follow it.
+   * @param globalHighestCellLabel the highest global cell label assigned so far
+   */
+  void setGlobalHighestCellLabel(int globalHighestCellLabel) {
+    this.globalHighestCellLabel = globalHighestCellLabel;
+  }
+
 
   /**
    * Compute the overlap between the previous ImageFrame and the current ImageFrame. Resulting
-   * overlap Matrix2D will contain the number of pixels between the previous cell i and the current
-   * cell j at the matrix location (i,j). This overlap matrix is stored in the current frame
+   * SparseOverlap will contain the number of pixels between the previous cell i and the current
+   * cell j at the matrix location (i,j), only pairs of cells that overlap are stored. This overlap
+   * matrix is stored in the current frame
    *
    * @param curFrame  the ImageFrame of the current time slice in the cell tracking.
    * @param prevFrame the ImageFrame of the previous time slice in the cell tracking.
    */
-  private void computeOverlap(final ImageFrame curFrame, final ImageFrame prevFrame) {
+  private void computeOverlap(final ImageFrame curFrame, final ImageFrame prevFrame)
+      throws InterruptedException {
 
     // get a reference to the two ImageTiles
     ImageTile curImage = curFrame.getImage();
@@ -254,27 +692,109 @@ public class LineageMapper implements Runnable {
     int curMaxCellNb = curFrame.getMaxCellImgLabelNumber();
     int prevMaxCellNb = prevFrame.getMaxCellImgLabelNumber();
 
-    // overlap i value is previous frame label, j value is current frame label
-    Matrix2D overlap = new Matrix2D(prevMaxCellNb, curMaxCellNb);
-    // set the overlap matrix in the current frame to this instance of overlap
-    curFrame.setOverlap(overlap);
-
     // set dimensions to iterate over by looking at the min width and height of both images
     // this ensures that despite potentially different size images, the overlap will only be computed on the shared area between the two images
     int width = Math.min(curImage.getWidth(), prevImage.getWidth());
     int height = Math.min(curImage.getHeight(), prevImage.getHeight());
 
-    // loop over the pixels that are shared between the two images recording the overlap between each labeled body and every other body
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        // if both images have a nonzero pixel values
-        if (curImage.get(x, y) > 0 && prevImage.get(x, y) > 0) {
-          overlap.increment(prevImage.get(x, y), curImage.get(x, y));
+    // split the rows into bands no taller than the strip height, each band accumulating its own
+    // overlap counts. with a worker pool there are also enough bands to balance the threads
+    int nbBands = 1;
+    if (params.getStripHeight() > 0) {
+      nbBands = (height + params.getStripHeight() - 1) / params.getStripHeight();
+    }
+    if (workerPool != null) {
+      nbBands = Math.max(nbBands, params.getNumWorkerThreads() * overlapBandsPerThread);
+    }
+    nbBands = Math.max(1, Math.min(height, nbBands));
+
+    // the overlap is computed from the runs of the two images, which are encoded once here
+    RunLengthImage curRuns = curImage.getRunLengthImage();
+    RunLengthImage prevRuns = prevImage.getRunLengthImage();
+
+    // overlap i value is previous frame label, j value is current frame label
+    SparseOverlap overlap;
+    if (nbBands == 1) {
+      overlap = new OverlapBand(curRuns, prevRuns, width, 0, height, prevMaxCellNb,
+          curMaxCellNb).call();
+    } else {
+      List<Future<SparseOverlap>> bands = new ArrayList<Future<SparseOverlap>>();
+      for (int b = 0; b < nbBands; b++) {
+        int yStart = (int) ((long) height * b / nbBands);
+        int yEnd = (int) ((long) height * (b + 1) / nbBands);
+        OverlapBand band = new OverlapBand(curRuns, prevRuns, width, yStart, yEnd,
+            prevMaxCellNb, curMaxCellNb);
+        if (workerPool == null) {
+          FutureTask<SparseOverlap> task = new FutureTask<SparseOverlap>(band);
+          task.run();
+          bands.add(task);
+        } else {
+          bands.add(workerPool.submit(band));
+        }
+      }
+
+      // merge the bands in order
+      overlap = new SparseOverlap(prevMaxCellNb, curMaxCellNb);
+      for (Future<SparseOverlap> f : bands) {
+        SparseOverlap band = getResult(f);
+        for (int i = 1; i <= prevMaxCellNb; i++) {
+          for (int k = band.rowStart(i); k < band.rowEnd(i); k++) {
+            overlap.add(i, band.getColumn(k), band.getCount(k));
+          }
         }
       }
     }
+    // set the overlap matrix in the current frame to this instance of overlap
+    curFrame.setOverlap(overlap);
   }
 
+  /**
+   * Wait for a task submitted to the worker pool and return its result.
+   *
+   * @param f the Future of the submitted task
+   * @return the result of the task
+   */
+  static <T> T getResult(Future<T> f) throws InterruptedException {
+    try {
+      return f.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Worker task failed: " + e.getCause().getMessage(),
+          e.getCause());
+    }
+  }
+
+  /**
+   * Computes the overlap between two ImageTiles over a band of rows, intersecting the runs of the
+   * two images within the band.
+   */
+  private static class OverlapBand implements Callable<SparseOverlap> {
+
+    private final RunLengthImage curRuns;
+    private final RunLengthImage prevRuns;
+    private final int width;
+    private final int yStart;
+    private final int yEnd;
+    private final int prevMaxCellNb;
+    private final int curMaxCellNb;
+
+    OverlapBand(RunLengthImage curRuns, RunLengthImage prevRuns, int width, int yStart, int yEnd,
+                int prevMaxCellNb, int curMaxCellNb) {
+      this.curRuns = curRuns;
+      this.prevRuns = prevRuns;
+      this.width = width;
+      this.yStart = yStart;
+      this.yEnd = yEnd;
+      this.prevMaxCellNb = prevMaxCellNb;
+      this.curMaxCellNb = curMaxCellNb;
+    }
+
+    @Override
+    public SparseOverlap call() {
+      SparseOverlap overlap = new SparseOverlap(prevMaxCellNb, curMaxCellNb);
+      RunLengthImage.addOverlap(prevRuns, curRuns, width, yStart, yEnd, overlap);
+      return overlap;
+    }
+  }
 
   /**
    * Compute the cost between the previous ImageFrame and the current ImageFrame. cost(i,j) =
@@ -288,49 +808,239 @@ public class LineageMapper implements Runnable {
     Log.debug("Computing cost between " + curFrame.getTitle() + " and " + prevFrame.getTitle());
 
     // get a reference to the overlap matrix held within the current ImageFrame
-    Matrix2D overlap = curFrame.getOverlap();
+    SparseOverlap overlap = curFrame.getOverlap();
     // find the max cell number for each ImageTile, this defines the size of the cost matrix
     int curMaxCellNb = overlap.getN();
     int prevMaxCellNb = overlap.getM();
 
-    // create and init the cost matrix
-    Matrix2D cost = new Matrix2D(prevMaxCellNb, curMaxCellNb);
+    // create the cost matrix, pairs that are never assigned a cost read as NaN
+    SparseCostMatrix cost = new SparseCostMatrix(prevMaxCellNb, curMaxCellNb);
     // set the current ImageFrames cost matrix to this instance
     curFrame.setCost(cost);
-    cost.initTo(Double.NaN);
+
+    // lookup of the current cells by image label
+    Cell[] curCells = new Cell[curMaxCellNb + 1];
+    for (Cell cur : curFrame.getCellsList()) {
+      curCells[cur.getImgLabel()] = cur;
+    }
+    // dense copy of one row of the sparse overlap, holding the overlap between the current previous
+    // cell and every cell in the current frame
+    int[] overlapRow = new int[curMaxCellNb + 1];
+    // records which previous cell last evaluated each current cell, to avoid duplicate evaluations
+    int[] visitedBy = new int[curMaxCellNb + 1];
+
+    // spatial index of the current cell centroids, only pairs within the max centroid displacement
+    // or that overlap can be assigned a cost
+    double maxDist = params.getMaxCentroidsDist();
+    CentroidIndex curIndex = curFrame.getCentroidIndex(maxDist);
 
     // loop over the cells in the previous frame
     for (Cell prev : prevFrame.getCellsList()) {
       int i = prev.getImgLabel();
-      // loop over the cells in the current frame
-      for (Cell cur : curFrame.getCellsList()) {
-        // get the labels for the previous and current cell
+      // scatter the overlapping pairs of this previous cell into the dense row
+      for (int k = overlap.rowStart(i); k < overlap.rowEnd(i); k++) {
+        overlapRow[overlap.getColumn(k)] = overlap.getCount(k);
+      }
+
+      // evaluate the current cells that overlap this previous cell
+      for (int k = overlap.rowStart(i); k < overlap.rowEnd(i); k++) {
+        int j = overlap.getColumn(k);
+        if (curCells[j] != null && visitedBy[j] != i) {
+          visitedBy[j] = i;
+          cost.set(i, j, computePairCost(prev, curCells[j], overlapRow[j]));
+        }
+      }
+      // evaluate the current cells whose centroids are near this previous cell
+      for (Cell cur : curIndex.getCellsNear(prev.getCentroidX(), prev.getCentroidY(), maxDist)) {
         int j = cur.getImgLabel();
+        if (visitedBy[j] != i) {
+          visitedBy[j] = i;
+          cost.set(i, j, computePairCost(prev, cur, overlapRow[j]));
+        }
+      }
+
+      // reset the dense row for the next previous cell
+      for (int k = overlap.rowStart(i); k < overlap.rowEnd(i); k++) {
+        overlapRow[overlap.getColumn(k)] = 0;
+      }
+    }
+  }
+
+  /**
+   * Update the overlap and cost between the previous ImageFrame and the current ImageFrame after
+   * the pixels of the current ImageFrame have been edited. Only the columns of the cells whose
+   * pixels changed are recomputed, the remaining columns are carried over under their new labels.
+   * The result is identical to calling computeOverlap and computeCost. If the edits were not fully
+   * captured by the DirtyRegion snapshot the overlap and cost are recomputed over the full frame.
+   *
+   * @param curFrame  the ImageFrame whose pixels have been edited
+   * @param prevFrame the ImageFrame of the previous time slice in the cell tracking
+   * @param dirty     the record of the edits made to the pixels of curFrame
+   */
+  private void updateOverlapAndCost(final ImageFrame curFrame, final ImageFrame prevFrame,
+                                    final DirtyRegion dirty) throws InterruptedException {
+
+    SparseOverlap oldOverlap = curFrame.getOverlap();
+    SparseCostMatrix oldCost = curFrame.getCost();
+    int curMaxCellNb = curFrame.getMaxCellImgLabelNumber();
+    int prevMaxCellNb = oldOverlap.getM();
+
+    // check that every old label maps onto a valid new label
+    boolean patchable = dirty.isBoxWithinSnapshot();
+    for (int c = 1; c <= oldOverlap.getN() && patchable; c++) {
+      patchable = dirty.mapLabel(c) <= curMaxCellNb;
+    }
+    if (!patchable) {
+      Log.debug("Edits not captured by the dirty region, recomputing overlap and cost");
+      computeOverlap(curFrame, prevFrame);
+      computeCost(curFrame, prevFrame);
+      return;
+    }
+
+    Log.debug("Updating overlap and cost between " + curFrame.getTitle() + " and " + prevFrame
+        .getTitle() + " using " + dirty);
+
+    // the columns whose cells changed shape and need their costs recomputed
+    BitSet touched = (BitSet) dirty.getTouchedLabels().clone();
+
+    // any new label that more than one old label was merged into has changed shape
+    int[] nbMerged = new int[curMaxCellNb + 1];
+    for (int c = 1; c <= oldOverlap.getN(); c++) {
+      int l = dirty.mapLabel(c);
+      if (l > 0 && ++nbMerged[l] > 1) {
+        touched.set(l);
+      }
+    }
+
+    // carry the old overlap over to the new labels
+    SparseOverlap overlap = new SparseOverlap(prevMaxCellNb, curMaxCellNb);
+    for (int i = 1; i <= prevMaxCellNb; i++) {
+      for (int k = oldOverlap.rowStart(i); k < oldOverlap.rowEnd(i); k++) {
+        int l = dirty.mapLabel(oldOverlap.getColumn(k));
+        if (l > 0) {
+          overlap.add(i, l, oldOverlap.getCount(k));
+        }
+      }
+    }
+
+    // apply the change of the individually edited pixels
+    if (dirty.hasSnapshot() && dirty.hasBox()) {
+      ImageTile curImage = curFrame.getImage();
+      ImageTile prevImage = prevFrame.getImage();
+      int width = Math.min(curImage.getWidth(), prevImage.getWidth());
+      int height = Math.min(curImage.getHeight(), prevImage.getHeight());
+
+      int[] snapshot = dirty.getSnapshot();
+      int k = 0;
+      for (int y = dirty.getSnapshotYMin(); y <= dirty.getSnapshotYMax(); y++) {
+        for (int x = dirty.getSnapshotXMin(); x <= dirty.getSnapshotXMax(); x++, k++) {
+          int oldLabel = (snapshot[k] > 0) ? dirty.mapLabel(snapshot[k]) : 0;
+          int newLabel = curImage.get(x, y);
+          if (oldLabel == newLabel) {
+            continue;
+          }
+          if (oldLabel > 0) {
+            touched.set(oldLabel);
+          }
+          if (newLabel > 0) {
+            touched.set(newLabel);
+          }
+          // overlap is only computed over the area shared by both images
+          if (x < width && y < height) {
+            int prevLabel = prevImage.get(x, y);
+            if (prevLabel > 0) {
+              if (oldLabel > 0) {
+                overlap.add(prevLabel, oldLabel, -1);
+              }
+              if (newLabel > 0) {
+                overlap.increment(prevLabel, newLabel);
+              }
+            }
+          }
+        }
+      }
+    }
+    curFrame.setOverlap(overlap);
 
-        // delta x between the two centroids
-        double deltax = prev.getCentroidX() - cur.getCentroidX();
-        // delta y between the two centroids
-        double deltay = prev.getCentroidY() - cur.getCentroidY();
-        // the euclidean distance between the two centroids
-        double deltaCentroid = Math.sqrt(deltax * deltax + deltay * deltay);
-
-        // create the overlap term for the current pair of cells
-        double overlapTerm =
-            1 - (overlap.get(i, j) / (2 * prev.getArea()) + overlap.get(i, j) / (2 * cur
-                .getArea()));
-        // if the two cells overlap, or if they are within the max centroid displacement then assign the two cells a cost
-        if (overlapTerm != 1 || deltaCentroid <= params.getMaxCentroidsDist()) {
-          deltaCentroid = Math.min(deltaCentroid, params.getMaxCentroidsDist());
-          double centroidTerm = deltaCentroid / params.getMaxCentroidsDist();
-          double sizeTerm =
-              Math.abs(prev.getArea() - cur.getArea()) / (Math.max(prev.getArea(), cur.getArea()));
-          cost.set(i, j, overlapTerm * params.getWeightCellOverlap() + centroidTerm *
-              params.getWeightCentroids() + sizeTerm * params.getWeightCellSize());
+    // carry the old cost of the unchanged cells over to their new labels
+    SparseCostMatrix cost = new SparseCostMatrix(prevMaxCellNb, curMaxCellNb);
+    curFrame.setCost(cost);
+    for (int i = 1; i <= oldCost.getM(); i++) {
+      for (int k = oldCost.rowStart(i); k < oldCost.rowEnd(i); k++) {
+        int l = dirty.mapLabel(oldCost.getColumn(k));
+        if (l > 0 && !touched.get(l)) {
+          cost.set(i, l, oldCost.getRowValue(k));
+        }
+      }
+    }
+
+    // lookup of the cells by image label
+    Cell[] prevCells = new Cell[prevMaxCellNb + 1];
+    for (Cell prev : prevFrame.getCellsList()) {
+      prevCells[prev.getImgLabel()] = prev;
+    }
+    Cell[] curCells = new Cell[curMaxCellNb + 1];
+    for (Cell cur : curFrame.getCellsList()) {
+      curCells[cur.getImgLabel()] = cur;
+    }
+
+    // recompute the cost of the changed cells, first for the pairs that overlap
+    for (int i = 1; i <= prevMaxCellNb; i++) {
+      for (int k = overlap.rowStart(i); k < overlap.rowEnd(i); k++) {
+        int j = overlap.getColumn(k);
+        if (touched.get(j) && prevCells[i] != null && curCells[j] != null) {
+          cost.set(i, j, computePairCost(prevCells[i], curCells[j], overlap.getCount(k)));
+        }
+      }
+    }
+    // then for the pairs that are within the max centroid displacement but do not overlap
+    double maxDist = params.getMaxCentroidsDist();
+    CentroidIndex prevIndex = prevFrame.getCentroidIndex(maxDist);
+    for (int j = touched.nextSetBit(1); j >= 1 && j <= curMaxCellNb; j = touched.nextSetBit(j + 1)) {
+      Cell cur = curCells[j];
+      if (cur == null) {
+        continue;
+      }
+      for (Cell prev : prevIndex.getCellsNear(cur.getCentroidX(), cur.getCentroidY(), maxDist)) {
+        if (overlap.get(prev.getImgLabel(), j) <= 0) {
+          cost.set(prev.getImgLabel(), j, computePairCost(prev, cur, 0));
         }
       }
     }
   }
 
+  /**
+   * Compute the cost of tracking a single previous cell onto a single current cell.
+   *
+   * @param prev         the cell in the previous frame
+   * @param cur          the cell in the current frame
+   * @param overlapCount the number of pixels shared by the two cells
+   * @return the cost of the pair, or NaN if the cells neither overlap nor lie within the max
+   * centroid displacement of each other
+   */
+  private double computePairCost(Cell prev, Cell cur, int overlapCount) {
+    // delta x between the two centroids
+    double deltax = prev.getCentroidX() - cur.getCentroidX();
+    // delta y between the two centroids
+    double deltay = prev.getCentroidY() - cur.getCentroidY();
+    // the euclidean distance between the two centroids
+    double deltaCentroid = Math.sqrt(deltax * deltax + deltay * deltay);
+
+    // create the overlap term for the current pair of cells
+    double overlapTerm =
+        1 - (overlapCount / (2 * prev.getArea()) + overlapCount / (2 * cur.getArea()));
+    // if the two cells overlap, or if they are within the max centroid displacement then assign the two cells a cost
+    if (overlapTerm != 1 || deltaCentroid <= params.getMaxCentroidsDist()) {
+      deltaCentroid = Math.min(deltaCentroid, params.getMaxCentroidsDist());
+      double centroidTerm = deltaCentroid / params.getMaxCentroidsDist();
+      double sizeTerm =
+          Math.abs(prev.getArea() - cur.getArea()) / (Math.max(prev.getArea(), cur.getArea()));
+      return overlapTerm * params.getWeightCellOverlap() + centroidTerm *
+          params.getWeightCentroids() + sizeTerm * params.getWeightCellSize();
+    }
+    return Double.NaN;
+  }
+
   /**
    * Computes the row wise minimum of cost to track cells in prevFrame to cells in curFrame
    *
@@ -344,7 +1054,7 @@ public class LineageMapper implements Runnable {
     Log.debug("Generating initial track vector");
 
     // get a reference to the cost matrix
-    Matrix2D cost = curFrame.getCost();
+    SparseCostMatrix cost = curFrame.getCost();
 
     // create the matrices to hold the resulting index and value data after cost has been minimized row wise
     Matrix2D trackVector = new Matrix2D(cost.getM(), 1);
@@ -374,11 +1084,13 @@ public class LineageMapper implements Runnable {
    * @param curFrame  the current frame at time (t) in the tracking sequence
    * @param prevFrame the previous frame at time (t-1) in the tracking sequence
    * @param frameNb   the frame number of the current ImageFrame in the tracking sequence
+   * @param dirty     records the labels renumbered if division is disabled
    * @return whether overlap and cost need to be recomputed because changes were made to the pixels
    * of the ImageFrame
    */
   private boolean checkDivision(ImageFrame curFrame, final ImageFrame prevFrame,
-                                final int frameNb) {
+                                final int frameNb, DirtyRegion dirty)
+      throws InterruptedException {
 
     Log.debug(
         "Check division between " + curFrame.getTitle() + " and " + prevFrame.getTitle());
@@ -392,8 +1104,8 @@ public class LineageMapper implements Runnable {
     division.initTo(0);
 
     // get a reference to the overlap, cost, and trackVector from the current ImageFrame
-    Matrix2D overlap = curFrame.getOverlap();
-    Matrix2D cost = curFrame.getCost();
+    SparseOverlap overlap = curFrame.getOverlap();
+    SparseCostMatrix cost = curFrame.getCost();
     Matrix2D trackVector = curFrame.getTrackVector();
 
     // flag controls whether overlap and cost need to be recomputed because of any alterations of the pixel values of the underlying ImageTile
@@ -557,8 +1269,11 @@ public class LineageMapper implements Runnable {
         int motherCellGlobalLabel = motherCell.getGlobalLabel();
         // for the mother cell loop over the last n frames in time
         for (int i = frameNb - 1; i >= end; i--) {
-          // get the cell in the given time frame using the mother cells global label
-          Cell c = framesList.get(i).getCellByGlobalLabel(motherCellGlobalLabel);
+          // get the cell in the given time frame using the mother cells global label, a temporal
+          // shard holds no frames before the first one it tracked
+          ImageFrame pastFrame = framesList.get(i);
+          Cell c = (pastFrame == null) ? null
+              : pastFrame.getCellByGlobalLabel(motherCellGlobalLabel);
           // if the cell still exists in this frame
           if (c == null) {
             break; // the cell no longer exists as the iterator walks back through time
@@ -689,7 +1404,8 @@ public class LineageMapper implements Runnable {
       }
 
       // create the pixel renumbering vector
-      short[] rn = new short[curFrame.getMaxCellImgLabelNumber() + 1];
+      int[] rn = new int[curFrame.getMaxCellImgLabelNumber() + 1];
+      int[] labelMap = new int[rn.length];
       for (int i = 0; i < rn.length; i++) {
         rn[i] = 0;
       }
@@ -698,19 +1414,16 @@ public class LineageMapper implements Runnable {
         // update the Cell object labelings
         c.setGlobalLabel((int) renum.get(c.getImgLabel(), 1));
         // update the renumber pixel vector
-        rn[c.getImgLabel()] = (short) c.getGlobalLabel();
+        rn[c.getImgLabel()] = c.getGlobalLabel();
+        labelMap[c.getImgLabel()] = c.getGlobalLabel();
       }
+      // record the renumbering so overlap and cost can be updated
+      dirty.addLabelMap(labelMap);
 
-      // get the pixeldata from the ImageTile
-      short[] px = curFrame.getImage().getPixelData();
-      // renumber the pixels
-      for (int i = 0; i < px.length; i++) {
-        if (px[i] > 0) {
-          px[i] = rn[px[i]];
-        }
-      }
+      // renumber the pixels of the ImageTile
+      curFrame.getImage().relabel(rn);
       // update the gov.nist.isg.lineage.mapper.metadata about the image now that pixel data has changed
-      curFrame.processImage();
+      curFrame.processImage(workerPool);
       // if the aspect ratio had been generated, recompute it now that pixel data has changed
       if (curFrame.isAspectRatioGenerated()) {
         curFrame.computeAspectRatio();
@@ -733,10 +1446,12 @@ public class LineageMapper implements Runnable {
    *
    * @param curFrame  the current frame at time (t) in the tracking sequence
    * @param prevFrame the previous frame at time (t-1) in the tracking sequence
+   * @param dirty     records the pixels and labels edited while cutting fused cells apart
    * @return whether overlap and cost need to be recomputed because changes were made to the pixels
    * of the ImageFrame
    */
-  private boolean checkFusion(ImageFrame curFrame, final ImageFrame prevFrame) {
+  private boolean checkFusion(ImageFrame curFrame, final ImageFrame prevFrame,
+                              DirtyRegion dirty) throws InterruptedException {
 
     Log.debug(
         "Check fusion between " + curFrame.getTitle() + " and " + prevFrame.getTitle());
@@ -744,8 +1459,8 @@ public class LineageMapper implements Runnable {
     boolean recomputeRequired = false;
 
     // create the new fusion matrix
-    Matrix2D fusion =
-        new Matrix2D(prevFrame.getMaxCellImgLabelNumber(), curFrame.getMaxCellImgLabelNumber());
+    SparseFusion fusion =
+        new SparseFusion(prevFrame.getMaxCellImgLabelNumber(), curFrame.getMaxCellImgLabelNumber());
     // set the current ImageFrame's fusion matrix to this instance
     curFrame.setFusion(fusion);
 
@@ -775,22 +1490,34 @@ public class LineageMapper implements Runnable {
     // the remaining pixels are labeled according to the closest cell and most dominant neighbor if contested
     int[][] cellBoundingBoxes = curFrame.computeBoundingBox();
 
-    // for every fusion case, loop over the bounding box cutting the cell apart
+    // find the fused cells and the region they cover
+    List<Integer> fusedCells = new ArrayList<Integer>();
+    int xMinAll = Integer.MAX_VALUE;
+    int xMaxAll = Integer.MIN_VALUE;
+    int yMinAll = Integer.MAX_VALUE;
+    int yMaxAll = Integer.MIN_VALUE;
     for (int j = 1; j <= fusion.getN(); j++) {
-      int nbFound = 0;
-      for (int i = 1; i <= fusion.getM(); i++) {
-        if (fusion.get(i, j) > 0) {
-          nbFound++;
-        }
+      if (fusion.colEnd(j) - fusion.colStart(j) >= 2) {
+        fusedCells.add(j);
+        xMinAll = Math.min(xMinAll, cellBoundingBoxes[j - 1][0]);
+        xMaxAll = Math.max(xMaxAll, cellBoundingBoxes[j - 1][1]);
+        yMinAll = Math.min(yMinAll, cellBoundingBoxes[j - 1][2]);
+        yMaxAll = Math.max(yMaxAll, cellBoundingBoxes[j - 1][3]);
       }
-      if (nbFound >= 2) {
-        int xMin = cellBoundingBoxes[j - 1][0];
-        int xMax = cellBoundingBoxes[j - 1][1];
-        int yMin = cellBoundingBoxes[j - 1][2];
-        int yMax = cellBoundingBoxes[j - 1][3];
+    }
+    // snapshot the region before it is edited, the 1 pixel border covers the connectivity check
+    if (!fusedCells.isEmpty()) {
+      dirty.snapshot(curFrame.getImage(), xMinAll - 1, xMaxAll + 1, yMinAll - 1, yMaxAll + 1);
+    }
 
-        cutFusedCell(curFrame, prevFrame, j, xMin, xMax, yMin, yMax);
-      }
+    // for every fusion case, loop over the bounding box cutting the cell apart
+    for (Integer j : fusedCells) {
+      int xMin = cellBoundingBoxes[j - 1][0];
+      int xMax = cellBoundingBoxes[j - 1][1];
+      int yMin = cellBoundingBoxes[j - 1][2];
+      int yMax = cellBoundingBoxes[j - 1][3];
+
+      cutFusedCell(curFrame, prevFrame, j, xMin, xMax, yMin, yMax, dirty);
     }
 
 
@@ -803,19 +1530,16 @@ public class LineageMapper implements Runnable {
     // - Third, if we find multiple bodies, we check the size of each and we keep the biggest one as cell k and we
     // renumber the rest of the bodies region according to their most dominant neighbor number.
 
-    List<Double> cellsToCheckConnectivity = Matrix2D.unique(fusion);
-    if (cellsToCheckConnectivity.get(0) == 0) {
-      cellsToCheckConnectivity.remove(0);
-    }
+    List<Double> cellsToCheckConnectivity = fusion.getLabels();
 
     // ensure that each label has one and only one connected body
-    checkObjectBodyConnectivity(curFrame, cellsToCheckConnectivity);
+    checkObjectBodyConnectivity(curFrame, cellsToCheckConnectivity, dirty);
 
     // delete the cells below the size threshold after being cut
-    enforceMinObjectSize(curFrame);
+    enforceMinObjectSize(curFrame, dirty);
 
     // update the gov.nist.isg.lineage.mapper.metadata about the image now that pixel data has changed
-    curFrame.processImage();
+    curFrame.processImage(workerPool);
     // if the aspect ratio had been generated, recompute it now that pixel data has changed
     if (curFrame.isAspectRatioGenerated()) {
       curFrame.computeAspectRatio();
@@ -828,8 +1552,8 @@ public class LineageMapper implements Runnable {
   /**
    * This function populates the fusion matrix. Fusion matrix is a mxn matrix where m is the number
    * of cells in the previous frame and n is the number of cells in the current frame. fusion(i,j)
-   * is 1 if those two cells i and j overlap. A fusion event is a column that has more than 1 non
-   * zero element
+   * is 1 if cell i is tracked to cell j and j is the target of more than one source cell. A fusion
+   * event is a column that has more than 1 non zero element
    *
    * @param curFrame  the current frame at time (t) in the tracking sequence
    * @param prevFrame the previous frame at time (t-1) in the tracking sequence
@@ -838,57 +1562,48 @@ public class LineageMapper implements Runnable {
   private boolean populateFrameFusion(ImageFrame curFrame, final ImageFrame prevFrame) {
 
     // get references to the required data from the current frame
-    Matrix2D overlap = curFrame.getOverlap();
+    SparseOverlap overlap = curFrame.getOverlap();
     Matrix2D trackVector = curFrame.getTrackVector();
-    Matrix2D fusion = curFrame.getFusion();
-    fusion.initTo(0);
+    SparseFusion fusion = curFrame.getFusion();
 
-    // check to see if any target has been tracked to more than one source cell, if yes then check to see if this is a fusion case
+    // S contains the number of source cells tracked to each target cell
+    int[] S = new int[fusion.getN() + 1];
     for (int i = 1; i <= overlap.getM(); i++) {
       // if the track vector cost is NaN the cell is dead
       if (!Double.isNaN(trackVector.get(i, 1)) && trackVector.get(i, 1) > 0) {
-        // change the corresponding element between source cell i and its target cell in fusion matrix
-        fusion.set(i, trackVector.get(i, 1), 1);
+        S[(int) trackVector.get(i, 1)]++;
       }
     }
 
-    // S contains the column wise sum of frame fusion
-    Matrix2D S = fusion.sumVertical();
-
-    // look for fusion candidates
+    // look for fusion candidates, only the targets of more than one source cell are kept
     for (int i = 1; i <= overlap.getM(); i++) {
       if (Double.isNaN(trackVector.get(i, 1)) || trackVector.get(i, 1) == 0) {
         continue;  // if the cell is dead
       }
 
-      if (S.get(1, (int) trackVector.get(i, 1)) < 2) {
-        // cell i does not belong to any fusion region, reset the element between i and its target cell to 0
-        fusion.set(i, trackVector.get(i, 1), 0);
+      int target = (int) trackVector.get(i, 1);
+      if (S[target] < 2) {
+        // cell i does not belong to any fusion region
         continue;
       }
 
       // if cell i belongs to a fused region and does not meet the fusion threshold, delete the track trackVector.disp();
-      double val = overlap.get(i, trackVector.get(i, 1)) / prevFrame.getCellByImgLabel(i).getArea();
+      double val = overlap.get(i, target) / prevFrame.getCellByImgLabel(i).getArea();
       if (val < params.getFusionOverlapThreshold()) {
-        fusion.set(i, trackVector.get(i, 1), 0);
         trackVector.set(i, 1, Double.NaN);
+        continue;
       }
+      // change the corresponding element between source cell i and its target cell in fusion matrix
+      fusion.set(i, target, 1);
     }
 
     // look for any fusion cases while cleaning up the fusion matrix
     boolean fusionFound = false;
     // clean frame fusion removing any values that are the only nonzero value in a column
     for (int j = 1; j <= fusion.getN(); j++) {
-      int nbFound = 0;
-      for (int i = 1; i <= fusion.getM(); i++) {
-        if (fusion.get(i, j) > 0) {
-          nbFound++;
-        }
-      }
+      int nbFound = fusion.colEnd(j) - fusion.colStart(j);
       if (nbFound == 1) {
-        for (int i = 1; i <= fusion.getM(); i++) {
-          fusion.set(i, j, 0);
-        }
+        fusion.clearColumn(j);
       }
       if (nbFound >= 2) {
         fusionFound = true;
@@ -906,25 +1621,23 @@ public class LineageMapper implements Runnable {
    * @param trackVector   the vector tracking cells in the previous frame to the current frame
    * @param highestCellNb the highest cell label number used thus far
    */
-  private void relabelFrameFusionWithCellNumbers(Matrix2D fusion, Matrix2D trackVector,
+  private void relabelFrameFusionWithCellNumbers(SparseFusion fusion, Matrix2D trackVector,
                                                  final int highestCellNb) {
     int newCellNb = highestCellNb;
 
-    Matrix2D S = fusion.sumVertical();
     // Affect new numbers to use when decomposing the fusion target cell regions. This is done by using the
     // frame_fusion matrix as explained in the beginning of the function.
-    for (int j = 1; j <= S.getN(); j++) {
+    for (int j = 1; j <= fusion.getN(); j++) {
+      int start = fusion.colStart(j);
+      int end = fusion.colEnd(j);
       // if this is a fused cell
-      if (S.get(1, j) >= 2) {
+      if (end - start >= 2) {
         // indicator that tells us the first time we encounter a source cell that form the fused target cell j this
         // cell will have the same number as j
         boolean firstOccurrence = true;
-        // Scout all the lines searching for the cells that form target cell j and affect them with new numbers
-        for (int i = 1; i <= fusion.getM(); i++) {
-          // if object i does not belong to object j: continue
-          if (fusion.get(i, j) == 0) {
-            continue;
-          }
+        // Scout the source cells that form target cell j and affect them with new numbers
+        for (int k = start; k < end; k++) {
+          int i = fusion.getRow(k);
 
           // if fusion is disabled, delete all tracked source cells so they die and the fused cell gets a different number
           if (params.isEnableCellFusion()) {
@@ -966,16 +1679,35 @@ public class LineageMapper implements Runnable {
    * @param xMaxG       the x maximum from the cells bounding box
    * @param yMinG       the y minimum from the cells bounding box
    * @param yMaxG       the y maximum from the cells bounding box
+   * @param dirty       records the pixels and labels edited by the cut
    */
   private void cutFusedCell(ImageFrame curFrame, final ImageFrame prevFrame, final int fusedCellNb,
-                            final int xMinG, final int xMaxG, final int yMinG, final int yMaxG) {
+                            final int xMinG, final int xMaxG, final int yMinG, final int yMaxG,
+                            DirtyRegion dirty) {
 
     Log.debug("Cutting Cell " + fusedCellNb + " apart due to disallowed fusion");
     // get a reference to the fusion matrix from the current frame
-    Matrix2D fusion = curFrame.getFusion();
+    SparseFusion fusion = curFrame.getFusion();
+
+    // the source cells that fused into the cell, in increasing label order, and their new labels
+    int start = fusion.colStart(fusedCellNb);
+    int[] sources = new int[fusion.colEnd(fusedCellNb) - start];
+    int[] sourceLabels = new int[sources.length];
+    for (int k = 0; k < sources.length; k++) {
+      sources[k] = fusion.getRow(start + k);
+      sourceLabels[k] = fusion.getValue(start + k);
+    }
 
-    // this is a vector number cells in previous frame long
-    Matrix2D neighbors = new Matrix2D(fusion.getM(), 1);
+    // the cut only edits pixels of the fused cell within its bounding box, giving them the labels
+    // held in the fused cell's column of fusion
+    dirty.addBox(xMinG, xMaxG, yMinG, yMaxG);
+    dirty.addTouchedLabel(fusedCellNb);
+    for (int k = 0; k < sourceLabels.length; k++) {
+      dirty.addTouchedLabel(sourceLabels[k]);
+    }
+
+    // the number of neighboring pixels of each source cell
+    int[] neighbors = new int[sources.length];
 
     // get references to the two ImageTiles
     ImageTile curImage = curFrame.getImage();
@@ -989,23 +1721,24 @@ public class LineageMapper implements Runnable {
     for (int x = xMinG; x <= xMaxG; x++) {
       for (int y = yMinG; y <= yMaxG; y++) {
         // get the pixel in the current image
-        short pix2 = curImage.get(x, y);
+        int pix2 = curImage.get(x, y);
         // if this is not a background pixel and it belongs to the fused cell
         if (pix2 > 0 && pix2 == fusedCellNb) {
 
           // get the pixel in the same location as pix2 from the previous image
-          short pix1 = 0;
+          int pix1 = 0;
           if(x >= 0 && x < width && y >= 0 && y < height)
             pix1 = prevImage.get(x, y);
           // if the previous image pixel is not background and it belongs to a cell that fused into the cell in the current frame
-          if (pix1 > 0 && fusion.get(pix1, pix2) > 0) {
+          int k1 = (pix1 > 0) ? Arrays.binarySearch(sources, pix1) : -1;
+          if (k1 >= 0) {
             // the pixel in current image overlaps the pixel in the previous image involved in the fusion,
             // so simply assign the current image the pixel value that represents the same cell from the previous image
-            curImage.set(x, y, (short) Math.round(fusion.get(pix1, pix2)));
+            curImage.set(x, y, sourceLabels[k1]);
           } else {
             // the pixel did not overlap a cell in the previous image
             // find the closest, dominant neighbor
-            neighbors.initTo(0);
+            Arrays.fill(neighbors, 0);
             // this controls the search for pixels
             boolean foundNeighbors = false;
             // this is the distance from the current pixel that we are looking for a pixel in the previous frame
@@ -1026,14 +1759,16 @@ public class LineageMapper implements Runnable {
               // loop over the mini box around the current pixel looking for a label to assign it
               for (int k = yMin; k <= yMax; k++) {
                 pix1 = prevImage.get(xMin, k);
-                if (pix1 > 0 && fusion.get(pix1, pix2) > 0) {
+                k1 = (pix1 > 0) ? Arrays.binarySearch(sources, pix1) : -1;
+                if (k1 >= 0) {
                   foundNeighbors = true;
-                  neighbors.increment(pix1, 1);
+                  neighbors[k1]++;
                 }
                 pix1 = prevImage.get(xMax, k);
-                if (pix1 > 0 && fusion.get(pix1, pix2) > 0) {
+                k1 = (pix1 > 0) ? Arrays.binarySearch(sources, pix1) : -1;
+                if (k1 >= 0) {
                   foundNeighbors = true;
-                  neighbors.increment(pix1, 1);
+                  neighbors[k1]++;
                 }
               }
               for (int k = xMin; k <= xMax; k++) {
@@ -1043,29 +1778,29 @@ public class LineageMapper implements Runnable {
 
                 pix1 = prevImage.get(k, yMin);
 
-                if (pix1 > 0 && fusion.get(pix1, pix2) > 0) {
+                k1 = (pix1 > 0) ? Arrays.binarySearch(sources, pix1) : -1;
+                if (k1 >= 0) {
                   foundNeighbors = true;
-                  neighbors.increment(pix1, 1);
+                  neighbors[k1]++;
                 }
                 pix1 = prevImage.get(k, yMax);
-                if (pix1 > 0 && fusion.get(pix1, pix2) > 0) {
+                k1 = (pix1 > 0) ? Arrays.binarySearch(sources, pix1) : -1;
+                if (k1 >= 0) {
                   foundNeighbors = true;
-                  neighbors.increment(pix1, 1);
+                  neighbors[k1]++;
                 }
               }
               pixelDist++;
             }
             // find the dominant neighbor
-            int neighborNb = 1;
-            double maxVal = neighbors.get(1, 1);
-            for (int k = 2; k <= neighbors.getM(); k++) {
-              if (neighbors.get(k, 1) > maxVal) {
-                maxVal = neighbors.get(k, 1);
+            int neighborNb = 0;
+            for (int k = 1; k < neighbors.length; k++) {
+              if (neighbors[k] > neighbors[neighborNb]) {
                 neighborNb = k;
               }
             }
             // write the dominant neighbor to the image
-            curImage.set(x, y, (short) Math.round(fusion.get(neighborNb, pix2)));
+            curImage.set(x, y, sourceLabels[neighborNb]);
           }
         }
       }
@@ -1081,9 +1816,11 @@ public class LineageMapper implements Runnable {
    * @param curFrame                 the ImageFrame to check the connectivity of
    * @param cellsToCheckConnectivity the list of cells that are going to be checked to ensure they
    *                                 have a single connected body
+   * @param dirty                    records the pixels and labels edited
    */
   private void checkObjectBodyConnectivity(ImageFrame curFrame,
-                                           List<Double> cellsToCheckConnectivity) {
+                                           List<Double> cellsToCheckConnectivity,
+                                           DirtyRegion dirty) {
 
     // return if there are no cells to check
     if (cellsToCheckConnectivity.size() == 0) {
@@ -1116,7 +1853,7 @@ public class LineageMapper implements Runnable {
       int yMax = cellBoundingBoxes[cellNb - 1][3] + 1;
 
       // make a sub image of just the current cell
-      short[] subPixeldata = curImage.getSubImagePixelData(xMin, xMax, yMin, yMax);
+      int[] subPixeldata = curImage.getSubImagePixelData(xMin, xMax, yMin, yMax);
       for (int i = 0; i < subPixeldata.length; i++) {
         // make binary by setting all the wrong cell pixel to zero
         // "true" pixels have cellNb as a value
@@ -1150,7 +1887,7 @@ public class LineageMapper implements Runnable {
         // Create the matrix body_neighbors that holds all the numbers of the neighbors of each body
         int[][] bodyNeighbors = new int[highestObjectNb][nbObjFound];
         // extract subimage from ImageTile without making it binary
-        short[] labelPixeldata = curImage.getSubImagePixelData(xMin, xMax, yMin, yMax);
+        int[] labelPixeldata = curImage.getSubImagePixelData(xMin, xMax, yMin, yMax);
         for (int y = 1; y < subHeight - 1; y++) {
           int k = y * subWidth;
           int endindx = k + subWidth - 1;
@@ -1181,7 +1918,7 @@ public class LineageMapper implements Runnable {
           }
         }
         // Find the dominant neighbor of each body
-        short[] renum = new short[nbObjFound + 1];
+        int[] renum = new int[nbObjFound + 1];
         renum[0] = 0;
         for (int objNb = 1; objNb <= nbObjFound; objNb++) {
           int winner = 0;
@@ -1192,9 +1929,15 @@ public class LineageMapper implements Runnable {
               winner = neighbor;
             }
           }
-          renum[objNb] = (short) winner;
+          renum[objNb] = winner;
+        }
+        renum[winnerBody] = cellNb;
+
+        // record the edited region and the labels given the stray bodies
+        dirty.addBox(xMin, xMax, yMin, yMax);
+        for (int objNb = 0; objNb <= nbObjFound; objNb++) {
+          dirty.addTouchedLabel(renum[objNb]);
         }
-        renum[winnerBody] = (short) cellNb;
 
         // update the pixels in labelPixeldata
         for (int i = 0; i < labelPixeldata.length; i++) {
@@ -1214,14 +1957,15 @@ public class LineageMapper implements Runnable {
    * This will delete any cells that have a size lower than the minimum cell size threshold.
    *
    * @param curFrame the ImageFrame to enforce the minimum cell size on
+   * @param dirty    records the renumbering and the region of the deleted pixels
    * @return boolean flag indicating whether any objects were deleted
    */
-  private boolean enforceMinObjectSize(ImageFrame curFrame) {
+  private boolean enforceMinObjectSize(ImageFrame curFrame, DirtyRegion dirty) {
 
     Log.debug("Removing cells below " + params.getCellSizeThreshold() + " pixels in area");
 
     // get references to trackVector, fusion, and the ImageTile within the current ImageFrame
-    Matrix2D fusion = curFrame.getFusion();
+    SparseFusion fusion = curFrame.getFusion();
     Matrix2D trackVector = curFrame.getTrackVector();
     ImageTile curImage = curFrame.getImage();
     // get the sizes of the objects within the ImageTile
@@ -1229,10 +1973,7 @@ public class LineageMapper implements Runnable {
     int maxObjNb = objSizes.length - 1;
 
     // find the labels of the cells involved in fusion events
-    List<Double> cellsInFusion = Matrix2D.unique(fusion);
-    if (cellsInFusion.get(0) == 0) {
-      cellsInFusion.remove(0);
-    }
+    List<Double> cellsInFusion = fusion.getLabels();
 
     // find the objects that are too small
     boolean[] invalidObjects = new boolean[maxObjNb + 1];
@@ -1263,9 +2004,9 @@ public class LineageMapper implements Runnable {
     // There are objects in curFrame that are below the minSizeThreshold that need to be deleted and have their pixels reassigned
 
     // create a renum vector to make the output labels sequential
-    short[] renum = new short[maxObjNb + 1];
+    int[] renum = new int[maxObjNb + 1];
     renum[0] = 0;
-    short newLabel = 1;
+    int newLabel = 1;
     for (int i = 1; i <= maxObjNb; i++) {
       // if this object is invalid, assign it a new label of 0 (background)
       if (invalidObjects[i]) {
@@ -1290,37 +2031,26 @@ public class LineageMapper implements Runnable {
       // if source cell is tracked to a target cell below the size threshold, delete the track
       if (invalidObjects[(int) trackVector.get(i, 1)]) {
         trackVector.set(i, 1, Double.NaN);
-        // loop over the row in fusion and set all values to 0
-        for (int j = 1; j <= fusion.getN(); j++) {
-          fusion.set(i, j, 0);
-        }
+        // set all values of the row in fusion to 0
+        fusion.clearRow(i);
         continue;
       }
 
       // update the trackVector to show the new numbering
-      trackVector.set(i, 1, (int) renum[(int) trackVector.get(i, 1)]);
+      trackVector.set(i, 1, renum[(int) trackVector.get(i, 1)]);
     }
 
     // remove any values from fusion that are a single element in the column
     for (int j = 1; j <= fusion.getN(); j++) {
-      int nbFound = 0;
-      for (int i = 1; i <= fusion.getM(); i++) {
-        if (fusion.get(i, j) > 0) {
-          nbFound++;
-        }
-      }
-      if (nbFound == 1) {
-        for (int i = 1; i <= fusion.getM(); i++) {
-          fusion.set(i, j, 0);
-        }
+      if (fusion.colEnd(j) - fusion.colStart(j) == 1) {
+        fusion.clearColumn(j);
       }
     }
     // renumber fusion
-    for (int i = 1; i <= fusion.getM(); i++) {
-      for (int j = 1; j <= fusion.getN(); j++) {
-        if (fusion.get(i, j) > 0) {
-          fusion.set(i, j, (int) renum[(int) fusion.get(i, j)]);
-        }
+    for (int j = 1; j <= fusion.getN(); j++) {
+      int end = fusion.colEnd(j);
+      for (int k = fusion.colStart(j); k < end; k++) {
+        fusion.set(fusion.getRow(k), j, renum[fusion.getValue(k)]);
       }
     }
 
@@ -1335,21 +2065,60 @@ public class LineageMapper implements Runnable {
     }
     curFrame.setDivision(temp);
 
-    // renumber the pixels in the image
-    short[] px = curImage.getPixelData();
-    // create the mask of pixel locations that need a label
-    short[] mask = new short[px.length];
-    System.arraycopy(px, 0, mask, 0, px.length);
-    for (int i = 0; i < px.length; i++) {
-      if (px[i] > 0) {
-        px[i] = renum[px[i]];
+    // find the region of the pixels about to be deleted, they are relabeled below
+    int width = curImage.getWidth();
+    int height = curImage.getHeight();
+    int xMin = Integer.MAX_VALUE;
+    int xMax = Integer.MIN_VALUE;
+    int yMin = Integer.MAX_VALUE;
+    int yMax = Integer.MIN_VALUE;
+    int stripRows = (params.getStripHeight() > 0) ? params.getStripHeight() : height;
+    for (int yStart = 0; yStart < height; yStart += stripRows) {
+      LabelStrip strip = curImage.getStrip(yStart, Math.min(height, yStart + stripRows), 0, 0);
+      for (int y = yStart; y < strip.getYEnd(); y++) {
+        for (int x = 0; x < width; x++) {
+          int pix = strip.get(x, y);
+          if (pix > 0 && renum[pix] == 0) {
+            xMin = Math.min(xMin, x);
+            xMax = Math.max(xMax, x);
+            yMin = Math.min(yMin, y);
+            yMax = Math.max(yMax, y);
+          }
+        }
       }
     }
 
-    // assign the label of the nearest connected body to all of the deleted pixels
-    // this modifies px internally, which is just a reference to the pixeldata within curImage, so it updates the image pixels
-    DistanceTransform
-        .assignNearestConnectedLabel(px, mask, curImage.getWidth(), curImage.getHeight());
+    // the deleted pixels are given the label of the nearest connected body, which can only come
+    // from the bodies bordering them. so the relabeling is done within the region of the deleted
+    // pixels grown by two, which holds those bodies and a ring of pixels that cannot be filled
+    int wxMin = Math.max(0, xMin - 2);
+    int wxMax = Math.min(width - 1, xMax + 2);
+    int wyMin = Math.max(0, yMin - 2);
+    int wyMax = Math.min(height - 1, yMax + 2);
+    // create the mask of pixel locations that need a label
+    int[] mask = null;
+    if (xMin <= xMax) {
+      mask = curImage.getSubImagePixelData(wxMin, wxMax, wyMin, wyMax);
+    }
+
+    // renumber the pixels in the image
+    curImage.relabel(renum);
+
+    // record the renumbering and the region where deleted pixels will be given a new label
+    int[] labelMap = new int[renum.length];
+    for (int i = 0; i < renum.length; i++) {
+      labelMap[i] = renum[i];
+    }
+    dirty.addLabelMap(labelMap);
+    if (xMin <= xMax) {
+      dirty.addBox(xMin, xMax, yMin, yMax);
+
+      // assign the label of the nearest connected body to all of the deleted pixels
+      int[] px = curImage.getSubImagePixelData(wxMin, wxMax, wyMin, wyMax);
+      DistanceTransform
+          .assignNearestConnectedLabel(px, mask, wxMax - wxMin + 1, wyMax - wyMin + 1);
+      curImage.overwriteSubImage(px, wxMin, wxMax, wyMin, wyMax);
+    }
     modified = true;
     return modified;
   }
@@ -1368,8 +2137,8 @@ public class LineageMapper implements Runnable {
 
     // get references to the required data from the current ImageFrame
     Matrix2D trackVector = curFrame.getTrackVector();
-    Matrix2D cost = curFrame.getCost();
-    Matrix2D fusion = curFrame.getFusion();
+    SparseCostMatrix cost = curFrame.getCost();
+    SparseFusion fusion = curFrame.getFusion();
     Matrix2D division = curFrame.getDivision();
 
     Matrix2D untrackedTargetCells = new Matrix2D(curFrame.getMaxCellImgLabelNumber(), 1);
@@ -1399,12 +2168,11 @@ public class LineageMapper implements Runnable {
     }
 
     // delete any cells that came from fusion and are dead due to size of fusion being disabled
-    for (int i = 1; i <= fusion.getM(); i++) {
-      for (int j = 1; j <= fusion.getN(); j++) {
-        if (fusion.get(i, j) > 0) {
-          // remove any cells from fusion cases (the i,j element of fusion will be the cell number involved)
-          untrackedTargetCells.set(fusion.get(i, j), 1, 0);
-        }
+    for (int j = 1; j <= fusion.getN(); j++) {
+      int end = fusion.colEnd(j);
+      for (int k = fusion.colStart(j); k < end; k++) {
+        // remove any cells from fusion cases (the i,j element of fusion will be the cell number involved)
+        untrackedTargetCells.set(fusion.getValue(k), 1, 0);
       }
     }
 
@@ -1449,76 +2217,73 @@ public class LineageMapper implements Runnable {
       return;
     }
 
-    // create a copy of cost that can be modified without destroying the original localCost.disp();
-    Matrix2D localCost = cost.clone();
-
-    // remove the costs between the tracked cells
-    for (int i = 1; i <= localCost.getM(); i++) {
-      for (int j = 1; j <= localCost.getN(); j++) {
-        if (untrackedSourceCells.get(i, 1) <= 0) {
-          localCost.set(i, j, Double.NaN);
-        }
-        if (untrackedTargetCells.get(j, 1) <= 0) {
-          localCost.set(i, j, Double.NaN);
-        }
+    // create a copy of the cost between the untracked cells that can be modified without destroying the original
+    BitSet sourceRows = new BitSet();
+    for (int i = 1; i <= untrackedSourceCells.getM(); i++) {
+      if (untrackedSourceCells.get(i, 1) > 0) {
+        sourceRows.set(i);
       }
     }
-
+    BitSet targetCols = new BitSet();
+    for (int j = 1; j <= untrackedTargetCells.getM(); j++) {
+      if (untrackedTargetCells.get(j, 1) > 0) {
+        targetCols.set(j);
+      }
+    }
+    SparseCostMatrix localCost = cost.subMatrix(sourceRows, targetCols);
 
     // trackVector is reference to the matrix within the curFrame
-    assignNewTrack(localCost, trackVector);
+    if (params.getAssignmentMethod() == TrackingAppParams.AssignmentMethod.OPTIMAL) {
+      assignOptimalTracks(localCost, trackVector);
+    } else {
+      assignNewTrack(localCost, trackVector);
+    }
 
   }
 
   /**
-   * This function will recursively search for the minimum cost to track one cell to another, this
-   * is the worker function of the hungarian optimization
+   * Assign the untracked cells by solving the linear assignment problem over cost, minimizing the
+   * total cost of the assigned pairs.
    *
-   * @param cost        the matrix holding the costs between pairs of cells
+   * @param cost        the matrix holding the costs between pairs of untracked cells
    * @param trackVector the vector tracking cells in the previous frame ot the current frame
    */
-  private void assignNewTrack(Matrix2D cost, Matrix2D trackVector) {
+  private void assignOptimalTracks(SparseCostMatrix cost, Matrix2D trackVector) {
+    if (cost.nnz() == 0) {
+      return;
+    }
 
-    // if every element in cost is NaN then return, this is the stopping condition
-    boolean nonNaNFound = false;
+    // every valid pair must be cheaper to assign than leaving both of its cells unassigned
+    double maxCost = 0;
     for (int i = 1; i <= cost.getM(); i++) {
-      for (int j = 1; j <= cost.getN(); j++) {
-        if (!Double.isNaN(cost.get(i, j))) {
-          nonNaNFound = true;
-        }
+      for (int k = cost.rowStart(i); k < cost.rowEnd(i); k++) {
+        maxCost = Math.max(maxCost, cost.getRowValue(k));
       }
     }
-    if (!nonNaNFound) {
-      return;
-    }
-
-    // find the row wise min of cost
-    Matrix2D rowminvals = new Matrix2D(cost.getM(), 1);
-    Matrix2D rowminindx = new Matrix2D(cost.getM(), 1);
-    cost.rowWiseMin(rowminvals, rowminindx);
 
-    // find the column wise min of cost
-    Matrix2D colminvals = new Matrix2D(1, cost.getN());
-    Matrix2D colminindx = new Matrix2D(1, cost.getN());
-    cost.colWiseMin(colminvals, colminindx);
-
-    for (int i = 1; i <= rowminvals.getM(); i++) {
-      if (!Double.isNaN(rowminvals.get(i, 1))) {
-        if (colminindx.get(1, rowminindx.get(i, 1)) == i) {
-          trackVector.set(i, 1, rowminindx.get(i, 1));
-          // set the whole current column at index rowmincost[1] in cost to NaN
-          for (int k = 1; k <= cost.getM(); k++) {
-            cost.set(k, rowminindx.get(i, 1), Double.NaN);
-          }
-          // set the whole row at index i in cost to NaN
-          for (int k = 1; k <= cost.getN(); k++) {
-            cost.set(i, k, Double.NaN);
-          }
-        }
+    int[] assignment = LinearAssignment.solve(cost, maxCost + 1);
+    for (int i = 1; i < assignment.length; i++) {
+      if (assignment[i] > 0) {
+        trackVector.set(i, 1, assignment[i]);
       }
     }
+  }
 
-    assignNewTrack(cost, trackVector);
+  /**
+   * This function will search for the minimum cost to track one cell to another, this is the
+   * worker function of the hungarian optimization. Pairs of cells that are each others minimum
+   * cost are assigned until no such pair remains.
+   *
+   * @param cost        the matrix holding the costs between pairs of cells
+   * @param trackVector the vector tracking cells in the previous frame ot the current frame
+   */
+  private void assignNewTrack(SparseCostMatrix cost, Matrix2D trackVector) {
+    int[] assignment = GreedyAssignment.solve(cost);
+    for (int i = 1; i < assignment.length; i++) {
+      if (assignment[i] > 0) {
+        trackVector.set(i, 1, assignment[i]);
+      }
+    }
   }
 
   /**
@@ -1573,6 +2338,16 @@ public class LineageMapper implements Runnable {
 
     boolean runHeadless = false;
 
+    // options without a value, these may also be the last argument
+    for (String s : args) {
+      // option controls whether the tracking is performed headless (no gui)
+      if (s.equals("--headless"))
+        runHeadless = true;
+      // option resumes the tracking from the last checkpoint
+      if (s.equals("--resume"))
+        params.setResume(true);
+    }
+
     for (int i = 0; i < (args.length - 1); i++) {
       String s = args[i];
 
@@ -1581,10 +2356,6 @@ public class LineageMapper implements Runnable {
         return;
       }
 
-      // option controls whether the tracking is performed headless (no gui)
-      if (s.equals("--headless"))
-        runHeadless = true;
-
       // Input
       if (s.equals(TrackingAppParams.INPUT_DIRECTORY_DESC)) {
         params.setInputDirectory(args[i + 1]);
@@ -1660,6 +2431,65 @@ public class LineageMapper implements Runnable {
         params.setEnableCellFusion(TrackingAppParams.loadBoolean(args[i + 1], params
             .isEnableCellFusion()));
       }
+
+      // Assignment
+      else if (s.equals(TrackingAppParams.ASSIGNMENT_METHOD_DESC)) {
+        params.setAssignmentMethod(TrackingAppParams.loadAssignmentMethod(args[i + 1], params
+            .getAssignmentMethod()));
+      }
+
+      // Performance
+      else if (s.equals(TrackingAppParams.NUM_WORKER_THREADS_DESC)) {
+        params.setNumWorkerThreads(TrackingAppParams.loadInteger(args[i + 1], params
+            .getNumWorkerThreads()));
+      }
+      else if (s.equals(TrackingAppParams.PIPELINE_DEPTH_DESC)) {
+        params.setPipelineDepth(TrackingAppParams.loadInteger(args[i + 1], params
+            .getPipelineDepth()));
+      }
+      else if (s.equals(TrackingAppParams.PRECOMPUTE_FEATURES_DESC)) {
+        params.setPrecomputeFeatures(TrackingAppParams.loadBoolean(args[i + 1], params
+            .isPrecomputeFeatures()));
+      }
+      else if (s.equals(TrackingAppParams.PRECOMPUTE_ASPECT_RATIO_DESC)) {
+        params.setPrecomputeAspectRatio(TrackingAppParams.loadBoolean(args[i + 1], params
+            .isPrecomputeAspectRatio()));
+      }
+      else if (s.equals(TrackingAppParams.STRIP_HEIGHT_DESC)) {
+        params.setStripHeight(TrackingAppParams.loadInteger(args[i + 1], params
+            .getStripHeight()));
+      }
+      else if (s.equals(TrackingAppParams.OFF_HEAP_LABELS_DESC)) {
+        params.setOffHeapLabels(TrackingAppParams.loadBoolean(args[i + 1], params
+            .isOffHeapLabels()));
+      }
+      else if (s.equals(TrackingAppParams.SCRATCH_DIRECTORY_DESC)) {
+        params.setScratchDirectory(args[i + 1]);
+      }
+      else if (s.equals(TrackingAppParams.CHECKPOINT_INTERVAL_DESC)) {
+        params.setCheckpointInterval(TrackingAppParams.loadInteger(args[i + 1], params
+            .getCheckpointInterval()));
+      }
+      else if (s.equals(TrackingAppParams.TEMPORAL_SHARDS_DESC)) {
+        params.setTemporalShards(TrackingAppParams.loadInteger(args[i + 1], params
+            .getTemporalShards()));
+      }
+      else if (s.equals(TrackingAppParams.TEMPORAL_SHARD_OVERLAP_DESC)) {
+        params.setTemporalShardOverlap(TrackingAppParams.loadInteger(args[i + 1], params
+            .getTemporalShardOverlap()));
+      }
+      else if (s.equals(TrackingAppParams.SPATIAL_TILES_DESC)) {
+        params.setSpatialTiles(TrackingAppParams.loadInteger(args[i + 1], params
+            .getSpatialTiles()));
+      }
+      else if (s.equals(TrackingAppParams.SPATIAL_TILE_MARGIN_DESC)) {
+        params.setSpatialTileMargin(TrackingAppParams.loadInteger(args[i + 1], params
+            .getSpatialTileMargin()));
+      }
+      else if (s.equals(TrackingAppParams.MEMORY_BUDGET_DESC)) {
+        params.setMemoryBudget(TrackingAppParams.loadInteger(args[i + 1], params
+            .getMemoryBudget()));
+      }
     }
 
 
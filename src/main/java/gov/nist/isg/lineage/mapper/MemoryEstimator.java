@@ -0,0 +1,258 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import java.io.IOException;
+import java.util.List;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.Log;
+import gov.nist.isg.lineage.mapper.lib.LongIntHashMap;
+import gov.nist.isg.lineage.mapper.lib.TiffStripReader;
+import ij.ImagePlus;
+import ij.io.FileInfo;
+import ij.io.Opener;
+
+/**
+ * Estimates the heap used to track a sequence from the size of its frames, the number of labels
+ * they can hold and the selected storage modes, so that tracking jobs and pipeline stages are only
+ * started while they fit within a memory budget.
+ *
+ * The number of cells per frame is taken from the labels of the first frame, with headroom for the
+ * later frames to hold more cells, and capped by the highest label the input bit depth can hold
+ * and by the number of minimum sized objects fitting in the frame. When the cap already fits
+ * within the memory budget, or the first frame cannot be read by rows, the cap itself is used.
+ */
+class MemoryEstimator {
+
+  // heap bytes per cell held by a tracked frame: its cell table row, label index entry, touching
+  // cells and lineage records
+  private static final long bytesPerCell = 160;
+  // heap bytes per cell of the scratch arrays used while extracting the features of a frame
+  private static final long featureBytesPerCell = 128;
+  // heap bytes per cell of the overlap, fusion, division and track vectors used while tracking a
+  // pair of frames
+  private static final long trackingBytesPerCell = 256;
+  // heap bytes per candidate pair of the sparse cost matrix: its entry arrays and row and column
+  // indexes
+  private static final long costBytesPerPair = 64;
+  // the number of tracked pairs of frames holding their tracking state at the same time, the pair
+  // being tracked and the pair waiting to be recorded
+  private static final long trackedPairs = 2;
+  // heap bytes of the block buffers used to stream off heap label storage
+  private static final long offHeapBufferBytes = 4L << 20;
+  // the factor by which the cells of a frame may outnumber the cells of the first frame
+  private static final long cellHeadroom = 2;
+
+  private final TrackingAppParams params;
+  private final int nbFrames;
+  private final long width;
+  private final long height;
+  private final int bytesPerPixel;
+  private final long inputRows;
+  private final long cellsPerFrame;
+
+  /**
+   * Create an estimator for the tracking of a sequence.
+   * @param params        the TrackingAppParams specifying the tracking options
+   * @param nbFrames      the number of frames of the sequence
+   * @param width         the width of the frames
+   * @param height        the height of the frames
+   * @param bytesPerPixel the number of bytes per pixel of the input images
+   * @param inputRows     the number of rows of an input image decoded at once, the height of the
+   *                      frames when they are decoded whole
+   * @param firstCells    the number of cells of the first frame, -1 if unknown
+   */
+  MemoryEstimator(TrackingAppParams params, int nbFrames, int width, int height,
+                  int bytesPerPixel, int inputRows, long firstCells) {
+    this.params = params;
+    this.nbFrames = nbFrames;
+    this.width = width;
+    this.height = height;
+    this.bytesPerPixel = bytesPerPixel;
+    this.inputRows = Math.max(1, Math.min(height, inputRows));
+    long maxLabel = (bytesPerPixel == 1) ? 255 : (bytesPerPixel == 2) ? 65535 : Integer.MAX_VALUE;
+    long maxCells = Math.min(maxLabel, this.width * this.height
+        / Math.max(1, params.getCellSizeThreshold()));
+    this.cellsPerFrame = (firstCells < 0) ? maxCells
+        : Math.min(maxCells, cellHeadroom * Math.max(1, firstCells));
+  }
+
+  /**
+   * Create an estimator for the tracking of a list of frames, reading the size of the first frame
+   * from its file header when it is a TIFF image. The cells of the first frame are only counted,
+   * which reads the whole frame, when it can be read by rows and the estimate from the cap on the
+   * number of cells does not fit within the budget.
+   * @param params     the TrackingAppParams specifying the tracking options
+   * @param framesList the frames of the sequence to track
+   * @param budget     the number of heap bytes the tracking may use, 0 to always count the cells
+   * @return the estimator of the sequence
+   */
+  static MemoryEstimator forFrames(TrackingAppParams params, List<ImageFrame> framesList,
+                                   long budget) {
+    String filepath = framesList.get(0).getImage().getFilepath();
+    FileInfo[] info = Opener.getTiffFileInfo(filepath);
+    if (info != null && info.length > 0) {
+      TiffStripReader reader = null;
+      try {
+        reader = TiffStripReader.open(filepath);
+        if (reader != null) {
+          MemoryEstimator bounded = new MemoryEstimator(params, framesList.size(), info[0].width,
+              info[0].height, info[0].getBytesPerPixel(), reader.getRowsPerStrip(), -1);
+          if (budget > 0 && bounded.estimate(params.getPipelineDepth()) <= budget) {
+            return bounded;
+          }
+          return new MemoryEstimator(params, framesList.size(), info[0].width, info[0].height,
+              info[0].getBytesPerPixel(), reader.getRowsPerStrip(), countLabels(reader));
+        }
+      } catch (IOException e) {
+        Log.debug("Unable to read the labels of " + filepath + ": " + e.getMessage());
+      } finally {
+        if (reader != null) {
+          try {
+            reader.close();
+          } catch (IOException e) {
+            Log.debug("Unable to close " + filepath + ": " + e.getMessage());
+          }
+        }
+      }
+      return new MemoryEstimator(params, framesList.size(), info[0].width, info[0].height,
+          info[0].getBytesPerPixel(), info[0].height, -1);
+    }
+    ImagePlus image = new ImagePlus(filepath);
+    return new MemoryEstimator(params, framesList.size(), image.getWidth(), image.getHeight(),
+        image.getBytesPerPixel(), image.getHeight(), -1);
+  }
+
+  /**
+   * Count the distinct labels of an image a row at a time.
+   * @param reader the reader of the image
+   * @return the number of non zero labels of the image
+   * @throws IOException if the image cannot be read
+   */
+  private static long countLabels(TiffStripReader reader) throws IOException {
+    LongIntHashMap labels = new LongIntHashMap();
+    int[] row = new int[reader.getWidth()];
+    for (int y = 0; y < reader.getHeight(); y++) {
+      reader.readRow(y, 0, row, 0, row.length);
+      int last = 0;
+      for (int label : row) {
+        // labels come in runs of pixels, so only the label changes are looked up
+        if (label != last && label > 0) {
+          labels.put(label, 1);
+        }
+        last = label;
+      }
+    }
+    return labels.size();
+  }
+
+  /**
+   * @return the number of cells a frame of the sequence is assumed to hold at most
+   */
+  long getCellsPerFrame() {
+    return cellsPerFrame;
+  }
+
+  /**
+   * Estimate the heap used to track the sequence.
+   * @param pipelineDepth the number of frames the pipeline reads ahead of and writes behind the
+   *                      tracking, not used when tracking shards
+   * @return the estimated number of heap bytes
+   */
+  long estimate(int pipelineDepth) {
+    long cells = getCellsPerFrame();
+    long bytes = 0;
+
+    if (params.getSpatialTiles() > 1) {
+      // every tile tracks its own pair of frames, then the tiles are merged into full frames
+      long tiles = Math.min(params.getSpatialTiles(), width) * Math.min(params.getSpatialTiles(),
+          height);
+      long tileWidth = width / Math.min(params.getSpatialTiles(), width)
+          + 2 * params.getSpatialTileMargin();
+      long tileHeight = height / Math.min(params.getSpatialTiles(), height)
+          + 2 * params.getSpatialTileMargin();
+      bytes += tiles * frameBytes(tileWidth, tileHeight, cells, 2, 1);
+      // the tiles keep the cell tables of all their frames until they are merged, and the merge
+      // holds the pixels of a full frame in a heap array
+      bytes += 2 * nbFrames * cells * bytesPerCell + 4 * width * height;
+    } else if (params.getTemporalShards() > 1) {
+      // every shard tracks its own pair of frames, the cell tables of every frame are kept until
+      // the shards are stitched and recorded
+      bytes += nbFrames * cells * bytesPerCell;
+      bytes += params.getTemporalShards() * frameBytes(width, height, cells, 2, 1);
+    } else {
+      // the frames read ahead, the current and previous frames, and the frames waiting to be
+      // written hold their pixels
+      int depth = Math.max(0, pipelineDepth);
+      int prepareThreads = (depth > 0 && params.isPrecomputeFeatures())
+          ? Math.max(1, params.getNumWorkerThreads()) : 1;
+      bytes += frameBytes(width, height, cells, 2 * depth + 2, prepareThreads);
+      // the written frames keep their cell tables until the circularity look back moves past them
+      long retainedFrames = Math.max(2, params.getNumFramesToCheckCircularity()) + 2 * depth + 2;
+      bytes += Math.min(nbFrames, retainedFrames) * cells * bytesPerCell;
+    }
+    return bytes;
+  }
+
+  /**
+   * Estimate the heap held by the frames of one tracker.
+   * @param w              the width of the frames
+   * @param h              the height of the frames
+   * @param cells          the number of cells per frame
+   * @param residentFrames the number of frames holding their pixels at the same time
+   * @param readers        the number of frames read and processed at the same time
+   * @return the estimated number of heap bytes
+   */
+  private long frameBytes(long w, long h, long cells, long residentFrames, long readers) {
+    long bytes = residentFrames * labelBytes(w, h);
+    // the decoded rows of the input image and the feature scratch arrays of the frames being read
+    // and processed
+    bytes += readers * (bytesPerPixel * w * Math.min(h, inputRows) + cells * featureBytesPerCell);
+    bytes += trackedPairs * trackingBytes(cells);
+    return bytes;
+  }
+
+  /**
+   * Estimate the heap held by the tracking state of one pair of frames. Every cell of the previous
+   * frame is paired in the cost matrix with the cells of the current frame whose centroid is within
+   * the maximum centroid distance, so the number of pairs grows with the cell density as well as
+   * with the number of cells.
+   * @param cells the number of cells per frame
+   * @return the estimated number of heap bytes
+   */
+  private long trackingBytes(long cells) {
+    double density = (double) cells / Math.max(1, width * height);
+    double radius = params.getMaxCentroidsDist();
+    long candidates = Math.min(cells, 1 + (long) Math.ceil(Math.PI * radius * radius * density));
+    return cells * trackingBytesPerCell + cells * candidates * costBytesPerPair;
+  }
+
+  /**
+   * @return the heap bytes of the label pixels of a padded frame, given the storage mode
+   */
+  private long labelBytes(long w, long h) {
+    if (params.isOffHeapLabels())
+      return offHeapBufferBytes;
+    return 4 * (w + 2) * (h + 2);
+  }
+
+  /**
+   * Find the deepest pipeline, up to the configured pipeline depth, whose estimated heap fits
+   * within a budget.
+   * @param budget the number of heap bytes available to the tracking
+   * @return the pipeline depth to use, 0 if even the shallowest pipeline does not fit
+   */
+  int maxPipelineDepth(long budget) {
+    int depth = Math.max(0, params.getPipelineDepth());
+    while (depth > 0 && estimate(depth) > budget) {
+      depth--;
+    }
+    return depth;
+  }
+}
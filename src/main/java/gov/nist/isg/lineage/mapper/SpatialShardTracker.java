@@ -0,0 +1,634 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+
+package gov.nist.isg.lineage.mapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.Cell;
+import gov.nist.isg.lineage.mapper.lib.CellTable;
+import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.ImageTile;
+import gov.nist.isg.lineage.mapper.lib.LabelStrip;
+import gov.nist.isg.lineage.mapper.lib.Log;
+import gov.nist.isg.lineage.mapper.lib.LongIntHashMap;
+import gov.nist.isg.lineage.mapper.lib.Matrix2D;
+import gov.nist.isg.lineage.mapper.lib.SparseFusion;
+import gov.nist.isg.lineage.mapper.lib.TiffStripWriter;
+import ij.ImagePlus;
+import ij.io.FileInfo;
+import ij.io.Opener;
+
+/**
+ * Tracks a wide field as a grid of overlapping spatial tiles, each tile's time series tracked
+ * concurrently on its own thread by its own LineageMapper, and merges the tiles back into full
+ * frames with one consistent global labelling.
+ *
+ * Every tile owns the cells whose centroid lies within its core, its share of the grid, and holds
+ * a margin of pixels around the core so that the cells it owns and their neighborhood are tracked
+ * whole. The margin should be larger than the biggest cell plus the largest distance a cell moves
+ * between frames; the merge fails when a cell reaches from the core of a tile to an edge it shares
+ * with another tile. The frames are merged in order: each owned cell continues the global label of
+ * the cell its tile tracked it from in the previous frame, which may have been owned by a
+ * neighboring tile, and the cells that continue no global label are born with a new one. A tile
+ * cell that is not owned by the tile is matched to the merged cell covering exactly its pixels, so
+ * tracks crossing from one core to another keep their label. The cells born in a frame are
+ * numbered in the order of their labels in the input image, as single pass tracking numbers them.
+ */
+class SpatialShardTracker {
+
+  private final TrackingAppParams params;
+  private final List<ImageFrame> framesList;
+  private final ExecutorService workerPool;
+  private final AtomicInteger nbTrackedFrames = new AtomicInteger(0);
+  private int nbFramesToTrack = 0;
+  // the size of the full frames
+  private int width;
+  private int height;
+  private int globalHighestCellLabel = 0;
+
+  /**
+   * Create a tracker for the spatial tiles of a sequence.
+   *
+   * @param params     the TrackingAppParams specifying the tracking and tiling options
+   * @param framesList the frames of the sequence to track
+   * @param workerPool the pool of worker threads shared by the tiles for the per frame
+   *                   computations, or null
+   */
+  SpatialShardTracker(TrackingAppParams params, List<ImageFrame> framesList,
+                      ExecutorService workerPool) {
+    this.params = params;
+    this.framesList = framesList;
+    this.workerPool = workerPool;
+  }
+
+  /**
+   * Track the tiles concurrently, then merge them frame by frame. The merged images are written to
+   * the output directory.
+   *
+   * @return the tracked frames of the sequence, indexed by frame number
+   * @throws InterruptedException
+   */
+  List<ImageFrame> track() throws InterruptedException {
+    // read the size of the frames from the file header of the first frame when it is a TIFF image
+    String filepath = framesList.get(0).getImage().getFilepath();
+    FileInfo[] info = Opener.getTiffFileInfo(filepath);
+    if (info != null && info.length > 0) {
+      width = info[0].width;
+      height = info[0].height;
+    } else {
+      ImagePlus firstImage = new ImagePlus(filepath);
+      width = firstImage.getWidth();
+      height = firstImage.getHeight();
+    }
+    int nbTilesX = Math.min(params.getSpatialTiles(), width);
+    int nbTilesY = Math.min(params.getSpatialTiles(), height);
+    int margin = params.getSpatialTileMargin();
+
+    File scratchDirectory = createScratchDirectory();
+    List<Tile> tiles = new ArrayList<Tile>(nbTilesX * nbTilesY);
+    try {
+      for (int ty = 0; ty < nbTilesY; ty++) {
+        for (int tx = 0; tx < nbTilesX; tx++) {
+          int coreX0 = (int) ((long) tx * width / nbTilesX);
+          int coreX1 = (int) ((long) (tx + 1) * width / nbTilesX);
+          int coreY0 = (int) ((long) ty * height / nbTilesY);
+          int coreY1 = (int) ((long) (ty + 1) * height / nbTilesY);
+          File tileDirectory = new File(scratchDirectory, "tile-" + tiles.size());
+          if (!tileDirectory.mkdir()) {
+            throw new IllegalStateException("Unable to create tile directory: "
+                + tileDirectory.getAbsolutePath());
+          }
+          tiles.add(new Tile(tileDirectory, coreX0, coreY0, coreX1, coreY1, margin));
+        }
+      }
+      nbFramesToTrack = tiles.size() * framesList.size();
+      Log.mandatory("Tracking " + tiles.size() + " spatial tiles");
+
+      ExecutorService tilePool = Executors.newFixedThreadPool(tiles.size());
+      try {
+        List<Future<Tile>> tracked = new ArrayList<Future<Tile>>(tiles.size());
+        for (Tile tile : tiles) {
+          tracked.add(tilePool.submit(tile));
+        }
+        for (Future<Tile> f : tracked) {
+          LineageMapper.getResult(f);
+        }
+      } finally {
+        tilePool.shutdownNow();
+      }
+
+      Log.mandatory("Merging spatial tiles");
+      int[] pixels = new int[width * height];
+      ImageFrame prevFrame = null;
+      for (ImageFrame frame : framesList) {
+        if (Thread.interrupted())
+          throw new InterruptedException("Lineage Mapper Interrupted");
+        mergeFrame(tiles, frame, prevFrame, pixels);
+        prevFrame = frame;
+      }
+    } finally {
+      for (Tile tile : tiles) {
+        deleteDirectory(tile.directory);
+      }
+      deleteDirectory(scratchDirectory);
+    }
+    return framesList;
+  }
+
+  /**
+   * Merge the tiles of a frame into the full frame: assign the global labels of the cells owned by
+   * the tiles, write the merged label image and give the frame its cells and its division and
+   * fusion events.
+   *
+   * @param tiles     the tracked tiles
+   * @param frame     the full frame to merge into
+   * @param prevFrame the merged previous frame, or null for the first frame
+   * @param pixels    the buffer for the merged label image
+   */
+  private void mergeFrame(List<Tile> tiles, ImageFrame frame, ImageFrame prevFrame,
+                          int[] pixels) {
+    int f = frame.getFrameNb();
+
+    // find the cells owned by each tile, numbered in tile order
+    int nbOwned = 0;
+    for (Tile tile : tiles) {
+      ImageFrame tileFrame = tile.frames.get(f);
+      tileFrame.restoreTrackedImage();
+      CellTable cells = tileFrame.getCellTable();
+      int maxImgLabel = 0;
+      for (int i = 0; i < cells.size(); i++) {
+        maxImgLabel = Math.max(maxImgLabel, cells.getImgLabel(i));
+      }
+      tile.ownedByImgLabel = new int[maxImgLabel + 1];
+      tile.globalByImgLabel = new int[maxImgLabel + 1];
+      for (int i = 0; i < cells.size(); i++) {
+        if (tile.owns(cells.getCentroidX(i), cells.getCentroidY(i))) {
+          tile.ownedByImgLabel[cells.getImgLabel(i)] = ++nbOwned;
+        }
+      }
+
+      // a cell reaching from the core of the tile to an edge shared with another tile is larger
+      // than the margin, so the tile holds a clipped copy of it whose centroid cannot be trusted:
+      // the cell could be owned by no tile and lost, or owned by two tiles and split
+      int[][] boxes = tileFrame.computeBoundingBox();
+      for (int i = 0; i < cells.size(); i++) {
+        int[] box = boxes[cells.getImgLabel(i) - 1];
+        if ((tile.ownedByImgLabel[cells.getImgLabel(i)] > 0 || tile.overlapsCore(box))
+            && tile.clips(box)) {
+          throw new IllegalStateException("A cell of " + frame.getTitle() + " is larger than the "
+              + "spatial tile margin of " + params.getSpatialTileMargin() + " pixels, increase "
+              + TrackingAppParams.SPATIAL_TILE_MARGIN_DESC);
+        }
+      }
+    }
+
+    // paint the owned cells into the merged image, numbered by owned index for now, measuring the
+    // pixels each one keeps; a pixel claimed by two tiles goes to the first
+    Arrays.fill(pixels, 0);
+    double[] area = new double[nbOwned];
+    double[] centroidX = new double[nbOwned];
+    double[] centroidY = new double[nbOwned];
+    boolean[] border = new boolean[nbOwned];
+    int pb = ImageFrame.distToEdgeToConsiderOnBorder;
+    int paddedWidth = width + 2;
+    int paddedHeight = height + 2;
+    for (Tile tile : tiles) {
+      ImageTile image = tile.frames.get(f).getImage();
+      for (int y = 1; y <= tile.tileHeight; y++) {
+        LabelStrip strip = image.getStrip(y, y + 1, 0, 0);
+        int[] px = strip.getPixelData();
+        int i = strip.indexOf(1, y);
+        // the padded coordinates of the pixel in the full frame
+        int fy = tile.y0 + y;
+        int k = (fy - 1) * width + tile.x0;
+        for (int x = 1; x <= tile.tileWidth; x++, i++, k++) {
+          int o = (px[i] > 0) ? tile.ownedByImgLabel[px[i]] : 0;
+          if (o > 0 && pixels[k] == 0) {
+            pixels[k] = o;
+            int fx = tile.x0 + x;
+            area[o - 1]++;
+            centroidX[o - 1] += fx;
+            centroidY[o - 1] += fy;
+            if (fx <= pb || fx >= (paddedWidth - pb - 1) || fy <= pb
+                || fy >= (paddedHeight - pb - 1)) {
+              border[o - 1] = true;
+            }
+          }
+        }
+      }
+    }
+
+    // key the owned cells that kept pixels by their label in the input image, with the global
+    // label of the cell their tile tracked them from
+    int[] ownedTile = new int[nbOwned];
+    int[] ownedImgLabel = new int[nbOwned];
+    int[] continued = new int[nbOwned];
+    long[] keys = new long[nbOwned];
+    int nbCells = 0;
+    for (int t = 0; t < tiles.size(); t++) {
+      Tile tile = tiles.get(t);
+      ImageFrame tileFrame = tile.frames.get(f);
+      int[] sourceLabels = tile.sourceLabels[f];
+      for (int imgLabel = 1; imgLabel < tile.ownedByImgLabel.length; imgLabel++) {
+        int o = tile.ownedByImgLabel[imgLabel] - 1;
+        if (o < 0) {
+          continue;
+        }
+        if (area[o] == 0) {
+          // every pixel of the cell was claimed by another tile
+          tile.ownedByImgLabel[imgLabel] = 0;
+          continue;
+        }
+        ownedTile[o] = t;
+        ownedImgLabel[o] = imgLabel;
+        if (prevFrame != null) {
+          Cell prev = tile.frames.get(f - 1).getCellByGlobalLabel(
+              tileFrame.getCellByImgLabel(imgLabel).getGlobalLabel());
+          if (prev != null && prev.getImgLabel() < tile.prevGlobalByImgLabel.length) {
+            continued[o] = tile.prevGlobalByImgLabel[prev.getImgLabel()];
+          }
+        }
+        // labels created while tracking follow the labels of the input image
+        long source = (imgLabel < sourceLabels.length) ? sourceLabels[imgLabel]
+            : Integer.MAX_VALUE;
+        keys[nbCells++] = (source << 32) | o;
+      }
+    }
+    keys = Arrays.copyOf(keys, nbCells);
+    Arrays.sort(keys);
+
+    // the continued labels are kept by the first cell claiming them, the other cells are born
+    int[] globalLabels = new int[nbOwned];
+    LongIntHashMap rowByGlobalLabel = new LongIntHashMap(nbCells);
+    for (int r = 0; r < nbCells; r++) {
+      int o = (int) keys[r];
+      if (continued[o] > 0 && !rowByGlobalLabel.containsKey(continued[o])) {
+        globalLabels[o] = continued[o];
+        rowByGlobalLabel.put(continued[o], r + 1);
+      }
+    }
+    for (int r = 0; r < nbCells; r++) {
+      int o = (int) keys[r];
+      if (globalLabels[o] == 0) {
+        globalLabels[o] = ++globalHighestCellLabel;
+        rowByGlobalLabel.put(globalLabels[o], r + 1);
+      }
+      Tile tile = tiles.get(ownedTile[o]);
+      tile.globalByImgLabel[ownedImgLabel[o]] = globalLabels[o];
+    }
+    for (int k = 0; k < pixels.length; k++) {
+      if (pixels[k] > 0) {
+        pixels[k] = globalLabels[pixels[k] - 1];
+      }
+    }
+
+    // match the cells not owned by a tile to the merged cell covering exactly their pixels
+    for (Tile tile : tiles) {
+      ImageFrame tileFrame = tile.frames.get(f);
+      ImageTile image = tileFrame.getImage();
+      int n = tile.globalByImgLabel.length;
+      int[] match = new int[n];
+      int[] matchCount = new int[n];
+      boolean[] mismatch = new boolean[n];
+      for (int y = 1; y <= tile.tileHeight; y++) {
+        LabelStrip strip = image.getStrip(y, y + 1, 0, 0);
+        int[] px = strip.getPixelData();
+        int i = strip.indexOf(1, y);
+        int k = (tile.y0 + y - 1) * width + tile.x0;
+        for (int x = 1; x <= tile.tileWidth; x++, i++, k++) {
+          int p = px[i];
+          if (p > 0 && tile.ownedByImgLabel[p] == 0) {
+            if (pixels[k] == 0 || (match[p] != 0 && match[p] != pixels[k])) {
+              mismatch[p] = true;
+            }
+            match[p] = pixels[k];
+            matchCount[p]++;
+          }
+        }
+      }
+      CellTable cells = tileFrame.getCellTable();
+      for (int i = 0; i < cells.size(); i++) {
+        int p = cells.getImgLabel(i);
+        if (tile.ownedByImgLabel[p] > 0 || mismatch[p] || match[p] == 0) {
+          continue;
+        }
+        int r = rowByGlobalLabel.get(match[p]) - 1;
+        int o = (int) keys[r];
+        if (matchCount[p] == cells.getArea(i) && matchCount[p] == area[o]) {
+          tile.globalByImgLabel[p] = match[p];
+        }
+      }
+    }
+
+    // build the cells of the merged frame, the image labels follow the key order
+    CellTable merged = new CellTable(nbCells, 0);
+    Matrix2D division = null;
+    SparseFusion fusion = null;
+    List<Integer> touching = new ArrayList<Integer>();
+    for (int r = 0; r < nbCells; r++) {
+      int o = (int) keys[r];
+      Tile tile = tiles.get(ownedTile[o]);
+      ImageFrame tileFrame = tile.frames.get(f);
+      int imgLabel = ownedImgLabel[o];
+      Cell cell = tileFrame.getCellByImgLabel(imgLabel);
+
+      int c = merged.add(r + 1);
+      merged.setGlobalLabel(c, globalLabels[o]);
+      merged.setArea(c, area[o]);
+      merged.setCentroidX(c, centroidX[o] / area[o]);
+      merged.setCentroidY(c, centroidY[o] / area[o]);
+      merged.setPerimeter(c, cell.getPerimeter());
+      double perimeter = cell.getPerimeter();
+      merged.setCircularity(c, (4 * Math.PI * area[o]) / (perimeter * perimeter));
+      merged.setBorderCell(c, border[o]);
+      merged.setAspectRatio(c, cell.getAspectRatio());
+      touching.clear();
+      List<Integer> tileTouching = cell.getTouchingCells();
+      if (tileTouching != null) {
+        for (Integer t : tileTouching) {
+          int g = (t < tile.globalByImgLabel.length) ? tile.globalByImgLabel[t] : 0;
+          int row = (g > 0) ? rowByGlobalLabel.get(g) : 0;
+          if (row > 0 && !touching.contains(row)) {
+            touching.add(row);
+          }
+        }
+      }
+      Collections.sort(touching);
+      for (Integer t : touching) {
+        merged.addTouchingCell(c, t);
+      }
+
+      if (prevFrame == null) {
+        continue;
+      }
+      // the division and fusion events of the tile, in the merged image labels
+      Matrix2D tileDivision = tileFrame.getDivision();
+      if (tileDivision != null && imgLabel <= tileDivision.getM()) {
+        int mother = mergedPrevImgLabel(tile, prevFrame, tileDivision.get(imgLabel, 1));
+        if (mother > 0) {
+          if (division == null) {
+            division = new Matrix2D(nbCells, 1);
+            division.initTo(0);
+          }
+          division.set(r + 1, 1, mother);
+        }
+      }
+      SparseFusion tileFusion = tileFrame.getFusion();
+      if (tileFusion != null && imgLabel <= tileFusion.getN()) {
+        int end = tileFusion.colEnd(imgLabel);
+        for (int k = tileFusion.colStart(imgLabel); k < end; k++) {
+          int p = mergedPrevImgLabel(tile, prevFrame, tileFusion.getRow(k));
+          if (p > 0) {
+            if (fusion == null) {
+              fusion = new SparseFusion(prevFrame.getCellTable().size(), nbCells);
+            }
+            fusion.set(p, r + 1, 1);
+          }
+        }
+      }
+    }
+
+    // write the merged frame
+    writeImage(frame.getImage().getOutputFilepath(), pixels);
+    frame.restoreCells(merged);
+    frame.setDivision(division);
+    frame.setFusion(fusion);
+
+    // the tile frames before this one are no longer needed
+    for (Tile tile : tiles) {
+      ImageFrame tileFrame = tile.frames.get(f);
+      tileFrame.getImage().releaseMemory();
+      if (f > 0) {
+        tile.frames.set(f - 1, null);
+      }
+      tile.prevGlobalByImgLabel = tile.globalByImgLabel;
+      tile.sourceLabels[f] = null;
+      File output = new File(tileFrame.getImage().getOutputFilepath());
+      if (!output.delete()) {
+        Log.debug("Unable to delete tile image: " + output.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * Map the image label of a cell in a tile's previous frame onto the image label of the merged
+   * cell it matched.
+   *
+   * @param tile      the tile
+   * @param prevFrame the merged previous frame
+   * @param label     the image label within the tile's previous frame
+   * @return the image label in the merged previous frame, or 0 if the cell matched no merged cell
+   */
+  private static int mergedPrevImgLabel(Tile tile, ImageFrame prevFrame, double label) {
+    if (!(label > 0) || label != Math.rint(label) || label >= tile.prevGlobalByImgLabel.length) {
+      return 0;
+    }
+    int g = tile.prevGlobalByImgLabel[(int) label];
+    Cell c = (g > 0) ? prevFrame.getCellByGlobalLabel(g) : null;
+    return (c == null) ? 0 : c.getImgLabel();
+  }
+
+  /**
+   * Write a merged label image to disk, 16 bit if every label fits in 16 bits, otherwise 32 bit.
+   *
+   * @param filepath the path of the file to write
+   * @param pixels   the labels of the merged frame
+   */
+  private void writeImage(String filepath, int[] pixels) {
+    int maxval = 0;
+    for (int p : pixels) {
+      maxval = Math.max(maxval, p);
+    }
+    try {
+      TiffStripWriter writer = new TiffStripWriter(filepath, width, height, maxval);
+      try {
+        for (int y = 0; y < height; y++) {
+          writer.writeRow(pixels, y * width);
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to save image to disk: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Create the scratch directory holding the tracked tile images.
+   *
+   * @return the new directory
+   */
+  private File createScratchDirectory() {
+    String dir = params.getScratchDirectory();
+    File parent = (dir != null && !dir.isEmpty()) ? new File(dir) : null;
+    try {
+      // reserve a unique name with a temporary file, then replace it with the directory
+      File scratch = File.createTempFile("lineage-tiles", "", parent);
+      if (!scratch.delete() || !scratch.mkdir()) {
+        throw new IOException("Unable to create directory " + scratch.getAbsolutePath());
+      }
+      return scratch;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create tile scratch directory: "
+          + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Delete a scratch directory and the files within it.
+   *
+   * @param dir the directory to delete
+   */
+  private static void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!file.delete()) {
+          Log.debug("Unable to delete scratch file: " + file.getAbsolutePath());
+        }
+      }
+    }
+    if (dir.exists() && !dir.delete()) {
+      Log.debug("Unable to delete scratch directory: " + dir.getAbsolutePath());
+    }
+  }
+
+  /**
+   * A rectangular region of the frames tracked by its own LineageMapper, with its own global
+   * labels. The tracked tile images are written to the tile's scratch directory for the merge.
+   */
+  private class Tile implements Callable<Tile> {
+
+    private final File directory;
+    // the first column and row of the tile within the full frames, and its size
+    private final int x0;
+    private final int y0;
+    private final int tileWidth;
+    private final int tileHeight;
+    // the region of the full frames whose cells the tile owns
+    private final int coreX0;
+    private final int coreY0;
+    private final int coreX1;
+    private final int coreY1;
+    private final List<ImageFrame> frames;
+    // the labels of each frame's input image, indexed by the tile's image labels
+    private final int[][] sourceLabels;
+    private final LineageMapper tracker;
+
+    // set while merging: the owned index (+1) and the global label of the cells of the frame
+    // being merged, and the global labels of the previous frame, indexed by the image label
+    private int[] ownedByImgLabel;
+    private int[] globalByImgLabel;
+    private int[] prevGlobalByImgLabel = new int[0];
+
+    Tile(File directory, int coreX0, int coreY0, int coreX1, int coreY1, int margin) {
+      this.directory = directory;
+      this.coreX0 = coreX0;
+      this.coreY0 = coreY0;
+      this.coreX1 = coreX1;
+      this.coreY1 = coreY1;
+      this.x0 = Math.max(0, coreX0 - margin);
+      this.y0 = Math.max(0, coreY0 - margin);
+      this.tileWidth = Math.min(width, coreX1 + margin) - x0;
+      this.tileHeight = Math.min(height, coreY1 + margin) - y0;
+
+      frames = new ArrayList<ImageFrame>(framesList.size());
+      for (ImageFrame frame : framesList) {
+        ImageFrame tileFrame = new ImageFrame(frame.getImage().getFilepath(),
+            directory.getPath() + File.separator + frame.getTitle(), frame.getFrameNb(),
+            frame.getTitle());
+        tileFrame.setStripHeight(frame.getStripHeight());
+        tileFrame.setMappedStorage(frame.getImage().isMappedStorage(),
+            frame.getImage().getScratchDirectory());
+        tileFrame.getImage().setRegion(x0, y0, tileWidth, tileHeight);
+        frames.add(tileFrame);
+      }
+      sourceLabels = new int[framesList.size()][];
+      tracker = new LineageMapper(params, frames, workerPool);
+    }
+
+    /**
+     * Check whether a cell of the tile is owned by it.
+     *
+     * @param centroidX the x centroid of the cell in the tile's padded coordinates
+     * @param centroidY the y centroid of the cell in the tile's padded coordinates
+     * @return true if the centroid lies within the tile's core
+     */
+    boolean owns(double centroidX, double centroidY) {
+      double x = x0 + centroidX - 1;
+      double y = y0 + centroidY - 1;
+      return x >= coreX0 && x < coreX1 && y >= coreY0 && y < coreY1;
+    }
+
+    /**
+     * Check whether a cell of the tile has pixels within the tile's core.
+     *
+     * @param box the bounding box [xMin, xMax, yMin, yMax] of the cell in the tile's padded
+     *            coordinates
+     * @return true if the bounding box overlaps the tile's core
+     */
+    boolean overlapsCore(int[] box) {
+      return x0 + box[1] - 1 >= coreX0 && x0 + box[0] - 1 < coreX1
+          && y0 + box[3] - 1 >= coreY0 && y0 + box[2] - 1 < coreY1;
+    }
+
+    /**
+     * Check whether a cell of the tile may have been clipped by it, because it reaches an edge of
+     * the tile that is not an edge of the full frames.
+     *
+     * @param box the bounding box [xMin, xMax, yMin, yMax] of the cell in the tile's padded
+     *            coordinates
+     * @return true if the bounding box reaches an edge shared with another tile
+     */
+    boolean clips(int[] box) {
+      return (box[0] <= 1 && x0 > 0) || (box[1] >= tileWidth && x0 + tileWidth < width)
+          || (box[2] <= 1 && y0 > 0) || (box[3] >= tileHeight && y0 + tileHeight < height);
+    }
+
+    @Override
+    public Tile call() throws InterruptedException {
+      String tileDirectory = directory.getPath() + File.separator;
+      ImageFrame prevFrame = null;
+      for (int f = 0; f < frames.size(); f++) {
+        if (Thread.interrupted())
+          throw new InterruptedException("Lineage Mapper Interrupted");
+
+        ImageFrame curFrame = frames.get(f);
+        curFrame.readImage();
+        sourceLabels[f] = curFrame.getImage().getSourceLabels();
+        Log.debug("Tracking tile " + directory.getName() + ": " + (prevFrame == null ? "\"\""
+            : prevFrame.getTitle()) + " -> " + curFrame.getTitle());
+        tracker.trackImageFramePair(curFrame, prevFrame, f);
+
+        if (prevFrame != null) {
+          prevFrame.applyGlobalLabels();
+          prevFrame.writeImage(tileDirectory, "");
+          prevFrame.releaseImageTile();
+        }
+        prevFrame = curFrame;
+        params.setProgressBar(((double) nbTrackedFrames.incrementAndGet()) / nbFramesToTrack);
+      }
+      prevFrame.applyGlobalLabels();
+      prevFrame.writeImage(tileDirectory, "");
+      prevFrame.releaseImageTile();
+      return this;
+    }
+  }
+
+}
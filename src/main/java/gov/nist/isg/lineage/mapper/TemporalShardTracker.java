@@ -0,0 +1,328 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+
+package gov.nist.isg.lineage.mapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.CellTable;
+import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.Log;
+
+/**
+ * Tracks an image sequence as a number of consecutive time chunks (shards) tracked concurrently,
+ * each on its own thread, and stitches their global labels together.
+ *
+ * Every shard after the first starts tracking a number of overlap frames before the first frame it
+ * owns. Tracking a frame pair depends on the previous frame and, through the mother cell
+ * circularity check, on the frames before it, so once a shard tracks the same label images and
+ * cells as the frames before it for a window of consecutive frames, every frame it tracks after
+ * this seam matches single pass tracking up to the numbering of the global labels. The shard's
+ * labels are then remapped onto the stitched labels: the cells alive at the seam take the labels
+ * of their tracks and the cells born after it are numbered on from the stitched highest label, as
+ * single pass tracking would have numbered them. If no seam is found within the overlap, the
+ * stitched tracking continues frame by frame into the shard until one is found, so the output
+ * always matches single pass tracking.
+ */
+class TemporalShardTracker {
+
+  private final TrackingAppParams params;
+  private final List<ImageFrame> framesList;
+  private final ExecutorService workerPool;
+  // the number of consecutive frames that must match at a seam
+  private final int seamWindow;
+  private final AtomicInteger nbTrackedFrames = new AtomicInteger(0);
+  private int nbFramesToTrack = 0;
+
+  /**
+   * Create a tracker for the temporal shards of a sequence.
+   *
+   * @param params     the TrackingAppParams specifying the tracking and sharding options
+   * @param framesList the frames of the sequence to track
+   * @param workerPool the pool of worker threads shared by the shards for the per frame
+   *                   computations, or null
+   */
+  TemporalShardTracker(TrackingAppParams params, List<ImageFrame> framesList,
+                       ExecutorService workerPool) {
+    this.params = params;
+    this.framesList = framesList;
+    this.workerPool = workerPool;
+    this.seamWindow = Math.max(1, params.getNumFramesToCheckCircularity());
+  }
+
+  /**
+   * Track the shards concurrently and stitch them in order as they complete. The tracked images
+   * are written to the output directory with their stitched global labels.
+   *
+   * @return the tracked frames of the sequence, indexed by frame number
+   * @throws InterruptedException
+   */
+  List<ImageFrame> track() throws InterruptedException {
+    int nbFrames = framesList.size();
+    int nbShards = Math.min(params.getTemporalShards(), nbFrames);
+
+    List<Shard> shards = new ArrayList<Shard>(nbShards);
+    for (int k = 0; k < nbShards; k++) {
+      int first = (int) ((long) k * nbFrames / nbShards);
+      int last = (int) ((long) (k + 1) * nbFrames / nbShards) - 1;
+      Shard shard = new Shard(first, last, Math.max(0, first - params.getTemporalShardOverlap()));
+      nbFramesToTrack += last - shard.trackedFrom + 1;
+      shards.add(shard);
+    }
+    Log.mandatory("Tracking " + nbShards + " temporal shards");
+
+    ExecutorService shardPool = Executors.newFixedThreadPool(nbShards);
+    try {
+      List<Future<Shard>> tracked = new ArrayList<Future<Shard>>(nbShards);
+      for (Shard shard : shards) {
+        tracked.add(shardPool.submit(shard));
+      }
+
+      Shard stitched = LineageMapper.getResult(tracked.get(0));
+      for (int k = 1; k < nbShards; k++) {
+        stitch(stitched, LineageMapper.getResult(tracked.get(k)));
+      }
+      return stitched.frames;
+    } finally {
+      shardPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Stitch a tracked shard onto the end of the stitched tracking, which covers the frames before
+   * the first frame owned by the shard.
+   *
+   * @param stitched the tracking stitched so far, from the first frame of the sequence
+   * @param shard    the next shard
+   * @throws InterruptedException
+   */
+  private void stitch(Shard stitched, Shard shard) throws InterruptedException {
+    // look for the earliest seam within the frames tracked by both
+    int seam = shard.trackedFrom + seamWindow - 1;
+    int[] seamLabels = null;
+    for (; seam <= stitched.lastTracked; seam++) {
+      seamLabels = matchSeam(stitched, shard, seam);
+      if (seamLabels != null) {
+        break;
+      }
+    }
+
+    if (seamLabels == null) {
+      Log.mandatory("No seam found with the shard starting at " + framesList.get(shard.first)
+          .getTitle() + ", continuing the stitched tracking into it");
+    }
+    // continue the stitched tracking into the shard until its frames match
+    while (seamLabels == null && stitched.lastTracked < shard.lastTracked) {
+      stitched.trackThrough(stitched.lastTracked + 1);
+      seam = stitched.lastTracked;
+      seamLabels = matchSeam(stitched, shard, seam);
+    }
+    if (seamLabels == null) {
+      // the stitched tracking replaced the whole shard
+      return;
+    }
+    Log.debug("Stitching the shard starting at " + framesList.get(shard.first).getTitle()
+        + " at " + framesList.get(seam).getTitle());
+
+    // the cells alive at the seam keep the labels of their tracks, the cells born after it are
+    // numbered on from the stitched highest label
+    int offset = stitched.highestCellLabels[seam] - shard.highestCellLabels[seam];
+    int[] renum = Arrays.copyOf(seamLabels, shard.highestCellLabels[shard.lastTracked] + 1);
+    for (int l = shard.highestCellLabels[seam] + 1; l < renum.length; l++) {
+      renum[l] = l + offset;
+    }
+
+    for (int f = stitched.lastTracked + 1; f <= shard.lastTracked; f++) {
+      ImageFrame frame = shard.frames.get(f);
+      // read back the frame written with the shard's labels and rewrite it with the stitched ones
+      frame.restoreTrackedImage();
+      frame.renumberGlobalLabels(renum);
+      frame.applyGlobalLabels();
+      frame.writeImage(params.getOutputDirectory(), params.getOutputPrefix());
+      frame.releaseImageTile();
+
+      stitched.frames.set(f, frame);
+      stitched.labelHashes[f] = shard.labelHashes[f];
+      stitched.highestCellLabels[f] = shard.highestCellLabels[f] + offset;
+    }
+    stitched.lastTracked = shard.lastTracked;
+    stitched.prevFrame = stitched.frames.get(shard.lastTracked);
+    stitched.tracker.setGlobalHighestCellLabel(stitched.highestCellLabels[shard.lastTracked]);
+  }
+
+  /**
+   * Check whether the window of frames ending at a frame matches between the stitched tracking
+   * and a shard: the label images and cells must be identical and the shard's global labels must
+   * map one to one onto the stitched global labels across the window.
+   *
+   * @param stitched the tracking stitched so far
+   * @param shard    the shard being stitched
+   * @param seam     the last frame of the window
+   * @return the stitched global label of each shard global label alive within the window, indexed
+   * by the shard label, or null if the window does not match
+   */
+  private int[] matchSeam(Shard stitched, Shard shard, int seam) {
+    int[] labels = new int[shard.highestCellLabels[seam] + 1];
+    int[] shardLabels = new int[stitched.highestCellLabels[seam] + 1];
+    for (int f = seam - seamWindow + 1; f <= seam; f++) {
+      if (f < shard.trackedFrom || stitched.labelHashes[f] != shard.labelHashes[f]) {
+        return null;
+      }
+      CellTable stitchedCells = stitched.frames.get(f).getCellTable();
+      CellTable shardCells = shard.frames.get(f).getCellTable();
+      if (!stitchedCells.hasSameFeatures(shardCells)) {
+        return null;
+      }
+      for (int i = 0; i < shardCells.size(); i++) {
+        int label = shardCells.getGlobalLabel(i);
+        int stitchedLabel = stitchedCells.getGlobalLabel(i);
+        if (labels[label] == 0 && shardLabels[stitchedLabel] == 0) {
+          labels[label] = stitchedLabel;
+          shardLabels[stitchedLabel] = label;
+        } else if (labels[label] != stitchedLabel || shardLabels[stitchedLabel] != label) {
+          return null;
+        }
+      }
+    }
+    return labels;
+  }
+
+  /**
+   * Create an untracked copy of a frame of the sequence, for a shard tracking a frame owned by
+   * another shard.
+   *
+   * @param frame the frame to copy
+   * @return a new ImageFrame reading the same image and writing to the same output
+   */
+  private static ImageFrame copyFrame(ImageFrame frame) {
+    ImageFrame copy = new ImageFrame(frame.getImage().getFilepath(),
+        frame.getImage().getOutputFilepath(), frame.getFrameNb(), frame.getTitle());
+    copy.setStripHeight(frame.getStripHeight());
+    copy.setMappedStorage(frame.getImage().isMappedStorage(),
+        frame.getImage().getScratchDirectory());
+    return copy;
+  }
+
+  /**
+   * A time chunk of the sequence tracked by its own LineageMapper, with its own global labels
+   * starting from 1 at the first frame it tracks. The frames before the first frame it owns are
+   * tracked to find the seam with the previous shard but are not written.
+   */
+  private class Shard implements Callable<Shard> {
+
+    // the first and last frames owned by the shard
+    private final int first;
+    private final int last;
+    // the first frame tracked by the shard
+    private final int trackedFrom;
+    private int lastTracked;
+    // the frames tracked by the shard indexed by frame number, null for the frames it has not
+    private final List<ImageFrame> frames;
+    // the hash of the image labels of each tracked frame, taken before the global labels are applied
+    private final long[] labelHashes;
+    // the highest global label assigned by the shard up to each tracked frame
+    private final int[] highestCellLabels;
+    private final LineageMapper tracker;
+    private ImageFrame prevFrame = null;
+
+    Shard(int first, int last, int trackedFrom) {
+      this.first = first;
+      this.last = last;
+      this.trackedFrom = trackedFrom;
+      this.lastTracked = trackedFrom - 1;
+
+      int nbFrames = framesList.size();
+      frames = new ArrayList<ImageFrame>(Collections.nCopies(nbFrames, (ImageFrame) null));
+      for (int f = trackedFrom; f < first; f++) {
+        frames.set(f, copyFrame(framesList.get(f)));
+      }
+      for (int f = first; f <= last; f++) {
+        frames.set(f, framesList.get(f));
+      }
+      labelHashes = new long[nbFrames];
+      highestCellLabels = new int[nbFrames];
+      tracker = new LineageMapper(params, frames, workerPool);
+    }
+
+    @Override
+    public Shard call() throws InterruptedException {
+      trackThrough(last);
+      return this;
+    }
+
+    /**
+     * Track the frames after the last tracked frame up to a given frame, writing the frames the
+     * shard owns. Frames past the ones assigned to the shard are tracked from fresh copies.
+     *
+     * @param end the last frame to track
+     * @throws InterruptedException
+     */
+    void trackThrough(int end) throws InterruptedException {
+      for (int f = lastTracked + 1; f <= end; f++) {
+        if (Thread.interrupted())
+          throw new InterruptedException("Lineage Mapper Interrupted");
+
+        ImageFrame curFrame = frames.get(f);
+        if (curFrame == null) {
+          curFrame = copyFrame(framesList.get(f));
+          frames.set(f, curFrame);
+        }
+        if (prevFrame != null && prevFrame.getState() == ImageFrame.State.RELEASED) {
+          // continuing from a frame that has already been written, reload its labels
+          prevFrame.restoreTrackedImage();
+        }
+        curFrame.readImage();
+
+        Log.mandatory("Tracking: " + (prevFrame == null ? "\"\"" : prevFrame.getTitle()) + " -> " + curFrame.getTitle());
+        long startTime = System.nanoTime();
+        tracker.trackImageFramePair(curFrame, prevFrame, f);
+        Log.mandatory("  took: " + ((System.nanoTime() - startTime) / 1000000) + " ms.");
+        highestCellLabels[f] = tracker.getGlobalHighestCellLabel();
+
+        if (prevFrame != null) {
+          finishFrame(prevFrame);
+        }
+        prevFrame = curFrame;
+        lastTracked = f;
+        params.setProgressBar(((double) nbTrackedFrames.incrementAndGet()) / nbFramesToTrack);
+      }
+
+      if (prevFrame != null && prevFrame.getState() < ImageFrame.State.WRITTEN) {
+        finishFrame(prevFrame);
+      }
+    }
+
+    /**
+     * Hash the labels of a tracked frame, then write it if the shard owns it and release its pixel
+     * data.
+     *
+     * @param frame the tracked frame
+     */
+    private void finishFrame(ImageFrame frame) {
+      int f = frame.getFrameNb();
+      labelHashes[f] = frame.getImage().getLabelHash();
+      if (f >= first) {
+        frame.applyGlobalLabels();
+        frame.writeImage(params.getOutputDirectory(), params.getOutputPrefix());
+        frame.releaseImageTile();
+      } else {
+        // the overlap frames belong to the previous shard, they are only compared at the seam
+        frame.getImage().releaseMemory();
+      }
+    }
+  }
+
+}
@@ -23,6 +23,7 @@ import gov.nist.isg.lineage.mapper.app.gui.panels.AdvancedPanel;
 import gov.nist.isg.lineage.mapper.app.gui.panels.OptionsPanel;
 import gov.nist.isg.lineage.mapper.app.utils.MacroUtils;
 import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.LineageAccumulator;
 import gov.nist.isg.lineage.mapper.lib.Log;
 import gov.nist.isg.lineage.mapper.metadata.BirthDeathMetadata;
 import gov.nist.isg.lineage.mapper.metadata.ConfidenceIndexMetadata;
@@ -63,12 +64,35 @@ public class TrackingAppParams {
   public static final String MIN_CELL_AREA_DESC = "minCellArea";
   public static final String MIN_FUSION_OVERLAP_DESC = "minFusionOverlap";
   public static final String FUSION_ENABLED_DESC = "enableCellFusion";
+  public static final String ASSIGNMENT_METHOD_DESC = "assignmentMethod";
+  public static final String NUM_WORKER_THREADS_DESC = "numWorkerThreads";
+  public static final String PIPELINE_DEPTH_DESC = "pipelineDepth";
+  public static final String PRECOMPUTE_FEATURES_DESC = "precomputeFeatures";
+  public static final String PRECOMPUTE_ASPECT_RATIO_DESC = "precomputeAspectRatio";
+  public static final String STRIP_HEIGHT_DESC = "stripHeight";
+  public static final String OFF_HEAP_LABELS_DESC = "offHeapLabels";
+  public static final String SCRATCH_DIRECTORY_DESC = "scratchDirectory";
+  public static final String CHECKPOINT_INTERVAL_DESC = "checkpointInterval";
+  public static final String TEMPORAL_SHARDS_DESC = "temporalShards";
+  public static final String TEMPORAL_SHARD_OVERLAP_DESC = "temporalShardOverlap";
+  public static final String SPATIAL_TILES_DESC = "spatialTiles";
+  public static final String SPATIAL_TILE_MARGIN_DESC = "spatialTileMargin";
+  public static final String MEMORY_BUDGET_DESC = "memoryBudget";
 
   public static final String INPUT_DIRECTORY_DESC = "inputDirectory";
   public static final String FILENAME_PATTERN_DESC = "filenamePrefix";
   public static final String OUTPUT_DIRECTORY_DESC = "outputDirectory";
   public static final String OUTPUT_PREFIX_DESC = "outputPrefix";
 
+  /**
+   * Methods available to assign the source and target cells left untracked after the initial
+   * tracking. GREEDY repeatedly assigns mutual minimum cost pairs, OPTIMAL solves the linear
+   * assignment problem between the untracked cells.
+   */
+  public enum AssignmentMethod {
+    GREEDY, OPTIMAL
+  }
+
   // Images
   private String inputDirectory = System.getProperty("user.home");
   private String filenamePattern = "img_{iiii}.tif";
@@ -96,11 +120,29 @@ public class TrackingAppParams {
   private int cellSizeThreshold = 100; // aka min cell area
   private double fusionOverlapThreshold = 0.2; // percentage
   private boolean enableCellFusion = false;
+  //	Assignment
+  private AssignmentMethod assignmentMethod = AssignmentMethod.GREEDY;
+  //	Performance
+  private int numWorkerThreads = Runtime.getRuntime().availableProcessors();
+  private int pipelineDepth = 2;
+  private boolean precomputeFeatures = false;
+  private boolean precomputeAspectRatio = false;
+  private int stripHeight = 0;
+  private boolean offHeapLabels = false;
+  private String scratchDirectory = "";
+  private int checkpointInterval = 0;
+  private int temporalShards = 1;
+  private int temporalShardOverlap = 10;
+  private int spatialTiles = 1;
+  private int spatialTileMargin = 100;
+  private int memoryBudget = 80;
 
 
   private CellTrackerGUI ctGUI;
   private boolean tracking = false;
   private boolean macro = false;
+  // resuming from a checkpoint applies to a single run, so it is not saved with the parameters
+  private boolean resume = false;
   private Thread trackingThread = null;
   private boolean saveMetadata = true;
   private boolean saveLineageViewerPage = true;
@@ -110,6 +152,7 @@ public class TrackingAppParams {
   private FusionMetadata fusionMetadata = null;
   private ConfidenceIndexMetadata confidenceIndexMetadata = null;
   private ObjectPositionMetadata objectPositionMetadata = null;
+  private LineageAccumulator lineageAccumulator = null;
   private List<ImageFrame> framesList = null;
 
 
@@ -154,6 +197,37 @@ public class TrackingAppParams {
       errors += "Invalid Mother Cell Circularity Threshold: \"" + motherCircularityThreshold + "\"\n";
     if(numFramesToCheckCircularity < 0)
       errors += "Invalid Number Frames to Check Circularity: \"" + numFramesToCheckCircularity + "\"\n";
+    // Performance
+    if(numWorkerThreads < 1)
+      errors += "Invalid Number of Worker Threads: \"" + numWorkerThreads + "\"\n";
+
+    if(pipelineDepth < 0)
+      errors += "Invalid Pipeline Depth: \"" + pipelineDepth + "\"\n";
+
+    if(stripHeight < 0)
+      errors += "Invalid Strip Height: \"" + stripHeight + "\"\n";
+
+    if(offHeapLabels && scratchDirectory != null && !scratchDirectory.isEmpty()
+        && !new File(scratchDirectory).isDirectory())
+      errors += "Invalid Scratch Directory: \"" + scratchDirectory + "\"\n";
+
+    if(checkpointInterval < 0)
+      errors += "Invalid Checkpoint Interval: \"" + checkpointInterval + "\"\n";
+
+    if(temporalShards < 1)
+      errors += "Invalid Temporal Shards: \"" + temporalShards + "\"\n";
+
+    if(temporalShardOverlap < 0)
+      errors += "Invalid Temporal Shard Overlap: \"" + temporalShardOverlap + "\"\n";
+
+    if(spatialTiles < 1)
+      errors += "Invalid Spatial Tiles: \"" + spatialTiles + "\"\n";
+
+    if(spatialTileMargin < 0)
+      errors += "Invalid Spatial Tile Margin: \"" + spatialTileMargin + "\"\n";
+
+    if(memoryBudget < 1 || memoryBudget > 100)
+      errors += "Invalid Memory Budget: \"" + memoryBudget + "\"\n";
 
     if (!errors.isEmpty()) {
       Log.setLogLevel(Log.LogType.MANDATORY);
@@ -210,11 +284,28 @@ public class TrackingAppParams {
     cellSizeThreshold = 100; // aka min cell area
     fusionOverlapThreshold = 0.2; // percentage
     enableCellFusion = false;
+    //	Assignment
+    assignmentMethod = AssignmentMethod.GREEDY;
+    //	Performance
+    numWorkerThreads = Runtime.getRuntime().availableProcessors();
+    pipelineDepth = 2;
+    precomputeFeatures = false;
+    precomputeAspectRatio = false;
+    stripHeight = 0;
+    offHeapLabels = false;
+    scratchDirectory = "";
+    checkpointInterval = 0;
+    temporalShards = 1;
+    temporalShardOverlap = 10;
+    spatialTiles = 1;
+    spatialTileMargin = 100;
+    memoryBudget = 80;
 
     birthDeathMetadata = null;
     divisionMetadata = null;
     fusionMetadata = null;
     confidenceIndexMetadata = null;
+    lineageAccumulator = null;
   }
 
 
@@ -253,6 +344,17 @@ public class TrackingAppParams {
     macro = val;
   }
 
+  /**
+   * @return true if tracking resumes from the checkpoint in the output directory.
+   */
+  public boolean isResume() {
+    return resume;
+  }
+
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
   public Thread getTrackingThread() {
     return trackingThread;
   }
@@ -336,6 +438,17 @@ public class TrackingAppParams {
     this.objectPositionMetadata = objectPositionMetadata;
   }
 
+  /**
+   * @return the lineage accumulated while tracking, which the metadata is generated from.
+   */
+  public LineageAccumulator getLineageAccumulator() {
+    return lineageAccumulator;
+  }
+
+  public void setLineageAccumulator(LineageAccumulator lineageAccumulator) {
+    this.lineageAccumulator = lineageAccumulator;
+  }
+
   public void setGuiPane(CellTrackerGUI gui) {
     this.ctGUI = gui;
   }
@@ -502,6 +615,118 @@ public class TrackingAppParams {
     this.enableCellFusion = enableCellFusion;
   }
 
+  public AssignmentMethod getAssignmentMethod() {
+    return assignmentMethod;
+  }
+
+  public void setAssignmentMethod(AssignmentMethod assignmentMethod) {
+    this.assignmentMethod = assignmentMethod;
+  }
+
+  public int getNumWorkerThreads() {
+    return numWorkerThreads;
+  }
+
+  public void setNumWorkerThreads(int numWorkerThreads) {
+    this.numWorkerThreads = numWorkerThreads;
+  }
+
+  public int getPipelineDepth() {
+    return pipelineDepth;
+  }
+
+  public void setPipelineDepth(int pipelineDepth) {
+    this.pipelineDepth = pipelineDepth;
+  }
+
+  public boolean isPrecomputeFeatures() {
+    return precomputeFeatures;
+  }
+
+  public void setPrecomputeFeatures(boolean precomputeFeatures) {
+    this.precomputeFeatures = precomputeFeatures;
+  }
+
+  public boolean isPrecomputeAspectRatio() {
+    return precomputeAspectRatio;
+  }
+
+  public void setPrecomputeAspectRatio(boolean precomputeAspectRatio) {
+    this.precomputeAspectRatio = precomputeAspectRatio;
+  }
+
+  public int getStripHeight() {
+    return stripHeight;
+  }
+
+  public void setStripHeight(int stripHeight) {
+    this.stripHeight = stripHeight;
+  }
+
+  public boolean isOffHeapLabels() {
+    return offHeapLabels;
+  }
+
+  public void setOffHeapLabels(boolean offHeapLabels) {
+    this.offHeapLabels = offHeapLabels;
+  }
+
+  public String getScratchDirectory() {
+    return scratchDirectory;
+  }
+
+  public void setScratchDirectory(String scratchDirectory) {
+    this.scratchDirectory = scratchDirectory;
+  }
+
+  public int getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public void setCheckpointInterval(int checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  public int getTemporalShards() {
+    return temporalShards;
+  }
+
+  public void setTemporalShards(int temporalShards) {
+    this.temporalShards = temporalShards;
+  }
+
+  public int getTemporalShardOverlap() {
+    return temporalShardOverlap;
+  }
+
+  public void setTemporalShardOverlap(int temporalShardOverlap) {
+    this.temporalShardOverlap = temporalShardOverlap;
+  }
+
+  public int getSpatialTiles() {
+    return spatialTiles;
+  }
+
+  public void setSpatialTiles(int spatialTiles) {
+    this.spatialTiles = spatialTiles;
+  }
+
+  public int getSpatialTileMargin() {
+    return spatialTileMargin;
+  }
+
+  public void setSpatialTileMargin(int spatialTileMargin) {
+    this.spatialTileMargin = spatialTileMargin;
+  }
+
+  public int getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  public void setMemoryBudget(int memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
 
   /**
    * Writes the current set of parameters to the log file.
@@ -545,9 +770,53 @@ public class TrackingAppParams {
     Log.mandatory(MIN_FUSION_OVERLAP_DESC + DS + df.format(fusionOverlapThreshold));
     Log.mandatory(FUSION_ENABLED_DESC + DS + enableCellFusion);
 
+    // Assignment
+    Log.mandatory(ASSIGNMENT_METHOD_DESC + DS + assignmentMethod);
+
+    // Performance
+    Log.mandatory(NUM_WORKER_THREADS_DESC + DS + numWorkerThreads);
+    Log.mandatory(PIPELINE_DEPTH_DESC + DS + pipelineDepth);
+    Log.mandatory(PRECOMPUTE_FEATURES_DESC + DS + precomputeFeatures);
+    Log.mandatory(PRECOMPUTE_ASPECT_RATIO_DESC + DS + precomputeAspectRatio);
+    Log.mandatory(STRIP_HEIGHT_DESC + DS + stripHeight);
+    Log.mandatory(OFF_HEAP_LABELS_DESC + DS + offHeapLabels);
+    Log.mandatory(SCRATCH_DIRECTORY_DESC + DS + scratchDirectory);
+    Log.mandatory(CHECKPOINT_INTERVAL_DESC + DS + checkpointInterval);
+    Log.mandatory(TEMPORAL_SHARDS_DESC + DS + temporalShards);
+    Log.mandatory(TEMPORAL_SHARD_OVERLAP_DESC + DS + temporalShardOverlap);
+    Log.mandatory(SPATIAL_TILES_DESC + DS + spatialTiles);
+    Log.mandatory(SPATIAL_TILE_MARGIN_DESC + DS + spatialTileMargin);
+    Log.mandatory(MEMORY_BUDGET_DESC + DS + memoryBudget);
+
   }
 
 
+  /**
+   * Get the parameters that determine the tracking result, one per line at full precision. The
+   * input, output and performance options are left out as they do not change the result.
+   * @return the tracking parameters as text.
+   */
+  public String getTrackingParamsFingerprint() {
+    return WGT_CELL_OVERLAP_DESC + DS + weightCellOverlap + newline
+        + WGT_CENTROIDS_DIST_DESC + DS + weightCentroids + newline
+        + WGT_CELL_SIZE_DESC + DS + weightCellSize + newline
+        + MAX_CENTROID_DIST_DESC + DS + maxCentroidsDist + newline
+        + MIN_CELL_LIFE_DESC + DS + minCellLife + newline
+        + CELL_DEATH_CENT_DESC + DS + cellDeathDeltaThreshold + newline
+        + DENSITY_AFFECT_CI_DESC + DS + cellDensityAffectsCI + newline
+        + BORDER_AFFECT_CI_DESC + DS + borderCellAffectsCI + newline
+        + D_SIZE_SIM_DESC + DS + daughterSizeSimilarity + newline
+        + MIN_DIV_OVERLAP_DESC + DS + divisionOverlapThreshold + newline
+        + D_ASPECT_RATIO_SIM_DESC + DS + daughterAspectRatioSimilarity + newline
+        + MOTHER_CIRC_IDX_DESC + DS + motherCircularityThreshold + newline
+        + NUM_FRAMES_CIRC_CHECK_DESC + DS + numFramesToCheckCircularity + newline
+        + DIV_ENABLED_DESC + DS + enableCellDivision + newline
+        + MIN_CELL_AREA_DESC + DS + cellSizeThreshold + newline
+        + MIN_FUSION_OVERLAP_DESC + DS + fusionOverlapThreshold + newline
+        + FUSION_ENABLED_DESC + DS + enableCellFusion + newline
+        + ASSIGNMENT_METHOD_DESC + DS + assignmentMethod + newline;
+  }
+
   /**
    * Writes the current set of parameters to a text file. This file can later be loaded by the
    * loadParamsFromFile functionality.
@@ -596,6 +865,24 @@ public class TrackingAppParams {
       bw.write(MIN_FUSION_OVERLAP_DESC + DS + df.format(fusionOverlapThreshold) + newline);
       bw.write(FUSION_ENABLED_DESC + DS + enableCellFusion + newline);
 
+      // Assignment
+      bw.write(ASSIGNMENT_METHOD_DESC + DS + assignmentMethod + newline);
+
+      // Performance
+      bw.write(NUM_WORKER_THREADS_DESC + DS + numWorkerThreads + newline);
+      bw.write(PIPELINE_DEPTH_DESC + DS + pipelineDepth + newline);
+      bw.write(PRECOMPUTE_FEATURES_DESC + DS + precomputeFeatures + newline);
+      bw.write(PRECOMPUTE_ASPECT_RATIO_DESC + DS + precomputeAspectRatio + newline);
+      bw.write(STRIP_HEIGHT_DESC + DS + stripHeight + newline);
+      bw.write(OFF_HEAP_LABELS_DESC + DS + offHeapLabels + newline);
+      bw.write(SCRATCH_DIRECTORY_DESC + DS + scratchDirectory + newline);
+      bw.write(CHECKPOINT_INTERVAL_DESC + DS + checkpointInterval + newline);
+      bw.write(TEMPORAL_SHARDS_DESC + DS + temporalShards + newline);
+      bw.write(TEMPORAL_SHARD_OVERLAP_DESC + DS + temporalShardOverlap + newline);
+      bw.write(SPATIAL_TILES_DESC + DS + spatialTiles + newline);
+      bw.write(SPATIAL_TILE_MARGIN_DESC + DS + spatialTileMargin + newline);
+      bw.write(MEMORY_BUDGET_DESC + DS + memoryBudget + newline);
+
       bw.close();
 
       Log.mandatory("Saved Parameters to " + file.getAbsolutePath());
@@ -629,75 +916,8 @@ public class TrackingAppParams {
       BufferedReader br = new BufferedReader(fr);
 
       String line = null;
-      while ((line = br.readLine()) != null) {
-        String[] contents = line.split(DS);
-
-        if (contents.length == 2) {
-          contents[0] = contents[0].trim();
-          contents[1] = contents[1].trim();
-
-          // Input
-          if (contents[0].equals(INPUT_DIRECTORY_DESC)) {
-            inputDirectory = contents[1];
-          } else if (contents[0].equals(FILENAME_PATTERN_DESC)) {
-            filenamePattern = contents[1];
-          }
-
-          // Output
-          if (contents[0].equals(OUTPUT_DIRECTORY_DESC)) {
-            outputDirectory = contents[1];
-          } else if (contents[0].equals(OUTPUT_PREFIX_DESC)) {
-            outputPrefix = contents[1];
-          }
-
-          // Cost Function
-          if (contents[0].equals(WGT_CELL_OVERLAP_DESC)) {
-            weightCellOverlap = loadDouble(contents[1], weightCellOverlap);
-          } else if (contents[0].equals(WGT_CENTROIDS_DIST_DESC)) {
-            weightCentroids = loadDouble(contents[1], weightCentroids);
-          } else if (contents[0].equals(WGT_CELL_SIZE_DESC)) {
-            weightCellSize = loadDouble(contents[1], weightCellSize);
-          } else if (contents[0].equals(MAX_CENTROID_DIST_DESC)) {
-            maxCentroidsDist = loadDouble(contents[1], maxCentroidsDist);
-          }
-
-          // Confidence Index
-          else if (contents[0].equals(MIN_CELL_LIFE_DESC)) {
-            minCellLife = loadInteger(contents[1], minCellLife);
-          } else if (contents[0].equals(CELL_DEATH_CENT_DESC)) {
-            cellDeathDeltaThreshold = loadDouble(contents[1], cellDeathDeltaThreshold);
-          } else if (contents[0].equals(DENSITY_AFFECT_CI_DESC)) {
-            cellDensityAffectsCI = loadBoolean(contents[1], cellDensityAffectsCI);
-          } else if (contents[0].equals(BORDER_AFFECT_CI_DESC)) {
-            borderCellAffectsCI = loadBoolean(contents[1], borderCellAffectsCI);
-          }
-
-          // Division
-          else if (contents[0].equals(D_SIZE_SIM_DESC)) {
-            daughterSizeSimilarity = loadDouble(contents[1], daughterSizeSimilarity);
-          } else if (contents[0].equals(MIN_DIV_OVERLAP_DESC)) {
-            divisionOverlapThreshold = loadDouble(contents[1], divisionOverlapThreshold);
-          } else if (contents[0].equals(D_ASPECT_RATIO_SIM_DESC)) {
-            daughterAspectRatioSimilarity = loadDouble(contents[1], daughterAspectRatioSimilarity);
-          } else if (contents[0].equals(MOTHER_CIRC_IDX_DESC)) {
-            motherCircularityThreshold = loadDouble(contents[1], motherCircularityThreshold);
-          } else if (contents[0].equals(NUM_FRAMES_CIRC_CHECK_DESC)) {
-            numFramesToCheckCircularity = loadInteger(contents[1], numFramesToCheckCircularity);
-          } else if (contents[0].equals(DIV_ENABLED_DESC)) {
-            enableCellDivision = loadBoolean(contents[1], enableCellDivision);
-          }
-
-          // Fusion
-          else if (contents[0].equals(MIN_CELL_AREA_DESC)) {
-            cellSizeThreshold = loadInteger(contents[1], cellSizeThreshold);
-          } else if (contents[0].equals(MIN_FUSION_OVERLAP_DESC)) {
-            fusionOverlapThreshold = loadDouble(contents[1], fusionOverlapThreshold);
-          } else if (contents[0].equals(FUSION_ENABLED_DESC)) {
-            enableCellFusion = loadBoolean(contents[1], enableCellFusion);
-          }
-
-        }
-      }
+      while ((line = br.readLine()) != null)
+        loadParam(line);
 
       br.close();
 
@@ -710,6 +930,127 @@ public class TrackingAppParams {
   }
 
 
+  /**
+   * Loads a single parameter, written as "name: value" like the lines of a parameter file, into
+   * this instance of TrackingAppParams. Lines which are not of this form are ignored.
+   * @param line the parameter line to load.
+   */
+  public void loadParam(String line) {
+    String[] contents = line.split(DS);
+
+    if (contents.length == 2) {
+      contents[0] = contents[0].trim();
+      contents[1] = contents[1].trim();
+
+      // Input
+      if (contents[0].equals(INPUT_DIRECTORY_DESC)) {
+        inputDirectory = contents[1];
+      } else if (contents[0].equals(FILENAME_PATTERN_DESC)) {
+        filenamePattern = contents[1];
+      }
+
+      // Output
+      if (contents[0].equals(OUTPUT_DIRECTORY_DESC)) {
+        outputDirectory = contents[1];
+      } else if (contents[0].equals(OUTPUT_PREFIX_DESC)) {
+        outputPrefix = contents[1];
+      }
+
+      // Cost Function
+      if (contents[0].equals(WGT_CELL_OVERLAP_DESC)) {
+        weightCellOverlap = loadDouble(contents[1], weightCellOverlap);
+      } else if (contents[0].equals(WGT_CENTROIDS_DIST_DESC)) {
+        weightCentroids = loadDouble(contents[1], weightCentroids);
+      } else if (contents[0].equals(WGT_CELL_SIZE_DESC)) {
+        weightCellSize = loadDouble(contents[1], weightCellSize);
+      } else if (contents[0].equals(MAX_CENTROID_DIST_DESC)) {
+        maxCentroidsDist = loadDouble(contents[1], maxCentroidsDist);
+      }
+
+      // Confidence Index
+      else if (contents[0].equals(MIN_CELL_LIFE_DESC)) {
+        minCellLife = loadInteger(contents[1], minCellLife);
+      } else if (contents[0].equals(CELL_DEATH_CENT_DESC)) {
+        cellDeathDeltaThreshold = loadDouble(contents[1], cellDeathDeltaThreshold);
+      } else if (contents[0].equals(DENSITY_AFFECT_CI_DESC)) {
+        cellDensityAffectsCI = loadBoolean(contents[1], cellDensityAffectsCI);
+      } else if (contents[0].equals(BORDER_AFFECT_CI_DESC)) {
+        borderCellAffectsCI = loadBoolean(contents[1], borderCellAffectsCI);
+      }
+
+      // Division
+      else if (contents[0].equals(D_SIZE_SIM_DESC)) {
+        daughterSizeSimilarity = loadDouble(contents[1], daughterSizeSimilarity);
+      } else if (contents[0].equals(MIN_DIV_OVERLAP_DESC)) {
+        divisionOverlapThreshold = loadDouble(contents[1], divisionOverlapThreshold);
+      } else if (contents[0].equals(D_ASPECT_RATIO_SIM_DESC)) {
+        daughterAspectRatioSimilarity = loadDouble(contents[1], daughterAspectRatioSimilarity);
+      } else if (contents[0].equals(MOTHER_CIRC_IDX_DESC)) {
+        motherCircularityThreshold = loadDouble(contents[1], motherCircularityThreshold);
+      } else if (contents[0].equals(NUM_FRAMES_CIRC_CHECK_DESC)) {
+        numFramesToCheckCircularity = loadInteger(contents[1], numFramesToCheckCircularity);
+      } else if (contents[0].equals(DIV_ENABLED_DESC)) {
+        enableCellDivision = loadBoolean(contents[1], enableCellDivision);
+      }
+
+      // Fusion
+      else if (contents[0].equals(MIN_CELL_AREA_DESC)) {
+        cellSizeThreshold = loadInteger(contents[1], cellSizeThreshold);
+      } else if (contents[0].equals(MIN_FUSION_OVERLAP_DESC)) {
+        fusionOverlapThreshold = loadDouble(contents[1], fusionOverlapThreshold);
+      } else if (contents[0].equals(FUSION_ENABLED_DESC)) {
+        enableCellFusion = loadBoolean(contents[1], enableCellFusion);
+      }
+
+      // Assignment
+      else if (contents[0].equals(ASSIGNMENT_METHOD_DESC)) {
+        assignmentMethod = loadAssignmentMethod(contents[1], assignmentMethod);
+      }
+
+      // Performance
+      else if (contents[0].equals(NUM_WORKER_THREADS_DESC)) {
+        numWorkerThreads = loadInteger(contents[1], numWorkerThreads);
+      }
+      else if (contents[0].equals(PIPELINE_DEPTH_DESC)) {
+        pipelineDepth = loadInteger(contents[1], pipelineDepth);
+      }
+      else if (contents[0].equals(PRECOMPUTE_FEATURES_DESC)) {
+        precomputeFeatures = loadBoolean(contents[1], precomputeFeatures);
+      }
+      else if (contents[0].equals(PRECOMPUTE_ASPECT_RATIO_DESC)) {
+        precomputeAspectRatio = loadBoolean(contents[1], precomputeAspectRatio);
+      }
+      else if (contents[0].equals(STRIP_HEIGHT_DESC)) {
+        stripHeight = loadInteger(contents[1], stripHeight);
+      }
+      else if (contents[0].equals(OFF_HEAP_LABELS_DESC)) {
+        offHeapLabels = loadBoolean(contents[1], offHeapLabels);
+      }
+      else if (contents[0].equals(SCRATCH_DIRECTORY_DESC)) {
+        scratchDirectory = contents[1];
+      }
+      else if (contents[0].equals(CHECKPOINT_INTERVAL_DESC)) {
+        checkpointInterval = loadInteger(contents[1], checkpointInterval);
+      }
+      else if (contents[0].equals(TEMPORAL_SHARDS_DESC)) {
+        temporalShards = loadInteger(contents[1], temporalShards);
+      }
+      else if (contents[0].equals(TEMPORAL_SHARD_OVERLAP_DESC)) {
+        temporalShardOverlap = loadInteger(contents[1], temporalShardOverlap);
+      }
+      else if (contents[0].equals(SPATIAL_TILES_DESC)) {
+        spatialTiles = loadInteger(contents[1], spatialTiles);
+      }
+      else if (contents[0].equals(SPATIAL_TILE_MARGIN_DESC)) {
+        spatialTileMargin = loadInteger(contents[1], spatialTileMargin);
+      }
+      else if (contents[0].equals(MEMORY_BUDGET_DESC)) {
+        memoryBudget = loadInteger(contents[1], memoryBudget);
+      }
+
+    }
+  }
+
   public static double loadDouble(String val, double def) {
     try {
       return Double.parseDouble(val.trim());
@@ -740,6 +1081,16 @@ public class TrackingAppParams {
     }
   }
 
+  public static AssignmentMethod loadAssignmentMethod(String val, AssignmentMethod def) {
+    try {
+      return AssignmentMethod.valueOf(val.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      Log.error(
+          "Error in loading assignment method value: " + val + " using default: " + def);
+      return def;
+    }
+  }
+
   /**
    * Records the current state of the tracking parameters into Java Prefs
    */
@@ -789,6 +1140,24 @@ public class TrackingAppParams {
     pref.putDouble(MIN_FUSION_OVERLAP_DESC, fusionOverlapThreshold);
     pref.putBoolean(FUSION_ENABLED_DESC, enableCellFusion);
 
+    // Assignment
+    pref.put(ASSIGNMENT_METHOD_DESC, assignmentMethod.name());
+
+    // Performance
+    pref.putInt(NUM_WORKER_THREADS_DESC, numWorkerThreads);
+    pref.putInt(PIPELINE_DEPTH_DESC, pipelineDepth);
+    pref.putBoolean(PRECOMPUTE_FEATURES_DESC, precomputeFeatures);
+    pref.putBoolean(PRECOMPUTE_ASPECT_RATIO_DESC, precomputeAspectRatio);
+    pref.putInt(STRIP_HEIGHT_DESC, stripHeight);
+    pref.putBoolean(OFF_HEAP_LABELS_DESC, offHeapLabels);
+    pref.put(SCRATCH_DIRECTORY_DESC, scratchDirectory);
+    pref.putInt(CHECKPOINT_INTERVAL_DESC, checkpointInterval);
+    pref.putInt(TEMPORAL_SHARDS_DESC, temporalShards);
+    pref.putInt(TEMPORAL_SHARD_OVERLAP_DESC, temporalShardOverlap);
+    pref.putInt(SPATIAL_TILES_DESC, spatialTiles);
+    pref.putInt(SPATIAL_TILE_MARGIN_DESC, spatialTileMargin);
+    pref.putInt(MEMORY_BUDGET_DESC, memoryBudget);
+
     try {
       pref.flush();
     } catch (BackingStoreException e) {
@@ -844,6 +1213,25 @@ public class TrackingAppParams {
     fusionOverlapThreshold = pref.getDouble(MIN_FUSION_OVERLAP_DESC, fusionOverlapThreshold);
     enableCellFusion = pref.getBoolean(FUSION_ENABLED_DESC, enableCellFusion);
 
+    // Assignment
+    assignmentMethod = loadAssignmentMethod(pref.get(ASSIGNMENT_METHOD_DESC,
+        assignmentMethod.name()), assignmentMethod);
+
+    // Performance
+    numWorkerThreads = pref.getInt(NUM_WORKER_THREADS_DESC, numWorkerThreads);
+    pipelineDepth = pref.getInt(PIPELINE_DEPTH_DESC, pipelineDepth);
+    precomputeFeatures = pref.getBoolean(PRECOMPUTE_FEATURES_DESC, precomputeFeatures);
+    precomputeAspectRatio = pref.getBoolean(PRECOMPUTE_ASPECT_RATIO_DESC, precomputeAspectRatio);
+    stripHeight = pref.getInt(STRIP_HEIGHT_DESC, stripHeight);
+    offHeapLabels = pref.getBoolean(OFF_HEAP_LABELS_DESC, offHeapLabels);
+    scratchDirectory = pref.get(SCRATCH_DIRECTORY_DESC, scratchDirectory);
+    checkpointInterval = pref.getInt(CHECKPOINT_INTERVAL_DESC, checkpointInterval);
+    temporalShards = pref.getInt(TEMPORAL_SHARDS_DESC, temporalShards);
+    temporalShardOverlap = pref.getInt(TEMPORAL_SHARD_OVERLAP_DESC, temporalShardOverlap);
+    spatialTiles = pref.getInt(SPATIAL_TILES_DESC, spatialTiles);
+    spatialTileMargin = pref.getInt(SPATIAL_TILE_MARGIN_DESC, spatialTileMargin);
+    memoryBudget = pref.getInt(MEMORY_BUDGET_DESC, memoryBudget);
+
 
     // push the updated parameters to the GUI
     pushParamsToGUI();
@@ -889,6 +1277,24 @@ public class TrackingAppParams {
     MacroUtils.recordDouble(MIN_FUSION_OVERLAP_DESC + DS, fusionOverlapThreshold);
     MacroUtils.recordBoolean(FUSION_ENABLED_DESC + DS, enableCellFusion);
 
+    // Assignment
+    MacroUtils.recordString(ASSIGNMENT_METHOD_DESC + DS, assignmentMethod.name());
+
+    // Performance
+    MacroUtils.recordInteger(NUM_WORKER_THREADS_DESC + DS, numWorkerThreads);
+    MacroUtils.recordInteger(PIPELINE_DEPTH_DESC + DS, pipelineDepth);
+    MacroUtils.recordBoolean(PRECOMPUTE_FEATURES_DESC + DS, precomputeFeatures);
+    MacroUtils.recordBoolean(PRECOMPUTE_ASPECT_RATIO_DESC + DS, precomputeAspectRatio);
+    MacroUtils.recordInteger(STRIP_HEIGHT_DESC + DS, stripHeight);
+    MacroUtils.recordBoolean(OFF_HEAP_LABELS_DESC + DS, offHeapLabels);
+    MacroUtils.recordString(SCRATCH_DIRECTORY_DESC + DS, scratchDirectory);
+    MacroUtils.recordInteger(CHECKPOINT_INTERVAL_DESC + DS, checkpointInterval);
+    MacroUtils.recordInteger(TEMPORAL_SHARDS_DESC + DS, temporalShards);
+    MacroUtils.recordInteger(TEMPORAL_SHARD_OVERLAP_DESC + DS, temporalShardOverlap);
+    MacroUtils.recordInteger(SPATIAL_TILES_DESC + DS, spatialTiles);
+    MacroUtils.recordInteger(SPATIAL_TILE_MARGIN_DESC + DS, spatialTileMargin);
+    MacroUtils.recordInteger(MEMORY_BUDGET_DESC + DS, memoryBudget);
+
     Recorder.saveCommand();
   }
 
@@ -939,6 +1345,38 @@ public class TrackingAppParams {
     cellSizeThreshold = MacroUtils.loadMacroInteger(macroOptions, MIN_CELL_AREA_DESC, cellSizeThreshold);
     fusionOverlapThreshold = MacroUtils.loadMacroDouble(macroOptions, MIN_FUSION_OVERLAP_DESC, fusionOverlapThreshold);
     enableCellFusion = MacroUtils.loadMacroBoolean(macroOptions, FUSION_ENABLED_DESC, enableCellFusion);
+
+    // Assignment
+    assignmentMethod = loadAssignmentMethod(MacroUtils.loadMacroString(macroOptions,
+        ASSIGNMENT_METHOD_DESC, assignmentMethod.name()), assignmentMethod);
+
+    // Performance
+    numWorkerThreads = MacroUtils.loadMacroInteger(macroOptions, NUM_WORKER_THREADS_DESC,
+        numWorkerThreads);
+    pipelineDepth = MacroUtils.loadMacroInteger(macroOptions, PIPELINE_DEPTH_DESC,
+        pipelineDepth);
+    precomputeFeatures = MacroUtils.loadMacroBoolean(macroOptions, PRECOMPUTE_FEATURES_DESC,
+        precomputeFeatures);
+    precomputeAspectRatio = MacroUtils.loadMacroBoolean(macroOptions, PRECOMPUTE_ASPECT_RATIO_DESC,
+        precomputeAspectRatio);
+    stripHeight = MacroUtils.loadMacroInteger(macroOptions, STRIP_HEIGHT_DESC,
+        stripHeight);
+    offHeapLabels = MacroUtils.loadMacroBoolean(macroOptions, OFF_HEAP_LABELS_DESC,
+        offHeapLabels);
+    scratchDirectory = MacroUtils.loadMacroString(macroOptions, SCRATCH_DIRECTORY_DESC,
+        scratchDirectory);
+    checkpointInterval = MacroUtils.loadMacroInteger(macroOptions, CHECKPOINT_INTERVAL_DESC,
+        checkpointInterval);
+    temporalShards = MacroUtils.loadMacroInteger(macroOptions, TEMPORAL_SHARDS_DESC,
+        temporalShards);
+    temporalShardOverlap = MacroUtils.loadMacroInteger(macroOptions, TEMPORAL_SHARD_OVERLAP_DESC,
+        temporalShardOverlap);
+    spatialTiles = MacroUtils.loadMacroInteger(macroOptions, SPATIAL_TILES_DESC,
+        spatialTiles);
+    spatialTileMargin = MacroUtils.loadMacroInteger(macroOptions, SPATIAL_TILE_MARGIN_DESC,
+        spatialTileMargin);
+    memoryBudget = MacroUtils.loadMacroInteger(macroOptions, MEMORY_BUDGET_DESC,
+        memoryBudget);
   }
 
 
@@ -946,6 +1384,9 @@ public class TrackingAppParams {
     String tab = "\t";
     System.out.println("-h, --help");
     System.out.println(tab + "display a help message and exit");
+    System.out.println("--resume");
+    System.out.println(tab + "resume tracking from the checkpoint in the output directory, see " +
+        CHECKPOINT_INTERVAL_DESC);
 
     System.out.println(TrackingAppParams.INPUT_DIRECTORY_DESC + " <value>");
     System.out.println(tab + "the input directory containing the image to track");
@@ -985,6 +1426,48 @@ public class TrackingAppParams {
     System.out.println(TrackingAppParams.FUSION_ENABLED_DESC + " <value>");
     System.out.println(tab + "is cell fusion enabled");
 
+    System.out.println(TrackingAppParams.ASSIGNMENT_METHOD_DESC + " <value>");
+    System.out.println(tab + "the method used to assign untracked cells, GREEDY or OPTIMAL");
+
+    System.out.println(TrackingAppParams.NUM_WORKER_THREADS_DESC + " <value>");
+    System.out.println(tab + "the number of threads used to parallelize the per frame computations");
+
+    System.out.println(TrackingAppParams.PIPELINE_DEPTH_DESC + " <value>");
+    System.out.println(tab + "the number of frames read and processed ahead of tracking, 0 disables the pipeline");
+
+    System.out.println(TrackingAppParams.PRECOMPUTE_FEATURES_DESC + " <value>");
+    System.out.println(tab + "read and process the pipelined frames concurrently on the worker threads (true/false)");
+
+    System.out.println(TrackingAppParams.PRECOMPUTE_ASPECT_RATIO_DESC + " <value>");
+    System.out.println(tab + "compute the cell aspect ratios in the pipeline feature stage (true/false)");
+
+    System.out.println(TrackingAppParams.STRIP_HEIGHT_DESC + " <value>");
+    System.out.println(tab + "the number of image rows the per pixel computations process at a time, 0 processes whole frames");
+
+    System.out.println(TrackingAppParams.OFF_HEAP_LABELS_DESC + " <value>");
+    System.out.println(tab + "keep the label images in memory mapped scratch files instead of the java heap (true/false)");
+
+    System.out.println(TrackingAppParams.SCRATCH_DIRECTORY_DESC + " <value>");
+    System.out.println(tab + "the directory holding the off heap label scratch files, empty uses the system temporary directory");
+
+    System.out.println(TrackingAppParams.CHECKPOINT_INTERVAL_DESC + " <value>");
+    System.out.println(tab + "the number of frames between tracking checkpoints written to the output directory, 0 disables checkpoints");
+
+    System.out.println(TrackingAppParams.TEMPORAL_SHARDS_DESC + " <value>");
+    System.out.println(tab + "the number of time chunks of the sequence tracked concurrently and stitched together, 1 tracks the sequence in a single pass");
+
+    System.out.println(TrackingAppParams.TEMPORAL_SHARD_OVERLAP_DESC + " <value>");
+    System.out.println(tab + "the number of frames each time chunk tracks ahead of its start to find the seam with the previous chunk");
+
+    System.out.println(TrackingAppParams.SPATIAL_TILES_DESC + " <value>");
+    System.out.println(tab + "the number of tiles along each side of the field tracked concurrently and merged together, 1 tracks the whole field at once");
+
+    System.out.println(TrackingAppParams.SPATIAL_TILE_MARGIN_DESC + " <value>");
+    System.out.println(tab + "the number of pixels each tile holds around the cells it owns, larger than the biggest cell plus its largest displacement between frames");
+
+    System.out.println(TrackingAppParams.MEMORY_BUDGET_DESC + " <value>");
+    System.out.println(tab + "Percentage of the maximum heap (-Xmx) the tracking plans to use, pipeline stages and batch jobs that do not fit are queued");
+
     System.out.println(TrackingAppParams.MIN_CELL_LIFE_DESC + " <value>");
     System.out.println(tab + "the minimum lifespan of a cell");
     System.out.println(TrackingAppParams.CELL_DEATH_CENT_DESC + " <value>");
@@ -6,44 +6,48 @@
 
 package gov.nist.isg.lineage.mapper.lib;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Object to hold the metadata about an individual cell being tracked
+ * Object to hold the metadata about an individual cell being tracked. The metadata is held in a row
+ * of a CellTable, the Cell is a view onto that row.
  */
 public class Cell {
 
-  private int globalLabel = 0;
-  private int imgLabel = 0;
-  private double area = 0;
-  private double centroidX = Double.NaN;
-  private double centroidY = Double.NaN;
-  private double perimeter = 0;
-  private double circularity = Double.NaN;
-  private boolean borderCell = false;
-  private double aspectRatio = Double.NaN;
-  private List<Integer> touchingCells = null;
-  // holds the images labels of the cells this cell touches
+  private final CellTable table;
+  private final int index;
 
   /**
    * Object to hold the metadata about an individual cell being tracked
    */
-  public Cell() {}
+  public Cell() {
+    this(0);
+  }
 
   /**
    * Object to hold the metadata about an individual cell being tracked
    * @param label the label of this cell in the image
    */
   public Cell(int label) {
-    this.imgLabel = label;
+    this.table = new CellTable(1, 0);
+    this.index = table.add(label);
+  }
+
+  /**
+   * View a cell held in a CellTable
+   * @param table the table holding the cell
+   * @param index the index of the cell within the table
+   */
+  Cell(CellTable table, int index) {
+    this.table = table;
+    this.index = index;
   }
 
   /**
    * @return the label of the cell in its source image
    */
   public int getGlobalLabel() {
-    return globalLabel;
+    return table.getGlobalLabel(index);
   }
 
 
@@ -52,7 +56,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setGlobalLabel(int label) {
-    this.globalLabel = label;
+    table.setGlobalLabel(index, label);
     return this;
   }
 
@@ -60,14 +64,14 @@ public class Cell {
    * @return the imgLabel, the label this cell has in the image
    */
   public int getImgLabel() {
-    return imgLabel;
+    return table.getImgLabel(index);
   }
 
   /**
    * @return the area
    */
   public double getArea() {
-    return area;
+    return table.getArea(index);
   }
 
   /**
@@ -75,7 +79,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setArea(double area) {
-    this.area = area;
+    table.setArea(index, area);
     return this;
   }
 
@@ -83,7 +87,7 @@ public class Cell {
    * @return the x component of the centroid
    */
   public double getCentroidX() {
-    return centroidX;
+    return table.getCentroidX(index);
   }
 
   /**
@@ -91,7 +95,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setCentroidX(double x) {
-    this.centroidX = x;
+    table.setCentroidX(index, x);
     return this;
   }
 
@@ -99,7 +103,7 @@ public class Cell {
    * @return the y component of the centroid
    */
   public double getCentroidY() {
-    return centroidY;
+    return table.getCentroidY(index);
   }
 
   /**
@@ -107,7 +111,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setCentroidY(double y) {
-    this.centroidY = y;
+    table.setCentroidY(index, y);
     return this;
   }
 
@@ -116,8 +120,8 @@ public class Cell {
    */
   public double[] getCentroids() {
     double[] ret = new double[2];
-    ret[0] = centroidX;
-    ret[1] = centroidY;
+    ret[0] = getCentroidX();
+    ret[1] = getCentroidY();
     return ret;
   }
 
@@ -127,8 +131,8 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setCentroids(double x, double y) {
-    this.centroidX = x;
-    this.centroidY = y;
+    table.setCentroidX(index, x);
+    table.setCentroidY(index, y);
     return this;
   }
 
@@ -136,7 +140,7 @@ public class Cell {
    * @return the perimeter
    */
   public double getPerimeter() {
-    return perimeter;
+    return table.getPerimeter(index);
   }
 
   /**
@@ -144,7 +148,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setPerimeter(double perimeter) {
-    this.perimeter = perimeter;
+    table.setPerimeter(index, perimeter);
     return this;
   }
 
@@ -152,7 +156,7 @@ public class Cell {
    * @return the circularity
    */
   public double getCircularity() {
-    return circularity;
+    return table.getCircularity(index);
   }
 
   /**
@@ -160,7 +164,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setCircularity(double circularity) {
-    this.circularity = circularity;
+    table.setCircularity(index, circularity);
     return this;
   }
 
@@ -168,7 +172,7 @@ public class Cell {
    * @return the borderCell
    */
   public boolean isBorderCell() {
-    return borderCell;
+    return table.isBorderCell(index);
   }
 
   /**
@@ -176,7 +180,7 @@ public class Cell {
    * @return current Cell object
    */
   public Cell setBorderCell(boolean borderCell) {
-    this.borderCell = borderCell;
+    table.setBorderCell(index, borderCell);
     return this;
   }
 
@@ -184,39 +188,60 @@ public class Cell {
    * @return the aspectRatio
    */
   public double getAspectRatio() {
-    return aspectRatio;
+    return table.getAspectRatio(index);
   }
 
   /**
    * @param aspectRatio the aspectRatio to set
    */
   public Cell setAspectRatio(double aspectRatio) {
-    this.aspectRatio = aspectRatio;
+    table.setAspectRatio(index, aspectRatio);
     return this;
   }
 
   /**
-   * @return a list of cells touching this cell
+   * @return a read-only list of the image labels of the cells touching this cell, null if it
+   * touches no other cell
    */
   public List<Integer> getTouchingCells() {
-    return touchingCells;
+    return table.getTouchingCells(index);
   }
 
+  /**
+   * @param touchingCells the image labels of the cells touching this cell. Only the last cell of a
+   *                      CellTable can have its touching cells set.
+   * @return current Cell object
+   */
   public Cell setTouchingCells(List<Integer> touchingCells) {
-    this.touchingCells = touchingCells;
+    table.setTouchingCells(index, touchingCells);
     return this;
   }
 
   /**
-   * Adds a cell index to the list of cells touching this one
+   * Adds a cell index to the list of cells touching this one. Only the last cell of a CellTable can
+   * have touching cells added.
    *
    * @param c the number of the cell to add to the touching list
    */
   public void addTouchingCell(Integer c) {
-    if (touchingCells == null) {
-      touchingCells = new ArrayList<Integer>();
+    table.addTouchingCell(index, c);
+  }
+
+  /**
+   * Cells are equal when they view the same row of the same CellTable.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Cell)) {
+      return false;
     }
-    touchingCells.add(c);
+    Cell c = (Cell) o;
+    return table == c.table && index == c.index;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(table) + index;
   }
 
   /**
@@ -224,8 +249,8 @@ public class Cell {
    */
   @Override
   public String toString() {
-    return "Cell: " + imgLabel + " label: " + globalLabel + " area: " + (int) area + " cent: ("
-        + (int) centroidX + "," + (int) centroidY + ")";
+    return "Cell: " + getImgLabel() + " label: " + getGlobalLabel() + " area: " + (int) getArea()
+        + " cent: (" + (int) getCentroidX() + "," + (int) getCentroidY() + ")";
   }
 
 
@@ -0,0 +1,351 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column store of the cells within a frame. Each feature is held in a primitive array indexed by
+ * the cell's position in the table, and the touching cells of all cells share a single array in
+ * compressed sparse row form. A frame with many cells is then a handful of arrays instead of an
+ * object per cell and a boxed list per cell. Cell objects are views onto a row of the table.
+ */
+public class CellTable {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int size = 0;
+  private int[] imgLabel;
+  private int[] globalLabel;
+  private double[] area;
+  private double[] centroidX;
+  private double[] centroidY;
+  private double[] perimeter;
+  private double[] circularity;
+  private double[] aspectRatio;
+  private boolean[] borderCell;
+  // the touching image labels of cell i are touching[touchingStart[i]] to
+  // touching[touchingStart[i + 1] - 1], touchingStart[size] is the number of touching entries
+  private int[] touchingStart;
+  private int[] touching;
+
+  private List<Cell> cellList = null;
+
+  /**
+   * Create an empty table.
+   */
+  public CellTable() {
+    this(DEFAULT_CAPACITY, 0);
+  }
+
+  /**
+   * Create an empty table sized to hold the expected number of cells without growing.
+   *
+   * @param nbCells    the number of cells the table is expected to hold.
+   * @param nbTouching the total number of touching cell entries the table is expected to hold.
+   */
+  public CellTable(int nbCells, int nbTouching) {
+    nbCells = Math.max(1, nbCells);
+    imgLabel = new int[nbCells];
+    globalLabel = new int[nbCells];
+    area = new double[nbCells];
+    centroidX = new double[nbCells];
+    centroidY = new double[nbCells];
+    perimeter = new double[nbCells];
+    circularity = new double[nbCells];
+    aspectRatio = new double[nbCells];
+    borderCell = new boolean[nbCells];
+    touchingStart = new int[nbCells + 1];
+    touching = new int[Math.max(1, nbTouching)];
+  }
+
+  /**
+   * Append a cell to the table. Its features start out unset: zero area and perimeter, NaN
+   * centroid, circularity and aspect ratio, and no touching cells.
+   *
+   * @param label the label of the cell in the image.
+   * @return the index of the new cell within the table.
+   */
+  public int add(int label) {
+    if (size == imgLabel.length) {
+      grow(2 * size);
+    }
+    int i = size++;
+    imgLabel[i] = label;
+    globalLabel[i] = 0;
+    area[i] = 0;
+    centroidX[i] = Double.NaN;
+    centroidY[i] = Double.NaN;
+    perimeter[i] = 0;
+    circularity[i] = Double.NaN;
+    aspectRatio[i] = Double.NaN;
+    borderCell[i] = false;
+    touchingStart[size] = touchingStart[i];
+    return i;
+  }
+
+  private void grow(int capacity) {
+    imgLabel = Arrays.copyOf(imgLabel, capacity);
+    globalLabel = Arrays.copyOf(globalLabel, capacity);
+    area = Arrays.copyOf(area, capacity);
+    centroidX = Arrays.copyOf(centroidX, capacity);
+    centroidY = Arrays.copyOf(centroidY, capacity);
+    perimeter = Arrays.copyOf(perimeter, capacity);
+    circularity = Arrays.copyOf(circularity, capacity);
+    aspectRatio = Arrays.copyOf(aspectRatio, capacity);
+    borderCell = Arrays.copyOf(borderCell, capacity);
+    touchingStart = Arrays.copyOf(touchingStart, capacity + 1);
+  }
+
+  /**
+   * Release the unused capacity of the table once all cells have been added.
+   */
+  public void trimToSize() {
+    if (size > 0 && size < imgLabel.length) {
+      grow(size);
+    }
+    if (touchingStart[size] < touching.length) {
+      touching = Arrays.copyOf(touching, Math.max(1, touchingStart[size]));
+    }
+  }
+
+  /**
+   * Check whether another table holds the same cells as this one, in the same order and with the
+   * same image labels, features and touching cells. The global labels are not compared.
+   *
+   * @param other the table to compare to.
+   * @return true if the cells of both tables are identical apart from their global labels.
+   */
+  public boolean hasSameFeatures(CellTable other) {
+    if (other.size != size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (imgLabel[i] != other.imgLabel[i] || borderCell[i] != other.borderCell[i]
+          || Double.compare(area[i], other.area[i]) != 0
+          || Double.compare(centroidX[i], other.centroidX[i]) != 0
+          || Double.compare(centroidY[i], other.centroidY[i]) != 0
+          || Double.compare(perimeter[i], other.perimeter[i]) != 0
+          || Double.compare(circularity[i], other.circularity[i]) != 0
+          || Double.compare(aspectRatio[i], other.aspectRatio[i]) != 0
+          || getTouchingCount(i) != other.getTouchingCount(i)) {
+        return false;
+      }
+      for (int k = 0; k < getTouchingCount(i); k++) {
+        if (getTouchingCell(i, k) != other.getTouchingCell(i, k)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of cells in the table.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get a view of a cell in the table.
+   *
+   * @param i the index of the cell.
+   * @return the Cell viewing row i of the table.
+   */
+  public Cell get(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Cell index " + i + " out of range, size " + size);
+    }
+    return new Cell(this, i);
+  }
+
+  /**
+   * Get the cells of the table as a read-only list of views. The views are created as they are
+   * accessed, so no per cell objects are retained by the table.
+   *
+   * @return the List of Cells in the table.
+   */
+  public List<Cell> asList() {
+    if (cellList == null) {
+      cellList = new CellList();
+    }
+    return cellList;
+  }
+
+  private class CellList extends AbstractList<Cell> implements RandomAccess {
+    @Override
+    public Cell get(int index) {
+      return CellTable.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  public int getImgLabel(int i) {
+    return imgLabel[i];
+  }
+
+  public int getGlobalLabel(int i) {
+    return globalLabel[i];
+  }
+
+  public void setGlobalLabel(int i, int label) {
+    globalLabel[i] = label;
+  }
+
+  public double getArea(int i) {
+    return area[i];
+  }
+
+  public void setArea(int i, double val) {
+    area[i] = val;
+  }
+
+  public double getCentroidX(int i) {
+    return centroidX[i];
+  }
+
+  public void setCentroidX(int i, double val) {
+    centroidX[i] = val;
+  }
+
+  public double getCentroidY(int i) {
+    return centroidY[i];
+  }
+
+  public void setCentroidY(int i, double val) {
+    centroidY[i] = val;
+  }
+
+  public double getPerimeter(int i) {
+    return perimeter[i];
+  }
+
+  public void setPerimeter(int i, double val) {
+    perimeter[i] = val;
+  }
+
+  public double getCircularity(int i) {
+    return circularity[i];
+  }
+
+  public void setCircularity(int i, double val) {
+    circularity[i] = val;
+  }
+
+  public double getAspectRatio(int i) {
+    return aspectRatio[i];
+  }
+
+  public void setAspectRatio(int i, double val) {
+    aspectRatio[i] = val;
+  }
+
+  public boolean isBorderCell(int i) {
+    return borderCell[i];
+  }
+
+  public void setBorderCell(int i, boolean val) {
+    borderCell[i] = val;
+  }
+
+  /**
+   * @param i the index of the cell.
+   * @return the number of cells touching cell i.
+   */
+  public int getTouchingCount(int i) {
+    return touchingStart[i + 1] - touchingStart[i];
+  }
+
+  /**
+   * @param i the index of the cell.
+   * @param k the index within the touching cells of cell i.
+   * @return the image label of the k-th cell touching cell i.
+   */
+  public int getTouchingCell(int i, int k) {
+    return touching[touchingStart[i] + k];
+  }
+
+  /**
+   * Get a read-only view of the image labels touching a cell.
+   *
+   * @param i the index of the cell.
+   * @return the List of touching image labels, or null if the cell touches no other cell.
+   */
+  public List<Integer> getTouchingCells(int i) {
+    if (getTouchingCount(i) == 0) {
+      return null;
+    }
+    return new TouchingList(i);
+  }
+
+  private class TouchingList extends AbstractList<Integer> implements RandomAccess {
+    private final int row;
+
+    TouchingList(int row) {
+      this.row = row;
+    }
+
+    @Override
+    public Integer get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index " + index + " out of range, size " + size());
+      }
+      return getTouchingCell(row, index);
+    }
+
+    @Override
+    public int size() {
+      return getTouchingCount(row);
+    }
+  }
+
+  /**
+   * Add a touching cell to the last cell in the table. The touching cells are stored in row
+   * order, so only the last cell added can have touching cells appended.
+   *
+   * @param i     the index of the cell, which must be the last cell in the table.
+   * @param label the image label of the touching cell.
+   */
+  public void addTouchingCell(int i, int label) {
+    if (i != size - 1) {
+      throw new IllegalStateException("Touching cells can only be added to the last cell");
+    }
+    int end = touchingStart[size];
+    if (end == touching.length) {
+      touching = Arrays.copyOf(touching, 2 * touching.length);
+    }
+    touching[end] = label;
+    touchingStart[size] = end + 1;
+  }
+
+  /**
+   * Replace the touching cells of the last cell in the table.
+   *
+   * @param i      the index of the cell, which must be the last cell in the table.
+   * @param labels the image labels of the touching cells, or null for none.
+   */
+  public void setTouchingCells(int i, List<Integer> labels) {
+    if (i != size - 1) {
+      throw new IllegalStateException("Touching cells can only be set on the last cell");
+    }
+    touchingStart[size] = touchingStart[i];
+    if (labels != null) {
+      for (Integer label : labels) {
+        addTouchingCell(i, label);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uniform grid spatial index over the centroids of the cells within an ImageFrame. Used to find
+ * the cells whose centroids lie within a given distance of a point without testing every cell.
+ */
+public class CentroidIndex {
+
+  // upper bound on the number of grid bins per indexed cell, keeps small search radii from
+  // creating an enormous grid over a large image
+  private static final int maxBinsPerCell = 4;
+
+  private double binSize;
+  private int nbBinsX;
+  private int nbBinsY;
+  private int[] binStart;
+  private Cell[] binnedCells;
+
+  /**
+   * Build the centroid index.
+   *
+   * @param cells   the cells to index
+   * @param binSize the desired width of each grid bin, normally the search radius that will be
+   *                used to query the index
+   */
+  public CentroidIndex(List<Cell> cells, double binSize) {
+    double maxX = 0;
+    double maxY = 0;
+    for (Cell c : cells) {
+      maxX = Math.max(maxX, c.getCentroidX());
+      maxY = Math.max(maxY, c.getCentroidY());
+    }
+
+    // limit the total number of bins to a small multiple of the number of cells
+    double minBinSize = Math.sqrt(((maxX + 1) * (maxY + 1)) / (maxBinsPerCell * (cells.size() + 1)));
+    this.binSize = Math.max(1.0, Math.max(binSize, minBinSize));
+    nbBinsX = (int) (maxX / this.binSize) + 1;
+    nbBinsY = (int) (maxY / this.binSize) + 1;
+
+    // counting sort of the cells into their bins
+    int[] binOf = new int[cells.size()];
+    binStart = new int[nbBinsX * nbBinsY + 1];
+    int k = 0;
+    for (Cell c : cells) {
+      binOf[k] = getBin(c.getCentroidX(), c.getCentroidY());
+      binStart[binOf[k] + 1]++;
+      k++;
+    }
+    for (int b = 1; b < binStart.length; b++) {
+      binStart[b] += binStart[b - 1];
+    }
+    int[] fill = new int[nbBinsX * nbBinsY];
+    binnedCells = new Cell[cells.size()];
+    k = 0;
+    for (Cell c : cells) {
+      int b = binOf[k++];
+      binnedCells[binStart[b] + fill[b]++] = c;
+    }
+  }
+
+  private int getBinX(double x) {
+    int bx = (int) Math.floor(x / binSize);
+    return Math.min(Math.max(bx, 0), nbBinsX - 1);
+  }
+
+  private int getBinY(double y) {
+    int by = (int) Math.floor(y / binSize);
+    return Math.min(Math.max(by, 0), nbBinsY - 1);
+  }
+
+  private int getBin(double x, double y) {
+    return getBinY(y) * nbBinsX + getBinX(x);
+  }
+
+  /**
+   * Find the candidate cells whose centroids could lie within radius of the point (x,y). The
+   * returned list contains every such cell, but can also contain cells that are further away, so
+   * callers must still test the exact distance.
+   *
+   * @param x      the x coordinate of the query point
+   * @param y      the y coordinate of the query point
+   * @param radius the search radius
+   * @return the list of candidate cells
+   */
+  public List<Cell> getCellsNear(double x, double y, double radius) {
+    List<Cell> ret = new ArrayList<Cell>();
+    int bxMin = getBinX(x - radius);
+    int bxMax = getBinX(x + radius);
+    int byMin = getBinY(y - radius);
+    int byMax = getBinY(y + radius);
+    for (int by = byMin; by <= byMax; by++) {
+      for (int bx = bxMin; bx <= bxMax; bx++) {
+        int b = by * nbBinsX + bx;
+        for (int k = binStart[b]; k < binStart[b + 1]; k++) {
+          ret.add(binnedCells[k]);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the width of the grid bins actually used by this index
+   */
+  public double getBinSize() {
+    return binSize;
+  }
+
+  /**
+   * Converts the index into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "CentroidIndex: " + nbBinsX + "x" + nbBinsY + " bins of size " + binSize;
+  }
+
+}
@@ -6,10 +6,8 @@
 
 package gov.nist.isg.lineage.mapper.lib;
 
-import java.awt.Point;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +15,13 @@ import java.util.Map;
  */
 public class ConnectedComponents {
 
+  // the offsets of the 8 neighbors, clockwise from the right neighbor
+  private static final int[] DIR_X = {1, 1, 0, -1, -1, -1, 0, 1};
+  private static final int[] DIR_Y = {0, 1, 1, 1, 0, -1, -1, -1};
+  private static final int DIR_MASK = 7;
+  private static final int NOT_FOUND = 8;
+  private static final double SQRT2 = Math.sqrt(2);
+
   /**
    * computes the perimeter of the labeled objects within the pixeldata.
    *
@@ -27,139 +32,213 @@ public class ConnectedComponents {
    * @param maxval the highest pixel value found within pixeldata
    * @return array of object perimeter lengths
    */
-  public static double[] getPerimeter(short[] pixeldata, int width, int maxval) {
+  public static double[] getPerimeter(int[] pixeldata, int width, int maxval) {
+
+    int height = pixeldata.length / width;
+    LabelStrip image = new LabelStrip(pixeldata, 0, width, 0, height, 0, height);
+
+    // find the first pixel row-wise
+    int[] startIndex = findStartPixels(pixeldata, maxval);
 
-    Map<Integer, int[][]> B = getBoundaryPixelList(pixeldata, width, maxval);
     double[] perimeter = new double[maxval];
     for (int label = 1; label <= maxval; label++) {
-
-      int[][] boundaryList = B.get(label);
       // if this object label does not exist in the pixel data
-      if(boundaryList == null)
+      if (startIndex[label - 1] < 0)
         continue;
 
-      perimeter[label-1] = 0;
-      for(int k = 1; k < boundaryList.length; k++) {
-        double dx =  boundaryList[k][0] - boundaryList[k-1][0];
-        double dy =  boundaryList[k][1] - boundaryList[k-1][1];
-        double delta = Math.sqrt(dx*dx + dy*dy);
-        perimeter[label-1] += delta;
-      }
+      perimeter[label - 1] = getBoundaryLength(image, startIndex[label - 1] % width,
+          startIndex[label - 1] / width, label);
     }
 
     return perimeter;
   }
 
+  /**
+   * Find the row-wise first pixel of each labeled object.
+   * @param pixeldata array of pixels
+   * @param maxval the highest pixel value found within pixeldata
+   * @return the index of the first pixel of each label (label - 1), or -1 if the label is absent
+   */
+  private static int[] findStartPixels(int[] pixeldata, int maxval) {
+    int[] startIndex = new int[maxval];
+    Arrays.fill(startIndex, -1);
+    for (int i = 0; i < pixeldata.length; i++) {
+      if (pixeldata[i] > 0 && startIndex[pixeldata[i] - 1] < 0) {
+        startIndex[pixeldata[i] - 1] = i;
+      }
+    }
+    return startIndex;
+  }
 
+  /**
+   * Trace the boundary of a single labeled object and return its length, the sum of the distances
+   * between consecutive boundary pixels. The strip must hold every row of the object plus one
+   * row above and below it.
+   *
+   * @param strip the strip of the image holding the object
+   * @param xS the x coordinate of the row-wise first pixel of the object
+   * @param yS the y coordinate of the row-wise first pixel of the object
+   * @param label the label of the object
+   * @return the length of the object boundary
+   */
+  public static double getBoundaryLength(LabelStrip strip, int xS, int yS, int label) {
+    return traceBoundary(strip, xS, yS, label, null);
+  }
 
-  public static Map<Integer,int[][]> getBoundaryPixelList(short[] pixeldata, int width, int maxval) {
+  public static Map<Integer,int[][]> getBoundaryPixelList(int[] pixeldata, int width, int maxval) {
     Map<Integer,int[][]> B = new HashMap<Integer,int[][]>(maxval+1);
 
-    int[][] startCoords = new int[maxval][2];
-    for (int i = 0; i < maxval; i++) {
-      startCoords[i][0] = -1;
-      startCoords[i][1] = -1;
-    }
+    int height = pixeldata.length / width;
+    LabelStrip image = new LabelStrip(pixeldata, 0, width, 0, height, 0, height);
 
     // find the first pixel row-wise
-    for (int i = 0; i < pixeldata.length; i++) {
-      if (pixeldata[i] > 0) {
-        // if this is the first time finding a pixel
-        if (startCoords[pixeldata[i] - 1][0] < 0) {
-          startCoords[pixeldata[i] - 1][0] = i % width;
-          startCoords[pixeldata[i] - 1][1] = i / width;
-        }
-      }
-    }
-
+    int[] startIndex = findStartPixels(pixeldata, maxval);
 
-    int xP, yP, xT, yT;
-    Point pt;
-    int dir;
-    boolean done;
+    // the boundary points of each label are traced into the same buffer
+    BoundaryPoints points = new BoundaryPoints();
 
     // Loop over the labeled objects in the image
     for (int label = 1; label <= maxval; label++) {
 
-      int xS = startCoords[label - 1][0];
-      int yS = startCoords[label - 1][1];
-
       // this label does not exit
-      if (xS < 0)
+      if (startIndex[label - 1] < 0)
         continue;
 
-      // allocate two lists to store the bound pixel locations
-      List<Integer> xLocs = new ArrayList<Integer>();
-      List<Integer> yLocs = new ArrayList<Integer>();
-
-      pt = new Point(xS, yS);
-      // add the starting point
-      xLocs.add(pt.x);
-      yLocs.add(pt.y);
-
-      dir = findNextPoint(pt, 0, pixeldata, width, label);
-      xT = pt.x;
-      yT = pt.y;
-
-      // true if isolated pixel
-      done = (xS == pt.x && yS == pt.y);
-      while (!done) {
-        // add the point to the perimeter list
-        xLocs.add(pt.x);
-        yLocs.add(pt.y);
-
-        // record the previous point
-        xP = pt.x;
-        yP = pt.y;
-        // find the next point
-        dir = (dir + 5) % 8;
-        dir = findNextPoint(pt, dir, pixeldata, width, label);
-
-        // back at the starting point, entering from the same direction
-        done = (xP == xS && yP == yS) && (pt.x == xT && pt.y == yT);
-      }
+      points.clear();
+      traceBoundary(image, startIndex[label - 1] % width, startIndex[label - 1] / width, label,
+          points);
 
-      // copy the boundary points into a 2D array
-      int[][] boundaryList = new int[xLocs.size()][2];
-      for(int i = 0; i < xLocs.size(); i++) {
-        boundaryList[i][0] = xLocs.get(i);
-        boundaryList[i][1] = yLocs.get(i);
-      }
       // add this labeled objects boundary to the output list
-      B.put(label, boundaryList);
+      B.put(label, points.toArray());
     }
 
     return B;
   }
 
+  /**
+   * Moore boundary tracing of a single labeled object, starting from its row-wise first pixel and
+   * stopping once it is back at the starting point, entering from the same direction. The length
+   * is accumulated while tracing, so no boundary points need to be stored.
+   *
+   * @param strip the strip of the image holding the object
+   * @param xS the x coordinate of the row-wise first pixel of the object
+   * @param yS the y coordinate of the row-wise first pixel of the object
+   * @param label the label of the object
+   * @param points the buffer receiving the boundary points, or null
+   * @return the length of the object boundary
+   */
+  private static double traceBoundary(LabelStrip strip, int xS, int yS, int label,
+                                      BoundaryPoints points) {
+    if (points != null) {
+      points.add(xS, yS);
+    }
+    int next = findNextPoint(strip, xS, yS, 0, label);
+    int dir = next & DIR_MASK;
+    int x = xS;
+    int y = yS;
+    if ((next & NOT_FOUND) == 0) {
+      x += DIR_X[dir];
+      y += DIR_Y[dir];
+    }
+    int xT = x;
+    int yT = y;
+
+    double length = 0;
+    // the previous point along the boundary
+    int xP = xS;
+    int yP = yS;
+    // true if isolated pixel
+    boolean done = (xS == x && yS == y);
+    while (!done) {
+      // add the point and the step to it
+      if (points != null) {
+        points.add(x, y);
+      }
+      length += getStepLength(x - xP, y - yP);
+
+      // record the previous point
+      xP = x;
+      yP = y;
+      // find the next point
+      next = findNextPoint(strip, x, y, (dir + 5) % 8, label);
+      dir = next & DIR_MASK;
+      if ((next & NOT_FOUND) == 0) {
+        x += DIR_X[dir];
+        y += DIR_Y[dir];
+      }
+
+      // back at the starting point, entering from the same direction
+      done = (xP == xS && yP == yS) && (x == xT && y == yT);
+    }
+    return length;
+  }
+
+  /**
+   * Get the length of a step between two pixels of the 3x3 neighborhood, 0 when not moving, 1
+   * along a row or column and sqrt(2) along a diagonal.
+   */
+  private static double getStepLength(int dx, int dy) {
+    if (dx == 0) {
+      return Math.abs(dy);
+    }
+    if (dy == 0) {
+      return Math.abs(dx);
+    }
+    return SQRT2;
+  }
+
   /**
    * worker method to find the next point along the perimeter within a 3x3 neighborhood.
-   * The Point passed in is updated with the new pixel location.
-   * @param pt the current point (pixel location) within the image
+   * @param strip the strip of the image holding the pixels around the current point
+   * @param x the x coordinate of the current point
+   * @param y the y coordinate of the current point
    * @param dir the direction to start searching in
-   * @param px the array of pixels
-   * @param width the width of the image
    * @param label the object label to find the next point of. Only pixel values matching this are
    *              considered for the next pixel.
-   * @return the direction of the next pixel along the perimeter.
+   * @return the direction of the next pixel along the perimeter. If none of the 7 searched
+   * neighbors matches, the direction following the last one searched with the NOT_FOUND bit set.
    */
-  private static int findNextPoint(Point pt, int dir, short[] px, int width, int label) {
-    final int[][] delta = {{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}};
-
+  private static int findNextPoint(LabelStrip strip, int x, int y, int dir, int label) {
     for (int i = 0; i < 7; i++) {
-      int x = pt.x + delta[dir][0];
-      int y = pt.y + delta[dir][1];
-      if (px[y * width + x] == label) {
-        pt.x = x;
-        pt.y = y;
-        break;
-      } else {
-        // not the right label
-        dir = (dir + 1) % 8;
+      if (strip.get(x + DIR_X[dir], y + DIR_Y[dir]) == label) {
+        return dir;
+      }
+      // not the right label
+      dir = (dir + 1) % 8;
+    }
+    return dir | NOT_FOUND;
+  }
+
+  /**
+   * Growable buffer of boundary points, reused from one traced object to the next.
+   */
+  private static class BoundaryPoints {
+
+    // x and y coordinates interleaved
+    private int[] xy = new int[64];
+    private int size = 0;
+
+    void add(int x, int y) {
+      if (2 * size == xy.length) {
+        xy = Arrays.copyOf(xy, 2 * xy.length);
       }
+      xy[2 * size] = x;
+      xy[2 * size + 1] = y;
+      size++;
     }
 
-    return dir;
+    void clear() {
+      size = 0;
+    }
+
+    int[][] toArray() {
+      int[][] a = new int[size][2];
+      for (int i = 0; i < size; i++) {
+        a[i][0] = xy[2 * i];
+        a[i][1] = xy[2 * i + 1];
+      }
+      return a;
+    }
   }
 
 
@@ -172,13 +251,13 @@ public class ConnectedComponents {
    * @param m the height of the image
    * @return the number of connected components found.
    */
-  public static int labelConnectedComponents(short[] pixeldata, int n, int m) {
+  public static int labelConnectedComponents(int[] pixeldata, int n, int m) {
 
-    short[] nbs = {0, 0, 0, 0};
-    short label = 1;
+    int[] nbs = {0, 0, 0, 0};
+    int label = 1;
     UnionFind uf = new UnionFind(m);
 
-    short minval;
+    int minval;
     int k;
     int endindx;
 
@@ -207,7 +286,7 @@ public class ConnectedComponents {
         if (nbs[0] == 0 && nbs[1] == 0) {
           pixeldata[k] = label++;
         } else {
-          minval = Short.MAX_VALUE;
+          minval = Integer.MAX_VALUE;
           if (nbs[0] > 0) {
             minval = (minval <= nbs[0]) ? minval : nbs[0];
           }
@@ -233,7 +312,7 @@ public class ConnectedComponents {
           if (nbs[0] == 0 && nbs[1] == 0 && nbs[2] == 0 && nbs[3] == 0) {
             pixeldata[k] = label++;
           } else {
-            minval = Short.MAX_VALUE;
+            minval = Integer.MAX_VALUE;
             if (nbs[0] > 0) {
               minval = (minval <= nbs[0]) ? minval : nbs[0];
             }
@@ -283,7 +362,7 @@ public class ConnectedComponents {
         if (nbs[0] == 0 && nbs[1] == 0 && nbs[2] == 0) {
           pixeldata[k] = label++;
         } else {
-          minval = Short.MAX_VALUE;
+          minval = Integer.MAX_VALUE;
           if (nbs[0] > 0) {
             minval = (minval <= nbs[0]) ? minval : nbs[0];
           }
@@ -312,7 +391,7 @@ public class ConnectedComponents {
     }
 
     // merge the label sets according to the equivalences in the union find data structure.
-    short[] labels = new short[label];
+    int[] labels = new int[label];
     for (int i = 0; i < label; i++) {
       labels[uf.root(i)] = 1;
     }
@@ -324,7 +403,7 @@ public class ConnectedComponents {
     }
     for (int i = 0; i < label; i++) {
       if (labels[i] > 0) {
-        labels[i] = (short) newNb++;
+        labels[i] = newNb++;
       }
     }
 
@@ -0,0 +1,180 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.BitSet;
+
+/**
+ * Records the pixel edits made to an ImageTile so that the overlap and cost derived from it can be
+ * patched instead of recomputed over the full frame. The edits are described by two parts:
+ *
+ * A label map, applied to every pixel in the image, which renumbers or merges labels without
+ * moving any pixels.
+ *
+ * A dirty bounding box, inside which individual pixels may have been given a different label. The
+ * labels inside the box are snapshot before the edits are made, so the change to the overlap can
+ * be computed from the old and new pixels of the box alone.
+ */
+public class DirtyRegion {
+
+  private int xMin = Integer.MAX_VALUE;
+  private int xMax = Integer.MIN_VALUE;
+  private int yMin = Integer.MAX_VALUE;
+  private int yMax = Integer.MIN_VALUE;
+
+  // the region snapshot before any pixel edits were made
+  private int[] snapshot = null;
+  private int snapXMin;
+  private int snapXMax;
+  private int snapYMin;
+  private int snapYMax;
+
+  // labels whose pixels were reported as edited
+  private BitSet touchedLabels = new BitSet();
+  // maps the labels before the edits onto the labels after, null is the identity
+  private int[] labelMap = null;
+
+  /**
+   * Snapshot the pixels of image within the given region before any edits are made. All later
+   * edits reported through addBox must fall inside this region for the patch to be valid.
+   *
+   * @param image the ImageTile about to be edited
+   * @param xMin  the starting x coordinate of the region
+   * @param xMax  the ending x coordinate of the region
+   * @param yMin  the starting y coordinate of the region
+   * @param yMax  the ending y coordinate of the region
+   */
+  public void snapshot(ImageTile image, int xMin, int xMax, int yMin, int yMax) {
+    snapXMin = Math.max(xMin, 0);
+    snapXMax = Math.min(xMax, image.getWidth() - 1);
+    snapYMin = Math.max(yMin, 0);
+    snapYMax = Math.min(yMax, image.getHeight() - 1);
+    snapshot = image.getSubImagePixelData(snapXMin, snapXMax, snapYMin, snapYMax);
+  }
+
+  /**
+   * Report that pixels within the given box may have been changed.
+   *
+   * @param xMin the starting x coordinate of the box
+   * @param xMax the ending x coordinate of the box
+   * @param yMin the starting y coordinate of the box
+   * @param yMax the ending y coordinate of the box
+   */
+  public void addBox(int xMin, int xMax, int yMin, int yMax) {
+    this.xMin = Math.min(this.xMin, xMin);
+    this.xMax = Math.max(this.xMax, xMax);
+    this.yMin = Math.min(this.yMin, yMin);
+    this.yMax = Math.max(this.yMax, yMax);
+  }
+
+  /**
+   * Report that the pixels of a label were edited.
+   *
+   * @param label the label, in the numbering in use at the time of the edit
+   */
+  public void addTouchedLabel(int label) {
+    if (label > 0) {
+      touchedLabels.set(label);
+    }
+  }
+
+  /**
+   * Report a renumbering applied to every pixel of the image. The renumbering is composed with any
+   * previously reported one, and the touched labels are carried over to the new numbering.
+   *
+   * @param map the new label of each old label, labels beyond the end of map are unchanged
+   */
+  public void addLabelMap(int[] map) {
+    if (labelMap == null) {
+      labelMap = map.clone();
+    } else {
+      int[] composed = new int[Math.max(labelMap.length, map.length)];
+      for (int i = 0; i < composed.length; i++) {
+        int l = (i < labelMap.length) ? labelMap[i] : i;
+        composed[i] = (l < map.length) ? map[l] : l;
+      }
+      labelMap = composed;
+    }
+
+    BitSet mapped = new BitSet();
+    for (int l = touchedLabels.nextSetBit(0); l >= 0; l = touchedLabels.nextSetBit(l + 1)) {
+      int nl = (l < map.length) ? map[l] : l;
+      if (nl > 0) {
+        mapped.set(nl);
+      }
+    }
+    touchedLabels = mapped;
+  }
+
+  /**
+   * @param label a label before the edits
+   * @return the label after applying the reported renumbering
+   */
+  public int mapLabel(int label) {
+    if (labelMap == null || label >= labelMap.length) {
+      return label;
+    }
+    return labelMap[label];
+  }
+
+  /**
+   * @return true if any pixels were reported as edited within the dirty box
+   */
+  public boolean hasBox() {
+    return xMin <= xMax && yMin <= yMax;
+  }
+
+  /**
+   * @return true if the dirty box lies within the snapshot region, meaning the snapshot holds the
+   * old label of every pixel that may have been edited
+   */
+  public boolean isBoxWithinSnapshot() {
+    if (!hasBox()) {
+      return true;
+    }
+    return snapshot != null && xMin >= snapXMin && xMax <= snapXMax && yMin >= snapYMin
+        && yMax <= snapYMax;
+  }
+
+  public boolean hasSnapshot() {
+    return snapshot != null;
+  }
+
+  public int[] getSnapshot() {
+    return snapshot;
+  }
+
+  public int getSnapshotXMin() {
+    return snapXMin;
+  }
+
+  public int getSnapshotXMax() {
+    return snapXMax;
+  }
+
+  public int getSnapshotYMin() {
+    return snapYMin;
+  }
+
+  public int getSnapshotYMax() {
+    return snapYMax;
+  }
+
+  public BitSet getTouchedLabels() {
+    return touchedLabels;
+  }
+
+  /**
+   * Converts the region into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "DirtyRegion: x: " + xMin + ":" + xMax + " y: " + yMin + ":" + yMax + ", touched=" +
+        touchedLabels.cardinality() + ", relabeled=" + (labelMap != null);
+  }
+
+}
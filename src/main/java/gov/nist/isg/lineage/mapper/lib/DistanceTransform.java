@@ -20,7 +20,7 @@ public class DistanceTransform {
    * @param width the width of the image
    * @param height the height of the image
    */
-  public static void assignNearestConnectedLabel(short[] marker, final short[] mask, int width,
+  public static void assignNearestConnectedLabel(int[] marker, final int[] mask, int width,
                                                  int height) {
 
     int k;
@@ -56,25 +56,25 @@ public class DistanceTransform {
         // check left pixel
         k = k - 1;
         if (marker[k] == 0 && mask[k] > 0) {
-          marker[k] = (short) label;
+          marker[k] = label;
           pixStack.push(k);
           edgeStack.data[i] = -1;
         }
         k = k - width + 1; // top
         if (marker[k] == 0 && mask[k] > 0) {
-          marker[k] = (short) label;
+          marker[k] = label;
           pixStack.push(k);
           edgeStack.data[i] = -1;
         }
         k = k + width + width; // bottom
         if (marker[k] == 0 && mask[k] > 0) {
-          marker[k] = (short) label;
+          marker[k] = label;
           pixStack.push(k);
           edgeStack.data[i] = -1;
         }
         k = k - width + 1; // right
         if (marker[k] == 0 && mask[k] > 0) {
-          marker[k] = (short) label;
+          marker[k] = label;
           pixStack.push(k);
           edgeStack.data[i] = -1;
         }
@@ -88,22 +88,22 @@ public class DistanceTransform {
           label = marker[k];
           k = k - width - 1; // top left
           if (marker[k] == 0 && mask[k] > 0) {
-            marker[k] = (short) label;
+            marker[k] = label;
             pixStack.push(k);
           }
           k = k + width + width; // bottom left
           if (marker[k] == 0 && mask[k] > 0) {
-            marker[k] = (short) label;
+            marker[k] = label;
             pixStack.push(k);
           }
           k = k - width - width + 2;  // top right
           if (marker[k] == 0 && mask[k] > 0) {
-            marker[k] = (short) label;
+            marker[k] = label;
             pixStack.push(k);
           }
           k = k + width + width; // bottom right
           if (marker[k] == 0 && mask[k] > 0) {
-            marker[k] = (short) label;
+            marker[k] = label;
             pixStack.push(k);
           }
         }
@@ -0,0 +1,325 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * The per label features of a label image, accumulated in a single row major pass: the area, the
+ * first and second moments, the bounding box, whether the label touches the image border, the
+ * pairs of touching labels and the first pixel of each label, from which its boundary is traced.
+ *
+ * The label image is consumed as its runs of equal labels, so the moments of a run are added in
+ * closed form rather than pixel by pixel, and the touching labels are found by intersecting the
+ * runs of consecutive rows. The moments are exact integer sums, taken relative to the first pixel
+ * of each label so that the second moments about the centroid can be computed without
+ * cancellation.
+ */
+public class FeatureKernel {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final int width;
+  private final int height;
+  private int maxLabel = 0;
+
+  // indexed by label - 1
+  private long[] area;
+  private long[] sumX;
+  private long[] sumY;
+  private long[] sumXX;
+  private long[] sumYY;
+  private long[] sumXY;
+  private int[] startIndex;
+  private int[] lastRow;
+  private int[] xMin;
+  private int[] xMax;
+  private int[] yMin;
+  private int[] yMax;
+  private boolean[] border;
+  // the pairs of touching labels, keyed by (label << 32 | neighbor label)
+  private final LongIntHashMap touching = new LongIntHashMap();
+
+  private FeatureKernel(int width, int height) {
+    this.width = width;
+    this.height = height;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Accumulate the features of every label of an image in one pass over its runs.
+   *
+   * @param runs           the run length encoding of the padded label image.
+   * @param borderDistance the distance to the image edge within which a label touches the border.
+   * @return the features of the labels of the image.
+   */
+  public static FeatureKernel scan(RunLengthImage runs, int borderDistance) {
+    int width = runs.getWidth();
+    int height = runs.getHeight();
+    FeatureKernel kernel = new FeatureKernel(width, height);
+    int pb = borderDistance;
+
+    for (int y = 0; y < height; y++) {
+      boolean rowOnBorder = y <= pb || y >= (height - pb - 1);
+      int rowEnd = runs.getRowStart(y + 1);
+      for (int k = runs.getRowStart(y); k < rowEnd; k++) {
+        int pix = runs.getRunLabel(k);
+        int x0 = runs.getRunX(k);
+        int x1 = x0 + runs.getRunLength(k) - 1;
+
+        // the runs are maximal, so a run directly left or right of this one has another label
+        if (k + 1 < rowEnd && runs.getRunX(k + 1) == x1 + 1) {
+          kernel.addTouching(pix, runs.getRunLabel(k + 1));
+        }
+
+        kernel.addRun(pix, y, x0, x1, rowOnBorder || x0 <= pb || x1 >= (width - pb - 1));
+      }
+
+      // the labels touching across the seam between this row and the one below
+      if (y + 1 < height) {
+        kernel.addTouchingRows(runs, y);
+      }
+    }
+    return kernel;
+  }
+
+  /**
+   * Record the pairs of different labels whose runs share a column in rows y and y + 1, in both
+   * directions.
+   */
+  private void addTouchingRows(RunLengthImage runs, int y) {
+    int a = runs.getRowStart(y);
+    int aEnd = runs.getRowStart(y + 1);
+    int b = aEnd;
+    int bEnd = runs.getRowStart(y + 2);
+    while (a < aEnd && b < bEnd) {
+      int aStop = runs.getRunX(a) + runs.getRunLength(a);
+      int bStop = runs.getRunX(b) + runs.getRunLength(b);
+      if (Math.max(runs.getRunX(a), runs.getRunX(b)) < Math.min(aStop, bStop)
+          && runs.getRunLabel(a) != runs.getRunLabel(b)) {
+        addTouching(runs.getRunLabel(a), runs.getRunLabel(b));
+      }
+      // advance whichever run ends first
+      if (aStop <= bStop) {
+        a++;
+      } else {
+        b++;
+      }
+    }
+  }
+
+  /**
+   * Record that two different labels touch, in both directions.
+   */
+  private void addTouching(int label, int neighbor) {
+    touching.put(((long) label << 32) | neighbor, 1);
+    touching.put(((long) neighbor << 32) | label, 1);
+  }
+
+  /**
+   * Add a run of pixels of a label within a row.
+   */
+  private void addRun(int label, int y, int x0, int x1, boolean onBorder) {
+    if (label > area.length) {
+      allocate(Math.max(label, 2 * area.length));
+    }
+    maxLabel = Math.max(maxLabel, label);
+    int l = label - 1;
+    if (startIndex[l] < 0) {
+      startIndex[l] = y * width + x0;
+    }
+    // the coordinates relative to the first pixel of the label
+    long dy = y - startIndex[l] / width;
+    long dx0 = x0 - startIndex[l] % width;
+    long dx1 = x1 - startIndex[l] % width;
+    long n = dx1 - dx0 + 1;
+    // the sum of dx and dx^2 over the run
+    long sx = (dx0 + dx1) * n / 2;
+    long sxx = sumOfSquares(dx1) - sumOfSquares(dx0 - 1);
+
+    area[l] += n;
+    sumX[l] += sx;
+    sumY[l] += dy * n;
+    sumXX[l] += sxx;
+    sumYY[l] += dy * dy * n;
+    sumXY[l] += dy * sx;
+
+    lastRow[l] = y;
+    xMin[l] = Math.min(xMin[l], x0);
+    xMax[l] = Math.max(xMax[l], x1);
+    yMin[l] = Math.min(yMin[l], y);
+    yMax[l] = Math.max(yMax[l], y);
+    if (onBorder) {
+      border[l] = true;
+    }
+  }
+
+  /**
+   * @return the sum of k^2 from 0 to n, which also holds for negative n as the difference of two
+   * such sums is the sum between them.
+   */
+  private static long sumOfSquares(long n) {
+    return n * (n + 1) * (2 * n + 1) / 6;
+  }
+
+  /**
+   * Grow the per label arrays to hold the labels up to capacity, the new labels being empty.
+   */
+  private void allocate(int capacity) {
+    int old = (area == null) ? 0 : area.length;
+    if (old == 0) {
+      area = new long[capacity];
+      sumX = new long[capacity];
+      sumY = new long[capacity];
+      sumXX = new long[capacity];
+      sumYY = new long[capacity];
+      sumXY = new long[capacity];
+      startIndex = new int[capacity];
+      lastRow = new int[capacity];
+      xMin = new int[capacity];
+      xMax = new int[capacity];
+      yMin = new int[capacity];
+      yMax = new int[capacity];
+      border = new boolean[capacity];
+    } else {
+      area = Arrays.copyOf(area, capacity);
+      sumX = Arrays.copyOf(sumX, capacity);
+      sumY = Arrays.copyOf(sumY, capacity);
+      sumXX = Arrays.copyOf(sumXX, capacity);
+      sumYY = Arrays.copyOf(sumYY, capacity);
+      sumXY = Arrays.copyOf(sumXY, capacity);
+      startIndex = Arrays.copyOf(startIndex, capacity);
+      lastRow = Arrays.copyOf(lastRow, capacity);
+      xMin = Arrays.copyOf(xMin, capacity);
+      xMax = Arrays.copyOf(xMax, capacity);
+      yMin = Arrays.copyOf(yMin, capacity);
+      yMax = Arrays.copyOf(yMax, capacity);
+      border = Arrays.copyOf(border, capacity);
+    }
+    Arrays.fill(startIndex, old, capacity, -1);
+    Arrays.fill(xMin, old, capacity, width);
+    Arrays.fill(yMin, old, capacity, height);
+  }
+
+  /**
+   * @return the highest label found in the image, 0 if it holds no labels.
+   */
+  public int getMaxLabel() {
+    return maxLabel;
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the number of pixels of the label, 0 if it is absent from the image.
+   */
+  public long getArea(int label) {
+    return area[label - 1];
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the x coordinate of the centroid of the label.
+   */
+  public double getCentroidX(int label) {
+    int l = label - 1;
+    return (double) (sumX[l] + area[l] * (startIndex[l] % width)) / area[l];
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the y coordinate of the centroid of the label.
+   */
+  public double getCentroidY(int label) {
+    int l = label - 1;
+    return (double) (sumY[l] + area[l] * (startIndex[l] / width)) / area[l];
+  }
+
+  /**
+   * Compute the aspect ratio of a label from its second moments about the centroid, (major axis
+   * length) / (minor axis length). Source: Digital Image Processing: An Algorithmic Introduction
+   * Using Java, by Wilhelm Burger and Mark J. Burge, pages 230-232.
+   *
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the aspect ratio of the label, NaN if it is absent from the image.
+   */
+  public double getAspectRatio(int label) {
+    int l = label - 1;
+    double m00 = area[l];
+    double m11 = centralSum(area[l], sumXY[l], sumX[l], sumY[l]) / m00;
+    double m20 = centralSum(area[l], sumXX[l], sumX[l], sumX[l]) / m00;
+    double m02 = centralSum(area[l], sumYY[l], sumY[l], sumY[l]) / m00;
+    double temp = Math.sqrt((m20 - m02) * (m20 - m02) + 4 * m11 * m11);
+    double a1 = Math.sqrt(2 * (m20 + m02 + temp) / m00);
+    double a2 = Math.sqrt(2 * (m20 + m02 - temp) / m00);
+    return a1 / a2;
+  }
+
+  /**
+   * Compute sum((a - mean(a)) * (b - mean(b))) from the raw sums, exactly while the products fit
+   * in a long.
+   */
+  private static double centralSum(long n, long sumAB, long sumA, long sumB) {
+    if (n == 0) {
+      return Double.NaN;
+    }
+    long limit = Long.MAX_VALUE / 2;
+    if (Math.abs(sumAB) <= limit / n && (sumB == 0 || Math.abs(sumA) <= limit / Math.abs(sumB))) {
+      return (double) (n * sumAB - sumA * sumB) / n;
+    }
+    return sumAB - (double) sumA * sumB / n;
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return true if the label lies within the border distance of the image edge.
+   */
+  public boolean isBorder(int label) {
+    return border[label - 1];
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the index of the row-wise first pixel of the label, -1 if it is absent.
+   */
+  public int getStartIndex(int label) {
+    return startIndex[label - 1];
+  }
+
+  /**
+   * @param label the label, from 1 to getMaxLabel().
+   * @return the last row holding a pixel of the label.
+   */
+  public int getLastRow(int label) {
+    return lastRow[label - 1];
+  }
+
+  /**
+   * @return the pairs of touching labels as (label << 32 | neighbor label), in increasing order.
+   */
+  public long[] getTouchingPairs() {
+    long[] pairs = touching.keys();
+    Arrays.sort(pairs);
+    return pairs;
+  }
+
+  /**
+   * Get the bounding boxes of the labels, a getMaxLabel() by 4 array holding [xMin, xMax, yMin,
+   * yMax] for each label. An absent label has the box [width, 0, height, 0].
+   *
+   * @return array of bounding box data.
+   */
+  public int[][] getBoundingBoxes() {
+    int[][] bb = new int[maxLabel][4];
+    for (int l = 0; l < maxLabel; l++) {
+      bb[l][0] = xMin[l];
+      bb[l][1] = xMax[l];
+      bb[l][2] = yMin[l];
+      bb[l][3] = yMax[l];
+    }
+    return bb;
+  }
+}
@@ -0,0 +1,193 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.BitSet;
+
+/**
+ * Greedy mutual minimum assignment between the rows and columns of a SparseCostMatrix. A pair
+ * (i,j) is assigned when j is the minimum cost column of row i and i is the minimum cost row of
+ * column j, ties going to the lowest index as in Matrix2D.rowWiseMin and colWiseMin. The assigned
+ * row and column are then removed and the search continues until no mutual minimum remains.
+ *
+ * A mutual minimum pair stays a mutual minimum when other rows and columns are removed, so the
+ * pairs can be assigned in any order and the result is always the same as repeatedly assigning
+ * every mutual minimum of the whole matrix. This allows a worklist of rows to recheck instead of
+ * rescanning the matrix after every round. Each row and column keeps its entries sorted by cost
+ * and a pointer to its best remaining entry, which only ever moves forward.
+ */
+public class GreedyAssignment {
+
+  private GreedyAssignment() {
+  }
+
+  /**
+   * Assign the mutual minimum pairs of the valid, unmasked pairs of cost.
+   *
+   * @param cost the cost matrix, invalid pairs (NaN) can never be assigned
+   * @return an array of length cost.getM()+1 holding the column assigned to each row, 0 if the row
+   * is unassigned. Index 0 is unused.
+   */
+  public static int[] solve(SparseCostMatrix cost) {
+    int m = cost.getM();
+    int n = cost.getN();
+    int[] assignment = new int[m + 1];
+
+    BitSet activeRows = new BitSet(m + 1);
+    BitSet activeCols = new BitSet(n + 1);
+    activeRows.set(1, m + 1);
+    activeCols.set(1, n + 1);
+    for (int i = 1; i <= m; i++) {
+      if (cost.isRowMasked(i)) {
+        activeRows.clear(i);
+      }
+    }
+    for (int j = 1; j <= n; j++) {
+      if (cost.isColumnMasked(j)) {
+        activeCols.clear(j);
+      }
+    }
+
+    // entries of each row ordered by (cost, column)
+    int nnz = cost.rowEnd(m);
+    int[] rowStart = new int[m + 2];
+    int[] rowOrder = new int[nnz];
+    int[] rowCols = new int[nnz];
+    double[] rowVals = new double[nnz];
+    int[] tmp = new int[nnz];
+    for (int i = 1; i <= m; i++) {
+      rowStart[i] = cost.rowStart(i);
+      for (int k = cost.rowStart(i); k < cost.rowEnd(i); k++) {
+        rowOrder[k] = k;
+        rowCols[k] = cost.getColumn(k);
+        // adding zero folds -0.0 into 0.0 so ordering matches the < comparisons of Matrix2D
+        rowVals[k] = cost.getRowValue(k) + 0.0;
+      }
+      sortByCost(rowOrder, rowVals, cost.rowStart(i), cost.rowEnd(i), tmp);
+    }
+    rowStart[m + 1] = nnz;
+
+    // entries of each column ordered by (cost, row)
+    int[] colStart = new int[n + 2];
+    int[] colOrder = new int[nnz];
+    int[] colRows = new int[nnz];
+    double[] colVals = new double[nnz];
+    for (int j = 1; j <= n; j++) {
+      colStart[j] = cost.colStart(j);
+      for (int k = cost.colStart(j); k < cost.colEnd(j); k++) {
+        colOrder[k] = k;
+        colRows[k] = cost.getRow(k);
+        colVals[k] = cost.getColValue(k) + 0.0;
+      }
+      sortByCost(colOrder, colVals, cost.colStart(j), cost.colEnd(j), tmp);
+    }
+    colStart[n + 1] = nnz;
+
+    // pointer to the best remaining entry of each row and column
+    int[] rowBest = new int[m + 1];
+    int[] colBest = new int[n + 1];
+    for (int i = 1; i <= m; i++) {
+      rowBest[i] = rowStart[i];
+    }
+    for (int j = 1; j <= n; j++) {
+      colBest[j] = colStart[j];
+    }
+
+    // worklist of rows whose mutual minimum status needs to be checked
+    int[] stack = new int[m + 2 * nnz + 1];
+    int top = 0;
+    for (int i = m; i >= 1; i--) {
+      if (activeRows.get(i)) {
+        stack[top++] = i;
+      }
+    }
+
+    while (top > 0) {
+      int i = stack[--top];
+      if (!activeRows.get(i)) {
+        continue;
+      }
+      int j = bestColumn(i, rowBest, rowStart, rowOrder, rowCols, activeCols);
+      if (j == 0) {
+        // columns are only ever removed, this row can never be assigned
+        activeRows.clear(i);
+        continue;
+      }
+      if (bestRow(j, colBest, colStart, colOrder, colRows, activeRows) != i) {
+        continue;
+      }
+
+      // mutual minimum found, assign it and remove its row and column
+      assignment[i] = j;
+      activeRows.clear(i);
+      activeCols.clear(j);
+
+      // rows that had an entry in column j may have lost their best column
+      for (int k = colStart[j]; k < colStart[j + 1]; k++) {
+        int r = colRows[k];
+        if (activeRows.get(r)) {
+          stack[top++] = r;
+        }
+      }
+      // columns that had an entry in row i may now be best matched to a different row
+      for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+        int c = rowCols[k];
+        if (activeCols.get(c)) {
+          int r = bestRow(c, colBest, colStart, colOrder, colRows, activeRows);
+          if (r != 0) {
+            stack[top++] = r;
+          }
+        }
+      }
+    }
+
+    return assignment;
+  }
+
+  private static int bestColumn(int i, int[] rowBest, int[] rowStart, int[] rowOrder,
+                                int[] rowCols, BitSet activeCols) {
+    while (rowBest[i] < rowStart[i + 1] && !activeCols.get(rowCols[rowOrder[rowBest[i]]])) {
+      rowBest[i]++;
+    }
+    return (rowBest[i] < rowStart[i + 1]) ? rowCols[rowOrder[rowBest[i]]] : 0;
+  }
+
+  private static int bestRow(int j, int[] colBest, int[] colStart, int[] colOrder,
+                             int[] colRows, BitSet activeRows) {
+    while (colBest[j] < colStart[j + 1] && !activeRows.get(colRows[colOrder[colBest[j]]])) {
+      colBest[j]++;
+    }
+    return (colBest[j] < colStart[j + 1]) ? colRows[colOrder[colBest[j]]] : 0;
+  }
+
+  /**
+   * Stable merge sort of the entry positions order[from, to) by cost. The positions within a row
+   * or column are initially in index order, so stability resolves ties to the lowest index.
+   */
+  private static void sortByCost(int[] order, double[] vals, int from, int to, int[] tmp) {
+    if (to - from < 2) {
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sortByCost(order, vals, from, mid, tmp);
+    sortByCost(order, vals, mid, to, tmp);
+    if (vals[order[mid - 1]] <= vals[order[mid]]) {
+      return;
+    }
+    System.arraycopy(order, from, tmp, from, to - from);
+    int a = from;
+    int b = mid;
+    for (int k = from; k < to; k++) {
+      if (b >= to || (a < mid && vals[tmp[a]] <= vals[tmp[b]])) {
+        order[k] = tmp[a++];
+      } else {
+        order[k] = tmp[b++];
+      }
+    }
+  }
+
+}
@@ -8,16 +8,22 @@ package gov.nist.isg.lineage.mapper.lib;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import ij.IJ;
-import ij.io.FileSaver;
 
 
 public class ImageFrame implements Comparable<ImageFrame> {
 
   private static final boolean roundCentroids = false;
-  private static final int distToEdgeToConsiderOnBorder = 2;
+  // the number of labels whose boundaries are traced by one worker pool task
+  private static final int BOUNDARY_LABELS_PER_TASK = 256;
+  // the distance from the image edge within which a cell is considered to touch the border
+  public static final int distToEdgeToConsiderOnBorder = 2;
 
   // State class to manage what computation has been done
   public static class State {
@@ -27,19 +33,32 @@ public class ImageFrame implements Comparable<ImageFrame> {
     public static int TRACKED = 3;
     public static int WRITTEN = 4;
     public static int RELEASED = 5;
+    public static int RETIRED = 6;
   }
 
   private int imageFrameState = State.INIT;
   private int frameNumber;
-  private List<Cell> cells;
+  private CellTable cells;
   private Matrix2D trackVector;
-  private Matrix2D fusion;
+  private SparseFusion fusion;
   private Matrix2D division;
-  private Matrix2D cost;
-  private Matrix2D overlap;
+  private SparseCostMatrix cost;
+  private SparseOverlap overlap;
   private String title;
   private int maxCellLabelNumber;
   private ImageTile image;
+  private CentroidIndex centroidIndex;
+  private TouchingGraph touchingGraph;
+  // the per label features of the image and the modification count of the pixels they describe
+  private FeatureKernel features;
+  private int featuresModCount;
+  // the number of rows processed at a time, 0 processes the whole frame at once
+  private int stripHeight = 0;
+  // lookup of the cell table index (+1) by image label, rebuilt whenever the cells are regenerated
+  private int[] cellsByImgLabel;
+  private int maxCellImgLabel;
+  // lookup of the cell list index (+1) by global label, built once the global labels are final
+  private LongIntHashMap cellsByGlobalLabel;
 
   /**
    * Create a new ImageFrame.
@@ -81,61 +100,61 @@ public class ImageFrame implements Comparable<ImageFrame> {
   }
 
   /**
-   * Get a reference to the overlap Matrix2D of this ImageFrame.
+   * Get a reference to the SparseOverlap of this ImageFrame.
    *
-   * @return the Matrix2D overlap for this ImageFrame.
+   * @return the SparseOverlap for this ImageFrame.
    */
-  public Matrix2D getOverlap() {
+  public SparseOverlap getOverlap() {
     return this.overlap;
   }
 
   /**
-   * Set the Matrix2D overlap for this ImageFrame.
+   * Set the SparseOverlap for this ImageFrame.
    *
-   * @param overlap the new overlap Matrix2D.
+   * @param overlap the new SparseOverlap.
    * @return a reference to this ImageFrame.
    */
-  public ImageFrame setOverlap(Matrix2D overlap) {
+  public ImageFrame setOverlap(SparseOverlap overlap) {
     this.overlap = overlap;
     return this;
   }
 
   /**
-   * Get a reference to the cost Matrix2D of this ImageFrame.
+   * Get a reference to the cost SparseCostMatrix of this ImageFrame.
    *
-   * @return the Matrix2D cost for this ImageFrame.
+   * @return the SparseCostMatrix cost for this ImageFrame.
    */
-  public Matrix2D getCost() {
+  public SparseCostMatrix getCost() {
     return this.cost;
   }
 
   /**
-   * Set the Matrix2D cost for this ImageFrame.
+   * Set the SparseCostMatrix cost for this ImageFrame.
    *
-   * @param cost the new cost Matrix2D
+   * @param cost the new cost SparseCostMatrix
    * @return a reference to this ImageFrame.
    */
-  public ImageFrame setCost(Matrix2D cost) {
+  public ImageFrame setCost(SparseCostMatrix cost) {
     this.cost = cost;
     return this;
   }
 
   /**
-   * Get a reference to the fusion Matrix2D of this ImageFrame.
+   * Get a reference to the fusion SparseFusion of this ImageFrame.
    *
-   * @return the Matrix2D fusion for this ImageFrame.
+   * @return the SparseFusion fusion for this ImageFrame.
    */
-  public Matrix2D getFusion() {
+  public SparseFusion getFusion() {
     return this.fusion;
   }
 
   /**
-   * Set the Matrix2D fusion for this ImageFrame.
+   * Set the SparseFusion fusion for this ImageFrame.
    *
-   * @param fusion the new fusion Matrix2D
+   * @param fusion the new fusion SparseFusion
    * @return a reference to this ImageFrame.
    */
-  public ImageFrame setFusion(Matrix2D fusion) {
+  public ImageFrame setFusion(SparseFusion fusion) {
     this.fusion = fusion;
     return this;
   }
@@ -202,24 +221,30 @@ public class ImageFrame implements Comparable<ImageFrame> {
 
     Log.debug("Renumbering " + this.getTitle() + " to output global tracked numbering");
     // create a renumbering vector to relabel pixels from the imgLabel to the cells new label
-    short[] renum = new short[this.getMaxCellImgLabelNumber() + 1];
+    int[] renum = new int[this.getMaxCellImgLabelNumber() + 1];
     for (int i = 0; i < renum.length; i++) {
       renum[i] = 0;
     }
 
-    for (Cell c : this.cells) {
-      renum[c.getImgLabel()] = (short) c.getGlobalLabel();
+    for (int i = 0; i < cells.size(); i++) {
+      renum[cells.getImgLabel(i)] = cells.getGlobalLabel(i);
     }
 
-    // get a reference to the current image pixeldata
-    short[] px = image.getPixelData();
+    // relabel the image pixeldata to the target labels
+    image.relabel(renum);
+  }
 
-    // loop over the image pixeldata relabeling the pixels to the target labels
-    for (int i = 0; i < px.length; i++) {
-      if (px[i] > 0) {
-        px[i] = renum[px[i]];
-      }
+  /**
+   * Renumber the global labels of the cells within this ImageFrame, cell label l becoming
+   * renum[l]. The pixel data is left unchanged until the global labels are applied.
+   *
+   * @param renum the new global label of each global label, indexed by the current label.
+   */
+  public void renumberGlobalLabels(int[] renum) {
+    for (int i = 0; i < cells.size(); i++) {
+      cells.setGlobalLabel(i, renum[cells.getGlobalLabel(i)]);
     }
+    cellsByGlobalLabel = null;
   }
 
   public void writeImage(String outputDirectory, String prefix) {
@@ -228,14 +253,51 @@ public class ImageFrame implements Comparable<ImageFrame> {
     String newImgName = prefix + oldImgName;
 
     // write the image to disk
-    FileSaver fs = new FileSaver(image.getAsImagePlus());
-    if (!fs.saveAsTiff(outputDirectory + newImgName)) {
-      throw new IllegalArgumentException("Unable to save image to disk.");
-    }
+    image.writeImage(outputDirectory + newImgName);
     // set the state of this image to written
     this.setState(State.WRITTEN);
   }
 
+  /**
+   * Set the number of image rows the per pixel feature computations process at a time, at the cost
+   * of copying halo rows at the strip seams. With off heap labels, only the current strip and its
+   * halo rows are copied onto the heap; with heap labels, strips are views of the frame's pixel
+   * array, which stays resident whole.
+   *
+   * @param stripHeight the number of rows per strip, 0 processes the whole frame as one strip.
+   */
+  public void setStripHeight(int stripHeight) {
+    if (stripHeight < 0) {
+      throw new IllegalArgumentException("Strip height must not be negative");
+    }
+    this.stripHeight = stripHeight;
+  }
+
+  public int getStripHeight() {
+    return stripHeight;
+  }
+
+  /**
+   * Set whether the label image of this frame is held in a memory mapped scratch file instead of on
+   * the java heap. This takes effect the next time the image is read.
+   *
+   * @param mapped           true to keep the labels off heap.
+   * @param scratchDirectory the directory for the scratch file, null uses the system temporary
+   *                         directory.
+   */
+  public void setMappedStorage(boolean mapped, File scratchDirectory) {
+    image.setMappedStorage(mapped, scratchDirectory);
+  }
+
+  /**
+   * Get the number of rows in each processing strip of the current image.
+   *
+   * @return the strip height, or the image height if the frame is processed as one strip.
+   */
+  private int getStripRows() {
+    return (stripHeight > 0) ? stripHeight : Math.max(1, image.getHeight());
+  }
+
   /**
    * Get a reference to the ImageTile for this ImageFrame.
    *
@@ -249,7 +311,9 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * Set the ImageTile this ImageFrame holds metadata for.
    */
   public void setImage(String filepath, String outputFilepath) {
-    image = new ImageTile(filepath, outputFilepath);
+    ImageTile tile = new ImageTile(filepath, outputFilepath);
+    tile.setMappedStorage(image.isMappedStorage(), image.getScratchDirectory());
+    image = tile;
     imageFrameState = State.INIT;
   }
 
@@ -262,6 +326,10 @@ public class ImageFrame implements Comparable<ImageFrame> {
   public ImageFrame releaseImageTile() {
     if (imageFrameState >= State.WRITTEN) {
       image.releaseMemory();
+      // the centroid index and features are only used while tracking, which is done for a
+      // written frame
+      centroidIndex = null;
+      features = null;
       imageFrameState = State.RELEASED;
     } else {
       throw new IllegalStateException(
@@ -270,6 +338,32 @@ public class ImageFrame implements Comparable<ImageFrame> {
     return this;
   }
 
+  /**
+   * Retire a released ImageFrame once no later frame refers back to it, dropping its cells and
+   * the matrices of its tracking so that only its file paths and title are kept.
+   *
+   * @return a reference to this ImageFrame.
+   */
+  public ImageFrame retire() {
+    if (imageFrameState < State.RELEASED) {
+      throw new IllegalStateException(
+          "ImageFrame has not yet been released, cannot retire its cells.");
+    }
+    cells = null;
+    cellsByImgLabel = null;
+    cellsByGlobalLabel = null;
+    centroidIndex = null;
+    touchingGraph = null;
+    features = null;
+    trackVector = null;
+    fusion = null;
+    division = null;
+    cost = null;
+    overlap = null;
+    imageFrameState = State.RETIRED;
+    return this;
+  }
+
   /**
    * Get a reference to the List of cells within this ImageFrame.
    *
@@ -277,6 +371,15 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * metadata about.
    */
   public List<Cell> getCellsList() {
+    return (cells == null) ? null : cells.asList();
+  }
+
+  /**
+   * Get the table holding the cells within this ImageFrame, for columnar access to their features.
+   *
+   * @return the CellTable of this ImageFrame.
+   */
+  public CellTable getCellTable() {
     return cells;
   }
 
@@ -287,6 +390,23 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * @return a reference to this ImageFrame.
    */
   public ImageFrame processImage() {
+    try {
+      return processImage(null);
+    } catch (InterruptedException e) {
+      // the boundaries are traced on this thread, which never waits
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Process this ImageFrame. If its ImageTile has been read into memory, extract out
+   * metadata from the ImageTile. The cell boundaries are traced in parallel on the worker pool.
+   *
+   * @param workerPool the pool tracing the cell boundaries, or null to trace them on this thread.
+   * @return a reference to this ImageFrame.
+   * @throws InterruptedException if interrupted while waiting for the boundaries to be traced.
+   */
+  public ImageFrame processImage(ExecutorService workerPool) throws InterruptedException {
     if (imageFrameState < State.READ) {
       throw new IllegalStateException(
           "ImageTile is not in READ state, therefore it cannot be processed");
@@ -294,103 +414,253 @@ public class ImageFrame implements Comparable<ImageFrame> {
 
     Log.debug("Processing Image: " + this.getTitle());
 
-    short[] pixeldata = image.getPixelData();
-
-    // find the max label in image
-    maxCellLabelNumber = Utils.getMaxValue(pixeldata);
-
-    double[] area = new double[maxCellLabelNumber];
-    double[] perimeter = new double[maxCellLabelNumber];
-    double[] centroidx = new double[maxCellLabelNumber];
-    double[] centroidy = new double[maxCellLabelNumber];
-    boolean[] bordercell = new boolean[maxCellLabelNumber];
-    Matrix2D touching = new Matrix2D(maxCellLabelNumber, maxCellLabelNumber);
-    // Initialize these variables
-    for (int i = 0; i < maxCellLabelNumber; i++) {
-      area[i] = 0;
-      perimeter[i] = 0;
-      centroidx[i] = 0;
-      centroidy[i] = 0;
-      bordercell[i] = false;
-    }
-
-    int pb = distToEdgeToConsiderOnBorder;
+    // accumulate the area, moments, bounding box, border contact, touching pairs and first pixel
+    // of every label in a single pass over the image
     int width = image.getWidth();
     int height = image.getHeight();
-    for (int i = 0; i < pixeldata.length; i++) {
-      if (pixeldata[i] > 0) {
-        int pix = pixeldata[i];
-        // update the area for this cell
-        int x = i % width;
-        int y = i / width;
-        area[pix - 1]++;
-        centroidx[pix - 1] += x;
-        centroidy[pix - 1] += y;
-
-        if (x <= pb || x >= (width - pb - 1) || y <= pb || y >= (height - pb - 1)) {
-          // set the border cell to 1 to indicate this object body touches the edge of the image
-          bordercell[pix - 1] = true;
-        }
-
-        // update the touching matrix
-        // check left pixel
-        if (pixeldata[i - 1] > 0 && pix != pixeldata[i - 1]) {
-          touching.increment(pix, pixeldata[i - 1]);
-        }
+    int stripRows = getStripRows();
+    FeatureKernel kernel = getFeatures();
+    maxCellLabelNumber = kernel.getMaxLabel();
 
-        // check right pixel
-        if (pixeldata[i + 1] > 0 && pix != pixeldata[i + 1]) {
-          touching.increment(pix, pixeldata[i + 1]);
-        }
+    double[] perimeter = new double[maxCellLabelNumber];
 
-        // check top pixel
-        if (pixeldata[i - width] > 0 && pix != pixeldata[i - width]) {
-          touching.increment(pix, pixeldata[i - width]);
+    // do a Moore boundary tracing for each cell to extract the perimeter of the object. each cell
+    // is traced in the strip holding its first pixel, with the halo below extended to its last row
+    int nbStrips = (height + stripRows - 1) / stripRows;
+    // bucket the labels by the strip holding their first pixel, in increasing label order
+    int[] stripFirst = new int[nbStrips + 1];
+    int[] stripReach = new int[nbStrips];
+    for (int i = 0; i < maxCellLabelNumber; i++) {
+      if (kernel.getStartIndex(i + 1) >= 0) {
+        int s = (kernel.getStartIndex(i + 1) / width) / stripRows;
+        stripFirst[s + 1]++;
+        stripReach[s] = Math.max(stripReach[s], kernel.getLastRow(i + 1) + 2);
+      }
+    }
+    for (int s = 0; s < nbStrips; s++) {
+      stripFirst[s + 1] += stripFirst[s];
+    }
+    int[] labelsByStrip = new int[stripFirst[nbStrips]];
+    int[] cursor = Arrays.copyOf(stripFirst, nbStrips);
+    for (int i = 0; i < maxCellLabelNumber; i++) {
+      if (kernel.getStartIndex(i + 1) >= 0) {
+        labelsByStrip[cursor[(kernel.getStartIndex(i + 1) / width) / stripRows]++] = i;
+      }
+    }
+    // each label is traced independently, so with a worker pool the labels of a strip are split
+    // into several tasks. the strip is fetched once and shared by its tasks, which are finished
+    // before the next strip is fetched so that only one strip copy of off heap pixels is held
+    List<Future<?>> traced = new ArrayList<Future<?>>();
+    for (int s = 0; s < nbStrips; s++) {
+      if (stripFirst[s] == stripFirst[s + 1]) {
+        continue;
+      }
+      int yEnd = Math.min(height, (s + 1) * stripRows);
+      LabelStrip strip = image.getStrip(s * stripRows, yEnd, 1, Math.max(1, stripReach[s] - yEnd));
+      int labelsPerTask = (workerPool == null)
+          ? Math.max(1, stripFirst[s + 1] - stripFirst[s]) : BOUNDARY_LABELS_PER_TASK;
+      for (int k = stripFirst[s]; k < stripFirst[s + 1]; k += labelsPerTask) {
+        BoundaryTrace trace = new BoundaryTrace(kernel, strip, labelsByStrip, k,
+            Math.min(stripFirst[s + 1], k + labelsPerTask), perimeter);
+        if (workerPool == null) {
+          trace.run();
+        } else {
+          traced.add(workerPool.submit(trace));
         }
-
-        // check bottom pixel
-        if (pixeldata[i + width] > 0 && pix != pixeldata[i + width]) {
-          touching.increment(pix, pixeldata[i + width]);
+      }
+      for (Future<?> f : traced) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Boundary tracing failed: " + e.getCause().getMessage(),
+              e.getCause());
         }
       }
+      traced.clear();
     }
 
-    // do a Moore boundary tracing for each cell to extract the perimeter of the object
-    perimeter = ConnectedComponents.getPerimeter(pixeldata, width, maxCellLabelNumber);
+    // group the touching pairs by label, in increasing order of the neighbor label
+    long[] touchingPairs = kernel.getTouchingPairs();
 
     // compute the centroids using the first and zeroth image moment
-    cells = new ArrayList<Cell>();
-    Cell curCell;
+    int nbCells = 0;
+    for (int i = 0; i < maxCellLabelNumber; i++) {
+      if (kernel.getArea(i + 1) > 0) {
+        nbCells++;
+      }
+    }
+    cells = new CellTable(nbCells, touchingPairs.length);
+    int t = 0;
     for (int i = 0; i < maxCellLabelNumber; i++) {
-      if (area[i] > 0) { // if this label has pixel in the image
-        curCell = new Cell(i + 1);
-        curCell.setArea(area[i]);
-        curCell.setCentroidX(centroidx[i] / area[i]);
-        curCell.setCentroidY(centroidy[i] / area[i]);
-        curCell.setPerimeter(perimeter[i]);
-        curCell.setCircularity((4 * Math.PI * area[i]) / (perimeter[i] * perimeter[i]));
-        curCell.setBorderCell(bordercell[i]);
-        // loop over this row of touching adding in the touching matrix data to the cell
-        for (int j = 1; j <= maxCellLabelNumber; j++) {
-          if (touching.get(i + 1, j) > 0) {
-            curCell.addTouchingCell(j);
-          }
+      if (kernel.getArea(i + 1) > 0) { // if this label has pixel in the image
+        double area = kernel.getArea(i + 1);
+        int c = cells.add(i + 1);
+        cells.setArea(c, area);
+        cells.setCentroidX(c, kernel.getCentroidX(i + 1));
+        cells.setCentroidY(c, kernel.getCentroidY(i + 1));
+        cells.setPerimeter(c, perimeter[i]);
+        cells.setCircularity(c, (4 * Math.PI * area) / (perimeter[i] * perimeter[i]));
+        cells.setBorderCell(c, kernel.isBorder(i + 1));
+        // add the labels touching this cell
+        while (t < touchingPairs.length && (touchingPairs[t] >>> 32) < i + 1) {
+          t++;
+        }
+        while (t < touchingPairs.length && (touchingPairs[t] >>> 32) == i + 1) {
+          cells.addTouchingCell(c, (int) touchingPairs[t++]);
         }
-        // add the current cell to the List
-        cells.add(curCell);
       }
     }
 
     if (roundCentroids) {
-      for (Cell c : cells) {
-        c.setCentroidX((double) Math.round(c.getCentroidX()));
-        c.setCentroidY((double) Math.round(c.getCentroidY()));
+      for (int c = 0; c < cells.size(); c++) {
+        cells.setCentroidX(c, (double) Math.round(cells.getCentroidX(c)));
+        cells.setCentroidY(c, (double) Math.round(cells.getCentroidY(c)));
       }
     }
+    indexCells();
     imageFrameState = State.PROCESSED;
     return this;
   }
 
+  /**
+   * Traces the boundaries of a range of the labels whose first pixel lies in one strip, writing
+   * the boundary length of each label into its slot of the shared perimeter array. The strip is
+   * only read, so it is shared by all the tasks of the strip.
+   */
+  private class BoundaryTrace implements Runnable {
+
+    private final FeatureKernel kernel;
+    private final LabelStrip strip;
+    private final int[] labels;
+    private final int first;
+    private final int last;
+    private final double[] perimeter;
+
+    BoundaryTrace(FeatureKernel kernel, LabelStrip strip, int[] labels, int first, int last,
+                  double[] perimeter) {
+      this.kernel = kernel;
+      this.strip = strip;
+      this.labels = labels;
+      this.first = first;
+      this.last = last;
+      this.perimeter = perimeter;
+    }
+
+    @Override
+    public void run() {
+      int width = image.getWidth();
+      for (int k = first; k < last; k++) {
+        int i = labels[k];
+        int start = kernel.getStartIndex(i + 1);
+        perimeter[i] = ConnectedComponents.getBoundaryLength(strip, start % width, start / width,
+            i + 1);
+      }
+    }
+  }
+
+  /**
+   * Index the cells by image label. The cells have changed, so the centroid and global label
+   * indexes must be rebuilt.
+   */
+  private void indexCells() {
+    cellsByImgLabel = new int[maxCellLabelNumber + 1];
+    maxCellImgLabel = 0;
+    for (int i = 0; i < cells.size(); i++) {
+      cellsByImgLabel[cells.getImgLabel(i)] = i + 1;
+      maxCellImgLabel = Math.max(maxCellImgLabel, cells.getImgLabel(i));
+    }
+
+    centroidIndex = null;
+    touchingGraph = null;
+    cellsByGlobalLabel = null;
+  }
+
+  /**
+   * Restore the tracked cells of this ImageFrame, for instance from a tracking checkpoint. The
+   * frame is treated as already written to disk, so its ImageTile is left unread.
+   *
+   * @param trackedCells the cells of this frame holding their tracked global labels.
+   */
+  public void restoreCells(CellTable trackedCells) {
+    cells = trackedCells;
+    maxCellLabelNumber = 0;
+    for (int i = 0; i < cells.size(); i++) {
+      maxCellLabelNumber = Math.max(maxCellLabelNumber, cells.getImgLabel(i));
+    }
+    indexCells();
+    imageFrameState = State.RELEASED;
+  }
+
+  /**
+   * Reload the pixel data of a frame restored by restoreCells from the tracked output image it was
+   * written to, so tracking can continue from this frame. The output image holds the global labels
+   * of the cells, which are mapped back onto their image labels.
+   */
+  public void restoreTrackedImage() {
+    if (cells == null) {
+      throw new IllegalStateException("ImageFrame has no tracked cells to restore the image of");
+    }
+    File output = new File(image.getOutputFilepath());
+    if (!output.exists()) {
+      throw new IllegalStateException("Tracked image not found: " + output.getAbsolutePath());
+    }
+
+    // reading relabels the global labels to their rank, 1 for the lowest
+    image.readImage(output.getAbsolutePath());
+    // sort the image labels by global label, the global labels are positive
+    long[] byGlobalLabel = new long[cells.size()];
+    for (int i = 0; i < cells.size(); i++) {
+      byGlobalLabel[i] = ((long) cells.getGlobalLabel(i) << 32) | cells.getImgLabel(i);
+    }
+    Arrays.sort(byGlobalLabel);
+    if (image.getMaxValue() != byGlobalLabel.length) {
+      throw new IllegalStateException("Tracked image " + output.getName() + " does not match the "
+          + "restored cells of " + getTitle());
+    }
+    int[] renum = new int[byGlobalLabel.length + 1];
+    for (int i = 0; i < byGlobalLabel.length; i++) {
+      renum[i + 1] = (int) byGlobalLabel[i];
+    }
+    image.relabel(renum);
+    imageFrameState = State.TRACKED;
+  }
+
+  /**
+   * Get the spatial index of the cell centroids in this ImageFrame. The index is built on first
+   * use and reused until the cells are regenerated by processImage.
+   *
+   * @param binSize the desired width of the index grid bins, normally the search radius
+   * @return the CentroidIndex over the cells of this ImageFrame
+   */
+  public CentroidIndex getCentroidIndex(double binSize) {
+    if (cells == null) {
+      throw new IllegalStateException(
+          "ImageFrame has not been processed, therefore it has no cells to index");
+    }
+    if (centroidIndex == null || centroidIndex.getBinSize() < binSize) {
+      centroidIndex = new CentroidIndex(cells.asList(), binSize);
+    }
+    return centroidIndex;
+  }
+
+  /**
+   * Get the neighbor graph of the touching cells in this ImageFrame, whose nodes are the indexes
+   * of the cells in getCellTable(). The graph is built on first use and reused until the cells are
+   * regenerated.
+   *
+   * @return the TouchingGraph of the cells of this ImageFrame
+   */
+  public TouchingGraph getTouchingGraph() {
+    if (cells == null) {
+      throw new IllegalStateException(
+          "ImageFrame has not been processed, therefore it has no touching cells");
+    }
+    if (touchingGraph == null) {
+      touchingGraph = new TouchingGraph(cells);
+    }
+    return touchingGraph;
+  }
+
   /**
    * Compute the aspect ratio of each cell.
    */
@@ -419,59 +689,11 @@ public class ImageFrame implements Comparable<ImageFrame> {
 
     Log.debug("Computing Aspect Ratios: " + this.getTitle());
 
-    double[] m00 = new double[maxCellLabelNumber + 1];
-    double[] m10 = new double[maxCellLabelNumber + 1];
-    double[] m01 = new double[maxCellLabelNumber + 1];
-    // Initialize to NaN
-    for (int i = 0; i <= maxCellLabelNumber; i++) {
-      m00[i] = Double.NaN;
-      m10[i] = Double.NaN;
-      m01[i] = Double.NaN;
-    }
-    // fill in the zero and first moments
-    for (Cell c : cells) {
-      int i = c.getImgLabel();
-      m00[i] = c.getArea();
-      m10[i] = c.getCentroidX();
-      m01[i] = c.getCentroidY();
-    }
-
-    // variables to hold the second moments
-    double[] m11 = new double[maxCellLabelNumber + 1];
-    double[] m02 = new double[maxCellLabelNumber + 1];
-    double[] m20 = new double[maxCellLabelNumber + 1];
-    // Initialize to NaN
-    for (int i = 0; i <= maxCellLabelNumber; i++) {
-      m11[i] = 0;
-      m20[i] = 0;
-      m02[i] = 0;
-    }
-
-    int width = image.getWidth();
-    short[] pixeldata = image.getPixelData();
-    for (int i = 0; i < pixeldata.length; i++) {
-      if (pixeldata[i] > 0) {
-        int pix = pixeldata[i];
-        int x = i % width;
-        int y = i / width;
-        m11[pix] += (x - m10[pix]) * (y - m01[pix]);
-        m20[pix] += (x - m10[pix]) * (x - m10[pix]);
-        m02[pix] += (y - m01[pix]) * (y - m01[pix]);
-      }
-    }
-
-    for (int i = 1; i <= maxCellLabelNumber; i++) {
-      m11[i] = m11[i] / m00[i];
-      m20[i] = m20[i] / m00[i];
-      m02[i] = m02[i] / m00[i];
-    }
-
-    for (Cell c : cells) {
-      int i = c.getImgLabel();
-      double temp = Math.sqrt((m20[i] - m02[i]) * (m20[i] - m02[i]) + 4 * m11[i] * m11[i]);
-      double a1 = Math.sqrt(2 * (m20[i] + m02[i] + temp) / m00[i]);
-      double a2 = Math.sqrt(2 * (m20[i] + m02[i] - temp) / m00[i]);
-      c.setAspectRatio(a1 / a2);
+    // the second moments were accumulated along with the other features of the image
+    FeatureKernel kernel = getFeatures();
+    for (int c = 0; c < cells.size(); c++) {
+      int i = cells.getImgLabel(c);
+      cells.setAspectRatio(c, (i <= kernel.getMaxLabel()) ? kernel.getAspectRatio(i) : Double.NaN);
     }
   }
 
@@ -482,8 +704,8 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * @return the state of whether or not aspect ratios have been computed.
    */
   public boolean isAspectRatioGenerated() {
-    for (Cell c : cells) {
-      if (Double.isNaN(c.getAspectRatio())) {
+    for (int i = 0; i < cells.size(); i++) {
+      if (Double.isNaN(cells.getAspectRatio(i))) {
         return false;
       }
     }
@@ -505,33 +727,21 @@ public class ImageFrame implements Comparable<ImageFrame> {
     }
     Log.debug("Computing Bounding Boxes: " + this.getTitle());
 
-    short[] pixeldata = image.getPixelData();
-    int maxval = Utils.getMaxValue(pixeldata);
-
-    int[][] bb = new int[maxval][4];
-
-    int width = image.getWidth();
-    int height = image.getHeight();
+    return getFeatures().getBoundingBoxes();
+  }
 
-    for (int i = 0; i < maxval; i++) {
-      bb[i][0] = width; // to hold x min
-      bb[i][1] = 0; // to hold x max
-      bb[i][2] = height; // to hold y min
-      bb[i][3] = 0; // to hold y max
-    }
-
-    for (int i = 0; i < pixeldata.length; i++) {
-      if (pixeldata[i] > 0) {
-        int pix = pixeldata[i];
-        int x = i % width;
-        int y = i / width;
-        bb[pix - 1][0] = (x < bb[pix - 1][0]) ? x : bb[pix - 1][0];
-        bb[pix - 1][1] = (x > bb[pix - 1][1]) ? x : bb[pix - 1][1];
-        bb[pix - 1][2] = (y < bb[pix - 1][2]) ? y : bb[pix - 1][2];
-        bb[pix - 1][3] = (y > bb[pix - 1][3]) ? y : bb[pix - 1][3];
-      }
+  /**
+   * Get the per label features of the image, scanning the image again only if its pixels have
+   * changed since the features were last accumulated.
+   *
+   * @return the features of the current pixels of the image.
+   */
+  private FeatureKernel getFeatures() {
+    if (features == null || featuresModCount != image.getModCount()) {
+      features = FeatureKernel.scan(image.getRunLengthImage(), distToEdgeToConsiderOnBorder);
+      featuresModCount = image.getModCount();
     }
-    return bb;
+    return features;
   }
 
   /**
@@ -540,12 +750,28 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * @return the Cell Object at with the label cellNb.
    */
   public Cell getCellByGlobalLabel(int cellNb) {
-    for (Cell c : cells) {
-      if (c.getGlobalLabel() == cellNb) {
-        return c;
+    // the global labels are still being assigned until the frame is tracked, search the list
+    if (imageFrameState < State.TRACKED) {
+      for (int i = 0; i < cells.size(); i++) {
+        if (cells.getGlobalLabel(i) == cellNb) {
+          return cells.get(i);
+        }
       }
+      return null;
     }
-    return null;
+
+    if (cellsByGlobalLabel == null) {
+      cellsByGlobalLabel = new LongIntHashMap(cells.size());
+      for (int i = 0; i < cells.size(); i++) {
+        int label = cells.getGlobalLabel(i);
+        // keep the first cell holding a label, matching the order of a list search
+        if (!cellsByGlobalLabel.containsKey(label)) {
+          cellsByGlobalLabel.put(label, i + 1);
+        }
+      }
+    }
+    int index = cellsByGlobalLabel.get(cellNb);
+    return (index > 0) ? cells.get(index - 1) : null;
   }
 
   /**
@@ -554,12 +780,10 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * @return the Cell Object at with the label cellNb.
    */
   public Cell getCellByImgLabel(int cellNb) {
-    for (Cell c : cells) {
-      if (c.getImgLabel() == cellNb) {
-        return c;
-      }
+    if (cellNb < 0 || cellNb >= cellsByImgLabel.length || cellsByImgLabel[cellNb] == 0) {
+      return null;
     }
-    return null;
+    return cells.get(cellsByImgLabel[cellNb] - 1);
   }
 
   /**
@@ -569,8 +793,8 @@ public class ImageFrame implements Comparable<ImageFrame> {
    */
   public int getMaxCellGlobalLabelNumber() {
     int maxval = 0;
-    for (Cell c : cells) {
-      maxval = (c.getGlobalLabel() > maxval) ? c.getGlobalLabel() : maxval;
+    for (int i = 0; i < cells.size(); i++) {
+      maxval = (cells.getGlobalLabel(i) > maxval) ? cells.getGlobalLabel(i) : maxval;
     }
     return maxval;
   }
@@ -581,11 +805,7 @@ public class ImageFrame implements Comparable<ImageFrame> {
    * @return the max image pixel label.
    */
   public int getMaxCellImgLabelNumber() {
-    int maxval = 0;
-    for (Cell c : cells) {
-      maxval = (c.getImgLabel() > maxval) ? c.getImgLabel() : maxval;
-    }
-    return maxval;
+    return maxCellImgLabel;
   }
 
   /**
@@ -604,6 +824,10 @@ public class ImageFrame implements Comparable<ImageFrame> {
    */
   public void setState(int newstate) {
     imageFrameState = newstate;
+    // moving back before tracking allows the global labels to change again
+    if (newstate < State.TRACKED) {
+      cellsByGlobalLabel = null;
+    }
   }
 
   /**
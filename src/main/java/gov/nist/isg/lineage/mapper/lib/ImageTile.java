@@ -6,6 +6,8 @@
 
 package gov.nist.isg.lineage.mapper.lib;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 
 import ij.IJ;
@@ -16,11 +18,34 @@ import ij.process.ImageProcessor;
 public class ImageTile {
 
 
+  // the highest label written as a 16 bit image, larger labels are written as 32 bit
+  private static final int MAX_16BIT_LABEL = 65535;
+  // the highest label a 32 bit (float) image holds exactly
+  private static final int MAX_FLOAT_LABEL = 1 << 24;
+
+  // the number of pixels streamed at a time through storage that is not a heap array
+  private static final int BLOCK_PIXELS = 1 << 20;
+
   private int width = 0;
   private int height = 0;
-  private short[] pixeldata = null;
+  private LabelStorage pixeldata = null;
   private String filepath;
   private String outputFilepath;
+  // whether the pixels are held off heap in a memory mapped scratch file
+  private boolean mappedStorage = false;
+  private File scratchDirectory = null;
+  // the region of the input image read by readImage, a width of 0 reads the whole image
+  private int regionX = 0;
+  private int regionY = 0;
+  private int regionWidth = 0;
+  private int regionHeight = 0;
+  // the label each sequential label had in the image read, indexed by the sequential label
+  private int[] sourceLabels = null;
+  // incremented whenever the pixels change, so features computed from them can be checked
+  private int modCount = 0;
+  // the run length encoding of the pixels and the modification count it was built at
+  private RunLengthImage runs = null;
+  private int runsModCount;
 
 
   /**
@@ -36,94 +61,365 @@ public class ImageTile {
     this.outputFilepath = outputFilepath;
   }
 
+  /**
+   * Select where the pixels read by readImage are held. Off heap storage keeps the pixels in a
+   * memory mapped scratch file, reducing garbage collection pressure and allowing label images
+   * larger than the heap; the pixel array is then not available through getPixelData.
+   *
+   * @param mapped           true to hold the pixels off heap, false to hold them in a heap array.
+   * @param scratchDirectory the directory for the scratch files, or null for the system temporary
+   *                         directory.
+   */
+  public void setMappedStorage(boolean mapped, File scratchDirectory) {
+    this.mappedStorage = mapped;
+    this.scratchDirectory = scratchDirectory;
+  }
+
+  /**
+   * @return true if the pixels are held off heap in a memory mapped scratch file.
+   */
+  public boolean isMappedStorage() {
+    return mappedStorage;
+  }
+
+  /**
+   * @return the directory for the off heap scratch files, or null for the system temporary
+   * directory.
+   */
+  public File getScratchDirectory() {
+    return scratchDirectory;
+  }
+
+  /**
+   * Restrict readImage to a rectangular region of the input image, so the tile holds only that
+   * region. The region must lie within the input image.
+   *
+   * @param x      the x coordinate of the first column of the region.
+   * @param y      the y coordinate of the first row of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   */
+  public void setRegion(int x, int y, int width, int height) {
+    if (x < 0 || y < 0 || width < 1 || height < 1) {
+      throw new IllegalArgumentException("Invalid image region");
+    }
+    this.regionX = x;
+    this.regionY = y;
+    this.regionWidth = width;
+    this.regionHeight = height;
+  }
+
+  /**
+   * Get the labels the pixels had in the image last read, before they were relabeled
+   * sequentially. Labels are relabeled in increasing order, so the sequential labels of two tiles
+   * read from the same image compare like their source labels.
+   *
+   * @return the source label of each sequential label, indexed by the sequential label.
+   */
+  public int[] getSourceLabels() {
+    return sourceLabels;
+  }
+
 
   /**
-   * Read the image from disk and convert it to 16bit (short)
+   * Read the image from disk into 32bit (int) labels. 8 and 16 bit images are read as unsigned
+   * values and 32 bit images are rounded from their float values; other bit depths are converted
+   * to 16 bit first.
    */
   public void readImage() {
-    ImagePlus imp = new ImagePlus(filepath);
-    ImageProcessor ip = imp.getProcessor();
+    readImage(filepath, true);
+  }
 
+  /**
+   * Read the pixel data of this tile from another file, such as the tracked output image written
+   * for it, while keeping the tile's input and output filepaths.
+   *
+   * @param sourceFilepath the filepath of the image to read.
+   */
+  public void readImage(String sourceFilepath) {
+    readImage(sourceFilepath, false);
+  }
 
-    this.width = ip.getWidth() + 2;
-    this.height = ip.getHeight() + 2;
-    int nbpixels = this.width * this.height;
-    pixeldata = new short[nbpixels];
-
-    // convert the image to 16 bit short
-    if (imp.getBitDepth() != 16) {
-      if (imp.getBitDepth() > 16) {
-        Log.mandatory("Warning: Down-Converting Image To 16bit");
-      } else {
-        Log.debug("Up-Converting Image To 16bit: ");
-      }
+  /**
+   * Read the pixel data of this tile from an image file. A TIFF file that TiffStripReader handles
+   * is decoded a strip at a time straight into the pixel storage, so with off heap storage only
+   * one strip of the file is held on the heap. Other files are decoded whole by ImageJ.
+   *
+   * @param sourceFilepath the filepath of the image to read.
+   * @param inRegion       whether to read only the region set by setRegion.
+   */
+  private void readImage(String sourceFilepath, boolean inRegion) {
+    TiffStripReader reader;
+    try {
+      reader = TiffStripReader.open(sourceFilepath);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to read image " + sourceFilepath + ": "
+          + e.getMessage(), e);
+    }
+    if (reader == null) {
+      readImagePlus(sourceFilepath, inRegion);
+      return;
+    }
 
-      ip = ip.convertToShort(false);
-      // the false prevents the image from being rescaled as it is cast into short
+    try {
+      int[] region = getSourceRegion(sourceFilepath, inRegion, reader.getWidth(),
+          reader.getHeight());
+      allocate(region[2], region[3]);
+
+      // copy in the pixel data a row at a time while padding, the padding rows and columns are
+      // left as zero
+      int[] row = new int[this.width];
+      for (int j = 1; j < this.height - 1; j++) {
+        reader.readRow(region[1] + j - 1, region[0], row, 1, region[2]);
+        pixeldata.set(j * this.width, row, 0, this.width);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to read image " + sourceFilepath + ": "
+          + e.getMessage(), e);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        Log.debug("Unable to close " + sourceFilepath + ": " + e.getMessage());
+      }
     }
 
-    // after this point ip is the image processor holding the short version of the image
-    short[] pixels = (short[]) ip.getPixels();
+    // relabel the pixels to be sequentially numbered
+    relabelSequentially();
+  }
 
-    // copy in the pixel data while padding
+  /**
+   * Read the pixel data of this tile from an image file decoded whole by ImageJ.
+   *
+   * @param sourceFilepath the filepath of the image to read.
+   * @param inRegion       whether to read only the region set by setRegion.
+   */
+  private void readImagePlus(String sourceFilepath, boolean inRegion) {
+    ImagePlus imp = new ImagePlus(sourceFilepath);
+    ImageProcessor ip = imp.getProcessor();
 
-    // add a zero first row
-    Arrays.fill(pixeldata, 0, this.width, (short) 0);
-    int k = this.width;
+    int[] region = getSourceRegion(sourceFilepath, inRegion, ip.getWidth(), ip.getHeight());
+    int x0 = region[0];
+    int y0 = region[1];
+    int subWidth = region[2];
+    allocate(subWidth, region[3]);
 
-    // loop over the middle rows
-    int subWidth = this.width - 2;
+    int bitDepth = imp.getBitDepth();
+    if (bitDepth != 8 && bitDepth != 16 && bitDepth != 32) {
+      Log.debug("Converting Image To 16bit: ");
+      ip = ip.convertToShort(false);
+      // the false prevents the image from being rescaled as it is cast into short
+      bitDepth = 16;
+    }
 
+    // copy in the pixel data a row at a time while padding, the padding rows and columns are left
+    // as zero
+    int[] row = new int[this.width];
     for (int j = 1; j < this.height - 1; j++) {
-      // copy over a row of the image
-      pixeldata[k++] = 0; // add the padding zero at the start of the row
+      int srcIdx = (y0 + j - 1) * ip.getWidth() + x0;
+      for (int i = 1; i <= subWidth; i++) {
+        if (bitDepth == 32) {
+          // float pixels are rounded and clamped to the valid label range
+          row[i] = Math.max(0, Math.round(ip.getf(srcIdx++)));
+        } else {
+          // 8 and 16 bit pixels are returned unsigned
+          row[i] = ip.get(srcIdx++);
+        }
+      }
+      pixeldata.set(j * this.width, row, 0, this.width);
+    }
 
-      int srcIdx = (j - 1) * subWidth;
-      System.arraycopy(pixels, srcIdx, pixeldata, k, subWidth);
-      k += subWidth;
+    // relabel the pixels to be sequentially numbered
+    relabelSequentially();
+  }
 
-      pixeldata[k++] = 0; // add the padding zero at the end of the row
+  /**
+   * Get the region of a source image to read into this tile.
+   *
+   * @return the x, y, width and height of the region.
+   */
+  private int[] getSourceRegion(String sourceFilepath, boolean inRegion, int imageWidth,
+                                int imageHeight) {
+    if (inRegion && regionWidth > 0) {
+      if (regionX + regionWidth > imageWidth || regionY + regionHeight > imageHeight) {
+        throw new IllegalArgumentException("Image region out of bounds of " + sourceFilepath);
+      }
+      return new int[]{regionX, regionY, regionWidth, regionHeight};
     }
-    // add a zero last row
-    Arrays.fill(pixeldata, nbpixels - this.width, nbpixels, (short) 0);
+    return new int[]{0, 0, imageWidth, imageHeight};
+  }
 
+  /**
+   * Allocate zeroed pixel storage for an image of the given size plus its one pixel padding.
+   */
+  private void allocate(int subWidth, int subHeight) {
+    this.width = subWidth + 2;
+    this.height = subHeight + 2;
+    int nbpixels = this.width * this.height;
+    if (pixeldata != null) {
+      pixeldata.release();
+    }
+    modCount++;
+    pixeldata = mappedStorage ? new MappedLabelStorage(nbpixels, scratchDirectory)
+                              : new HeapLabelStorage(nbpixels);
+  }
 
-    // loop over pixeldata and relabel the pixels to be sequentially numbered
-    int maxval = 0;
-    for (short s : pixeldata) {
-      maxval = Math.max(maxval, s);
-    }
-    short[] u = new short[maxval + 1];
-    for (short s : pixeldata) {
-      u[s] = 1;
-    }
-    short[] renum = new short[maxval + 1];
-    short nv = 1;
-    for (int i = 1; i < u.length; i++) {
-      if (u[i] > 0) {
-        renum[i] = nv++;
+  /**
+   * Relabel the pixel data in place so that the labels present are numbered sequentially from
+   * one, preserving their order. The background (zero) is left unchanged.
+   */
+  private void relabelSequentially() {
+    int maxval = getMaxValue();
+
+    if (maxval <= pixeldata.size()) {
+      // dense labels, renumber with a lookup table
+      boolean[] u = new boolean[maxval + 1];
+      for (int yStart = 0; yStart < height; yStart += getBlockRows()) {
+        LabelStrip strip = getStrip(yStart, Math.min(height, yStart + getBlockRows()), 0, 0);
+        int[] px = strip.getPixelData();
+        int end = strip.indexOf(0, strip.getYEnd());
+        for (int i = strip.indexOf(0, yStart); i < end; i++) {
+          u[px[i]] = true;
+        }
+      }
+      int[] renum = new int[maxval + 1];
+      int nv = 1;
+      for (int i = 1; i < u.length; i++) {
+        if (u[i]) {
+          renum[i] = nv++;
+        }
+      }
+      sourceLabels = new int[nv];
+      for (int i = 1; i < u.length; i++) {
+        if (u[i]) {
+          sourceLabels[renum[i]] = i;
+        }
       }
+      relabel(renum);
+      return;
     }
-    for (int i = 0; i < pixeldata.length; i++) {
-      pixeldata[i] = renum[pixeldata[i]];
+
+    // sparse labels (larger than the number of pixels), renumber by the rank of each unique label
+    LongIntHashMap labels = new LongIntHashMap();
+    for (int yStart = 0; yStart < height; yStart += getBlockRows()) {
+      LabelStrip strip = getStrip(yStart, Math.min(height, yStart + getBlockRows()), 0, 0);
+      int[] px = strip.getPixelData();
+      int end = strip.indexOf(0, strip.getYEnd());
+      for (int i = strip.indexOf(0, yStart); i < end; i++) {
+        labels.put(px[i], 1);
+      }
+    }
+    long[] unique = labels.keys();
+    Arrays.sort(unique);
+    sourceLabels = new int[unique.length];
+    for (int i = 0; i < unique.length; i++) {
+      sourceLabels[i] = (int) unique[i];
+    }
+    // the zero padding guarantees the background is the first unique label
+    int[] block = new int[Math.min(pixeldata.size(), BLOCK_PIXELS)];
+    for (int k = 0; k < pixeldata.size(); k += block.length) {
+      int n = Math.min(block.length, pixeldata.size() - k);
+      pixeldata.get(k, block, 0, n);
+      for (int i = 0; i < n; i++) {
+        block[i] = Arrays.binarySearch(unique, block[i]);
+      }
+      pixeldata.set(k, block, 0, n);
+    }
+  }
+
+  /**
+   * Renumber every labeled pixel of this ImageTile through a lookup table, pixel p becoming
+   * renum[p]. Background pixels are left unchanged.
+   *
+   * @param renum the new label of each label, indexed by the current label.
+   */
+  public void relabel(int[] renum) {
+    // valid runs are relabeled along with the pixels, so they stay valid
+    boolean runsValid = runs != null && runsModCount == modCount;
+    modCount++;
+    if (runsValid) {
+      runs.relabel(renum);
+      runsModCount = modCount;
+    }
+    int[] px = pixeldata.array();
+    if (px != null) {
+      for (int i = 0; i < px.length; i++) {
+        if (px[i] > 0) {
+          px[i] = renum[px[i]];
+        }
+      }
+      return;
     }
 
+    int[] block = new int[Math.min(pixeldata.size(), BLOCK_PIXELS)];
+    for (int k = 0; k < pixeldata.size(); k += block.length) {
+      int n = Math.min(block.length, pixeldata.size() - k);
+      pixeldata.get(k, block, 0, n);
+      for (int i = 0; i < n; i++) {
+        if (block[i] > 0) {
+          block[i] = renum[block[i]];
+        }
+      }
+      pixeldata.set(k, block, 0, n);
+    }
+  }
+
+  /**
+   * @return the number of rows streamed at a time by the whole image scans.
+   */
+  private int getBlockRows() {
+    return Math.max(1, BLOCK_PIXELS / Math.max(1, this.width));
   }
 
 
   /**
-   * Create an ImagePlug object from the given pixel vector.
+   * Create an ImagePlug object from the given pixel vector. Labels that fit in 16 bits produce a
+   * 16-bit image, larger labels produce a 32-bit (float) image.
    *
-   * @param pixdata the short array of pixel data to use in creating the ImagePlus object.
+   * @param pixdata the int array of pixel data to use in creating the ImagePlus object.
    * @param w       the width of the resulting image.
    * @param h       the height of the resulting image.
    * @return an ImagePlus object w pixels wide and h pixels tall containing the pixdata pixels.
    */
-  public static ImagePlus wrapAsImagePlus(short[] pixdata, int w, int h) {
+  public static ImagePlus wrapAsImagePlus(int[] pixdata, int w, int h) {
     Log.debug("Wrapping ImageTile into ImagePlus");
-    // Create new ImagePlus to hold the output image
-    ImagePlus image = IJ.createImage("Image", "16-bit", w, h, 1);
-    image.getProcessor().setPixels(pixdata);
+    return createImagePlus("Image", pixdata, w, h);
+  }
+
+  /**
+   * Create an ImagePlus holding the label pixel data at the smallest bit depth able to represent
+   * the highest label: 16 bit up to 65535, 32 bit (float) beyond that.
+   *
+   * @param title   the title of the new image.
+   * @param pixdata the int array of pixel data.
+   * @param w       the width of the resulting image.
+   * @param h       the height of the resulting image.
+   * @return the new ImagePlus object.
+   */
+  private static ImagePlus createImagePlus(String title, int[] pixdata, int w, int h) {
+    int maxval = Utils.getMaxValue(pixdata);
+
+    ImagePlus image;
+    if (maxval <= MAX_16BIT_LABEL) {
+      short[] px = new short[pixdata.length];
+      for (int i = 0; i < px.length; i++) {
+        px[i] = (short) pixdata[i];
+      }
+      image = IJ.createImage(title, "16-bit", w, h, 1);
+      image.getProcessor().setPixels(px);
+    } else {
+      if (maxval > MAX_FLOAT_LABEL) {
+        Log.mandatory("Warning: labels above " + MAX_FLOAT_LABEL
+            + " cannot be represented exactly in a 32bit image");
+      }
+      float[] px = new float[pixdata.length];
+      for (int i = 0; i < px.length; i++) {
+        px[i] = pixdata[i];
+      }
+      image = IJ.createImage(title, "32-bit", w, h, 1);
+      image.getProcessor().setPixels(px);
+    }
+    image.setDisplayRange(0, maxval);
     return image;
   }
 
@@ -131,22 +427,50 @@ public class ImageTile {
   /**
    * Get the highest pixel value contained within the pixel array of this ImageTile object.
    *
-   * @return a short containing the highest number in the array.
+   * @return an int containing the highest number in the array.
    */
-  public short getMaxValue() {
-    return Utils.getMaxValue(this.pixeldata);
+  public int getMaxValue() {
+    int maxval = Integer.MIN_VALUE;
+    for (int yStart = 0; yStart < height; yStart += getBlockRows()) {
+      LabelStrip strip = getStrip(yStart, Math.min(height, yStart + getBlockRows()), 0, 0);
+      int[] px = strip.getPixelData();
+      int end = strip.indexOf(0, strip.getYEnd());
+      for (int i = strip.indexOf(0, yStart); i < end; i++) {
+        maxval = (px[i] > maxval) ? px[i] : maxval;
+      }
+    }
+    return maxval;
   }
 
   /**
-   * Find the number of pixels with each discrete short value within the input array. Alternatively,
+   * Compute a 64 bit hash of the pixel data of this ImageTile, used to check whether two versions
+   * of a label image are identical without holding both in memory.
+   *
+   * @return the FNV-1a hash of the pixel values in row major order.
+   */
+  public long getLabelHash() {
+    long hash = 0xcbf29ce484222325L;
+    for (int yStart = 0; yStart < height; yStart += getBlockRows()) {
+      LabelStrip strip = getStrip(yStart, Math.min(height, yStart + getBlockRows()), 0, 0);
+      int[] px = strip.getPixelData();
+      int end = strip.indexOf(0, strip.getYEnd());
+      for (int i = strip.indexOf(0, yStart); i < end; i++) {
+        hash = (hash ^ px[i]) * 0x100000001b3L;
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Find the number of pixels with each discrete value within the input array. Alternatively,
    * find the size of each object within the labeled mask image.
    *
-   * @param pixdata the short array to find the pixel counts from.
+   * @param pixdata the int array to find the pixel counts from.
    * @return array containing the size of each object, the histogram of the image with a bin size of
    * one.
    */
-  public static int[] getObjectSizes(short[] pixdata) {
-    short maxval = Utils.getMaxValue(pixdata);
+  public static int[] getObjectSizes(int[] pixdata) {
+    int maxval = Utils.getMaxValue(pixdata);
 
     int[] objSizes = new int[maxval + 1];
     for (int i = 0; i < pixdata.length; i++) {
@@ -156,44 +480,122 @@ public class ImageTile {
   }
 
   /**
-   * Find the number of pixels with each discrete short value within this ImageTile object.
+   * Find the number of pixels with each discrete value within this ImageTile object.
    * Alternatively, find the size of each object within the labeled mask image.
    *
    * @return array containing the size of each object, the histogram of the image with a bin size of
    * one.
    */
   public int[] getObjectSizes() {
-    return getObjectSizes(pixeldata);
+    // the histogram grows as higher labels are found, so the pixels are only read once
+    int[] objSizes = new int[1];
+    int maxval = 0;
+    for (int yStart = 0; yStart < height; yStart += getBlockRows()) {
+      LabelStrip strip = getStrip(yStart, Math.min(height, yStart + getBlockRows()), 0, 0);
+      int[] px = strip.getPixelData();
+      int end = strip.indexOf(0, strip.getYEnd());
+      for (int i = strip.indexOf(0, yStart); i < end; i++) {
+        int val = px[i];
+        if (val > maxval) {
+          maxval = val;
+          if (val >= objSizes.length) {
+            objSizes = Arrays.copyOf(objSizes, Math.max(val + 1, 2 * objSizes.length));
+          }
+        }
+        objSizes[val]++;
+      }
+    }
+    return (objSizes.length == maxval + 1) ? objSizes : Arrays.copyOf(objSizes, maxval + 1);
   }
 
   /**
-   * Get a copy of this ImageTile object as an ImagePlus object.
+   * Get a copy of this ImageTile object as an ImagePlus object. The image is 16 bit if every
+   * label fits in 16 bits, otherwise it is 32 bit.
    *
    * @return an ImagePlus version of this ImageTile without the zero padding.
    */
   public ImagePlus getAsImagePlus() {
-    // undo the image padding
-    short[] px = getSubImagePixelData(1, this.width - 2, 1, this.height - 2);
+    int[] heapPixels = pixeldata.array();
+    if (heapPixels != null) {
+      // undo the image padding
+      int[] px = getSubImagePixelData(1, this.width - 2, 1, this.height - 2);
+
+      // Create new ImagePlus to hold the output image
+      return createImagePlus(null, px, this.width - 2, this.height - 2);
+    }
 
-    // Create new ImagePlus to hold the output image
-    ImagePlus image = IJ.createImage(null, "16-bit", this.width - 2, this.height - 2, 1);
-    image.getProcessor().setPixels(px);
-    image.setDisplayRange(0, Utils.getMaxValue(px));
+    // stream the pixels off heap directly into the output image, undoing the image padding
+    int maxval = getMaxValue();
+    int subWidth = this.width - 2;
+    int subHeight = this.height - 2;
+    ImagePlus image = IJ.createImage(null, (maxval <= MAX_16BIT_LABEL) ? "16-bit" : "32-bit",
+        subWidth, subHeight, 1);
+    if (maxval > MAX_FLOAT_LABEL) {
+      Log.mandatory("Warning: labels above " + MAX_FLOAT_LABEL
+          + " cannot be represented exactly in a 32bit image");
+    }
+    ImageProcessor ip = image.getProcessor();
+    int[] row = new int[subWidth];
+    int k = 0;
+    for (int y = 1; y <= subHeight; y++) {
+      pixeldata.get(y * this.width + 1, row, 0, subWidth);
+      for (int x = 0; x < subWidth; x++) {
+        if (maxval <= MAX_16BIT_LABEL) {
+          ip.set(k++, row[x]);
+        } else {
+          ip.setf(k++, row[x]);
+        }
+      }
+    }
+    image.setDisplayRange(0, maxval);
     return image;
   }
 
+  /**
+   * Write this ImageTile to a TIFF file without the zero padding, streaming its rows from the pixel
+   * storage so no copy of the image is made. The file is the one FileSaver writes for
+   * getAsImagePlus: 16 bit if every label fits in 16 bits, otherwise 32 bit.
+   *
+   * @param filepath the path of the file to write.
+   */
+  public void writeImage(String filepath) {
+    int maxval = getMaxValue();
+    int subWidth = this.width - 2;
+    int subHeight = this.height - 2;
+    try {
+      TiffStripWriter writer = new TiffStripWriter(filepath, subWidth, subHeight, maxval);
+      try {
+        int[] row = new int[subWidth];
+        for (int y = 1; y <= subHeight; y++) {
+          pixeldata.get(y * this.width + 1, row, 0, subWidth);
+          writer.writeRow(row, 0);
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to save image " + filepath + ": "
+          + e.getMessage(), e);
+    }
+  }
+
 
   /**
    * Get a reference to the pixel vector of this ImageTile object.
    *
    * @return a reference to the array holding the pixel data for this ImageTile.
    */
-  public short[] getPixelData() {
-    return pixeldata;
+  public int[] getPixelData() {
+    int[] px = pixeldata.array();
+    if (px == null) {
+      throw new IllegalStateException(
+          "ImageTile pixels are held off heap, access them through get, set or getStrip");
+    }
+    return px;
   }
 
   /**
-   * Extract a sub region of this ImageTile object as a short array.
+   * Extract a sub region of this ImageTile object as an int array.
    *
    * @param xMin the starting x coordinate of the sub region.
    * @param xMax the ending x coordinate of the sub region.
@@ -201,7 +603,7 @@ public class ImageTile {
    * @param yMax the ending y coordinate of the sub region.
    * @return array containing the pixels from the requested sub region.
    */
-  public short[] getSubImagePixelData(int xMin, int xMax, int yMin, int yMax) {
+  public int[] getSubImagePixelData(int xMin, int xMax, int yMin, int yMax) {
     Log.debug(
         "Extracting subimage x: " + xMin + ":" + xMax + " y: " + yMin + ":" + yMax);
     if (xMin < 0 || xMin > xMax) {
@@ -220,17 +622,45 @@ public class ImageTile {
     int subWidth = xMax - xMin + 1;
     int subHeight = yMax - yMin + 1;
     int nbPixelsInSubImage = subWidth * subHeight;
-    short[] subImagePixelData = new short[nbPixelsInSubImage];
+    int[] subImagePixelData = new int[nbPixelsInSubImage];
 
     int k = 0;
     for (int y = yMin; y <= yMax; y++) {
       // copy over a row of the image
-      System.arraycopy(pixeldata, this.width * y + xMin, subImagePixelData, k, subWidth);
+      pixeldata.get(this.width * y + xMin, subImagePixelData, k, subWidth);
       k += subWidth;
     }
     return subImagePixelData;
   }
 
+  /**
+   * Get a strip of rows from this ImageTile object together with halo rows above and below it.
+   * The halo is clipped at the top and bottom of the image. The strip is a read only view of the
+   * pixel data of this ImageTile, or a copy of it when the pixels are held off heap.
+   *
+   * @param yStart    the first row owned by the strip.
+   * @param yEnd      one past the last row owned by the strip.
+   * @param haloAbove the number of rows to include above yStart.
+   * @param haloBelow the number of rows to include below yEnd.
+   * @return the strip holding the requested rows.
+   */
+  public LabelStrip getStrip(int yStart, int yEnd, int haloAbove, int haloBelow) {
+    if (yStart < 0 || yStart > yEnd || yEnd > this.height) {
+      throw new IllegalArgumentException("Strip rows out of bounds");
+    }
+    int rowStart = Math.max(0, yStart - haloAbove);
+    int rowEnd = Math.min(this.height, yEnd + haloBelow);
+    int[] px = pixeldata.array();
+    if (px != null) {
+      return new LabelStrip(px, this.width * rowStart, this.width, rowStart, rowEnd, yStart, yEnd);
+    }
+
+    // off heap pixels are copied into a strip buffer
+    int[] stripPixelData = new int[this.width * (rowEnd - rowStart)];
+    pixeldata.get(this.width * rowStart, stripPixelData, 0, stripPixelData.length);
+    return new LabelStrip(stripPixelData, 0, this.width, rowStart, rowEnd, yStart, yEnd);
+  }
+
   /**
    * Copy a sub region of pixels into this ImageTile object.
    *
@@ -240,7 +670,7 @@ public class ImageTile {
    * @param yMin    the starting y coordinate of the sub region.
    * @param yMax    the ending y coordinate of the sub region.
    */
-  public void overwriteSubImage(short[] pixdata, int xMin, int xMax, int yMin, int yMax) {
+  public void overwriteSubImage(int[] pixdata, int xMin, int xMax, int yMin, int yMax) {
     Log.debug(
         "Overwriting subimage x: " + xMin + ":" + xMax + " y: " + yMin + ":" + yMax);
     if (xMin < 0 || xMin > xMax) {
@@ -262,10 +692,11 @@ public class ImageTile {
       throw new IllegalArgumentException("SubImage bounds do not match the pixel data length");
     }
 
+    modCount++;
     int k = 0;
     for (int y = yMin; y <= yMax; y++) {
       // copy over a row of the new pixeldata
-      System.arraycopy(pixdata, k, pixeldata, this.width * y + xMin, subWidth);
+      pixeldata.set(this.width * y + xMin, pixdata, k, subWidth);
       k += subWidth;
     }
   }
@@ -276,8 +707,8 @@ public class ImageTile {
    * @param k the index of the pixel to get.
    * @return the pixel value at index k.
    */
-  public short get(int k) {
-    return pixeldata[k];
+  public int get(int k) {
+    return pixeldata.get(k);
   }
 
   /**
@@ -286,8 +717,9 @@ public class ImageTile {
    * @param k   the index of the pixel to set.
    * @param val the new value to place at index k.
    */
-  public void set(int k, short val) {
-    pixeldata[k] = val;
+  public void set(int k, int val) {
+    modCount++;
+    pixeldata.set(k, val);
   }
 
   /**
@@ -297,8 +729,8 @@ public class ImageTile {
    * @param y the y coordinate of the pixel to get.
    * @return the pixel value in this ImageTile at coordinate (x,y).
    */
-  public short get(int x, int y) {
-    return pixeldata[y * this.width + x];
+  public int get(int x, int y) {
+    return pixeldata.get(y * this.width + x);
   }
 
   /**
@@ -308,10 +740,35 @@ public class ImageTile {
    * @param y   the y coordinate of the pixel to set.
    * @param val the new value to place at coordinate (x,y).
    */
-  public void set(int x, int y, short val) {
-    pixeldata[y * this.width + x] = val;
+  public void set(int x, int y, int val) {
+    modCount++;
+    pixeldata.set(y * this.width + x, val);
+  }
+
+
+  /**
+   * Get the number of changes made to the pixels of this ImageTile. Values derived from the
+   * pixels are still valid while this count is unchanged.
+   *
+   * @return the modification count of the pixels.
+   */
+  public int getModCount() {
+    return modCount;
   }
 
+  /**
+   * Get the run length encoding of the pixels of this ImageTile. It is built on first use and
+   * reused until the pixels change, except for relabel, which relabels the runs as well.
+   *
+   * @return the RunLengthImage of the pixels.
+   */
+  public RunLengthImage getRunLengthImage() {
+    if (runs == null || runsModCount != modCount) {
+      runs = RunLengthImage.encode(this, getBlockRows());
+      runsModCount = modCount;
+    }
+    return runs;
+  }
 
   /**
    * Get the height of this ImageTile object.
@@ -350,9 +807,15 @@ public class ImageTile {
   }
 
   /**
-   * Set the pixel array for this ImageTile to null to allow garbage collection.
+   * Release the pixels of this ImageTile, setting the pixel array to null to allow garbage
+   * collection or deleting the off heap scratch file.
    */
   public void releaseMemory() {
+    modCount++;
+    runs = null;
+    if (pixeldata != null) {
+      pixeldata.release();
+    }
     pixeldata = null;
   }
 
@@ -366,10 +829,16 @@ public class ImageTile {
     ImageTile ret = new ImageTile(this.filepath, this.outputFilepath);
     ret.width = this.width;
     ret.height = this.height;
+    ret.mappedStorage = this.mappedStorage;
+    ret.scratchDirectory = this.scratchDirectory;
+    ret.regionX = this.regionX;
+    ret.regionY = this.regionY;
+    ret.regionWidth = this.regionWidth;
+    ret.regionHeight = this.regionHeight;
+    ret.sourceLabels = this.sourceLabels;
 
     if (this.pixeldata != null) {
-      ret.pixeldata = new short[this.pixeldata.length];
-      System.arraycopy(this.pixeldata, 0, ret.pixeldata, 0, this.pixeldata.length);
+      ret.pixeldata = this.pixeldata.copy();
     } else {
       ret.pixeldata = null;
     }
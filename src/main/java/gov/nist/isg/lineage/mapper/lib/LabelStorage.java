@@ -0,0 +1,72 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+/**
+ * Backing storage for the pixels of a label image, addressed by linear pixel index.
+ */
+public interface LabelStorage {
+
+  /**
+   * @return the number of pixels held.
+   */
+  int size();
+
+  /**
+   * Get the pixel at index k.
+   *
+   * @param k the index of the pixel to get.
+   * @return the pixel value at index k.
+   */
+  int get(int k);
+
+  /**
+   * Set the pixel at index k.
+   *
+   * @param k   the index of the pixel to set.
+   * @param val the new value to place at index k.
+   */
+  void set(int k, int val);
+
+  /**
+   * Copy a run of consecutive pixels out of the storage.
+   *
+   * @param k   the index of the first pixel to copy.
+   * @param dst the array to copy the pixels into.
+   * @param off the index within dst of the first pixel.
+   * @param len the number of pixels to copy.
+   */
+  void get(int k, int[] dst, int off, int len);
+
+  /**
+   * Copy a run of consecutive pixels into the storage.
+   *
+   * @param k   the index of the first pixel to overwrite.
+   * @param src the array holding the new pixels.
+   * @param off the index within src of the first pixel.
+   * @param len the number of pixels to copy.
+   */
+  void set(int k, int[] src, int off, int len);
+
+  /**
+   * Get the heap array backing this storage, allowing direct access to the pixels.
+   *
+   * @return the backing array, or null if the pixels are not held in a heap array.
+   */
+  int[] array();
+
+  /**
+   * @return a new storage of the same kind holding a copy of the pixels.
+   */
+  LabelStorage copy();
+
+  /**
+   * Release the pixels held, after which the storage must not be used.
+   */
+  void release();
+
+}
@@ -0,0 +1,121 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+/**
+ * A horizontal strip of rows from a padded label image. The strip owns the rows [yStart, yEnd) and
+ * additionally holds halo rows above and below them, so that neighborhood operations on the owned
+ * rows can be evaluated without the rest of the image. Results computed over consecutive strips
+ * are merged at the seams by the caller. Coordinates are those of the full image.
+ *
+ * The pixels of a strip may be a view into a larger array, such as the pixel array of the whole
+ * image, so a strip must be treated as read only.
+ */
+public class LabelStrip {
+
+  private final int[] pixeldata;
+  private final int offset;
+  private final int width;
+  private final int rowStart;
+  private final int rowEnd;
+  private final int yStart;
+  private final int yEnd;
+
+  /**
+   * Create a strip over rows of an image.
+   *
+   * @param pixeldata the array holding the pixels of the rows [rowStart, rowEnd) in row major
+   *                  order.
+   * @param offset    the index within pixeldata of the first pixel of row rowStart.
+   * @param width     the width of the image.
+   * @param rowStart  the first row held, including the halo.
+   * @param rowEnd    one past the last row held, including the halo.
+   * @param yStart    the first row owned by this strip.
+   * @param yEnd      one past the last row owned by this strip.
+   */
+  public LabelStrip(int[] pixeldata, int offset, int width, int rowStart, int rowEnd, int yStart,
+                    int yEnd) {
+    if (rowStart > yStart || rowEnd < yEnd || yStart > yEnd) {
+      throw new IllegalArgumentException("Strip rows do not cover the owned rows");
+    }
+    if (offset < 0 || pixeldata.length < offset + width * (rowEnd - rowStart)) {
+      throw new IllegalArgumentException("Strip bounds do not match the pixel data length");
+    }
+    this.pixeldata = pixeldata;
+    this.offset = offset;
+    this.width = width;
+    this.rowStart = rowStart;
+    this.rowEnd = rowEnd;
+    this.yStart = yStart;
+    this.yEnd = yEnd;
+  }
+
+  /**
+   * Get the pixel at coordinate (x,y) of the image. The row must be held by this strip.
+   *
+   * @param x the x coordinate of the pixel.
+   * @param y the y coordinate of the pixel.
+   * @return the pixel value at coordinate (x,y).
+   */
+  public int get(int x, int y) {
+    return pixeldata[offset + (y - rowStart) * width + x];
+  }
+
+  /**
+   * Get the index into the strip pixel array of coordinate (x,y) of the image.
+   *
+   * @param x the x coordinate of the pixel.
+   * @param y the y coordinate of the pixel.
+   * @return the index of the pixel within getPixelData().
+   */
+  public int indexOf(int x, int y) {
+    return offset + (y - rowStart) * width + x;
+  }
+
+  /**
+   * Get a reference to the array holding the pixels of this strip, use indexOf to locate the
+   * pixels of the strip within it.
+   *
+   * @return the strip pixel array.
+   */
+  public int[] getPixelData() {
+    return pixeldata;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return the first row held by this strip, including the halo.
+   */
+  public int getRowStart() {
+    return rowStart;
+  }
+
+  /**
+   * @return one past the last row held by this strip, including the halo.
+   */
+  public int getRowEnd() {
+    return rowEnd;
+  }
+
+  /**
+   * @return the first row owned by this strip.
+   */
+  public int getYStart() {
+    return yStart;
+  }
+
+  /**
+   * @return one past the last row owned by this strip.
+   */
+  public int getYEnd() {
+    return yEnd;
+  }
+
+}
@@ -0,0 +1,269 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumulates the lineage of every global cell label as the tracked frames are added in order:
+ * the birth and death frames, whether the cell ever touches the image border, its number of
+ * touching cells and the division and fusion events. The lineage metadata is generated from this
+ * summary, so a frame's division and fusion matrices are not needed once it has been added.
+ */
+public class LineageAccumulator {
+
+  private int nbFrames = 0;
+  private int maxGlobalLabel = 0;
+  // per global label, indexed by the label
+  private int[] birth = new int[0];
+  private int[] death = new int[0];
+  private boolean[] border = new boolean[0];
+  private long[] touchingSum = new long[0];
+  private int[] touchingCount = new int[0];
+  // mother global label to daughter global labels, and fused global label to fusion global labels
+  private HashMap<Integer, ArrayList<Integer>> division = new HashMap<Integer, ArrayList<Integer>>();
+  private HashMap<Integer, ArrayList<Integer>> fusion = new HashMap<Integer, ArrayList<Integer>>();
+
+  /**
+   * Add the next tracked frame to the lineage. The frames must be added in order.
+   *
+   * @param frame     the tracked frame.
+   * @param prevFrame the frame before it, or null for the first frame.
+   */
+  public void addFrame(ImageFrame frame, ImageFrame prevFrame) {
+    int frameNb = frame.getFrameNb();
+    CellTable cells = frame.getCellTable();
+    TouchingGraph touching = frame.getTouchingGraph();
+
+    ensureCapacity(frame.getMaxCellGlobalLabelNumber());
+    for (int i = 0; i < cells.size(); i++) {
+      int label = cells.getGlobalLabel(i);
+      if (birth[label] < 0) {
+        birth[label] = frameNb;
+      }
+      death[label] = frameNb;
+      border[label] = border[label] || cells.isBorderCell(i);
+      if (touching.getDegree(i) > 0) {
+        touchingSum[label] += touching.getDegree(i);
+        touchingCount[label]++;
+      }
+    }
+    nbFrames++;
+
+    if (prevFrame == null) {
+      return;
+    }
+
+    // the division matrix maps each cell onto the image label of its mother in the previous frame,
+    // the daughters are recorded for the mothers that died in the previous frame
+    Matrix2D div = frame.getDivision();
+    if (div != null) {
+      for (int j = 1; j <= div.getM(); j++) {
+        double pixLabel = div.get(j, 1);
+        if (!(pixLabel > 0) || pixLabel != Math.rint(pixLabel)) {
+          continue;
+        }
+        Cell mother = prevFrame.getCellByImgLabel((int) pixLabel);
+        if (mother == null || frame.getCellByGlobalLabel(mother.getGlobalLabel()) != null) {
+          continue;
+        }
+        ArrayList<Integer> daughters = division.get(mother.getGlobalLabel());
+        if (daughters == null) {
+          daughters = new ArrayList<Integer>();
+          division.put(mother.getGlobalLabel(), daughters);
+        }
+        daughters.add(frame.getCellByImgLabel(j).getGlobalLabel());
+      }
+    }
+
+    // the fusion matrix holds the previous frame cells that fused into each cell of this frame
+    SparseFusion fus = frame.getFusion();
+    if (fus != null && fus.nnz() > 0) {
+      for (int child = 1; child <= fus.getN(); child++) {
+        int end = fus.colEnd(child);
+        if (fus.colStart(child) == end) {
+          continue;
+        }
+        ArrayList<Integer> parents = new ArrayList<Integer>();
+        for (int k = fus.colStart(child); k < end; k++) {
+          parents.add(prevFrame.getCellByImgLabel(fus.getRow(k)).getGlobalLabel());
+        }
+        fusion.put(frame.getCellByImgLabel(child).getGlobalLabel(), parents);
+      }
+    }
+  }
+
+  private void ensureCapacity(int label) {
+    maxGlobalLabel = Math.max(maxGlobalLabel, label);
+    if (label < birth.length) {
+      return;
+    }
+    int oldLength = birth.length;
+    int newLength = Math.max(label + 1, 2 * oldLength);
+    birth = Arrays.copyOf(birth, newLength);
+    Arrays.fill(birth, oldLength, newLength, -1);
+    death = Arrays.copyOf(death, newLength);
+    border = Arrays.copyOf(border, newLength);
+    touchingSum = Arrays.copyOf(touchingSum, newLength);
+    touchingCount = Arrays.copyOf(touchingCount, newLength);
+  }
+
+  /**
+   * @return the number of frames added.
+   */
+  public int getNbFrames() {
+    return nbFrames;
+  }
+
+  /**
+   * @return the highest global label in the frames added.
+   */
+  public int getMaxGlobalLabel() {
+    return maxGlobalLabel;
+  }
+
+  /**
+   * Get the birth frame of each global label, -1 for labels which never appear.
+   *
+   * @return the birth frames indexed by global label.
+   */
+  public int[] getBirth() {
+    int[] b = new int[maxGlobalLabel + 1];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (i < birth.length) ? birth[i] : -1;
+    }
+    return b;
+  }
+
+  /**
+   * Get the death frame of each global label, the last frame for labels which never appear.
+   *
+   * @return the death frames indexed by global label.
+   */
+  public int[] getDeath() {
+    int[] d = new int[maxGlobalLabel + 1];
+    for (int i = 0; i < d.length; i++) {
+      d[i] = (i < birth.length && birth[i] >= 0) ? death[i] : nbFrames - 1;
+    }
+    return d;
+  }
+
+  /**
+   * @return whether each global label touches the image border within its lifetime.
+   */
+  public boolean[] getBorder() {
+    return Arrays.copyOf(border, maxGlobalLabel + 1);
+  }
+
+  /**
+   * Get the mean number of touching cells of a global label over the frames in which it touches
+   * any other cell.
+   *
+   * @param label the global label.
+   * @return the mean number of touching cells, or NaN if the cell never touches another cell.
+   */
+  public double getMeanTouchingCells(int label) {
+    if (label >= touchingCount.length || touchingCount[label] == 0) {
+      return Double.NaN;
+    }
+    return (double) touchingSum[label] / (double) touchingCount[label];
+  }
+
+  /**
+   * @return the daughter global labels keyed by the mother global label.
+   */
+  public HashMap<Integer, ArrayList<Integer>> getDivision() {
+    return division;
+  }
+
+  /**
+   * @return the fusion global labels keyed by the global label of the cell they fused into.
+   */
+  public HashMap<Integer, ArrayList<Integer>> getFusion() {
+    return fusion;
+  }
+
+  /**
+   * Write the accumulated lineage, so it can be restored by read.
+   *
+   * @param out the stream to write to.
+   * @throws IOException if the lineage cannot be written.
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(nbFrames);
+    out.writeInt(maxGlobalLabel);
+    for (int i = 0; i <= maxGlobalLabel; i++) {
+      boolean present = i < birth.length;
+      out.writeInt(present ? birth[i] : -1);
+      out.writeInt(present ? death[i] : 0);
+      out.writeBoolean(present && border[i]);
+      out.writeLong(present ? touchingSum[i] : 0);
+      out.writeInt(present ? touchingCount[i] : 0);
+    }
+    writeEvents(out, division);
+    writeEvents(out, fusion);
+  }
+
+  /**
+   * Read a lineage written by write.
+   *
+   * @param in the stream to read from.
+   * @return the LineageAccumulator read.
+   * @throws IOException if the lineage cannot be read.
+   */
+  public static LineageAccumulator read(DataInputStream in) throws IOException {
+    LineageAccumulator lineage = new LineageAccumulator();
+    lineage.nbFrames = in.readInt();
+    int maxLabel = in.readInt();
+    lineage.ensureCapacity(maxLabel);
+    for (int i = 0; i <= maxLabel; i++) {
+      lineage.birth[i] = in.readInt();
+      lineage.death[i] = in.readInt();
+      lineage.border[i] = in.readBoolean();
+      lineage.touchingSum[i] = in.readLong();
+      lineage.touchingCount[i] = in.readInt();
+    }
+    lineage.division = readEvents(in);
+    lineage.fusion = readEvents(in);
+    return lineage;
+  }
+
+  private static void writeEvents(DataOutputStream out, HashMap<Integer, ArrayList<Integer>> events)
+      throws IOException {
+    out.writeInt(events.size());
+    for (Map.Entry<Integer, ArrayList<Integer>> e : events.entrySet()) {
+      out.writeInt(e.getKey());
+      out.writeInt(e.getValue().size());
+      for (Integer label : e.getValue()) {
+        out.writeInt(label);
+      }
+    }
+  }
+
+  private static HashMap<Integer, ArrayList<Integer>> readEvents(DataInputStream in)
+      throws IOException {
+    int nbEvents = in.readInt();
+    HashMap<Integer, ArrayList<Integer>> events = new HashMap<Integer, ArrayList<Integer>>();
+    for (int i = 0; i < nbEvents; i++) {
+      int key = in.readInt();
+      int nbLabels = in.readInt();
+      ArrayList<Integer> labels = new ArrayList<Integer>(nbLabels);
+      for (int k = 0; k < nbLabels; k++) {
+        labels.add(in.readInt());
+      }
+      events.put(key, labels);
+    }
+    return events;
+  }
+
+}
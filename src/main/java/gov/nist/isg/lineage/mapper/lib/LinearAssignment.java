@@ -0,0 +1,210 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * Optimal linear assignment between the rows and columns of a SparseCostMatrix. Every row and
+ * column may also be left unassigned, at a cost of half the cost limit each, so a pair is only
+ * assigned when doing so is cheaper than leaving both of its cells unassigned. The sum of the
+ * assigned costs plus the unassigned penalties is minimized.
+ *
+ * The cost matrix is split into the connected components of its bipartite graph of valid pairs,
+ * and each component is solved independently with the O(n^3) shortest augmenting path form of the
+ * Hungarian algorithm on its augmented square cost matrix.
+ */
+public class LinearAssignment {
+
+  private LinearAssignment() {
+  }
+
+  /**
+   * Solve the linear assignment problem over the valid, unmasked pairs of cost.
+   *
+   * @param cost      the cost matrix, invalid pairs (NaN) can never be assigned
+   * @param costLimit the cost of leaving both cells of a pair unassigned, pairs whose cost is not
+   *                  below this limit are never worth assigning
+   * @return an array of length cost.getM()+1 holding the column assigned to each row, 0 if the row
+   * is unassigned. Index 0 is unused.
+   */
+  public static int[] solve(SparseCostMatrix cost, double costLimit) {
+    int m = cost.getM();
+    int n = cost.getN();
+    int[] assignment = new int[m + 1];
+
+    // component id of each row and column, 0 means not yet visited
+    int[] rowComp = new int[m + 1];
+    int[] colComp = new int[n + 1];
+    // scratch lists holding the rows and columns of the current component
+    int[] compRows = new int[m];
+    int[] compCols = new int[n];
+    // position of each row and column within its component
+    int[] rowPos = new int[m + 1];
+    int[] colPos = new int[n + 1];
+
+    int nbComp = 0;
+    for (int seed = 1; seed <= m; seed++) {
+      if (rowComp[seed] != 0 || !hasValidPair(cost, seed)) {
+        continue;
+      }
+      nbComp++;
+
+      // breadth first search across the valid pairs to collect the component
+      int nbRows = 0;
+      int nbCols = 0;
+      int rowHead = 0;
+      int colHead = 0;
+      compRows[nbRows++] = seed;
+      rowComp[seed] = nbComp;
+      while (rowHead < nbRows || colHead < nbCols) {
+        while (rowHead < nbRows) {
+          int i = compRows[rowHead++];
+          for (int k = cost.rowStart(i); k < cost.rowEnd(i); k++) {
+            int j = cost.getColumn(k);
+            if (colComp[j] == 0 && !cost.isColumnMasked(j)) {
+              colComp[j] = nbComp;
+              compCols[nbCols++] = j;
+            }
+          }
+        }
+        while (colHead < nbCols) {
+          int j = compCols[colHead++];
+          for (int k = cost.colStart(j); k < cost.colEnd(j); k++) {
+            int i = cost.getRow(k);
+            if (rowComp[i] == 0 && !cost.isRowMasked(i)) {
+              rowComp[i] = nbComp;
+              compRows[nbRows++] = i;
+            }
+          }
+        }
+      }
+
+      // rows and columns are handled in label order so the result does not depend on the search
+      Arrays.sort(compRows, 0, nbRows);
+      Arrays.sort(compCols, 0, nbCols);
+      for (int r = 0; r < nbRows; r++) {
+        rowPos[compRows[r]] = r;
+      }
+      for (int c = 0; c < nbCols; c++) {
+        colPos[compCols[c]] = c;
+      }
+
+      // build the augmented square cost matrix of the component
+      //   [ C            diag(L/2) ]
+      //   [ diag(L/2)    0         ]
+      // where C holds the pair costs, and the off diagonal blocks the cost of leaving a row or
+      // column unassigned
+      int size = nbRows + nbCols;
+      double forbidden = costLimit * (size + 1);
+      double[][] a = new double[size][size];
+      for (int r = 0; r < nbRows; r++) {
+        Arrays.fill(a[r], forbidden);
+        a[r][nbCols + r] = costLimit / 2;
+        int i = compRows[r];
+        for (int k = cost.rowStart(i); k < cost.rowEnd(i); k++) {
+          int j = cost.getColumn(k);
+          if (colComp[j] == nbComp && !cost.isColumnMasked(j) && cost.getRowValue(k) < costLimit) {
+            a[r][colPos[j]] = cost.getRowValue(k);
+          }
+        }
+      }
+      for (int c = 0; c < nbCols; c++) {
+        Arrays.fill(a[nbRows + c], 0, nbCols, forbidden);
+        a[nbRows + c][c] = costLimit / 2;
+      }
+
+      int[] rowToCol = hungarian(a);
+      for (int r = 0; r < nbRows; r++) {
+        if (rowToCol[r] < nbCols) {
+          assignment[compRows[r]] = compCols[rowToCol[r]];
+        }
+      }
+    }
+
+    return assignment;
+  }
+
+  private static boolean hasValidPair(SparseCostMatrix cost, int i) {
+    if (cost.isRowMasked(i)) {
+      return false;
+    }
+    for (int k = cost.rowStart(i); k < cost.rowEnd(i); k++) {
+      if (!cost.isColumnMasked(cost.getColumn(k))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Minimum cost perfect matching of a dense square cost matrix, using the shortest augmenting
+   * path form of the Hungarian algorithm with row and column potentials.
+   *
+   * @param a the square cost matrix
+   * @return the column assigned to each row
+   */
+  private static int[] hungarian(double[][] a) {
+    int size = a.length;
+    // potentials and matching use one based indexing, index 0 is the virtual source
+    double[] u = new double[size + 1];
+    double[] v = new double[size + 1];
+    int[] colMatch = new int[size + 1];
+    int[] way = new int[size + 1];
+    double[] minv = new double[size + 1];
+    boolean[] used = new boolean[size + 1];
+
+    for (int i = 1; i <= size; i++) {
+      colMatch[0] = i;
+      int j0 = 0;
+      Arrays.fill(minv, Double.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      // grow the shortest path tree until it reaches a free column
+      do {
+        used[j0] = true;
+        int i0 = colMatch[j0];
+        double delta = Double.POSITIVE_INFINITY;
+        int j1 = 0;
+        for (int j = 1; j <= size; j++) {
+          if (!used[j]) {
+            double cur = a[i0 - 1][j - 1] - u[i0] - v[j];
+            if (cur < minv[j]) {
+              minv[j] = cur;
+              way[j] = j0;
+            }
+            if (minv[j] < delta) {
+              delta = minv[j];
+              j1 = j;
+            }
+          }
+        }
+        for (int j = 0; j <= size; j++) {
+          if (used[j]) {
+            u[colMatch[j]] += delta;
+            v[j] -= delta;
+          } else {
+            minv[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while (colMatch[j0] != 0);
+      // augment along the path
+      do {
+        int j1 = way[j0];
+        colMatch[j0] = colMatch[j1];
+        j0 = j1;
+      } while (j0 != 0);
+    }
+
+    int[] rowToCol = new int[size];
+    for (int j = 1; j <= size; j++) {
+      rowToCol[colMatch[j] - 1] = j - 1;
+    }
+    return rowToCol;
+  }
+
+}
@@ -0,0 +1,207 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to primitive int values. Used to accumulate
+ * sparse counts without boxing every key and value.
+ */
+public class LongIntHashMap {
+
+  private static final long EMPTY_KEY = Long.MIN_VALUE;
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] values;
+  private int size;
+  private int mask;
+
+  /**
+   * Create an empty map.
+   */
+  public LongIntHashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create an empty map sized to hold the expected number of entries without rehashing.
+   * @param expectedSize the number of entries the map is expected to hold
+   */
+  public LongIntHashMap(int expectedSize) {
+    int capacity = DEFAULT_CAPACITY;
+    while (capacity < 2 * expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, EMPTY_KEY);
+    mask = capacity - 1;
+    size = 0;
+  }
+
+  /**
+   * Scramble the key bits so that keys built from small packed integers spread across the table.
+   */
+  private static int hash(long key) {
+    key ^= (key >>> 33);
+    key *= 0xff51afd7ed558ccdL;
+    key ^= (key >>> 33);
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= (key >>> 33);
+    return (int) key;
+  }
+
+  /**
+   * Find the slot that holds the key, or the empty slot where it would be inserted.
+   */
+  private int slot(long key) {
+    int s = hash(key) & mask;
+    while (keys[s] != EMPTY_KEY && keys[s] != key) {
+      s = (s + 1) & mask;
+    }
+    return s;
+  }
+
+  /**
+   * Get the value associated with the key.
+   * @param key the key to look up
+   * @return the value associated with key, or 0 if the key is not present
+   */
+  public int get(long key) {
+    int s = slot(key);
+    return (keys[s] == key) ? values[s] : 0;
+  }
+
+  /**
+   * Determine whether the map holds the key.
+   * @param key the key to look up
+   * @return true if the key is present
+   */
+  public boolean containsKey(long key) {
+    if (key == EMPTY_KEY) {
+      return false;
+    }
+    return keys[slot(key)] == key;
+  }
+
+  /**
+   * Associate the value with the key, replacing any previous value.
+   * @param key the key, must not be Long.MIN_VALUE
+   * @param value the value to store
+   */
+  public void put(long key, int value) {
+    if (key == EMPTY_KEY) {
+      throw new IllegalArgumentException("Key Long.MIN_VALUE is reserved");
+    }
+    int s = slot(key);
+    if (keys[s] != key) {
+      keys[s] = key;
+      size++;
+      values[s] = value;
+      rehashIfNeeded();
+    } else {
+      values[s] = value;
+    }
+  }
+
+  /**
+   * Add delta to the value associated with the key. Absent keys start from 0.
+   * @param key the key, must not be Long.MIN_VALUE
+   * @param delta the amount to add
+   * @return the new value associated with the key
+   */
+  public int add(long key, int delta) {
+    if (key == EMPTY_KEY) {
+      throw new IllegalArgumentException("Key Long.MIN_VALUE is reserved");
+    }
+    int s = slot(key);
+    if (keys[s] != key) {
+      keys[s] = key;
+      values[s] = delta;
+      size++;
+      rehashIfNeeded();
+      return delta;
+    }
+    values[s] += delta;
+    return values[s];
+  }
+
+  private void rehashIfNeeded() {
+    if (2 * size <= keys.length) {
+      return;
+    }
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY_KEY) {
+        int s = slot(oldKeys[i]);
+        keys[s] = oldKeys[i];
+        values[s] = oldValues[i];
+        size++;
+      }
+    }
+  }
+
+  /**
+   * @return the number of keys held in the map
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Remove all entries from the map while keeping its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, EMPTY_KEY);
+    size = 0;
+  }
+
+  /**
+   * @return a new array holding the keys of the map, in no particular order
+   */
+  public long[] keys() {
+    long[] ret = new long[size];
+    int k = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY_KEY) {
+        ret[k++] = keys[i];
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return a new array holding the values of the map, in the same order as keys()
+   */
+  public int[] values() {
+    int[] ret = new int[size];
+    int k = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY_KEY) {
+        ret[k++] = values[i];
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Converts the map into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "LongIntHashMap: size=" + size;
+  }
+
+}
@@ -0,0 +1,148 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Label storage held off the Java heap in a memory mapped scratch file. The operating system
+ * pages the pixels in and out as they are used, so the garbage collector never sees them and a
+ * label image may be larger than the heap. The scratch file is deleted when the storage is
+ * released.
+ */
+public class MappedLabelStorage implements LabelStorage {
+
+  // a single mapping is limited to 2GB, so the pixels are mapped in chunks of 2^27 ints (512MB)
+  private static final int CHUNK_SHIFT = 27;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final int size;
+  private final File directory;
+  private File file;
+  private RandomAccessFile raf;
+  private IntBuffer[] chunks;
+
+  /**
+   * Create a zero filled storage in a new scratch file.
+   *
+   * @param size      the number of pixels.
+   * @param directory the directory to create the scratch file in, or null for the system
+   *                  temporary directory.
+   */
+  public MappedLabelStorage(int size, File directory) {
+    this.size = size;
+    this.directory = directory;
+    try {
+      file = File.createTempFile("lineage-mapper-", ".labels", directory);
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+      // extending the file fills it with zeros
+      raf.setLength(4L * size);
+
+      FileChannel channel = raf.getChannel();
+      chunks = new IntBuffer[(int) ((size + (long) CHUNK_MASK) >>> CHUNK_SHIFT)];
+      for (int c = 0; c < chunks.length; c++) {
+        long start = (long) c << CHUNK_SHIFT;
+        long n = Math.min(CHUNK_SIZE, size - start);
+        chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, 4L * start, 4L * n)
+            .order(ByteOrder.nativeOrder()).asIntBuffer();
+      }
+    } catch (IOException e) {
+      release();
+      throw new IllegalStateException("Unable to create off heap label storage: " + e.getMessage(),
+          e);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int get(int k) {
+    return chunks[k >>> CHUNK_SHIFT].get(k & CHUNK_MASK);
+  }
+
+  @Override
+  public void set(int k, int val) {
+    chunks[k >>> CHUNK_SHIFT].put(k & CHUNK_MASK, val);
+  }
+
+  @Override
+  public void get(int k, int[] dst, int off, int len) {
+    while (len > 0) {
+      // a duplicate has its own position, allowing concurrent bulk reads of the same chunk
+      IntBuffer chunk = chunks[k >>> CHUNK_SHIFT].duplicate();
+      int pos = k & CHUNK_MASK;
+      int n = Math.min(len, chunk.capacity() - pos);
+      chunk.position(pos);
+      chunk.get(dst, off, n);
+      k += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void set(int k, int[] src, int off, int len) {
+    while (len > 0) {
+      IntBuffer chunk = chunks[k >>> CHUNK_SHIFT].duplicate();
+      int pos = k & CHUNK_MASK;
+      int n = Math.min(len, chunk.capacity() - pos);
+      chunk.position(pos);
+      chunk.put(src, off, n);
+      k += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public int[] array() {
+    return null;
+  }
+
+  @Override
+  public LabelStorage copy() {
+    MappedLabelStorage ret = new MappedLabelStorage(size, directory);
+    int[] block = new int[Math.min(size, 1 << 20)];
+    for (int k = 0; k < size; k += block.length) {
+      int n = Math.min(block.length, size - k);
+      get(k, block, 0, n);
+      ret.set(k, block, 0, n);
+    }
+    return ret;
+  }
+
+  @Override
+  public void release() {
+    // the mappings themselves are unmapped once the buffers are garbage collected
+    chunks = null;
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        Log.debug("Unable to close label scratch file: " + e.getMessage());
+      }
+      raf = null;
+    }
+    if (file != null) {
+      if (!file.delete()) {
+        Log.debug("Unable to delete label scratch file: " + file.getAbsolutePath());
+      }
+      file = null;
+    }
+  }
+
+}
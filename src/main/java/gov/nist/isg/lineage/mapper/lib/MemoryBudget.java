@@ -0,0 +1,81 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+/**
+ * A budget of heap bytes shared by concurrent consumers, such as tracking jobs running in the same
+ * JVM. A consumer is admitted once the bytes it needs fit within what the others leave of the
+ * budget, and waits otherwise. A consumer needing more than the whole budget is admitted alone, so
+ * it runs rather than waiting forever.
+ */
+public class MemoryBudget {
+
+  private final long capacity;
+  private long used = 0;
+
+  /**
+   * Create a memory budget.
+   * @param capacity the number of bytes of the budget
+   */
+  public MemoryBudget(long capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("The memory budget must be positive: " + capacity);
+    this.capacity = capacity;
+  }
+
+  /**
+   * Create a memory budget holding a percentage of the maximum heap size (-Xmx).
+   * @param percent the percentage of the maximum heap
+   * @return the new memory budget
+   */
+  public static MemoryBudget ofMaxHeap(int percent) {
+    return new MemoryBudget(getMaxHeapShare(percent));
+  }
+
+  /**
+   * @param percent a percentage of the maximum heap
+   * @return the number of bytes of that percentage of the maximum heap size (-Xmx)
+   */
+  public static long getMaxHeapShare(int percent) {
+    return Math.max(1, Runtime.getRuntime().maxMemory() / 100 * percent);
+  }
+
+  /**
+   * Wait until at least the minimum number of bytes fits within the budget, then take as much of
+   * the wanted number of bytes as is left.
+   * @param minimum the number of bytes needed to proceed
+   * @param wanted  the number of bytes that could be used, at least the minimum
+   * @return the number of bytes granted, between the minimum and the wanted number of bytes, to
+   * be given back with release
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized long acquire(long minimum, long wanted) throws InterruptedException {
+    while (used > 0 && used + minimum > capacity) {
+      wait();
+    }
+    long granted = Math.max(minimum, Math.min(wanted, capacity - used));
+    used += granted;
+    return granted;
+  }
+
+  /**
+   * Give back bytes taken with acquire, admitting the consumers waiting for them.
+   * @param bytes the number of bytes granted by acquire
+   */
+  public synchronized void release(long bytes) {
+    used -= bytes;
+    notifyAll();
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public synchronized long getUsed() {
+    return used;
+  }
+}
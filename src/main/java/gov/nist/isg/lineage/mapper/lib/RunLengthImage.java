@@ -0,0 +1,219 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * Run length encoded view of a label image. Each row is held as its runs of equal nonzero labels,
+ * ordered by x, so the background costs nothing. Kernels working on runs (features, overlap,
+ * relabeling) then scale with the number of runs instead of the number of pixels, which for a
+ * sparse culture is far smaller.
+ *
+ * The runs are maximal: two consecutive runs of a row are separated by background or hold
+ * different labels. The runs of row y are the runs getRowStart(y) to getRowStart(y + 1) - 1.
+ */
+public class RunLengthImage {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int width;
+  private final int height;
+  private final int[] rowStart;
+  private int nbRuns = 0;
+  private int[] runX;
+  private int[] runLength;
+  private int[] runLabel;
+
+  private RunLengthImage(int width, int height, int capacity) {
+    this.width = width;
+    this.height = height;
+    this.rowStart = new int[height + 1];
+    capacity = Math.max(1, capacity);
+    runX = new int[capacity];
+    runLength = new int[capacity];
+    runLabel = new int[capacity];
+  }
+
+  /**
+   * Encode the pixels of an ImageTile, reading them a strip of rows at a time.
+   *
+   * @param image     the label image.
+   * @param stripRows the number of rows read at a time.
+   * @return the run length encoding of the image.
+   */
+  public static RunLengthImage encode(ImageTile image, int stripRows) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    RunLengthImage rle = new RunLengthImage(width, height, INITIAL_CAPACITY);
+    stripRows = Math.max(1, stripRows);
+    for (int yStart = 0; yStart < height; yStart += stripRows) {
+      LabelStrip strip = image.getStrip(yStart, Math.min(height, yStart + stripRows), 0, 0);
+      int[] px = strip.getPixelData();
+      for (int y = yStart; y < strip.getYEnd(); y++) {
+        int start = strip.indexOf(0, y);
+        int end = start + width;
+        int i = start;
+        while (i < end) {
+          int pix = px[i];
+          if (pix <= 0) {
+            i++;
+            continue;
+          }
+          int j = i + 1;
+          while (j < end && px[j] == pix) {
+            j++;
+          }
+          rle.addRun(i - start, j - i, pix);
+          i = j;
+        }
+        rle.rowStart[y + 1] = rle.nbRuns;
+      }
+    }
+    rle.trimToSize();
+    return rle;
+  }
+
+  private void addRun(int x, int length, int label) {
+    if (nbRuns == runX.length) {
+      grow(2 * runX.length);
+    }
+    runX[nbRuns] = x;
+    runLength[nbRuns] = length;
+    runLabel[nbRuns] = label;
+    nbRuns++;
+  }
+
+  private void grow(int capacity) {
+    runX = Arrays.copyOf(runX, capacity);
+    runLength = Arrays.copyOf(runLength, capacity);
+    runLabel = Arrays.copyOf(runLabel, capacity);
+  }
+
+  private void trimToSize() {
+    if (nbRuns < runX.length) {
+      grow(Math.max(1, nbRuns));
+    }
+  }
+
+  /**
+   * Renumber the runs through a lookup table, label l becoming renum[l], as ImageTile.relabel
+   * does for the pixels. Runs relabeled to the background are dropped and neighboring runs that
+   * end up with the same label are merged, so the runs stay maximal.
+   *
+   * @param renum the new label of each label, indexed by the current label.
+   */
+  public void relabel(int[] renum) {
+    int k = 0;
+    int first = 0;
+    for (int y = 0; y < height; y++) {
+      int rowFirst = k;
+      for (int r = first; r < rowStart[y + 1]; r++) {
+        int label = renum[runLabel[r]];
+        if (label <= 0) {
+          continue;
+        }
+        if (k > rowFirst && runLabel[k - 1] == label
+            && runX[k - 1] + runLength[k - 1] == runX[r]) {
+          runLength[k - 1] += runLength[r];
+          continue;
+        }
+        runX[k] = runX[r];
+        runLength[k] = runLength[r];
+        runLabel[k] = label;
+        k++;
+      }
+      first = rowStart[y + 1];
+      rowStart[y + 1] = k;
+    }
+    nbRuns = k;
+  }
+
+  /**
+   * Accumulate the overlap between the labels of two images over a band of rows, the number of
+   * pixels at which a label of prev and a label of cur coincide. The runs of each row are
+   * intersected in order, so the work is proportional to the number of runs.
+   *
+   * @param prev    the image whose labels are the rows of the overlap.
+   * @param cur     the image whose labels are the columns of the overlap.
+   * @param width   the width of the area shared by both images.
+   * @param yStart  the first row of the band.
+   * @param yEnd    one past the last row of the band.
+   * @param overlap the overlap counts to add to.
+   */
+  public static void addOverlap(RunLengthImage prev, RunLengthImage cur, int width, int yStart,
+                                int yEnd, SparseOverlap overlap) {
+    for (int y = yStart; y < yEnd; y++) {
+      int p = prev.rowStart[y];
+      int pEnd = prev.rowStart[y + 1];
+      int c = cur.rowStart[y];
+      int cEnd = cur.rowStart[y + 1];
+      while (p < pEnd && c < cEnd) {
+        int x0 = Math.max(prev.runX[p], cur.runX[c]);
+        int pStop = prev.runX[p] + prev.runLength[p];
+        int cStop = cur.runX[c] + cur.runLength[c];
+        int x1 = Math.min(Math.min(pStop, cStop), width);
+        if (x0 < x1) {
+          overlap.add(prev.runLabel[p], cur.runLabel[c], x1 - x0);
+        }
+        // advance whichever run ends first
+        if (pStop <= cStop) {
+          p++;
+        } else {
+          c++;
+        }
+      }
+    }
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the total number of runs.
+   */
+  public int getRunCount() {
+    return nbRuns;
+  }
+
+  /**
+   * @param y the row.
+   * @return the index of the first run of row y, the runs of row y end at getRowStart(y + 1).
+   */
+  public int getRowStart(int y) {
+    return rowStart[y];
+  }
+
+  /**
+   * @param k the index of the run.
+   * @return the x coordinate of the first pixel of the run.
+   */
+  public int getRunX(int k) {
+    return runX[k];
+  }
+
+  /**
+   * @param k the index of the run.
+   * @return the number of pixels of the run.
+   */
+  public int getRunLength(int k) {
+    return runLength[k];
+  }
+
+  /**
+   * @param k the index of the run.
+   * @return the label of the run.
+   */
+  public int getRunLabel(int k) {
+    return runLabel[k];
+  }
+}
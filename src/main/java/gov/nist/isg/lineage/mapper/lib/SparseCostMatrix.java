@@ -0,0 +1,439 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Sparse matrix of tracking costs between the cells of two ImageFrames. Element (i,j) holds the
+ * cost of tracking cell i in the previous frame onto cell j in the current frame. Only valid pairs
+ * are stored, any pair that is not stored reads as NaN, matching the NaN sentinel used by the dense
+ * Matrix2D cost. Whole rows and columns can be masked, which makes every pair within them read as
+ * NaN without touching the stored entries. Indexing is one based to match Matrix2D.
+ */
+public class SparseCostMatrix {
+
+  private int m;
+  private int n;
+
+  // entries in the order they were set
+  private int nbEntries = 0;
+  private int[] entryRow = new int[16];
+  private int[] entryCol = new int[16];
+  private double[] entryVal = new double[16];
+
+  // masked rows and columns
+  private BitSet maskedRows = new BitSet();
+  private BitSet maskedCols = new BitSet();
+
+  // compressed sparse row and column indices over the entries, built on demand
+  private boolean indexValid = false;
+  private int[] rowPtr = null;
+  private int[] colIdx = null;
+  private double[] rowVals = null;
+  private int[] colPtr = null;
+  private int[] rowIdx = null;
+  private double[] colVals = null;
+
+  /**
+   * Create an empty cost matrix, every pair reads as NaN.
+   * @param newM the number of cells in the previous frame (height)
+   * @param newN the number of cells in the current frame (width)
+   */
+  public SparseCostMatrix(int newM, int newN) {
+    m = newM;
+    n = newN;
+  }
+
+  public int getM() {
+    return this.m;
+  }
+
+  public int getN() {
+    return this.n;
+  }
+
+  /**
+   * Set the cost between previous cell i and current cell j. Setting a NaN cost leaves the pair
+   * invalid. Setting a pair that was already set replaces its cost.
+   * @param i the previous frame cell label
+   * @param j the current frame cell label
+   * @param val the cost
+   */
+  public void set(int i, int j, double val) {
+    if (i < 1 || i > m || j < 1 || j > n) {
+      throw new IllegalArgumentException(
+          "Index (" + i + "," + j + ") out of bounds for SparseCostMatrix of size " + m + "x" + n);
+    }
+    if (Double.isNaN(val)) {
+      return;
+    }
+    if (nbEntries == entryRow.length) {
+      int newLength = 2 * entryRow.length;
+      entryRow = Arrays.copyOf(entryRow, newLength);
+      entryCol = Arrays.copyOf(entryCol, newLength);
+      entryVal = Arrays.copyOf(entryVal, newLength);
+    }
+    entryRow[nbEntries] = i;
+    entryCol[nbEntries] = j;
+    entryVal[nbEntries] = val;
+    nbEntries++;
+    indexValid = false;
+  }
+
+  public void set(double i, double j, double val) {
+    this.set((int) i, (int) j, val);
+  }
+
+  /**
+   * Get the cost between previous cell i and current cell j.
+   * @param i the previous frame cell label
+   * @param j the current frame cell label
+   * @return the cost, NaN if the pair is not valid or its row or column is masked
+   */
+  public double get(int i, int j) {
+    if (i < 1 || i > m || j < 1 || j > n || maskedRows.get(i) || maskedCols.get(j)) {
+      return Double.NaN;
+    }
+    buildIndex();
+    int k = Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i + 1], j);
+    if (k < 0) {
+      return Double.NaN;
+    }
+    return rowVals[k];
+  }
+
+  public double get(double i, double j) {
+    return this.get((int) i, (int) j);
+  }
+
+  public boolean isNaN(int i, int j) {
+    return Double.isNaN(this.get(i, j));
+  }
+
+  /**
+   * Mask row i, every pair within the row will read as NaN.
+   * @param i the previous frame cell label
+   */
+  public void maskRow(int i) {
+    maskedRows.set(i);
+  }
+
+  /**
+   * Mask column j, every pair within the column will read as NaN.
+   * @param j the current frame cell label
+   */
+  public void maskColumn(int j) {
+    maskedCols.set(j);
+  }
+
+  public boolean isRowMasked(int i) {
+    return maskedRows.get(i);
+  }
+
+  public boolean isColumnMasked(int j) {
+    return maskedCols.get(j);
+  }
+
+  /**
+   * @return the number of valid pairs that are not within a masked row or column
+   */
+  public int nnz() {
+    buildIndex();
+    if (maskedRows.isEmpty() && maskedCols.isEmpty()) {
+      return colIdx.length;
+    }
+    int nb = 0;
+    for (int i = 1; i <= m; i++) {
+      if (maskedRows.get(i)) {
+        continue;
+      }
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+        if (!maskedCols.get(colIdx[k])) {
+          nb++;
+        }
+      }
+    }
+    return nb;
+  }
+
+  /**
+   * Get the position of the first entry of row i within the compressed row index. The entries of
+   * row i are found at positions [rowStart(i), rowEnd(i)) sorted by column. Masking is not applied
+   * to the index, callers iterating over it must check isRowMasked and isColumnMasked.
+   * @param i the previous frame cell label
+   * @return the index of the first entry of row i
+   */
+  public int rowStart(int i) {
+    buildIndex();
+    if (i < 1 || i > m) {
+      return 0;
+    }
+    return rowPtr[i];
+  }
+
+  /**
+   * Get the position one past the last entry of row i within the compressed row index.
+   * @param i the previous frame cell label
+   * @return the index one past the last entry of row i
+   */
+  public int rowEnd(int i) {
+    buildIndex();
+    if (i < 1 || i > m) {
+      return 0;
+    }
+    return rowPtr[i + 1];
+  }
+
+  /**
+   * @param k the position within the compressed row index
+   * @return the current frame cell label (column) of entry k
+   */
+  public int getColumn(int k) {
+    return colIdx[k];
+  }
+
+  /**
+   * @param k the position within the compressed row index
+   * @return the cost of entry k
+   */
+  public double getRowValue(int k) {
+    return rowVals[k];
+  }
+
+  /**
+   * Get the position of the first entry of column j within the compressed column index. The
+   * entries of column j are found at positions [colStart(j), colEnd(j)) sorted by row.
+   * @param j the current frame cell label
+   * @return the index of the first entry of column j
+   */
+  public int colStart(int j) {
+    buildIndex();
+    if (j < 1 || j > n) {
+      return 0;
+    }
+    return colPtr[j];
+  }
+
+  /**
+   * Get the position one past the last entry of column j within the compressed column index.
+   * @param j the current frame cell label
+   * @return the index one past the last entry of column j
+   */
+  public int colEnd(int j) {
+    buildIndex();
+    if (j < 1 || j > n) {
+      return 0;
+    }
+    return colPtr[j + 1];
+  }
+
+  /**
+   * @param k the position within the compressed column index
+   * @return the previous frame cell label (row) of entry k
+   */
+  public int getRow(int k) {
+    return rowIdx[k];
+  }
+
+  /**
+   * @param k the position within the compressed column index
+   * @return the cost of entry k
+   */
+  public double getColValue(int k) {
+    return colVals[k];
+  }
+
+  /**
+   * Find the minimum value per row (value and index). Rows without any unmasked pair are NaN in
+   * both outputs. Ties are resolved to the lowest column, as in Matrix2D.rowWiseMin.
+   * @param minValues matrix to hold the row-size minimum values
+   * @param minIndicies matrix to hold the index of the row-wise minimum values.
+   */
+  public void rowWiseMin(Matrix2D minValues, Matrix2D minIndicies) {
+    if (minValues.getM() != m || minValues.getN() != 1) {
+      throw new IllegalArgumentException("minValues input Matrix2D wrong size");
+    }
+    if (minIndicies.getM() != m || minIndicies.getN() != 1) {
+      throw new IllegalArgumentException("minIndicies input Matrix2D wrong size");
+    }
+    buildIndex();
+    for (int i = 1; i <= m; i++) {
+      double mv = Double.NaN;
+      int indx = 0;
+      if (!maskedRows.get(i)) {
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+          if (!maskedCols.get(colIdx[k]) && (Double.isNaN(mv) || rowVals[k] < mv)) {
+            mv = rowVals[k];
+            indx = colIdx[k];
+          }
+        }
+      }
+      if (Double.isNaN(mv)) {
+        minValues.set(i, 1, Double.NaN);
+        minIndicies.set(i, 1, Double.NaN);
+      } else {
+        minValues.set(i, 1, mv);
+        minIndicies.set(i, 1, indx);
+      }
+    }
+  }
+
+  /**
+   * Find the minimum value per column (value and index). Columns without any unmasked pair are NaN
+   * in both outputs. Ties are resolved to the lowest row, as in Matrix2D.colWiseMin.
+   * @param minValues matrix to hold the column-size minimum values
+   * @param minIndicies matrix to hold the index of the column-wise minimum values.
+   */
+  public void colWiseMin(Matrix2D minValues, Matrix2D minIndicies) {
+    if (minValues.getN() != n || minValues.getM() != 1) {
+      throw new IllegalArgumentException("minValues input Matrix2D wrong size");
+    }
+    if (minIndicies.getN() != n || minIndicies.getM() != 1) {
+      throw new IllegalArgumentException("minIndicies input Matrix2D wrong size");
+    }
+    buildIndex();
+    for (int j = 1; j <= n; j++) {
+      double mv = Double.NaN;
+      int indx = 0;
+      if (!maskedCols.get(j)) {
+        for (int k = colPtr[j]; k < colPtr[j + 1]; k++) {
+          if (!maskedRows.get(rowIdx[k]) && (Double.isNaN(mv) || colVals[k] < mv)) {
+            mv = colVals[k];
+            indx = rowIdx[k];
+          }
+        }
+      }
+      if (Double.isNaN(mv)) {
+        minValues.set(1, j, Double.NaN);
+        minIndicies.set(1, j, Double.NaN);
+      } else {
+        minValues.set(1, j, mv);
+        minIndicies.set(1, j, indx);
+      }
+    }
+  }
+
+  /**
+   * Create a copy of this cost matrix holding only the unmasked pairs whose row and column are
+   * both selected. The copy has the same dimensions and no masks.
+   * @param rows the previous frame cell labels to keep
+   * @param cols the current frame cell labels to keep
+   * @return the new SparseCostMatrix
+   */
+  public SparseCostMatrix subMatrix(BitSet rows, BitSet cols) {
+    buildIndex();
+    SparseCostMatrix sub = new SparseCostMatrix(m, n);
+    for (int i = rows.nextSetBit(1); i >= 1 && i <= m; i = rows.nextSetBit(i + 1)) {
+      if (maskedRows.get(i)) {
+        continue;
+      }
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+        int j = colIdx[k];
+        if (cols.get(j) && !maskedCols.get(j)) {
+          sub.set(i, j, rowVals[k]);
+        }
+      }
+    }
+    return sub;
+  }
+
+  /**
+   * Create a copy of this cost matrix, including its masks.
+   * @return the new SparseCostMatrix
+   */
+  @Override
+  public SparseCostMatrix clone() {
+    SparseCostMatrix ret = new SparseCostMatrix(m, n);
+    ret.nbEntries = nbEntries;
+    ret.entryRow = Arrays.copyOf(entryRow, Math.max(nbEntries, 1));
+    ret.entryCol = Arrays.copyOf(entryCol, Math.max(nbEntries, 1));
+    ret.entryVal = Arrays.copyOf(entryVal, Math.max(nbEntries, 1));
+    ret.maskedRows = (BitSet) maskedRows.clone();
+    ret.maskedCols = (BitSet) maskedCols.clone();
+    return ret;
+  }
+
+  /**
+   * Build the compressed sparse row and column indices from the entries. When a pair has been set
+   * more than once only its last cost is kept.
+   */
+  private void buildIndex() {
+    if (indexValid) {
+      return;
+    }
+
+    // counting sort of the entries by row
+    rowPtr = new int[m + 2];
+    for (int e = 0; e < nbEntries; e++) {
+      rowPtr[entryRow[e] + 1]++;
+    }
+    for (int i = 1; i < rowPtr.length; i++) {
+      rowPtr[i] += rowPtr[i - 1];
+    }
+    // within each row pack (column, entry) pairs so sorting orders by column then by insertion
+    long[] packed = new long[nbEntries];
+    int[] fill = Arrays.copyOf(rowPtr, rowPtr.length);
+    for (int e = 0; e < nbEntries; e++) {
+      packed[fill[entryRow[e]]++] = ((long) entryCol[e] << 32) | e;
+    }
+
+    // sort each row and drop the earlier duplicates of any pair set more than once
+    int[] newRowPtr = new int[m + 2];
+    int[] cols = new int[nbEntries];
+    double[] vals = new double[nbEntries];
+    int nb = 0;
+    for (int i = 1; i <= m; i++) {
+      Arrays.sort(packed, rowPtr[i], rowPtr[i + 1]);
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+        int j = (int) (packed[k] >>> 32);
+        int e = (int) packed[k];
+        if (k + 1 < rowPtr[i + 1] && (int) (packed[k + 1] >>> 32) == j) {
+          continue;
+        }
+        cols[nb] = j;
+        vals[nb] = entryVal[e];
+        nb++;
+      }
+      newRowPtr[i + 1] = nb;
+    }
+    newRowPtr[m + 1] = nb;
+    rowPtr = newRowPtr;
+    colIdx = Arrays.copyOf(cols, nb);
+    rowVals = Arrays.copyOf(vals, nb);
+
+    // the column index is filled in row order so the rows within each column are sorted
+    colPtr = new int[n + 2];
+    for (int k = 0; k < nb; k++) {
+      colPtr[colIdx[k] + 1]++;
+    }
+    for (int j = 1; j < colPtr.length; j++) {
+      colPtr[j] += colPtr[j - 1];
+    }
+    fill = Arrays.copyOf(colPtr, colPtr.length);
+    rowIdx = new int[nb];
+    colVals = new double[nb];
+    for (int i = 1; i <= m; i++) {
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+        int pos = fill[colIdx[k]]++;
+        rowIdx[pos] = i;
+        colVals[pos] = rowVals[k];
+      }
+    }
+    indexValid = true;
+  }
+
+  /**
+   * Converts the cost matrix into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "SparseCostMatrix: m=" + m + ", n=" + n + ", pairs=" + nnz();
+  }
+
+}
@@ -0,0 +1,242 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse matrix of the fusion events between the cells of two ImageFrames. Element (i,j) is
+ * nonzero when cell i in the previous frame fused into cell j in the current frame, and then holds
+ * the label cell i takes within j. Only the cells involved in a fusion are stored, so memory grows
+ * with the number of fusion events instead of with the product of the label counts. Indexing is
+ * one based to match Matrix2D.
+ */
+public class SparseFusion {
+
+  private int m;
+  private int n;
+  private LongIntHashMap values;
+
+  // compressed sparse column index over the nonzero values, built on demand
+  private boolean indexValid = false;
+  private int[] colPtr = null;
+  private int[] rowIdx = null;
+  private int[] rowValues = null;
+
+  /**
+   * Create an empty fusion matrix.
+   * @param newM the number of cells in the previous frame (height)
+   * @param newN the number of cells in the current frame (width)
+   */
+  public SparseFusion(int newM, int newN) {
+    m = newM;
+    n = newN;
+    values = new LongIntHashMap();
+  }
+
+  // packed keys sort column major, then by row within each column
+  private static long key(int i, int j) {
+    return ((long) j << 32) | (i & 0xffffffffL);
+  }
+
+  public int getM() {
+    return this.m;
+  }
+
+  public int getN() {
+    return this.n;
+  }
+
+  /**
+   * Get the fusion value between previous cell i and current cell j.
+   * @param i the previous frame cell label
+   * @param j the current frame cell label
+   * @return the label of cell i within the fused cell j, 0 if cell i did not fuse into j
+   */
+  public int get(int i, int j) {
+    return values.get(key(i, j));
+  }
+
+  /**
+   * Set the fusion value between previous cell i and current cell j, 0 removes the pair.
+   * @param i the previous frame cell label
+   * @param j the current frame cell label
+   * @param val the label of cell i within the fused cell j
+   */
+  public void set(int i, int j, int val) {
+    if (i < 1 || i > m || j < 1 || j > n) {
+      throw new IndexOutOfBoundsException("Fusion pair (" + i + "," + j + ") out of bounds");
+    }
+    if (val == 0 && !values.containsKey(key(i, j))) {
+      return;
+    }
+    values.put(key(i, j), val);
+    indexValid = false;
+  }
+
+  /**
+   * Remove every pair of the previous frame cell i.
+   * @param i the previous frame cell label
+   */
+  public void clearRow(int i) {
+    buildIndex();
+    for (int k = 0; k < rowIdx.length; k++) {
+      if (rowIdx[k] == i) {
+        values.put(key(i, column(k)), 0);
+        indexValid = false;
+      }
+    }
+  }
+
+  /**
+   * Remove every pair of the current frame cell j.
+   * @param j the current frame cell label
+   */
+  public void clearColumn(int j) {
+    int start = colStart(j);
+    int end = colEnd(j);
+    for (int k = start; k < end; k++) {
+      values.put(key(rowIdx[k], j), 0);
+    }
+    if (start < end) {
+      indexValid = false;
+    }
+  }
+
+  /**
+   * @return the number of nonzero pairs
+   */
+  public int nnz() {
+    buildIndex();
+    return rowIdx.length;
+  }
+
+  /**
+   * Get the position of the first nonzero entry of column j within the compressed column index.
+   * The entries of column j are found at positions [colStart(j), colEnd(j)) sorted by row.
+   * @param j the current frame cell label
+   * @return the index of the first entry of column j
+   */
+  public int colStart(int j) {
+    buildIndex();
+    if (j < 1 || j > n) {
+      return 0;
+    }
+    return colPtr[j];
+  }
+
+  /**
+   * Get the position one past the last nonzero entry of column j within the compressed column
+   * index.
+   * @param j the current frame cell label
+   * @return the index one past the last entry of column j
+   */
+  public int colEnd(int j) {
+    buildIndex();
+    if (j < 1 || j > n) {
+      return 0;
+    }
+    return colPtr[j + 1];
+  }
+
+  /**
+   * @param k the position within the compressed column index
+   * @return the previous frame cell label (row) of entry k
+   */
+  public int getRow(int k) {
+    return rowIdx[k];
+  }
+
+  /**
+   * @param k the position within the compressed column index
+   * @return the fusion value of entry k
+   */
+  public int getValue(int k) {
+    return rowValues[k];
+  }
+
+  /**
+   * Find the distinct nonzero fusion values, which are the labels of the cells within the fused
+   * cells.
+   * @return the values sorted in increasing order
+   */
+  public List<Double> getLabels() {
+    buildIndex();
+    int[] sorted = Arrays.copyOf(rowValues, rowValues.length);
+    Arrays.sort(sorted);
+    List<Double> ret = new ArrayList<Double>();
+    for (int k = 0; k < sorted.length; k++) {
+      if (k == 0 || sorted[k] != sorted[k - 1]) {
+        ret.add((double) sorted[k]);
+      }
+    }
+    return ret;
+  }
+
+  // column of entry k, found from the column pointers of the valid index
+  private int column(int k) {
+    int lo = 1;
+    int hi = n;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (colPtr[mid] <= k) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Build the compressed sparse column index from the stored values. Pairs whose value is not
+   * positive are left out of the index.
+   */
+  private void buildIndex() {
+    if (indexValid) {
+      return;
+    }
+    long[] keys = values.keys();
+    int[] vals = values.values();
+
+    // drop any pairs whose value has been reset to zero
+    int nb = 0;
+    for (int k = 0; k < keys.length; k++) {
+      if (vals[k] > 0) {
+        keys[nb] = keys[k];
+        nb++;
+      }
+    }
+    keys = Arrays.copyOf(keys, nb);
+    Arrays.sort(keys);
+
+    colPtr = new int[n + 2];
+    rowIdx = new int[nb];
+    rowValues = new int[nb];
+    for (int k = 0; k < nb; k++) {
+      int j = (int) (keys[k] >>> 32);
+      rowIdx[k] = (int) keys[k];
+      rowValues[k] = values.get(keys[k]);
+      colPtr[j + 1]++;
+    }
+    for (int j = 1; j < colPtr.length; j++) {
+      colPtr[j] += colPtr[j - 1];
+    }
+    indexValid = true;
+  }
+
+  /**
+   * Converts the fusion matrix into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "SparseFusion: m=" + m + ", n=" + n + ", pairs=" + nnz();
+  }
+
+}
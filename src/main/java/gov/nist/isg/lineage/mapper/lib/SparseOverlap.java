@@ -0,0 +1,175 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * Sparse matrix of pixel overlap counts between the cells of two ImageFrames. Element (i,j) holds
+ * the number of pixels shared by cell i in the previous frame and cell j in the current frame.
+ * Only pairs that actually overlap are stored, so memory grows with the number of overlapping
+ * pairs instead of with the product of the label counts. Indexing is one based to match
+ * Matrix2D.
+ */
+public class SparseOverlap {
+
+  private int m;
+  private int n;
+  private LongIntHashMap counts;
+
+  // compressed sparse row index over the nonzero counts, built on demand
+  private boolean indexValid = false;
+  private int[] rowPtr = null;
+  private int[] colIdx = null;
+  private int[] colCounts = null;
+
+  /**
+   * Create an empty overlap matrix.
+   * @param newM the number of cells in the previous frame (height)
+   * @param newN the number of cells in the current frame (width)
+   */
+  public SparseOverlap(int newM, int newN) {
+    m = newM;
+    n = newN;
+    counts = new LongIntHashMap();
+  }
+
+  private static long key(int i, int j) {
+    return ((long) i << 32) | (j & 0xffffffffL);
+  }
+
+  public int getM() {
+    return this.m;
+  }
+
+  public int getN() {
+    return this.n;
+  }
+
+  /**
+   * Get the overlap between previous cell i and current cell j.
+   * @param i the previous frame cell label
+   * @param j the current frame cell label
+   * @return the number of shared pixels, 0 if the cells do not overlap
+   */
+  public int get(int i, int j) {
+    return counts.get(key(i, j));
+  }
+
+  public int get(double i, double j) {
+    return this.get((int) i, (int) j);
+  }
+
+  public void increment(int i, int j) {
+    counts.add(key(i, j), 1);
+    indexValid = false;
+  }
+
+  public void add(int i, int j, int val) {
+    counts.add(key(i, j), val);
+    indexValid = false;
+  }
+
+  /**
+   * @return the number of overlapping (nonzero) cell pairs
+   */
+  public int nnz() {
+    buildIndex();
+    return colIdx.length;
+  }
+
+  /**
+   * Get the position of the first nonzero entry of row i within the compressed row index. The
+   * entries of row i are found at positions [rowStart(i), rowEnd(i)) sorted by column.
+   * @param i the previous frame cell label
+   * @return the index of the first entry of row i
+   */
+  public int rowStart(int i) {
+    buildIndex();
+    if (i < 1 || i > m) {
+      return 0;
+    }
+    return rowPtr[i];
+  }
+
+  /**
+   * Get the position one past the last nonzero entry of row i within the compressed row index.
+   * @param i the previous frame cell label
+   * @return the index one past the last entry of row i
+   */
+  public int rowEnd(int i) {
+    buildIndex();
+    if (i < 1 || i > m) {
+      return 0;
+    }
+    return rowPtr[i + 1];
+  }
+
+  /**
+   * @param k the position within the compressed row index
+   * @return the current frame cell label (column) of entry k
+   */
+  public int getColumn(int k) {
+    return colIdx[k];
+  }
+
+  /**
+   * @param k the position within the compressed row index
+   * @return the overlap count of entry k
+   */
+  public int getCount(int k) {
+    return colCounts[k];
+  }
+
+  /**
+   * Build the compressed sparse row index from the accumulated counts. Pairs whose count is not
+   * positive are left out of the index.
+   */
+  private void buildIndex() {
+    if (indexValid) {
+      return;
+    }
+    long[] keys = counts.keys();
+    int[] vals = counts.values();
+
+    // drop any pairs whose count has been reduced to zero
+    int nb = 0;
+    for (int k = 0; k < keys.length; k++) {
+      if (vals[k] > 0) {
+        keys[nb] = keys[k];
+        nb++;
+      }
+    }
+    keys = Arrays.copyOf(keys, nb);
+    // packed keys sort row major, then by column within each row
+    Arrays.sort(keys);
+
+    rowPtr = new int[m + 2];
+    colIdx = new int[nb];
+    colCounts = new int[nb];
+    for (int k = 0; k < nb; k++) {
+      int i = (int) (keys[k] >>> 32);
+      int j = (int) keys[k];
+      colIdx[k] = j;
+      colCounts[k] = counts.get(keys[k]);
+      rowPtr[i + 1]++;
+    }
+    for (int i = 1; i < rowPtr.length; i++) {
+      rowPtr[i] += rowPtr[i - 1];
+    }
+    indexValid = true;
+  }
+
+  /**
+   * Converts the overlap matrix into a human readable string.
+   */
+  @Override
+  public String toString() {
+    return "SparseOverlap: m=" + m + ", n=" + n + ", pairs=" + counts.size();
+  }
+
+}
@@ -0,0 +1,325 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import ij.io.FileInfo;
+import ij.io.ImageReader;
+import ij.io.Opener;
+
+/**
+ * Reads the rows of a single image grayscale TIFF file without decoding the whole image. The rows
+ * of an uncompressed file are read straight from their offset in the file, and a compressed file
+ * is decoded one of its strips at a time, so only the strip holding the requested row is held in
+ * memory. Files this reader does not handle are left to ImageJ by the caller.
+ */
+public class TiffStripReader implements Closeable {
+
+  private static final int LZW_CLEAR = 256;
+  private static final int LZW_EOI = 257;
+  private static final int LZW_FIRST = 258;
+  private static final int LZW_TABLE_SIZE = 4096;
+
+  private final FileInfo fi;
+  private final RandomAccessFile raf;
+  private final int bytesPerPixel;
+  private final int rowBytes;
+  private final int rowsPerStrip;
+  private final boolean compressed;
+  // the decoded strip of a compressed file and its index, -1 if none is decoded
+  private byte[] strip = null;
+  private int stripIndex = -1;
+  // the bytes of one row of an uncompressed file
+  private byte[] rowBuffer = null;
+  // the string table of the LZW decoder, allocated on the first LZW strip
+  private short[] lzwPrefix = null;
+  private byte[] lzwSuffix = null;
+  private byte[] lzwFirst = null;
+  private int[] lzwLength = null;
+
+  private TiffStripReader(FileInfo fi, RandomAccessFile raf) {
+    this.fi = fi;
+    this.raf = raf;
+    this.bytesPerPixel = getBytesPerPixel(fi.fileType);
+    this.rowBytes = fi.width * bytesPerPixel;
+    this.rowsPerStrip = (fi.rowsPerStrip > 0) ? Math.min(fi.rowsPerStrip, fi.height) : fi.height;
+    this.compressed = fi.compression != FileInfo.COMPRESSION_NONE;
+  }
+
+  /**
+   * Open a TIFF file for reading by rows.
+   *
+   * @param filepath the path of the image file.
+   * @return the reader, or null if the file is not a single 8 bit, 16 bit unsigned or 32 bit float
+   * grayscale TIFF image stored uncompressed or with LZW, PackBits or ZIP compression (8 bit
+   * images also with the LZW differencing predictor).
+   * @throws IOException if the file cannot be opened.
+   */
+  public static TiffStripReader open(String filepath) throws IOException {
+    FileInfo[] info = Opener.getTiffFileInfo(filepath);
+    if (info == null || info.length != 1 || !isSupported(info[0])) {
+      return null;
+    }
+    return new TiffStripReader(info[0], new RandomAccessFile(filepath, "r"));
+  }
+
+  private static boolean isSupported(FileInfo fi) {
+    if (fi.nImages > 1 || fi.whiteIsZero || fi.width < 1 || fi.height < 1
+        || getBytesPerPixel(fi.fileType) == 0) {
+      return false;
+    }
+    switch (fi.compression) {
+      case FileInfo.COMPRESSION_NONE:
+        return true;
+      case FileInfo.LZW_WITH_DIFFERENCING:
+        if (fi.fileType != FileInfo.GRAY8) {
+          return false;
+        }
+        // fall through
+      case FileInfo.LZW:
+      case FileInfo.PACK_BITS:
+      case FileInfo.ZIP:
+        int rows = (fi.rowsPerStrip > 0) ? Math.min(fi.rowsPerStrip, fi.height) : fi.height;
+        int nbStrips = (fi.height + rows - 1) / rows;
+        return fi.stripOffsets != null && fi.stripLengths != null
+            && fi.stripOffsets.length >= nbStrips && fi.stripLengths.length >= nbStrips;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the number of bytes of a pixel of the file type, 0 for unsupported types.
+   */
+  private static int getBytesPerPixel(int fileType) {
+    switch (fileType) {
+      case FileInfo.GRAY8:
+        return 1;
+      case FileInfo.GRAY16_UNSIGNED:
+        return 2;
+      case FileInfo.GRAY32_FLOAT:
+        return 4;
+      default:
+        return 0;
+    }
+  }
+
+  public int getWidth() {
+    return fi.width;
+  }
+
+  public int getHeight() {
+    return fi.height;
+  }
+
+  /**
+   * @return the number of rows of a strip of the file, the rows decoded together.
+   */
+  public int getRowsPerStrip() {
+    return rowsPerStrip;
+  }
+
+  /**
+   * Read part of a row of the image as labels. 8 and 16 bit pixels are read as unsigned values and
+   * 32 bit pixels are rounded from their float values, negative values becoming 0.
+   *
+   * @param y   the row to read.
+   * @param x0  the first column to read.
+   * @param dst the array receiving the labels.
+   * @param off the index within dst of the first label.
+   * @param len the number of pixels to read.
+   * @throws IOException if the file cannot be read.
+   */
+  public void readRow(int y, int x0, int[] dst, int off, int len) throws IOException {
+    if (y < 0 || y >= fi.height || x0 < 0 || len < 0 || x0 + len > fi.width) {
+      throw new IllegalArgumentException("Row out of bounds of the image");
+    }
+    byte[] b;
+    int base;
+    if (compressed) {
+      decodeStrip(y / rowsPerStrip);
+      b = strip;
+      base = (y % rowsPerStrip) * rowBytes + x0 * bytesPerPixel;
+    } else {
+      if (rowBuffer == null) {
+        rowBuffer = new byte[rowBytes];
+      }
+      raf.seek(getRowOffset(y) + (long) x0 * bytesPerPixel);
+      raf.readFully(rowBuffer, 0, len * bytesPerPixel);
+      b = rowBuffer;
+      base = 0;
+    }
+
+    boolean intel = fi.intelByteOrder;
+    for (int i = 0; i < len; i++) {
+      int k = base + i * bytesPerPixel;
+      switch (fi.fileType) {
+        case FileInfo.GRAY8:
+          dst[off + i] = b[k] & 0xff;
+          break;
+        case FileInfo.GRAY16_UNSIGNED:
+          dst[off + i] = intel ? ((b[k + 1] & 0xff) << 8) | (b[k] & 0xff)
+                               : ((b[k] & 0xff) << 8) | (b[k + 1] & 0xff);
+          break;
+        default:
+          int bits = intel
+              ? ((b[k + 3] & 0xff) << 24) | ((b[k + 2] & 0xff) << 16) | ((b[k + 1] & 0xff) << 8)
+                | (b[k] & 0xff)
+              : ((b[k] & 0xff) << 24) | ((b[k + 1] & 0xff) << 16) | ((b[k + 2] & 0xff) << 8)
+                | (b[k + 3] & 0xff);
+          // float pixels are rounded and clamped to the valid label range
+          dst[off + i] = Math.max(0, Math.round(Float.intBitsToFloat(bits)));
+          break;
+      }
+    }
+  }
+
+  /**
+   * @return the offset in the file of a row of an uncompressed image.
+   */
+  private long getRowOffset(int y) {
+    int s = y / rowsPerStrip;
+    if (fi.stripOffsets != null && s < fi.stripOffsets.length) {
+      return (fi.stripOffsets[s] & 0xffffffffL) + (long) (y % rowsPerStrip) * rowBytes;
+    }
+    return fi.getOffset() + (long) y * rowBytes;
+  }
+
+  /**
+   * Decode a strip of a compressed image, unless it is the strip already decoded.
+   */
+  private void decodeStrip(int s) throws IOException {
+    if (s == stripIndex) {
+      return;
+    }
+    int rows = Math.min(rowsPerStrip, fi.height - s * rowsPerStrip);
+    int expected = rows * rowBytes;
+    byte[] input = new byte[fi.stripLengths[s]];
+    raf.seek(fi.stripOffsets[s] & 0xffffffffL);
+    raf.readFully(input);
+
+    if (strip == null || strip.length < rowsPerStrip * rowBytes) {
+      strip = new byte[rowsPerStrip * rowBytes];
+    }
+    int n;
+    if (fi.compression == FileInfo.PACK_BITS || fi.compression == FileInfo.ZIP) {
+      ImageReader reader = new ImageReader(fi);
+      byte[] decoded = (fi.compression == FileInfo.PACK_BITS)
+          ? reader.packBitsUncompress(input, expected) : reader.zipUncompress(input);
+      if (decoded == null) {
+        throw new IOException("Unable to decompress strip " + s + " of " + fi.fileName);
+      }
+      n = Math.min(decoded.length, expected);
+      System.arraycopy(decoded, 0, strip, 0, n);
+    } else {
+      // ImageReader.lzwUncompress is bounded by the size of a whole image it reads itself
+      n = lzwUncompress(input, expected);
+    }
+    // a short strip leaves its missing pixels as background
+    if (n < expected) {
+      Arrays.fill(strip, n, expected, (byte) 0);
+    }
+
+    if (fi.compression == FileInfo.LZW_WITH_DIFFERENCING) {
+      undoDifferencing(rows);
+    }
+    stripIndex = s;
+  }
+
+  /**
+   * Decode a LZW compressed strip into the strip buffer.
+   *
+   * @param input    the compressed strip.
+   * @param expected the number of bytes of the decoded strip, further bytes are dropped.
+   * @return the number of bytes decoded.
+   */
+  private int lzwUncompress(byte[] input, int expected) {
+    if (lzwPrefix == null) {
+      lzwPrefix = new short[LZW_TABLE_SIZE];
+      lzwSuffix = new byte[LZW_TABLE_SIZE];
+      lzwFirst = new byte[LZW_TABLE_SIZE];
+      lzwLength = new int[LZW_TABLE_SIZE];
+      for (int c = 0; c < LZW_CLEAR; c++) {
+        lzwSuffix[c] = (byte) c;
+        lzwFirst[c] = (byte) c;
+        lzwLength[c] = 1;
+      }
+    }
+    long nbBits = 8L * input.length;
+    long bitPos = 0;
+    int codeBits = 9;
+    int next = LZW_FIRST;
+    int old = -1;
+    int n = 0;
+    while (n < expected && bitPos + codeBits <= nbBits) {
+      int code = 0;
+      for (int i = 0; i < codeBits; i++, bitPos++) {
+        code = (code << 1) | ((input[(int) (bitPos >>> 3)] >> (7 - (int) (bitPos & 7))) & 1);
+      }
+      if (code == LZW_EOI) {
+        break;
+      }
+      if (code == LZW_CLEAR) {
+        codeBits = 9;
+        next = LZW_FIRST;
+        old = -1;
+        continue;
+      }
+      if (code > next || (old == -1 && code >= LZW_CLEAR)) {
+        // corrupt data, keep what was decoded
+        break;
+      }
+      if (old != -1 && next < LZW_TABLE_SIZE) {
+        // the new string is the previous one followed by the first byte of the current one
+        lzwPrefix[next] = (short) old;
+        lzwSuffix[next] = (code == next) ? lzwFirst[old] : lzwFirst[code];
+        lzwFirst[next] = lzwFirst[old];
+        lzwLength[next] = lzwLength[old] + 1;
+        next++;
+        // TIFF LZW widens the codes one code early
+        if (next == (1 << codeBits) - 1 && codeBits < 12) {
+          codeBits++;
+        }
+      }
+      // write the string backwards from its last byte
+      int len = lzwLength[code];
+      for (int c = code, k = n + len - 1; k >= n; c = lzwPrefix[c], k--) {
+        if (k < expected) {
+          strip[k] = lzwSuffix[c];
+        }
+      }
+      n = Math.min(expected, n + len);
+      old = code;
+    }
+    return n;
+  }
+
+  /**
+   * Undo the horizontal differencing predictor of the rows of the decoded 8 bit strip, each pixel
+   * having been stored as its difference with the pixel to its left.
+   */
+  private void undoDifferencing(int rows) {
+    for (int r = 0; r < rows; r++) {
+      int rowStart = r * rowBytes;
+      for (int k = rowStart + 1; k < rowStart + rowBytes; k++) {
+        strip[k] += strip[k - 1];
+      }
+    }
+  }
+
+  /**
+   * Close the file.
+   */
+  @Override
+  public void close() throws IOException {
+    raf.close();
+  }
+}
@@ -0,0 +1,170 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import ij.ImageJ;
+
+/**
+ * Writes a label image to a TIFF file one row at a time, so the image does not need to be held
+ * whole in memory while it is encoded. The file has the layout ImageJ's FileSaver gives a single
+ * uncompressed image: big endian, one strip, and the ImageJ description holding the display range.
+ * Labels up to 65535 are written as a 16 bit image, larger labels as a 32 bit (float) image.
+ */
+public class TiffStripWriter implements Closeable {
+
+  private static final int MAX_16BIT_LABEL = 65535;
+  private static final int MAX_FLOAT_LABEL = 1 << 24;
+  private static final int HEADER_SIZE = 8;
+  private static final int ENTRY_SIZE = 12;
+
+  private static final int NEW_SUBFILE_TYPE = 254;
+  private static final int IMAGE_WIDTH = 256;
+  private static final int IMAGE_LENGTH = 257;
+  private static final int BITS_PER_SAMPLE = 258;
+  private static final int PHOTO_INTERP = 262;
+  private static final int IMAGE_DESCRIPTION = 270;
+  private static final int STRIP_OFFSETS = 273;
+  private static final int SAMPLES_PER_PIXEL = 277;
+  private static final int ROWS_PER_STRIP = 278;
+  private static final int STRIP_BYTE_COUNT = 279;
+  private static final int SAMPLE_FORMAT = 339;
+
+  private static final int ASCII = 2;
+  private static final int SHORT = 3;
+  private static final int LONG = 4;
+
+  private final DataOutputStream out;
+  private final int width;
+  private final boolean is16Bit;
+  private final byte[] rowBuffer;
+
+  /**
+   * Create the TIFF file and write its header.
+   *
+   * @param filepath the path of the file to write.
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param maxValue the highest label of the image, selecting its bit depth and display range.
+   * @throws IOException if the file cannot be written.
+   */
+  public TiffStripWriter(String filepath, int width, int height, int maxValue)
+      throws IOException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Image size must be positive");
+    }
+    this.width = width;
+    this.is16Bit = maxValue <= MAX_16BIT_LABEL;
+    if (maxValue > MAX_FLOAT_LABEL) {
+      Log.mandatory("Warning: labels above " + MAX_FLOAT_LABEL
+          + " cannot be represented exactly in a 32bit image");
+    }
+    int bytesPerPixel = is16Bit ? 2 : 4;
+    long imageSize = (long) width * height * bytesPerPixel;
+    if (imageSize > 0xffffffffL) {
+      throw new IllegalArgumentException("Image too large for a TIFF file");
+    }
+    this.rowBuffer = new byte[width * bytesPerPixel];
+
+    byte[] description = ("ImageJ=" + ImageJ.VERSION + "\nmin=0.0\nmax="
+        + (double) Math.max(0, maxValue) + "\n\0").getBytes("ISO-8859-1");
+    int nbEntries = is16Bit ? 10 : 11;
+    int descriptionOffset = HEADER_SIZE + 2 + nbEntries * ENTRY_SIZE + 4;
+    long imageOffset = descriptionOffset + description.length;
+
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filepath)));
+    boolean done = false;
+    try {
+      // big endian header pointing at the image file directory that follows it
+      out.writeBytes("MM");
+      out.writeShort(42);
+      out.writeInt(HEADER_SIZE);
+
+      out.writeShort(nbEntries);
+      writeEntry(NEW_SUBFILE_TYPE, LONG, 1, 0);
+      writeEntry(IMAGE_WIDTH, LONG, 1, width);
+      writeEntry(IMAGE_LENGTH, LONG, 1, height);
+      writeEntry(BITS_PER_SAMPLE, SHORT, 1, is16Bit ? 16 : 32);
+      writeEntry(PHOTO_INTERP, SHORT, 1, 1);
+      writeEntry(IMAGE_DESCRIPTION, ASCII, description.length, descriptionOffset);
+      writeEntry(STRIP_OFFSETS, LONG, 1, imageOffset);
+      writeEntry(SAMPLES_PER_PIXEL, SHORT, 1, 1);
+      writeEntry(ROWS_PER_STRIP, (height > 0xffff) ? LONG : SHORT, 1, height);
+      writeEntry(STRIP_BYTE_COUNT, LONG, 1, imageSize);
+      if (!is16Bit) {
+        // floating point samples
+        writeEntry(SAMPLE_FORMAT, SHORT, 1, 3);
+      }
+      // no further image file directory
+      out.writeInt(0);
+      out.write(description);
+      done = true;
+    } finally {
+      if (!done) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Write an image file directory entry holding a single value or the offset of its values.
+   */
+  private void writeEntry(int tag, int type, int count, long value) throws IOException {
+    out.writeShort(tag);
+    out.writeShort(type);
+    out.writeInt(count);
+    if (type == SHORT) {
+      // short values are left justified within the value field
+      out.writeShort((int) value);
+      out.writeShort(0);
+    } else {
+      out.writeInt((int) value);
+    }
+  }
+
+  /**
+   * @return whether the labels are written as a 16 bit image rather than a 32 bit (float) one.
+   */
+  public boolean is16Bit() {
+    return is16Bit;
+  }
+
+  /**
+   * Write the next row of the image. Rows are written from the top of the image down.
+   *
+   * @param src the array holding the labels of the row.
+   * @param off the index within src of the first label of the row.
+   * @throws IOException if the file cannot be written.
+   */
+  public void writeRow(int[] src, int off) throws IOException {
+    int k = 0;
+    for (int x = 0; x < width; x++) {
+      int v = src[off + x];
+      if (!is16Bit) {
+        v = Float.floatToIntBits(v);
+        rowBuffer[k++] = (byte) (v >>> 24);
+        rowBuffer[k++] = (byte) (v >>> 16);
+      }
+      rowBuffer[k++] = (byte) (v >>> 8);
+      rowBuffer[k++] = (byte) v;
+    }
+    out.write(rowBuffer, 0, k);
+  }
+
+  /**
+   * Flush and close the file.
+   */
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
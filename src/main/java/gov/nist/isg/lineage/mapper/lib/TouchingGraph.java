@@ -0,0 +1,123 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.util.Arrays;
+
+/**
+ * Neighbor graph of the touching cells within a frame, in compressed sparse row form. The nodes
+ * are the cell indexes of a CellTable, and the neighbors of node i are getNeighbor(i, 0) to
+ * getNeighbor(i, getDegree(i) - 1), in increasing order of their image label. The graph is a
+ * snapshot of the table when it was built.
+ */
+public class TouchingGraph {
+
+  private final int[] offsets;
+  private final int[] neighbors;
+
+  /**
+   * Build the touching graph of the cells in a table. Touching image labels that have no cell in
+   * the table are left out.
+   *
+   * @param cells the table of cells.
+   */
+  public TouchingGraph(CellTable cells) {
+    int n = cells.size();
+    int maxLabel = 0;
+    for (int i = 0; i < n; i++) {
+      maxLabel = Math.max(maxLabel, cells.getImgLabel(i));
+    }
+    // image label to cell index + 1, 0 for labels without a cell
+    int[] cellByLabel = new int[maxLabel + 1];
+    for (int i = 0; i < n; i++) {
+      cellByLabel[cells.getImgLabel(i)] = i + 1;
+    }
+
+    offsets = new int[n + 1];
+    int nbEdges = 0;
+    for (int i = 0; i < n; i++) {
+      nbEdges += cells.getTouchingCount(i);
+    }
+    int[] edges = new int[nbEdges];
+    int e = 0;
+    for (int i = 0; i < n; i++) {
+      for (int k = 0; k < cells.getTouchingCount(i); k++) {
+        int label = cells.getTouchingCell(i, k);
+        if (label > 0 && label <= maxLabel && cellByLabel[label] > 0) {
+          edges[e++] = cellByLabel[label] - 1;
+        }
+      }
+      offsets[i + 1] = e;
+    }
+    neighbors = (e == nbEdges) ? edges : Arrays.copyOf(edges, e);
+  }
+
+  /**
+   * @return the number of nodes, which is the number of cells in the table.
+   */
+  public int getNodeCount() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return the number of directed edges. Each touching pair is counted once from each side.
+   */
+  public int getEdgeCount() {
+    return neighbors.length;
+  }
+
+  /**
+   * @param i the cell index.
+   * @return the number of cells touching cell i.
+   */
+  public int getDegree(int i) {
+    return offsets[i + 1] - offsets[i];
+  }
+
+  /**
+   * @param i the cell index.
+   * @param k the index within the neighbors of cell i.
+   * @return the cell index of the k-th cell touching cell i.
+   */
+  public int getNeighbor(int i, int k) {
+    return neighbors[offsets[i] + k];
+  }
+
+  /**
+   * @return the mean number of touching cells over the cells that touch at least one other cell,
+   * or NaN if no cell touches another.
+   */
+  public double getMeanDegree() {
+    int nbTouching = 0;
+    for (int i = 0; i < getNodeCount(); i++) {
+      if (getDegree(i) > 0) {
+        nbTouching++;
+      }
+    }
+    return (nbTouching == 0) ? Double.NaN : (double) neighbors.length / (double) nbTouching;
+  }
+
+  /**
+   * Get the row offsets. The neighbors of node i are at getNeighbors()[offsets[i]] to
+   * getNeighbors()[offsets[i + 1] - 1]. The array is shared, it must not be modified.
+   *
+   * @return the getNodeCount() + 1 row offsets.
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * Get the neighbor cell indexes of all nodes, in row order. The array is shared, it must not be
+   * modified.
+   *
+   * @return the getEdgeCount() neighbor cell indexes.
+   */
+  public int[] getNeighbors() {
+    return neighbors;
+  }
+}
@@ -0,0 +1,250 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper.lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of the tracking state after a completed frame, so an interrupted run can resume from
+ * it instead of from the first frame. It holds the tracked cells with their global labels of the
+ * completed frames still retained by the tracking, the lineage accumulated from every completed
+ * frame, the highest global label handed out, the length of the positions metadata written so
+ * far and the tracking parameters it was taken with. The label images are not part of the
+ * checkpoint; the tracked output image of the last completed frame is reloaded from disk when
+ * resuming.
+ */
+public class TrackingCheckpoint {
+
+  private static final int MAGIC = 0x4C4D434B;
+  private static final int VERSION = 3;
+
+  private int nbFrames;
+  private int firstFrame;
+  private int lastFrame;
+  private String lastFrameTitle;
+  private String trackingParams;
+  private int globalHighestCellLabel;
+  private List<CellTable> cells;
+  private LineageAccumulator lineage;
+  private long positionsLength;
+
+  private TrackingCheckpoint() {}
+
+  /**
+   * Write the tracking state of the frames from firstFrame up to and including lastFrame. The
+   * checkpoint is written to a temporary file which then replaces the previous checkpoint, so an
+   * interruption while saving leaves the previous checkpoint intact. Where renaming cannot replace
+   * an existing file, the previous checkpoint is deleted just before the rename.
+   *
+   * @param file                   the checkpoint file.
+   * @param framesList             the frames being tracked.
+   * @param firstFrame             the index of the first frame whose cells are still retained.
+   * @param lastFrame              the index of the last frame that has been tracked and written.
+   * @param globalHighestCellLabel the highest global cell label assigned so far.
+   * @param lineage                the lineage accumulated from the frames up to lastFrame.
+   * @param positionsLength        the length of the positions metadata file, 0 if not written.
+   * @param trackingParams         the parameters determining the tracking result, which must be
+   *                               the same when resuming.
+   * @throws IOException if the checkpoint cannot be written.
+   */
+  public static void save(File file, List<ImageFrame> framesList, int firstFrame, int lastFrame,
+                          int globalHighestCellLabel, LineageAccumulator lineage,
+                          long positionsLength, String trackingParams) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(framesList.size());
+      out.writeInt(firstFrame);
+      out.writeInt(lastFrame);
+      out.writeUTF(framesList.get(lastFrame).getTitle());
+      out.writeUTF(trackingParams);
+      out.writeInt(globalHighestCellLabel);
+      out.writeLong(positionsLength);
+      lineage.write(out);
+
+      for (int f = firstFrame; f <= lastFrame; f++) {
+        ImageFrame frame = framesList.get(f);
+        CellTable frameCells = frame.getCellTable();
+        out.writeInt(frameCells.size());
+        for (int i = 0; i < frameCells.size(); i++) {
+          writeCell(out, frameCells, i);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+      throw new IOException("Unable to replace checkpoint " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Read a checkpoint written by save.
+   *
+   * @param file the checkpoint file.
+   * @return the TrackingCheckpoint read from disk.
+   * @throws IOException if the checkpoint cannot be read or is not a tracking checkpoint.
+   */
+  public static TrackingCheckpoint load(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a tracking checkpoint: " + file.getAbsolutePath());
+      }
+      TrackingCheckpoint cp = new TrackingCheckpoint();
+      cp.nbFrames = in.readInt();
+      cp.firstFrame = in.readInt();
+      cp.lastFrame = in.readInt();
+      cp.lastFrameTitle = in.readUTF();
+      cp.trackingParams = in.readUTF();
+      cp.globalHighestCellLabel = in.readInt();
+      cp.positionsLength = in.readLong();
+      cp.lineage = LineageAccumulator.read(in);
+
+      cp.cells = new ArrayList<CellTable>(cp.lastFrame - cp.firstFrame + 1);
+      for (int f = cp.firstFrame; f <= cp.lastFrame; f++) {
+        int nbCells = in.readInt();
+        CellTable frameCells = new CellTable(nbCells, 0);
+        for (int i = 0; i < nbCells; i++) {
+          readCell(in, frameCells);
+        }
+        frameCells.trimToSize();
+        cp.cells.add(frameCells);
+      }
+      return cp;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Restore the completed frames into the frames being tracked. The retained completed frames
+   * receive their tracked cells and the last one has its label image reloaded from its tracked
+   * output image, ready to be the previous frame of the next tracked pair.
+   *
+   * @param framesList     the frames being tracked, which must be the sequence the checkpoint was
+   *                       taken from.
+   * @param trackingParams the parameters determining the tracking result, which must be those
+   *                       the checkpoint was taken with.
+   */
+  public void restore(List<ImageFrame> framesList, String trackingParams) {
+    if (framesList.size() != nbFrames || !framesList.get(lastFrame).getTitle()
+        .equals(lastFrameTitle)) {
+      throw new IllegalStateException("Checkpoint does not match the image sequence being tracked");
+    }
+    if (!trackingParams.equals(this.trackingParams)) {
+      throw new IllegalStateException("Checkpoint was taken with different tracking parameters: "
+          + firstDifference(this.trackingParams, trackingParams));
+    }
+
+    for (int f = firstFrame; f <= lastFrame; f++) {
+      framesList.get(f).restoreCells(cells.get(f - firstFrame));
+    }
+    framesList.get(lastFrame).restoreTrackedImage();
+  }
+
+  /**
+   * @return the index of the first frame whose cells are held by the checkpoint.
+   */
+  public int getFirstFrame() {
+    return firstFrame;
+  }
+
+  /**
+   * @return the index of the last frame that had been tracked and written.
+   */
+  public int getLastFrame() {
+    return lastFrame;
+  }
+
+  /**
+   * @return the highest global cell label assigned up to the last frame.
+   */
+  public int getGlobalHighestCellLabel() {
+    return globalHighestCellLabel;
+  }
+
+  /**
+   * @return the lineage accumulated from the frames up to the last frame.
+   */
+  public LineageAccumulator getLineage() {
+    return lineage;
+  }
+
+  /**
+   * @return the length of the positions metadata file when the checkpoint was taken.
+   */
+  public long getPositionsLength() {
+    return positionsLength;
+  }
+
+  /**
+   * Find the first line that differs between two texts.
+   *
+   * @param expected the text of the checkpoint.
+   * @param actual   the text of the run being resumed.
+   * @return the differing lines, as expected then actual.
+   */
+  private static String firstDifference(String expected, String actual) {
+    String[] a = expected.split("\\r?\\n");
+    String[] b = actual.split("\\r?\\n");
+    for (int i = 0; i < Math.max(a.length, b.length); i++) {
+      String la = (i < a.length) ? a[i] : "";
+      String lb = (i < b.length) ? b[i] : "";
+      if (!la.equals(lb)) {
+        return "\"" + la + "\" instead of \"" + lb + "\"";
+      }
+    }
+    return "";
+  }
+
+  private static void writeCell(DataOutputStream out, CellTable cells, int i)
+      throws IOException {
+    out.writeInt(cells.getImgLabel(i));
+    out.writeInt(cells.getGlobalLabel(i));
+    out.writeDouble(cells.getArea(i));
+    out.writeDouble(cells.getCentroidX(i));
+    out.writeDouble(cells.getCentroidY(i));
+    out.writeDouble(cells.getPerimeter(i));
+    out.writeDouble(cells.getCircularity(i));
+    out.writeBoolean(cells.isBorderCell(i));
+    out.writeDouble(cells.getAspectRatio(i));
+    int nbTouching = cells.getTouchingCount(i);
+    out.writeInt(nbTouching);
+    for (int k = 0; k < nbTouching; k++) {
+      out.writeInt(cells.getTouchingCell(i, k));
+    }
+  }
+
+  private static void readCell(DataInputStream in, CellTable cells) throws IOException {
+    int c = cells.add(in.readInt());
+    cells.setGlobalLabel(c, in.readInt());
+    cells.setArea(c, in.readDouble());
+    cells.setCentroidX(c, in.readDouble());
+    cells.setCentroidY(c, in.readDouble());
+    cells.setPerimeter(c, in.readDouble());
+    cells.setCircularity(c, in.readDouble());
+    cells.setBorderCell(c, in.readBoolean());
+    cells.setAspectRatio(c, in.readDouble());
+    int nbTouching = in.readInt();
+    for (int k = 0; k < nbTouching; k++) {
+      cells.addTouchingCell(c, in.readInt());
+    }
+  }
+
+}
@@ -57,11 +57,11 @@ public class Utils {
   /**
    * Get the highest pixel value contained within the array.
    *
-   * @param data the short array to find the max value of.
-   * @return a short containing the highest number in the array.
+   * @param data the int array to find the max value of.
+   * @return an int containing the highest number in the array.
    */
-  public static short getMaxValue(short[] data) {
-    short maxval = Short.MIN_VALUE;
+  public static int getMaxValue(int[] data) {
+    int maxval = Integer.MIN_VALUE;
     for (int i = 0; i < data.length; i++) {
       maxval = (data[i] > maxval) ? data[i] : maxval;
     }
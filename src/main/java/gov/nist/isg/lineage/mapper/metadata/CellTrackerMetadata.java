@@ -11,13 +11,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
-import gov.nist.isg.lineage.mapper.lib.Cell;
-import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.LineageAccumulator;
 import gov.nist.isg.lineage.mapper.lib.Log;
-import gov.nist.isg.lineage.mapper.lib.Matrix2D;
 
 import static gov.nist.isg.lineage.mapper.lib.Utils.exportToCSVFile;
 
@@ -30,29 +27,11 @@ public class CellTrackerMetadata {
    */
   public static int[] generateBirthMatrix(TrackingAppParams params) {
 
-    List<ImageFrame> framesList = params.getFramesList();
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int maxCellNumber = 0;
-    for (ImageFrame f : framesList) {
-      maxCellNumber = Math.max(maxCellNumber, f.getMaxCellGlobalLabelNumber());
-    }
-
-    int[] birth = new int[maxCellNumber + 1];
-    for (int i = 0; i < birth.length; i++) {
-      birth[i] = -1;
-    }
-
-    for (ImageFrame f : framesList) {
-      for (Cell c : f.getCellsList()) {
-        int idx = c.getGlobalLabel();
-        if (birth[idx] < 0) {
-          birth[idx] = f.getFrameNb();
-        }
-      }
-    }
-    return birth;
+    return lineage.getBirth();
   }
 
   /**
@@ -62,28 +41,11 @@ public class CellTrackerMetadata {
    */
   public static int[] generateDeathMatrix(TrackingAppParams params) {
 
-    List<ImageFrame> framesList = params.getFramesList();
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int maxCellNumber = 0;
-    for (ImageFrame f : framesList) {
-      maxCellNumber = Math.max(maxCellNumber, f.getMaxCellGlobalLabelNumber());
-    }
-
-    int nbFrames = framesList.size();
-    int[] death = new int[maxCellNumber + 1];
-    for (int i = 0; i < death.length; i++) {
-      death[i] = nbFrames - 1;
-    }
-
-    for (ImageFrame f : framesList) {
-      for (Cell c : f.getCellsList()) {
-        int idx = c.getGlobalLabel();
-        death[idx] = f.getFrameNb();
-      }
-    }
-    return death;
+    return lineage.getDeath();
   }
 
   /**
@@ -94,37 +56,11 @@ public class CellTrackerMetadata {
    */
   public static HashMap<Integer, ArrayList<Integer>> generateDivisionMatrix(TrackingAppParams params) {
 
-    List<ImageFrame> framesList = params.getFramesList();
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int[] death = generateDeathMatrix(params);
-    int maxCellNumber = death.length - 1;
-
-    // compute division
-    HashMap<Integer, ArrayList<Integer>> division = new HashMap<Integer, ArrayList<Integer>>();
-    for (int i = 1; i <= maxCellNumber; i++) {
-      int frameDeath = death[i];
-      if (frameDeath == framesList.size() - 1) {
-        continue;
-      }
-
-      ArrayList<Integer> curdiv = new ArrayList<Integer>();
-      int pixLabel = framesList.get(frameDeath).getCellByGlobalLabel(i).getImgLabel();
-
-      Matrix2D div = framesList.get(frameDeath + 1).getDivision();
-      for (int j = 1; j <= div.getM(); j++) {
-        if (Double.compare(div.get(j, 1), (double) pixLabel) == 0) {
-          int k = framesList.get(frameDeath + 1).getCellByImgLabel(j).getGlobalLabel();
-          curdiv.add(k);
-        }
-      }
-      if (!curdiv.isEmpty()) {
-        division.put(i, curdiv);
-      }
-    }
-
-    return division;
+    return new HashMap<Integer, ArrayList<Integer>>(lineage.getDivision());
   }
 
   /**
@@ -138,49 +74,11 @@ public class CellTrackerMetadata {
       return null;
     }
 
-    List<ImageFrame> framesList = params.getFramesList();
-
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int maxCellNumber = 0;
-    for (ImageFrame f : framesList) {
-      maxCellNumber = Math.max(maxCellNumber, f.getMaxCellGlobalLabelNumber());
-    }
-
-    HashMap<Integer, ArrayList<Integer>> fusion = new HashMap<Integer, ArrayList<Integer>>();
-    ImageFrame prev = null;
-    for (ImageFrame f : framesList) {
-      if (f.getFrameNb() == 0) {
-        prev = f;
-        continue;
-      }
-      Matrix2D fus = f.getFusion();
-
-      if (fus.nnz() > 0) {
-        ArrayList<Integer> curfus = new ArrayList<Integer>();
-        for (int child = 1; child <= fus.getN(); child++) {
-          curfus.clear();
-          for (int parent = 1; parent <= fus.getM(); parent++) {
-            if (fus.get(parent, child) > 0) {
-              curfus.add(parent);
-            }
-          }
-          if (!curfus.isEmpty()) {
-            ArrayList<Integer> newfus = new ArrayList<Integer>(curfus);
-            int globalLabel = f.getCellByImgLabel(child).getGlobalLabel();
-            for (int i = 0; i < newfus.size(); i++) {
-              int gl = prev.getCellByImgLabel(curfus.get(i)).getGlobalLabel();
-              newfus.set(i, gl);
-            }
-            fusion.put(globalLabel, newfus);
-          }
-        }
-      }
-      prev = f;
-    }
-
-    return fusion;
+    return new HashMap<Integer, ArrayList<Integer>>(lineage.getFusion());
   }
 
   /**
@@ -192,28 +90,11 @@ public class CellTrackerMetadata {
    */
   public static boolean[] generateBorderMatrix(TrackingAppParams params) {
 
-    List<ImageFrame> framesList = params.getFramesList();
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int maxCellNumber = 0;
-    for (ImageFrame f : framesList) {
-      maxCellNumber = Math.max(maxCellNumber, f.getMaxCellGlobalLabelNumber());
-    }
-
-    boolean[] borderCell = new boolean[maxCellNumber + 1];
-
-    for (int i = 0; i < borderCell.length; i++) {
-      borderCell[i] = false;
-    }
-
-    for (ImageFrame f : framesList) {
-      for (Cell c : f.getCellsList()) {
-        int idx = c.getGlobalLabel();
-        borderCell[idx] = borderCell[idx] || c.isBorderCell();
-      }
-    }
-    return borderCell;
+    return lineage.getBorder();
   }
 
   /**
@@ -223,18 +104,16 @@ public class CellTrackerMetadata {
    */
   public static HashMap<Integer, Double> generateConfidenceIndex(TrackingAppParams params) {
 
-    List<ImageFrame> framesList = params.getFramesList();
-
-    if (framesList == null)
+    LineageAccumulator lineage = params.getLineageAccumulator();
+    if (lineage == null)
       return null;
 
-    int[] birth = generateBirthMatrix(params);
-    int[] death = generateDeathMatrix(params);
-    boolean[] borderCell = generateBorderMatrix(params);
+    int[] birth = lineage.getBirth();
+    int[] death = lineage.getDeath();
+    boolean[] borderCell = lineage.getBorder();
 
     int maxCellNumber = birth.length - 1;
 
-    List<Integer> touch = new ArrayList<Integer>();
     HashMap<Integer, Double> CI = new HashMap<Integer, Double>();
     for (int gCellNb = 1; gCellNb <= maxCellNumber; gCellNb++) {
       int lifespan = death[gCellNb] - birth[gCellNb] + 1;
@@ -243,21 +122,9 @@ public class CellTrackerMetadata {
         ciVal++;
       }
 
-      // add in density component
-      touch.clear();
-      for (int k = birth[gCellNb]; k <= death[gCellNb]; k++) {
-        Cell c = framesList.get(k).getCellByGlobalLabel(gCellNb);
-        if (c != null && c.getTouchingCells() != null) {
-          touch.add(c.getTouchingCells().size());
-        }
-      }
-      // get the mean number of touching cells
-      if (!touch.isEmpty()) {
-        double meanval = 0;
-        for (int k = 0; k < touch.size(); k++) {
-          meanval += touch.get(k);
-        }
-        meanval = meanval / (double) touch.size();
+      // add in density component, the mean number of touching cells
+      double meanval = lineage.getMeanTouchingCells(gCellNb);
+      if (!Double.isNaN(meanval)) {
         ciVal += (1 / (meanval + 1));
       } else {
         ciVal++;
@@ -298,10 +165,6 @@ public class CellTrackerMetadata {
     params.setConfidenceIndexMetadata(cim);
     cim.buildMetadataTable();
 
-    ObjectPositionMetadata opm = new ObjectPositionMetadata(params);
-    params.setObjectPositionMetadata(opm);
-    opm.buildMetadataTable();
-
     // only write outputs to disk if requested to
     if(params.isSaveMetadata()) {
       String targetFolder = params.getOutputDirectory();
@@ -320,9 +183,6 @@ public class CellTrackerMetadata {
       if (cim.getTable() != null)
         exportToCSVFile(cim.getTable(), new File(targetFolder + prefix + cim.getFileName()));
 
-      if(opm.getTable() != null)
-        exportToCSVFile(opm.getTable(), new File(targetFolder + prefix + opm.getFileName()));
-
       params.writeParamsToFile(new File(targetFolder + prefix + "tracking-params.txt"));
     }
 
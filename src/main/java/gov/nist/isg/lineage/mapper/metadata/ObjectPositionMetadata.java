@@ -6,14 +6,23 @@
 
 package gov.nist.isg.lineage.mapper.metadata;
 
-
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.List;
-import java.util.Vector;
-import javax.swing.JTable;
+
 import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
 import gov.nist.isg.lineage.mapper.lib.Cell;
 import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import gov.nist.isg.lineage.mapper.lib.Log;
 
+/**
+ * Writes the position of every cell in every frame. The rows of a frame are final once it has been
+ * tracked, so they are appended to the csv file as the frames are tracked instead of being held
+ * until the end of the run.
+ */
 public class ObjectPositionMetadata {
 
   private static final String fileName = "positions.csv";
@@ -22,11 +31,12 @@ public class ObjectPositionMetadata {
   }
 
 
-  private JTable table = null;
   private TrackingAppParams params;
+  private File file = null;
+  private PrintWriter pw = null;
 
   /**
-   * Create a BirthDeath metadata object
+   * Create an ObjectPosition metadata object
    * @param params the TrackingAppParams instance to build the metadata from
    */
   public ObjectPositionMetadata(TrackingAppParams params) {
@@ -34,40 +44,72 @@ public class ObjectPositionMetadata {
   }
 
   /**
-   * Build the birth and death metadata table
+   * Open the positions csv file in the output directory for appending frames.
+   *
+   * @param length the length of the existing file to keep, as recorded by a tracking checkpoint,
+   *               or 0 to start a new file.
+   * @throws IOException if the file cannot be opened.
    */
-  public void buildMetadataTable() {
-    if (table != null) return;
-
-    Vector<String> colNames = new Vector<String>();
-    colNames.add(0, "Cell ID");
-    colNames.add(1, "Frame Number");
-    colNames.add(2, "X Coordinate");
-    colNames.add(3, "Y Coordinate");
-
-    Vector<Number> data = new Vector<Number>();
-    List<ImageFrame> framesList = params.getFramesList();
-
-    for(int frameNumber = 0; frameNumber < framesList.size(); frameNumber++) {
-      ImageFrame frame = framesList.get(frameNumber);
-      List<Cell> cellList = frame.getCellsList();
-      for(Cell cell : cellList) {
-        data.add(cell.getGlobalLabel());
-        data.add(frameNumber+1); // +1 is to convert from zero based to 1 based
-        data.add(cell.getCentroidX());
-        data.add(cell.getCentroidY());
+  public void open(long length) throws IOException {
+    String targetFolder = params.getOutputDirectory();
+    if (!targetFolder.endsWith(File.separator))
+      targetFolder = targetFolder + File.separator;
+    file = new File(targetFolder + params.getOutputPrefix() + fileName);
+
+    if (length > 0) {
+      // drop the rows of the frames tracked after the checkpoint was taken
+      if (file.length() < length) {
+        throw new IOException("Positions file is shorter than its checkpoint: "
+            + file.getAbsolutePath());
       }
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(length);
+      } finally {
+        raf.close();
+      }
+      pw = new PrintWriter(new FileWriter(file, true));
+    } else {
+      pw = new PrintWriter(new FileWriter(file, false));
+      pw.print("Cell ID,Frame Number,X Coordinate,Y Coordinate\r\n");
     }
+  }
 
-    MetadataTableModel tableModel = new MetadataTableModel(colNames, data);
-    table = new JTable();
-    table.setModel(tableModel);
-    table.createDefaultColumnsFromModel();
+  /**
+   * Append the positions of the cells in a tracked frame.
+   *
+   * @param frame the tracked frame.
+   */
+  public void appendFrame(ImageFrame frame) {
+    List<Cell> cellList = frame.getCellsList();
+    int frameNumber = frame.getFrameNb() + 1; // +1 is to convert from zero based to 1 based
+    for (Cell cell : cellList) {
+      pw.print(cell.getGlobalLabel() + "," + frameNumber + "," + cell.getCentroidX() + ","
+          + cell.getCentroidY() + "\r\n");
+    }
   }
 
-  public JTable getTable() {
-    return table;
+  /**
+   * Flush the appended rows to disk.
+   *
+   * @return the length of the positions file.
+   */
+  public long flush() {
+    pw.flush();
+    return file.length();
   }
 
+  /**
+   * Flush and close the positions file.
+   */
+  public void close() {
+    if (pw != null) {
+      if (pw.checkError()) {
+        Log.error("Failed writing metadata file: " + file);
+      }
+      pw.close();
+      pw = null;
+    }
+  }
 
 }
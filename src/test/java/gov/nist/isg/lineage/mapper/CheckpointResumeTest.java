@@ -0,0 +1,220 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.Log;
+import gov.nist.isg.lineage.mapper.lib.TrackingCheckpoint;
+import ij.ImagePlus;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointResumeTest {
+
+  private static String testReferenceFolder = "divisionfusion";
+  private static final int nbFrames = 10;
+  // the frame at which the first run is interrupted, after its checkpoint of frame 3
+  private static final int interruptedFrame = 5;
+
+  @BeforeClass
+  public static void runTracking() throws IOException {
+    String testDataDirectory = getTestDataDirectory();
+    String outputDirectory = testDataDirectory + "junit_results" + File.separator;
+
+    // run the tracking without interruption, as the reference of the positions metadata
+    File uninterruptedDirectory = new File(outputDirectory + "uninterrupted");
+    uninterruptedDirectory.mkdirs();
+    TrackingAppParams params = new TrackingAppParams();
+    setParams(params, testDataDirectory, uninterruptedDirectory.getPath() + File.separator);
+    new LineageMapper(params).run();
+
+    runInterrupted(testDataDirectory, outputDirectory);
+
+    // remove the outputs of the frames tracked after the checkpoint
+    File checkpointFile = new File(outputDirectory + "trk-tracking-checkpoint.dat");
+    assertTrue("tracking checkpoint must be left by the interrupted run", checkpointFile.exists());
+    int lastFrame = TrackingCheckpoint.load(checkpointFile).getLastFrame();
+    assertTrue("tracking must be interrupted before the last frame", lastFrame < nbFrames - 1);
+    DecimalFormat df = new DecimalFormat("000");
+    for (int i = lastFrame + 2; i <= nbFrames; i++) {
+      new File(outputDirectory + "trk-seg_" + df.format(i) + ".tif").delete();
+    }
+
+    // resume the tracking from the checkpoint
+    params = new TrackingAppParams();
+    setParams(params, testDataDirectory, outputDirectory);
+    params.setCheckpointInterval(2);
+    params.setResume(true);
+    new LineageMapper(params).run();
+    assertTrue("tracking checkpoint must be removed once the tracking completes",
+        !checkpointFile.exists());
+  }
+
+  /**
+   * Run the tracking with a checkpoint every 2 frames, interrupting it part way through the
+   * sequence; without a pipeline no stage is left writing once the tracking has stopped.
+   */
+  private static void runInterrupted(String testDataDirectory, String outputDirectory) {
+    TrackingAppParams params = new TrackingAppParams() {
+      @Override
+      public void setProgressBar(double val) {
+        if (Math.round(val * nbFrames) == interruptedFrame) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    setParams(params, testDataDirectory, outputDirectory);
+    params.setCheckpointInterval(2);
+    params.setPipelineDepth(0);
+    new LineageMapper(params).run();
+    Thread.interrupted();
+  }
+
+  private static void setParams(TrackingAppParams params, String testDataDirectory,
+                                String outputDirectory) {
+    params.setInputDirectory(testDataDirectory);
+    params.setFilenamePattern("seg_{iii}.tif");
+    params.setOutputDirectory(outputDirectory);
+    params.setOutputPrefix("trk-");
+
+    // set the default parameters
+    params.setWeightCellOverlap(1);
+    params.setWeightCentroids(0.5);
+    params.setWeightCellSize(0.2);
+
+    params.setMaxCentroidsDist(50);
+    params.setDivisionOverlapThreshold(0.2);
+    params.setMinCellLife(32);
+    params.setCellDeathDeltaTreshold(10);
+    params.setDaughterSizeSimilarity(0.5);
+    params.setDaughterAspectRatioSimilarity(0.7);
+    params.setMotherCircularityThreshold(0.3);
+    params.setNumFramesToCheckCircularity(5);
+    params.setEnableCellDivision(true);
+    params.setEnableCellFusion(true);
+    params.setFusionOverlapThreshold(0.2);
+    params.setCellSizeThreshold(100);
+
+    params.setCellDensityAffectsCI(true);
+    params.setBorderCellAffectsCI(true);
+
+    params.setIsMacro(false); // disables auto-open of lineage viewer webpage
+
+    params.setIsSaveMetadata(true);
+    params.setIsSaveLineageViewerPage(false);
+  }
+
+  private static String getTestDataDirectory() {
+    String testDataDirectory = null;
+    try {
+      testDataDirectory = new File(".").getCanonicalPath() + File.separator + "test" + File
+          .separator;
+    } catch (IOException e) {}
+    // check that the tracking test data directory exists
+    assertNotNull("tracking test data directory must not be null", testDataDirectory);
+    return testDataDirectory;
+  }
+
+  private static void checkMetadata(String filename) {
+    String testDataDirectory = getTestDataDirectory();
+    File a = new File(testDataDirectory + "junit_results" + File.separator + filename);
+    File b = new File(testDataDirectory + "ref_track_results" + File.separator +
+        testReferenceFolder + File.separator + filename);
+
+    // check that the csv file matches the reference version
+    assertTrue(filename + " must match reference", Utils.isEqualContents(a, b));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void checkResumeWithDifferentParamsRefused() throws InterruptedException {
+    Log.mandatory("Checking that resuming with different tracking parameters is refused");
+    String testDataDirectory = getTestDataDirectory();
+    File outputDirectory = new File(testDataDirectory + "junit_results" + File.separator +
+        "changed-params");
+    outputDirectory.mkdirs();
+    runInterrupted(testDataDirectory, outputDirectory.getPath() + File.separator);
+    assertTrue("tracking checkpoint must be left by the interrupted run",
+        new File(outputDirectory, "trk-tracking-checkpoint.dat").exists());
+
+    // resume the tracking with another division overlap threshold
+    TrackingAppParams params = new TrackingAppParams();
+    setParams(params, testDataDirectory, outputDirectory.getPath() + File.separator);
+    params.setDivisionOverlapThreshold(0.25);
+    params.setCheckpointInterval(2);
+    params.setResume(true);
+    new LineageMapper(params).track();
+  }
+
+  @Test
+  public void checkBirthDeathMetadata() {
+    Log.mandatory("Checking the resumed birth and death metadata");
+    checkMetadata("trk-birth-death.csv");
+  }
+
+  @Test
+  public void checkCIMetadata() {
+    Log.mandatory("Checking the resumed confidence index metadata");
+    checkMetadata("trk-confidence-index.csv");
+  }
+
+  @Test
+  public void checkDivisionMetadata() {
+    Log.mandatory("Checking the resumed division metadata");
+    checkMetadata("trk-division.csv");
+  }
+
+  @Test
+  public void checkFusionMetadata() {
+    Log.mandatory("Checking the resumed fusion metadata");
+    checkMetadata("trk-fusion.csv");
+  }
+
+  @Test
+  public void checkPositionsMetadata() {
+    Log.mandatory("Checking the resumed positions metadata");
+    String testDataDirectory = getTestDataDirectory();
+
+    // the positions written after the checkpoint must have been truncated before resuming
+    File a = new File(testDataDirectory + "junit_results" + File.separator + "trk-positions.csv");
+    File b = new File(testDataDirectory + "junit_results" + File.separator + "uninterrupted" +
+        File.separator + "trk-positions.csv");
+    assertTrue("positions csv file must match the uninterrupted tracking",
+        Utils.isEqualContents(a, b));
+  }
+
+  @Test
+  public void checkTrackedImages() {
+    Log.mandatory("Checking the resumed tracked images");
+    String testDataDirectory = getTestDataDirectory();
+
+    // Check the output tracked images
+    DecimalFormat df = new DecimalFormat("000");
+    for(int i = 1; i <= nbFrames; i++) {
+      String filename = "trk-seg_" + df.format(i) + ".tif";
+      ImagePlus imgA = new ImagePlus(testDataDirectory + "junit_results" + File.separator +
+          filename);
+      ImagePlus imgB = new ImagePlus(testDataDirectory + "ref_track_results" + File.separator +
+          testReferenceFolder + File.separator + filename);
+
+      short[] pixelsA = (short[]) imgA.getProcessor().convertToShort(false).getPixels();
+      short[] pixelsB = (short[]) imgB.getProcessor().convertToShort(false).getPixels();
+
+      // check that both tracked images are equal
+      assertTrue("tracked image " + filename + " must match reference", Arrays.equals(pixelsA, pixelsB));
+    }
+  }
+
+}
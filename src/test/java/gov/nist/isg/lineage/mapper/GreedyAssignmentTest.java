@@ -0,0 +1,74 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import gov.nist.isg.lineage.mapper.lib.GreedyAssignment;
+import gov.nist.isg.lineage.mapper.lib.Matrix2D;
+import gov.nist.isg.lineage.mapper.lib.SparseCostMatrix;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class GreedyAssignmentTest {
+
+  @Test
+  public void testMatchesRoundBasedAssignment() {
+    Random rand = new Random(7);
+    for (int trial = 0; trial < 2000; trial++) {
+      int m = 1 + rand.nextInt(12);
+      int n = 1 + rand.nextInt(12);
+      double density = rand.nextDouble();
+      SparseCostMatrix cost = new SparseCostMatrix(m, n);
+      for (int i = 1; i <= m; i++) {
+        for (int j = 1; j <= n; j++) {
+          if (rand.nextDouble() < density) {
+            // few distinct values so that ties are common
+            cost.set(i, j, rand.nextInt(5) * 0.25);
+          }
+        }
+      }
+      if (rand.nextBoolean()) {
+        cost.maskRow(1 + rand.nextInt(m));
+        cost.maskColumn(1 + rand.nextInt(n));
+      }
+
+      int[] expected = roundBasedAssignment(cost.clone());
+      int[] actual = GreedyAssignment.solve(cost);
+      assertArrayEquals(expected, actual);
+    }
+  }
+
+  /**
+   * Reference implementation, each round assigns every mutual row/column minimum of the whole
+   * matrix and then removes the assigned rows and columns.
+   */
+  private static int[] roundBasedAssignment(SparseCostMatrix cost) {
+    int[] assignment = new int[cost.getM() + 1];
+    while (cost.nnz() > 0) {
+      Matrix2D rowminvals = new Matrix2D(cost.getM(), 1);
+      Matrix2D rowminindx = new Matrix2D(cost.getM(), 1);
+      cost.rowWiseMin(rowminvals, rowminindx);
+      Matrix2D colminvals = new Matrix2D(1, cost.getN());
+      Matrix2D colminindx = new Matrix2D(1, cost.getN());
+      cost.colWiseMin(colminvals, colminindx);
+
+      for (int i = 1; i <= rowminvals.getM(); i++) {
+        if (!Double.isNaN(rowminvals.get(i, 1))
+            && colminindx.get(1, rowminindx.get(i, 1)) == i) {
+          assignment[i] = (int) rowminindx.get(i, 1);
+          cost.maskColumn(assignment[i]);
+          cost.maskRow(i);
+        }
+      }
+    }
+    return assignment;
+  }
+
+}
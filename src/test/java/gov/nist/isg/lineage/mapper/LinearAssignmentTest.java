@@ -0,0 +1,103 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import gov.nist.isg.lineage.mapper.lib.LinearAssignment;
+import gov.nist.isg.lineage.mapper.lib.SparseCostMatrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LinearAssignmentTest {
+
+  private static final double costLimit = 2.0;
+
+  @Test
+  public void testMatchesExhaustiveSearch() {
+    Random rand = new Random(42);
+    for (int trial = 0; trial < 500; trial++) {
+      int m = 1 + rand.nextInt(5);
+      int n = 1 + rand.nextInt(5);
+      SparseCostMatrix cost = new SparseCostMatrix(m, n);
+      for (int i = 1; i <= m; i++) {
+        for (int j = 1; j <= n; j++) {
+          if (rand.nextDouble() < 0.5) {
+            cost.set(i, j, rand.nextDouble() * 1.5);
+          }
+        }
+      }
+
+      int[] assignment = LinearAssignment.solve(cost, costLimit);
+
+      // the assignment must be valid and one to one
+      boolean[] colUsed = new boolean[n + 1];
+      for (int i = 1; i <= m; i++) {
+        int j = assignment[i];
+        if (j > 0) {
+          assertTrue("assigned pair must be valid", !cost.isNaN(i, j));
+          assertTrue("column assigned twice", !colUsed[j]);
+          colUsed[j] = true;
+        }
+      }
+
+      assertEquals("assignment is not optimal", bestTotal(cost, 1, new boolean[n + 1]),
+          total(cost, assignment), 1e-9);
+    }
+  }
+
+  @Test
+  public void testMaskedPairsAreNotAssigned() {
+    SparseCostMatrix cost = new SparseCostMatrix(2, 2);
+    cost.set(1, 1, 0.1);
+    cost.set(1, 2, 0.5);
+    cost.set(2, 1, 0.2);
+    cost.maskColumn(1);
+
+    int[] assignment = LinearAssignment.solve(cost, costLimit);
+    assertEquals(2, assignment[1]);
+    assertEquals(0, assignment[2]);
+  }
+
+  private static double total(SparseCostMatrix cost, int[] assignment) {
+    double t = 0;
+    int nbAssigned = 0;
+    for (int i = 1; i <= cost.getM(); i++) {
+      if (assignment[i] > 0) {
+        t += cost.get(i, assignment[i]);
+        nbAssigned++;
+      }
+    }
+    return t + (cost.getM() + cost.getN() - 2 * nbAssigned) * costLimit / 2;
+  }
+
+  private static double bestTotal(SparseCostMatrix cost, int i, boolean[] colUsed) {
+    if (i > cost.getM()) {
+      int nbFree = 0;
+      for (int j = 1; j <= cost.getN(); j++) {
+        if (!colUsed[j]) {
+          nbFree++;
+        }
+      }
+      return nbFree * costLimit / 2;
+    }
+    // leave row i unassigned
+    double best = costLimit / 2 + bestTotal(cost, i + 1, colUsed);
+    for (int j = 1; j <= cost.getN(); j++) {
+      if (!colUsed[j] && !cost.isNaN(i, j)) {
+        colUsed[j] = true;
+        best = Math.min(best, cost.get(i, j) + bestTotal(cost, i + 1, colUsed));
+        colUsed[j] = false;
+      }
+    }
+    return best;
+  }
+
+}
@@ -0,0 +1,111 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import org.junit.Test;
+
+import gov.nist.isg.lineage.mapper.lib.MemoryBudget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+  // the longest a test waits for a consumer thread to block or complete, in milliseconds
+  private static final long timeout = 10000;
+
+  @Test
+  public void testAcquireGrantsWhatIsLeft() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    assertEquals(30, budget.acquire(10, 30));
+    // only 70 bytes are left, more than the minimum but less than wanted
+    assertEquals(70, budget.acquire(10, 200));
+    assertEquals(100, budget.getUsed());
+
+    budget.release(30);
+    budget.release(70);
+    assertEquals(0, budget.getUsed());
+  }
+
+  @Test
+  public void testAcquireWaitsForRelease() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    long held = budget.acquire(60, 60);
+
+    // 50 bytes do not fit next to the 60 held, so the consumer waits until they are released
+    Consumer consumer = new Consumer(budget, 50, 50);
+    consumer.start();
+    awaitWaiting(consumer);
+    assertEquals(-1, consumer.granted);
+
+    budget.release(held);
+    consumer.join(timeout);
+    assertEquals(50, consumer.granted);
+    assertEquals(50, budget.getUsed());
+  }
+
+  @Test
+  public void testOversizeConsumerRunsAlone() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    long held = budget.acquire(10, 10);
+
+    // a consumer needing more than the whole budget waits for the budget to be empty
+    Consumer oversize = new Consumer(budget, 150, 200);
+    oversize.start();
+    awaitWaiting(oversize);
+    assertEquals(-1, oversize.granted);
+
+    // then it is admitted alone with its minimum, over the capacity of the budget
+    budget.release(held);
+    oversize.join(timeout);
+    assertEquals(150, oversize.granted);
+    assertEquals(150, budget.getUsed());
+
+    // and no other consumer is admitted until it completes
+    Consumer small = new Consumer(budget, 1, 1);
+    small.start();
+    awaitWaiting(small);
+    assertEquals(-1, small.granted);
+
+    budget.release(oversize.granted);
+    small.join(timeout);
+    assertEquals(1, small.granted);
+    assertEquals(1, budget.getUsed());
+  }
+
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    long end = System.currentTimeMillis() + timeout;
+    while (thread.getState() != Thread.State.WAITING) {
+      assertTrue("consumer must wait for the budget", thread.isAlive()
+          && System.currentTimeMillis() < end);
+      Thread.sleep(1);
+    }
+  }
+
+  private static class Consumer extends Thread {
+
+    private final MemoryBudget budget;
+    private final long minimum;
+    private final long wanted;
+    private volatile long granted = -1;
+
+    Consumer(MemoryBudget budget, long minimum, long wanted) {
+      this.budget = budget;
+      this.minimum = minimum;
+      this.wanted = wanted;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        granted = budget.acquire(minimum, wanted);
+      } catch (InterruptedException e) {}
+    }
+  }
+
+}
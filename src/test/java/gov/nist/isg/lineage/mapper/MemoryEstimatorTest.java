@@ -0,0 +1,147 @@
+// NIST-developed software is provided by NIST as a public service. You may use, copy and distribute copies of the software in any medium, provided that you keep intact this entire notice. You may improve, modify and create derivative works of the software or any portion of the software, and you may copy and distribute such modifications or works. Modified works should carry a notice stating that you changed the software and should note the date and nature of any such change. Please explicitly acknowledge the National Institute of Standards and Technology as the source of the software.
+
+// NIST-developed software is expressly provided "AS IS." NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED, IN FACT OR ARISING BY OPERATION OF LAW, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT AND DATA ACCURACY. NIST NEITHER REPRESENTS NOR WARRANTS THAT THE OPERATION OF THE SOFTWARE WILL BE UNINTERRUPTED OR ERROR-FREE, OR THAT ANY DEFECTS WILL BE CORRECTED. NIST DOES NOT WARRANT OR MAKE ANY REPRESENTATIONS REGARDING THE USE OF THE SOFTWARE OR THE RESULTS THEREOF, INCLUDING BUT NOT LIMITED TO THE CORRECTNESS, ACCURACY, RELIABILITY, OR USEFULNESS OF THE SOFTWARE.
+
+// You are solely responsible for determining the appropriateness of using and distributing the software and you assume all risks associated with its use, including but not limited to the risks and costs of program errors, compliance with applicable laws, damage to or loss of data, programs or equipment, and the unavailability or interruption of operation. This software is not intended to be used in any situation where a failure could cause risk of injury or damage to property. The software developed by NIST employees is not subject to copyright protection within the United States.
+
+package gov.nist.isg.lineage.mapper;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import gov.nist.isg.lineage.mapper.app.TrackingAppParams;
+import gov.nist.isg.lineage.mapper.lib.ImageFrame;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryEstimatorTest {
+
+  private static final int width = 1000;
+  private static final int height = 800;
+
+  @Test
+  public void testCellsPerFrameFollowFirstFrame() {
+    TrackingAppParams params = new TrackingAppParams();
+    params.setCellSizeThreshold(100);
+
+    // twice the cells of the first frame, within the number of minimum sized cells fitting
+    assertEquals(400, new MemoryEstimator(params, 10, width, height, 2, height, 200)
+        .getCellsPerFrame());
+    assertEquals(width * height / 100, new MemoryEstimator(params, 10, width, height, 2,
+        height, 7000).getCellsPerFrame());
+    // and within the highest label of the input bit depth
+    assertEquals(255, new MemoryEstimator(params, 10, width, height, 1, height, 200)
+        .getCellsPerFrame());
+    // without the first frame's cells only the bounds remain
+    assertEquals(width * height / 100, new MemoryEstimator(params, 10, width, height, 2,
+        height, -1).getCellsPerFrame());
+  }
+
+  @Test
+  public void testShardedEstimateFollowsFirstFrame() {
+    TrackingAppParams params = new TrackingAppParams();
+    params.setCellSizeThreshold(1);
+    params.setTemporalShards(4);
+
+    // the cell tables of every frame are held, so their size must come from the observed cells
+    // rather than from the 65535 labels a 16 bit frame could hold
+    long observed = new MemoryEstimator(params, 10000, width, height, 2, height, 100)
+        .estimate(0);
+    long bounded = new MemoryEstimator(params, 10000, width, height, 2, height, -1)
+        .estimate(0);
+    assertTrue("sharded estimate must scale with the observed cells", observed * 100 < bounded);
+  }
+
+  @Test
+  public void testHighCellCountEstimate() {
+    TrackingAppParams params = new TrackingAppParams();
+    params.setCellSizeThreshold(1);
+    params.setMaxCentroidsDist(50);
+
+    MemoryEstimator few = new MemoryEstimator(params, 10, width, height, 2, height, 3000);
+    MemoryEstimator many = new MemoryEstimator(params, 10, width, height, 2, height, 30000);
+    assertEquals(60000, many.getCellsPerFrame());
+
+    // every cell is paired with the cells whose centroid is within the maximum centroid distance,
+    // and each pair holds at least its row, column and cost in the cost matrix of the two tracked
+    // pairs of frames
+    long cells = many.getCellsPerFrame();
+    long candidates = (long) (Math.PI * 50 * 50 * cells / (width * height));
+    assertTrue("estimate must hold the cost pairs of dense frames",
+        many.estimate(0) > 2 * cells * candidates * 16);
+    // so ten times the cells in the same frame cost far more than ten times the memory
+    assertTrue("estimate must grow faster than the number of cells",
+        many.estimate(0) > 20 * few.estimate(0));
+  }
+
+  @Test
+  public void testMaxPipelineDepth() {
+    TrackingAppParams params = new TrackingAppParams();
+    params.setPipelineDepth(4);
+    MemoryEstimator estimator = new MemoryEstimator(params, 100, width, height, 2, height, 500);
+
+    for (int depth = 1; depth <= 4; depth++) {
+      assertTrue("deeper pipelines must hold more frames",
+          estimator.estimate(depth) > estimator.estimate(depth - 1));
+    }
+    assertEquals(4, estimator.maxPipelineDepth(estimator.estimate(4)));
+    assertEquals(4, estimator.maxPipelineDepth(Long.MAX_VALUE));
+    assertEquals(2, estimator.maxPipelineDepth(estimator.estimate(3) - 1));
+    assertEquals(2, estimator.maxPipelineDepth(estimator.estimate(2)));
+    assertEquals(0, estimator.maxPipelineDepth(estimator.estimate(1) - 1));
+    assertEquals(0, estimator.maxPipelineDepth(0));
+
+    // never deeper than configured
+    params.setPipelineDepth(1);
+    assertEquals(1, estimator.maxPipelineDepth(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testForFramesCountsFirstFrameCellsOnlyWhenNeeded() {
+    String testDataDirectory = null;
+    try {
+      testDataDirectory = new File(".").getCanonicalPath() + File.separator + "test" + File
+          .separator;
+    } catch (IOException e) {}
+    // check that the tracking test data directory exists
+    assertNotNull("tracking test data directory must not be null", testDataDirectory);
+
+    String filepath = testDataDirectory + "seg_001.tif";
+    List<ImageFrame> framesList = new ArrayList<ImageFrame>();
+    framesList.add(new ImageFrame(filepath, filepath, 0, "seg_001.tif"));
+    TrackingAppParams params = new TrackingAppParams();
+    params.setCellSizeThreshold(1);
+
+    // count the labels of the first frame decoded whole by ImageJ
+    ImageProcessor ip = new ImagePlus(filepath).getProcessor();
+    Set<Integer> labels = new HashSet<Integer>();
+    for (int i = 0; i < ip.getPixelCount(); i++) {
+      if (ip.get(i) > 0) {
+        labels.add(ip.get(i));
+      }
+    }
+    assertTrue("first frame must hold cells", !labels.isEmpty());
+
+    assertEquals(2 * labels.size(), MemoryEstimator.forFrames(params, framesList, 0)
+        .getCellsPerFrame());
+
+    // the first frame is not read when the cap on the cells already fits within the budget
+    ImagePlus image = new ImagePlus(filepath);
+    long cap = new MemoryEstimator(params, 1, image.getWidth(), image.getHeight(),
+        image.getBytesPerPixel(), image.getHeight(), -1).getCellsPerFrame();
+    assertTrue("cap must be above the cells of the first frame", cap > 2 * labels.size());
+    assertEquals(cap, MemoryEstimator.forFrames(params, framesList, Long.MAX_VALUE)
+        .getCellsPerFrame());
+  }
+
+}